@@ -24,6 +24,7 @@ import com.tencent.cos.xml.model.bucket.GetBucketLifecycleRequest;
 import com.tencent.cos.xml.model.bucket.GetBucketLifecycleResult;
 import com.tencent.cos.xml.model.bucket.GetBucketLocationRequest;
 import com.tencent.cos.xml.model.bucket.GetBucketLocationResult;
+import com.tencent.cos.xml.model.bucket.GetBucketCompactResult;
 import com.tencent.cos.xml.model.bucket.GetBucketRequest;
 import com.tencent.cos.xml.model.bucket.GetBucketResult;
 import com.tencent.cos.xml.model.bucket.HeadBucketRequest;
@@ -46,6 +47,7 @@ import com.tencent.cos.xml.model.tag.ACLAccount;
 import com.tencent.cos.xml.model.tag.CORSConfiguration;
 import com.tencent.cos.xml.model.tag.LifecycleConfiguration;
 import com.tencent.cos.xml.model.tag.ListAllMyBuckets;
+import com.tencent.cos.xml.model.tag.ListBucket;
 import com.tencent.cos.xml.model.tag.ListMultipartUploads;
 import com.tencent.qcloud.core.auth.ShortTimeCredentialProvider;
 
@@ -102,6 +104,54 @@ public class BucketTest {
         Log.d(TAG, getBucketResult.printResult());
     }
 
+    public void getBucketIterator() throws CosXmlServiceException, CosXmlClientException {
+        GetBucketRequest getBucketRequest = new GetBucketRequest(bucketName);
+        getBucketRequest.setMaxKeys(10);
+        GetBucketResult getBucketResult = QServer.cosXml.getBucket(getBucketRequest);
+        int expected = getBucketResult.listBucket.contentsList.size();
+
+        GetBucketRequest iteratorRequest = new GetBucketRequest(bucketName);
+        iteratorRequest.setMaxKeys(3);
+        ListBucketIterator iterator = ((CosXmlService) QServer.cosXml).getBucketIterator(iteratorRequest);
+        int count = 0;
+        String lastKey = null;
+        try {
+            while (iterator.hasNext() && count < expected){
+                ListBucket.Contents contents = iterator.next();
+                if(lastKey != null){
+                    Assert.assertTrue(lastKey.compareTo(contents.key) < 0);
+                }
+                lastKey = contents.key;
+                count ++;
+            }
+        } finally {
+            iterator.close();
+        }
+        Assert.assertEquals(expected, count);
+    }
+
+    public void getBucketParallelIterator() throws CosXmlServiceException, CosXmlClientException {
+        List<String> keys = new ArrayList<>();
+        ListBucketIterator iterator = ((CosXmlService) QServer.cosXml).getBucketIterator(new GetBucketRequest(bucketName));
+        while (iterator.hasNext()){
+            keys.add(iterator.next().key);
+        }
+
+        ParallelListBucketIterator parallelIterator = ((CosXmlService) QServer.cosXml)
+                .getBucketIterator(new GetBucketRequest(bucketName), 4, true);
+        List<String> parallelKeys = new ArrayList<>();
+        while (parallelIterator.hasNext()){
+            parallelKeys.add(parallelIterator.next().key);
+        }
+        Assert.assertEquals(keys, parallelKeys);
+    }
+
+    public void getBucketCompact() throws CosXmlServiceException, CosXmlClientException {
+        GetBucketResult getBucketResult = QServer.cosXml.getBucket(new GetBucketRequest(bucketName));
+        GetBucketCompactResult compactResult = ((CosXmlService) QServer.cosXml).getBucketCompact(new GetBucketRequest(bucketName));
+        Assert.assertEquals(getBucketResult.listBucket.toString(), compactResult.listBucket.toString());
+    }
+
     public void putBucketCORS() throws CosXmlServiceException, CosXmlClientException {
         PutBucketCORSRequest putBucketCORSRequest = new PutBucketCORSRequest(bucketName);
         CORSConfiguration.CORSRule corsRule = new CORSConfiguration.CORSRule();
@@ -239,6 +289,9 @@ public class BucketTest {
         QServer.init(appContext);
         bucketName = QServer.bucketForObject;
         getBucket();
+        getBucketIterator();
+        getBucketParallelIterator();
+        getBucketCompact();
 //        bucketName = "xy3";
 //        putBucket();
 //        getBucketLocation();
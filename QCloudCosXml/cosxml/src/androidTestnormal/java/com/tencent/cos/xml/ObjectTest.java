@@ -46,8 +46,11 @@ import com.tencent.cos.xml.model.object.UploadPartResult;
 import com.tencent.cos.xml.model.tag.ACLAccount;
 import com.tencent.cos.xml.model.tag.ListBucket;
 
+import org.junit.Assert;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -244,6 +247,23 @@ public class ObjectTest {
 
     }
 
+    public void bulkDeleteObjects() throws CosXmlServiceException {
+        final List<String> failedKeys = new ArrayList<>();
+        BulkDeleter bulkDeleter = new BulkDeleter((CosXmlService) QServer.cosXml, bucket)
+                .setBatchSize(2)
+                .setListener(new BulkDeleter.Listener() {
+                    @Override
+                    public void onFailed(String key, String code, String message) {
+                        synchronized (failedKeys) {
+                            failedKeys.add(key);
+                        }
+                    }
+                });
+        long deleted = bulkDeleter.delete(Arrays.asList(cosPath, "not_exist_1", "not_exist_2").iterator());
+        Log.d(TAG, "bulk delete " + deleted + ", failed " + failedKeys);
+        Assert.assertEquals(3, deleted);
+    }
+
     @org.junit.Test
     public void testObject() throws Exception{
         appContext = InstrumentationRegistry.getContext();
@@ -252,6 +272,7 @@ public class ObjectTest {
         srcPath = QServer.createFile(appContext, 1024 * 1024);
         QServer.init(appContext);
         putObject();
+        bulkDeleteObjects();
 //        headObject();
 //       // optionObject();
 //        // putObjectACL();
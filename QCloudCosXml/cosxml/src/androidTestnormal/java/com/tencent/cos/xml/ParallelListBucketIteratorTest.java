@@ -0,0 +1,214 @@
+package com.tencent.cos.xml;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
+import com.tencent.qcloud.core.http.HttpRequest;
+import com.tencent.qcloud.core.http.HttpResponse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.*;
+
+/**
+ * 使用在内存中模拟 GET Bucket 的服务检查并发遍历的分片和结果
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParallelListBucketIteratorTest {
+
+    private static final int PAGE_SIZE = 5;
+
+    @Test
+    public void testFlatBucket() throws Exception {
+        FakeService service = new FakeService(InstrumentationRegistry.getContext());
+        for(int i = 0; i < 23; i ++){
+            service.keys.add(String.format("key%02d", i));
+        }
+        ParallelListBucketIterator iterator = ParallelListBucketIterator.byCommonPrefixes(service, newRequest(null),
+                3, true);
+        // 发现阶段的两页按页切分为区间分片，之后的 key 为一个区间分片
+        assertEquals(3, iterator.getShardCount());
+        assertEquals(new ArrayList<>(service.keys), list(iterator));
+        assertTrue(service.maxInflight > 1);
+        assertTrue(service.maxInflight <= 3);
+        // 发现的两页 + 两个区间分片各一页 + 剩余 13 个 key 三页
+        assertEquals(7, service.requests);
+    }
+
+    @Test
+    public void testMixedBucket() throws Exception {
+        FakeService service = new FakeService(InstrumentationRegistry.getContext());
+        String[] keys = {"a", "b/1", "b/2", "b/3", "c", "d", "e", "f", "g", "h", "i/1", "i/2/1", "j", "k/1", "l"};
+        Collections.addAll(service.keys, keys);
+        ParallelListBucketIterator iterator = ParallelListBucketIterator.byCommonPrefixes(service, newRequest(null),
+                2, true);
+        // a | b/ | c-g | h | i/ | j | 之后的 key
+        assertEquals(7, iterator.getShardCount());
+        assertEquals(new ArrayList<>(service.keys), list(iterator));
+
+        iterator = ParallelListBucketIterator.byCommonPrefixes(service, newRequest(null), 2, false);
+        List<String> unordered = list(iterator);
+        Collections.sort(unordered);
+        assertEquals(new ArrayList<>(service.keys), unordered);
+    }
+
+    @Test
+    public void testDiscoveryEndsWithPrefix() throws Exception {
+        FakeService service = new FakeService(InstrumentationRegistry.getContext());
+        for(char c = 'a'; c <= 'l'; c ++){
+            service.keys.add(c + "/1");
+            service.keys.add(c + "/2");
+        }
+        // 排在 "j/" 的 key 和 "k/" 之间的对象
+        Collections.addAll(service.keys, "j0", "j1");
+        ParallelListBucketIterator iterator = ParallelListBucketIterator.byCommonPrefixes(service, newRequest(null),
+                3, true);
+        // a/ ~ j/ 十个前缀分片，之后的 key 为一个区间分片
+        assertEquals(11, iterator.getShardCount());
+        assertEquals(new ArrayList<>(service.keys), list(iterator));
+    }
+
+    @Test
+    public void testMarker() throws Exception {
+        FakeService service = new FakeService(InstrumentationRegistry.getContext());
+        String[] keys = {"a", "b/1", "b/2", "b/3", "c", "d", "e/1"};
+        Collections.addAll(service.keys, keys);
+        ParallelListBucketIterator iterator = ParallelListBucketIterator.byCommonPrefixes(service, newRequest("b/1"),
+                2, true);
+        assertEquals(new ArrayList<>(service.keys.tailSet("b/1", false)), list(iterator));
+    }
+
+    private static GetBucketRequest newRequest(String marker) {
+        GetBucketRequest request = new GetBucketRequest("bucket-1250000000");
+        request.setMaxKeys(PAGE_SIZE);
+        request.setMarker(marker);
+        return request;
+    }
+
+    private static List<String> list(ParallelListBucketIterator iterator) {
+        List<String> keys = new ArrayList<>();
+        try {
+            while (iterator.hasNext()){
+                keys.add(iterator.next().key);
+            }
+        } finally {
+            iterator.close();
+        }
+        return keys;
+    }
+
+    /**
+     * 按请求的 prefix、marker、delimiter 和 max-keys 列出内存中的 key
+     */
+    private static class FakeService extends CosXmlSimpleService {
+
+        final TreeSet<String> keys = new TreeSet<>();
+        int inflight;
+        int maxInflight;
+        int requests;
+
+        FakeService(Context context) {
+            super(context, new CosXmlServiceConfig.Builder().setAppidAndRegion("1250000000", "ap-guangzhou").builder(),
+                    (QCloudCredentialProvider) null);
+        }
+
+        @Override
+        protected <T1 extends CosXmlRequest, T2 extends CosXmlResult> T2 execute(T1 cosXmlRequest, T2 cosXmlResult)
+                throws CosXmlClientException, CosXmlServiceException {
+            GetBucketRequest request = (GetBucketRequest) cosXmlRequest;
+            synchronized (this){
+                inflight ++;
+                requests ++;
+                maxInflight = Math.max(maxInflight, inflight);
+            }
+            try {
+                // 给其他分片的请求留出同时进行的时间
+                Thread.sleep(20);
+                cosXmlResult.parseResponseBody(newResponse(listBucketXml(request)));
+                return cosXmlResult;
+            } catch (Exception e) {
+                throw new CosXmlClientException(e);
+            } finally {
+                synchronized (this){
+                    inflight --;
+                }
+            }
+        }
+
+        private synchronized String listBucketXml(GetBucketRequest request) {
+            String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+            String marker = request.getMarker();
+            String delimiter = request.getDelimiter();
+            StringBuilder contents = new StringBuilder();
+            StringBuilder commonPrefixes = new StringBuilder();
+            String lastPrefix = null;
+            String lastKey = null;
+            int count = 0;
+            boolean truncated = false;
+            for(String key : marker != null ? keys.tailSet(marker, false) : keys){
+                if(!key.startsWith(prefix)) continue;
+                int index = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+                String commonPrefix = index >= 0 ? key.substring(0, index + 1) : null;
+                if(commonPrefix != null && commonPrefix.equals(lastPrefix)){
+                    lastKey = key;
+                    continue;
+                }
+                if(count == request.getMaxKeys()){
+                    truncated = true;
+                    break;
+                }
+                count ++;
+                lastKey = key;
+                if(commonPrefix != null){
+                    lastPrefix = commonPrefix;
+                    commonPrefixes.append("<CommonPrefixes><Prefix>").append(commonPrefix).append("</Prefix></CommonPrefixes>");
+                }else {
+                    contents.append("<Contents><Key>").append(key).append("</Key><Size>1</Size></Contents>");
+                }
+            }
+            return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><ListBucketResult><Name>bucket-1250000000</Name>"
+                    + "<Prefix>" + prefix + "</Prefix><IsTruncated>" + truncated + "</IsTruncated>"
+                    + (truncated ? "<NextMarker>" + lastKey + "</NextMarker>" : "")
+                    + contents + commonPrefixes + "</ListBucketResult>";
+        }
+
+        private static HttpResponse newResponse(String body) throws Exception {
+            HttpRequest<String> httpRequest = new HttpRequest.Builder<String>()
+                    .scheme("https")
+                    .method("GET")
+                    .host("bucket-1250000000.cos.ap-guangzhou.myqcloud.com").build();
+            Response response = new Response.Builder()
+                    .request(new Request.Builder().url("http://cloud.tencent.com").build())
+                    .code(200)
+                    .message("OK")
+                    .protocol(Protocol.HTTP_1_1)
+                    .body(ResponseBody.create(MediaType.parse("application/xml"), body))
+                    .build();
+            Constructor constructor = HttpResponse.class.getDeclaredConstructor(HttpRequest.class, Response.class);
+            constructor.setAccessible(true);
+            return (HttpResponse) constructor.newInstance(httpRequest, response);
+        }
+    }
+}
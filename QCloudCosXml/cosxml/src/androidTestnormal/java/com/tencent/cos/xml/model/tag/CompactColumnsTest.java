@@ -0,0 +1,217 @@
+package com.tencent.cos.xml.model.tag;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * 检查各个列的编码能还原出原始值，无法编码的值原样保存
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompactColumnsTest {
+
+    @Test
+    public void testKeys() {
+        StringBuilder longPrefix = new StringBuilder();
+        for(int i = 0; i < 300; i ++){
+            longPrefix.append((char) ('a' + i % 26));
+        }
+        List<String> values = new ArrayList<>();
+        for(int i = 0; i < 3 * CompactColumns.Keys.RESTART_INTERVAL + 5; i ++){
+            // 与前一个 key 的公共前缀跨过重启点，长度也不相同
+            values.add(longPrefix.substring(0, 300 - i % 7) + "/" + i);
+        }
+        values.set(CompactColumns.Keys.RESTART_INTERVAL - 1, null);
+        values.set(CompactColumns.Keys.RESTART_INTERVAL, null);
+        values.set(CompactColumns.Keys.RESTART_INTERVAL + 1, "");
+        values.set(CompactColumns.Keys.RESTART_INTERVAL + 2, longPrefix.toString());
+        values.set(2 * CompactColumns.Keys.RESTART_INTERVAL, "中文/😀");
+        values.set(2 * CompactColumns.Keys.RESTART_INTERVAL + 1, "中文/😀😀");
+
+        CompactColumns.Keys keys = new CompactColumns.Keys();
+        for(String value : values){
+            keys.add(value);
+        }
+        assertKeys(values, keys);
+
+        // trimToSize 之后继续追加
+        keys.trimToSize();
+        assertKeys(values, keys);
+        for(String value : Arrays.asList(longPrefix + "/x", null, longPrefix + "/y", "z")){
+            values.add(value);
+            keys.add(value);
+        }
+        assertKeys(values, keys);
+    }
+
+    private static void assertKeys(List<String> expected, CompactColumns.Keys keys) {
+        assertEquals(expected.size(), keys.size());
+        for(int i = 0; i < expected.size(); i ++){
+            assertEquals("index " + i, expected.get(i), keys.get(i));
+        }
+    }
+
+    @Test
+    public void testTimestamps() {
+        String[] encodable = {
+                "1970-01-01T00:00:00.000Z",
+                "2000-02-29T12:34:56.789Z",
+                "2016-02-29T23:59:59.999Z",
+                "2018-12-31T23:59:59.999Z",
+                "2400-02-29T00:00:00.001Z",
+                "9999-12-31T23:59:59.999Z",
+        };
+        String[] raw = {
+                null,
+                "",
+                // 1970 年之前
+                "1969-12-31T23:59:59.999Z",
+                "0001-01-01T00:00:00.000Z",
+                // 不存在的日期
+                "2018-02-29T00:00:00.000Z",
+                "2100-02-29T00:00:00.000Z",
+                "2018-04-31T00:00:00.000Z",
+                "2018-13-01T00:00:00.000Z",
+                "2018-01-01T24:00:00.000Z",
+                "2018-01-01T00:60:00.000Z",
+                "2018-01-01T00:00:60.000Z",
+                // 其他格式
+                "2018-01-01T00:00:00Z",
+                "2018-01-01T00:00:00.000+0800",
+                "2018-01-01 00:00:00.000Z",
+                "2018-1-01T00:00:00.0000Z",
+                "+018-01-01T00:00:00.000Z",
+                "Mon, 01 Jan 2018 00:00:00 GMT",
+        };
+        CompactColumns.Timestamps timestamps = new CompactColumns.Timestamps();
+        List<String> values = new ArrayList<>();
+        for(int i = 0; i < encodable.length; i ++){
+            values.add(encodable[i]);
+            values.add(raw[i]);
+        }
+        for(int i = encodable.length; i < raw.length; i ++){
+            values.add(raw[i]);
+        }
+        for(String value : values){
+            timestamps.add(value);
+        }
+        timestamps.trimToSize();
+        timestamps.add(encodable[1]);
+        values.add(encodable[1]);
+        for(int i = 0; i < values.size(); i ++){
+            String value = values.get(i);
+            assertEquals(value, timestamps.get(i));
+            boolean isEncodable = Arrays.asList(encodable).contains(value);
+            assertEquals(value, isEncodable ? utcMillis(value) : -1, timestamps.getMillis(i));
+        }
+    }
+
+    @Test
+    public void testTimestampsEveryDay() {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(1970, Calendar.JANUARY, 1, 23, 59, 59);
+        calendar.set(Calendar.MILLISECOND, 999);
+        // 覆盖 2000、2100、2400 年这些闰年规则不同的年份
+        while (calendar.get(Calendar.YEAR) <= 2400){
+            long millis = calendar.getTimeInMillis();
+            String value = CompactColumns.Timestamps.format(millis);
+            assertEquals(value, millis, CompactColumns.Timestamps.parse(value));
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        assertEquals("2100-03-01T23:59:59.999Z", CompactColumns.Timestamps.format(utcMillis("2100-03-01T23:59:59.999Z")));
+    }
+
+    private static long utcMillis(String value) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(Integer.parseInt(value.substring(0, 4)), Integer.parseInt(value.substring(5, 7)) - 1,
+                Integer.parseInt(value.substring(8, 10)), Integer.parseInt(value.substring(11, 13)),
+                Integer.parseInt(value.substring(14, 16)), Integer.parseInt(value.substring(17, 19)));
+        calendar.set(Calendar.MILLISECOND, Integer.parseInt(value.substring(20, 23)));
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void testETags() {
+        List<String> values = Arrays.asList(
+                "\"d41d8cd98f00b204e9800998ecf8427e\"",
+                // 大写的 MD5 不能还原成相同的字符串
+                "\"D41D8CD98F00B204E9800998ECF8427E\"",
+                null,
+                // 分块上传的 ETag
+                "\"d41d8cd98f00b204e9800998ecf8427e-3\"",
+                "d41d8cd98f00b204e9800998ecf8427e",
+                "\"d41d8cd98f00b204e9800998ecf8427g\"",
+                "",
+                "\"\"",
+                "\"00000000000000000000000000000000\"",
+                "\"ffffffffffffffffffffffffffffffff\"");
+        CompactColumns.ETags eTags = new CompactColumns.ETags();
+        List<String> expected = new ArrayList<>();
+        // 多次追加触发扩容，无法编码的值在扩容后仍然保留
+        for(int round = 0; round < 3; round ++){
+            for(String value : values){
+                eTags.add(value);
+                expected.add(value);
+            }
+            if(round == 1){
+                eTags.trimToSize();
+            }
+        }
+        for(int i = 0; i < expected.size(); i ++){
+            assertEquals("index " + i, expected.get(i), eTags.get(i));
+        }
+    }
+
+    @Test
+    public void testDictionary() {
+        CompactColumns.Dictionary dictionary = new CompactColumns.Dictionary();
+        dictionary.add("STANDARD");
+        dictionary.add(null);
+        dictionary.add(null, true);
+        dictionary.add("STANDARD_IA");
+        dictionary.trimToSize();
+        dictionary.add("STANDARD");
+        dictionary.add("");
+
+        assertEquals("STANDARD", dictionary.get(0));
+        assertTrue(dictionary.isPresent(0));
+        assertNull(dictionary.get(1));
+        assertFalse(dictionary.isPresent(1));
+        // 存在但值为 null，例如没有 ID 的 Owner
+        assertNull(dictionary.get(2));
+        assertTrue(dictionary.isPresent(2));
+        assertEquals("STANDARD_IA", dictionary.get(3));
+        assertEquals("STANDARD", dictionary.get(4));
+        assertEquals("", dictionary.get(5));
+        assertTrue(dictionary.isPresent(5));
+    }
+
+    @Test
+    public void testLongs() {
+        CompactColumns.Longs longs = new CompactColumns.Longs();
+        long[] values = {0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 5L * 1024 * 1024 * 1024 * 1024};
+        for(long value : values){
+            longs.add(value);
+        }
+        longs.trimToSize();
+        longs.add(42);
+        for(int i = 0; i < values.length; i ++){
+            assertEquals(values[i], longs.get(i));
+        }
+        assertEquals(42, longs.get(values.length));
+    }
+}
@@ -0,0 +1,158 @@
+package com.tencent.cos.xml.model.tag;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 检查 {@link CompactListBucket} 和 {@link CompactListBucketVersions} 生成的对象与追加的对象一致
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompactListBucketTest {
+
+    private static final String MD5_ETAG = "\"d41d8cd98f00b204e9800998ecf8427e\"";
+
+    @Test
+    public void testListBucket() {
+        ListBucket listBucket = new ListBucket();
+        listBucket.name = "bucket-1250000000";
+        listBucket.prefix = "dir/";
+        listBucket.maxKeys = 1000;
+        listBucket.isTruncated = true;
+        listBucket.nextMarker = "dir/key49";
+        listBucket.contentsList = new ArrayList<>();
+        for(int i = 0; i < 50; i ++){
+            ListBucket.Contents contents = new ListBucket.Contents();
+            contents.key = "dir/key" + i;
+            contents.lastModified = "2018-09-14T08:00:" + (10 + i) + ".000Z";
+            contents.eTag = MD5_ETAG;
+            contents.size = i * 1024L;
+            contents.storageClass = i % 2 == 0 ? "STANDARD" : "STANDARD_IA";
+            contents.owner = new ListBucket.Owner();
+            contents.owner.id = "qcs::cam::uin/100000000001:uin/100000000001";
+            listBucket.contentsList.add(contents);
+        }
+        // 各个字段取无法编码或者不存在的值
+        ListBucket.Contents contents = listBucket.contentsList.get(3);
+        contents.key = null;
+        contents.owner = null;
+        contents = listBucket.contentsList.get(16);
+        contents.eTag = null;
+        contents.storageClass = null;
+        contents.owner.id = null;
+        contents = listBucket.contentsList.get(17);
+        contents.eTag = MD5_ETAG.toUpperCase();
+        contents.lastModified = "1969-12-31T23:59:59.999Z";
+        contents = listBucket.contentsList.get(18);
+        contents.eTag = "\"d41d8cd98f00b204e9800998ecf8427e-2\"";
+        contents.lastModified = "2016-02-29T00:00:00.000Z";
+        contents.key = "";
+        listBucket.commonPrefixesList = new ArrayList<>();
+        for(String prefix : new String[]{"dir/a/", null, "dir/b/"}){
+            ListBucket.CommonPrefixes commonPrefixes = new ListBucket.CommonPrefixes();
+            commonPrefixes.prefix = prefix;
+            listBucket.commonPrefixesList.add(commonPrefixes);
+        }
+
+        CompactListBucket compact = new CompactListBucket();
+        compact.name = listBucket.name;
+        compact.prefix = listBucket.prefix;
+        compact.maxKeys = listBucket.maxKeys;
+        compact.isTruncated = listBucket.isTruncated;
+        compact.nextMarker = listBucket.nextMarker;
+        // 先追加一部分，trimToSize 之后再追加剩余部分
+        for(int i = 0; i < 20; i ++){
+            compact.addContents(listBucket.contentsList.get(i));
+        }
+        compact.trimToSize();
+        for(int i = 20; i < listBucket.contentsList.size(); i ++){
+            compact.addContents(listBucket.contentsList.get(i));
+        }
+        for(ListBucket.CommonPrefixes commonPrefixes : listBucket.commonPrefixesList){
+            compact.addCommonPrefixes(commonPrefixes);
+        }
+
+        assertEquals(listBucket.contentsList.size(), compact.size());
+        assertEquals(listBucket.toString(), compact.toString());
+        assertNull(compact.getKey(3));
+        assertNull(compact.getContents(3).owner);
+        assertNotNull(compact.getContents(16).owner);
+        assertNull(compact.getOwnerId(16));
+        assertNull(compact.getETag(16));
+        assertEquals(-1, compact.getLastModifiedMillis(17));
+        assertEquals("", compact.getKey(18));
+        assertEquals(1536912010000L, compact.getLastModifiedMillis(0));
+        List<String> prefixes = new ArrayList<>();
+        prefixes.add("dir/a/");
+        prefixes.add(null);
+        prefixes.add("dir/b/");
+        assertEquals(prefixes, compact.getCommonPrefixes());
+    }
+
+    @Test
+    public void testListBucketVersions() {
+        ListBucketVersions listBucketVersions = new ListBucketVersions();
+        listBucketVersions.name = "bucket-1250000000";
+        listBucketVersions.maxKeys = 1000;
+        listBucketVersions.nextKeyMarker = "key9";
+        listBucketVersions.nextVersionIdMarker = "MTg0NDUxNTc1NjM5MTg5NjM";
+        listBucketVersions.objectVersionList = new ArrayList<>();
+        for(int i = 0; i < 40; i ++){
+            ListBucketVersions.ObjectVersion objectVersion;
+            if(i % 5 == 4){
+                objectVersion = new ListBucketVersions.DeleteMarker();
+            }else {
+                ListBucketVersions.Version version = new ListBucketVersions.Version();
+                version.eTag = i % 3 == 0 ? MD5_ETAG : "\"" + i + "\"";
+                version.size = i;
+                version.storageClass = "STANDARD";
+                objectVersion = version;
+            }
+            objectVersion.key = "key" + i / 4;
+            objectVersion.versionId = i % 7 == 0 ? null : "version" + i;
+            objectVersion.isLatest = i % 4 == 0;
+            objectVersion.lastModified = i % 6 == 0 ? "2018-09-14T08:00:00Z" : "2020-02-29T08:00:00.000Z";
+            if(i % 8 != 0){
+                objectVersion.owner = new ListBucketVersions.Owner();
+                objectVersion.owner.uid = i % 8 == 1 ? null : "100000000001";
+            }
+            listBucketVersions.objectVersionList.add(objectVersion);
+        }
+        ((ListBucketVersions.Version) listBucketVersions.objectVersionList.get(1)).eTag = null;
+        listBucketVersions.objectVersionList.get(2).key = null;
+
+        CompactListBucketVersions compact = new CompactListBucketVersions();
+        compact.name = listBucketVersions.name;
+        compact.maxKeys = listBucketVersions.maxKeys;
+        compact.nextKeyMarker = listBucketVersions.nextKeyMarker;
+        compact.nextVersionIdMarker = listBucketVersions.nextVersionIdMarker;
+        for(int i = 0; i < listBucketVersions.objectVersionList.size(); i ++){
+            compact.addObjectVersion(listBucketVersions.objectVersionList.get(i));
+            if(i == 17){
+                compact.trimToSize();
+            }
+        }
+
+        assertEquals(listBucketVersions.toString(), compact.toString());
+        for(int i = 0; i < compact.size(); i ++){
+            ListBucketVersions.ObjectVersion expected = listBucketVersions.objectVersionList.get(i);
+            ListBucketVersions.ObjectVersion actual = compact.getObjectVersion(i);
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.owner == null, actual.owner == null);
+            assertEquals(expected instanceof ListBucketVersions.DeleteMarker, compact.isDeleteMarker(i));
+        }
+        assertNull(compact.getETag(1));
+        assertNull(compact.getKey(2));
+        assertEquals(-1, compact.getLastModifiedMillis(0));
+        assertEquals(1582963200000L, compact.getLastModifiedMillis(1));
+        assertNull(compact.getStorageClass(4));
+    }
+}
@@ -1,11 +1,13 @@
 package com.tencent.cos.xml.transfer;
 
+import android.content.Context;
 import android.os.Environment;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 import android.util.Log;
 
 import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.CosXmlServiceConfig;
 import com.tencent.cos.xml.CosXmlSimpleService;
 import com.tencent.cos.xml.QServer;
 import com.tencent.cos.xml.exception.CosXmlClientException;
@@ -14,11 +16,32 @@ import com.tencent.cos.xml.listener.CosXmlProgressListener;
 import com.tencent.cos.xml.listener.CosXmlResultListener;
 import com.tencent.cos.xml.model.CosXmlRequest;
 import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.object.GetObjectResult;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectResult;
+import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
+import com.tencent.qcloud.core.http.HttpTask;
+import com.tencent.qcloud.core.util.CRC64;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import static com.tencent.cos.xml.QServer.TAG;
 import static org.junit.Assert.*;
 
@@ -159,4 +182,201 @@ public class COSXMLDownloadTaskTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testHeaderLookup() {
+        // okhttp 的 toMultimap() 返回小写的响应头名称
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("etag", Arrays.asList("\"abc\""));
+        headers.put("content-length", Arrays.asList("1024", "2048"));
+        assertEquals("\"abc\"", COSXMLDownloadTask.firstHeader(headers, "ETag"));
+        assertEquals("1024", COSXMLDownloadTask.firstHeader(headers, "Content-Length"));
+        assertNull(COSXMLDownloadTask.firstHeader(headers, "x-cos-hash-crc64ecma"));
+        assertNull(COSXMLDownloadTask.firstHeader(null, "ETag"));
+    }
+
+    private static final int SLICE_SIZE = 1024;
+    private static final int SLICE_COUNT = 10;
+
+    @Test
+    public void testSliceResume() throws Exception {
+        Context context = InstrumentationRegistry.getContext();
+        FakeService service = new FakeService(context, newContent(1));
+        String fileName = "slice_resume.txt";
+        new File(context.getExternalCacheDir(), fileName).delete();
+
+        // 第 6 个分块开始失败，之前完成的分块记录在日志中
+        service.failFrom = 5 * SLICE_SIZE;
+        assertEquals(TransferState.FAILED, runSliceDownload(context, service, fileName, SLICE_SIZE));
+        assertEquals(SLICE_COUNT * SLICE_SIZE, new File(context.getExternalCacheDir(), fileName).length());
+
+        service.failFrom = Long.MAX_VALUE;
+        service.ranges.clear();
+        assertEquals(TransferState.COMPLETED, runSliceDownload(context, service, fileName, SLICE_SIZE));
+        // 只下载没有完成的分块，第一个分块已经完成
+        assertTrue(service.ranges.size() < SLICE_COUNT);
+        assertFalse(service.ranges.contains(0L));
+        assertArrayEquals(service.content, readFile(new File(context.getExternalCacheDir(), fileName)));
+    }
+
+    @Test
+    public void testSliceCrc64Mismatch() throws Exception {
+        Context context = InstrumentationRegistry.getContext();
+        FakeService service = new FakeService(context, newContent(2));
+        String fileName = "slice_crc64.txt";
+        new File(context.getExternalCacheDir(), fileName).delete();
+
+        service.crc64 = "1";
+        assertEquals(TransferState.FAILED, runSliceDownload(context, service, fileName, SLICE_SIZE));
+        assertTrue(service.exception.getMessage().contains("crc64"));
+
+        // 校验失败后清除了记录，所有分块重新下载
+        service.crc64 = null;
+        service.ranges.clear();
+        assertEquals(TransferState.COMPLETED, runSliceDownload(context, service, fileName, SLICE_SIZE));
+        assertEquals(SLICE_COUNT, service.ranges.size());
+        assertArrayEquals(service.content, readFile(new File(context.getExternalCacheDir(), fileName)));
+    }
+
+    @Test
+    public void testSliceThenSingleStream() throws Exception {
+        Context context = InstrumentationRegistry.getContext();
+        FakeService service = new FakeService(context, newContent(3));
+        String fileName = "slice_single.txt";
+        new File(context.getExternalCacheDir(), fileName).delete();
+
+        service.failFrom = 5 * SLICE_SIZE;
+        assertEquals(TransferState.FAILED, runSliceDownload(context, service, fileName, SLICE_SIZE));
+
+        // 预分配的文件长度与对象相同，但中间有空洞，单线程下载需要从头重新下载
+        service.failFrom = Long.MAX_VALUE;
+        service.ranges.clear();
+        assertEquals(TransferState.COMPLETED, runSliceDownload(context, service, fileName, 0));
+        assertEquals(Collections.singletonList(0L), service.ranges);
+        assertArrayEquals(service.content, readFile(new File(context.getExternalCacheDir(), fileName)));
+    }
+
+    private static byte[] newContent(long seed) {
+        byte[] content = new byte[SLICE_COUNT * SLICE_SIZE];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(data);
+            return data;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @param sliceSize 为 0 时单线程下载
+     * @return 下载结束时的状态
+     */
+    private static TransferState runSliceDownload(Context context, final FakeService service, String fileName,
+                                                  long sliceSize) throws Exception {
+        COSXMLDownloadTask task = new COSXMLDownloadTask(context, service, "ap-guangzhou", "bucket-1250000000",
+                "object", context.getExternalCacheDir().getPath(), fileName);
+        task.multiDownloadSizeDivision = 4 * SLICE_SIZE;
+        task.sliceSize = sliceSize;
+        final CountDownLatch latch = new CountDownLatch(1);
+        task.setCosXmlResultListener(new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                service.exception = exception;
+                latch.countDown();
+            }
+        });
+        task.download();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return task.getTaskState();
+    }
+
+    /**
+     * 把内存中的对象按请求的范围写入本地文件，从 failFrom 开始的范围返回失败
+     */
+    private static class FakeService extends CosXmlSimpleService {
+
+        final byte[] content;
+        final List<Long> ranges = Collections.synchronizedList(new ArrayList<Long>());
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        volatile long failFrom = Long.MAX_VALUE;
+        volatile String crc64;
+        volatile Exception exception;
+
+        FakeService(Context context, byte[] content) {
+            super(context, new CosXmlServiceConfig.Builder().setAppidAndRegion("1250000000", "ap-guangzhou").builder(),
+                    (QCloudCredentialProvider) null);
+            this.content = content;
+        }
+
+        @Override
+        public int getDownloadConcurrent(CosXmlRequest cosXmlRequest) {
+            return 2;
+        }
+
+        @Override
+        public void cancel(CosXmlRequest cosXmlRequest) {
+        }
+
+        @Override
+        public void headObjectAsync(final HeadObjectRequest request, final CosXmlResultListener cosXmlResultListener) {
+            if(request.getTaskStateListener() != null){
+                request.getTaskStateListener().onStateChanged(request.getClass().getSimpleName(), HttpTask.STATE_EXECUTING);
+            }
+            CRC64 checksum = new CRC64();
+            checksum.update(content);
+            HeadObjectResult result = new HeadObjectResult();
+            result.httpCode = 200;
+            result.headers = new HashMap<>();
+            result.headers.put("etag", Arrays.asList("\"etag\""));
+            result.headers.put("content-length", Arrays.asList(String.valueOf(content.length)));
+            result.headers.put("x-cos-hash-crc64ecma", Arrays.asList(crc64 != null ? crc64
+                    : CRC64.toUnsignedString(checksum.getValue())));
+            cosXmlResultListener.onSuccess(request, result);
+        }
+
+        @Override
+        public void getObjectAsync(final GetObjectRequest request, final CosXmlResultListener cosXmlResultListener) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = request.getRange().getStart();
+                    long end = request.getRange().getEnd() >= 0 ? request.getRange().getEnd() : content.length - 1;
+                    ranges.add(start);
+                    try {
+                        if(start >= failFrom){
+                            // 让前面的分块先完成
+                            Thread.sleep(100);
+                            throw new Exception("connection reset");
+                        }
+                        RandomAccessFile randomAccessFile = new RandomAccessFile(request.getDownloadPath(), "rw");
+                        try {
+                            randomAccessFile.seek(request.getFileOffset());
+                            randomAccessFile.write(content, (int) start, (int) (end - start + 1));
+                        } finally {
+                            randomAccessFile.close();
+                        }
+                        CRC64 checksum = new CRC64();
+                        checksum.update(content, (int) start, (int) (end - start + 1));
+                        GetObjectResult result = new GetObjectResult();
+                        result.httpCode = 206;
+                        result.localCrc64 = CRC64.toUnsignedString(checksum.getValue());
+                        cosXmlResultListener.onSuccess(request, result);
+                    } catch (Exception e) {
+                        cosXmlResultListener.onFail(request, new CosXmlClientException(e), null);
+                    }
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package com.tencent.cos.xml.transfer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.tencent.cos.xml.CosXmlServiceConfig;
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+import com.tencent.cos.xml.model.object.UploadPartResult;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUpload;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUploadResult;
+import com.tencent.cos.xml.model.tag.InitiateMultipartUpload;
+import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
+import com.tencent.qcloud.core.http.HttpTask;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 使用不发出网络请求的服务检查流式上传的缓冲区复用和暂停恢复
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class COSXMLStreamUploadTaskTest {
+
+    private static final int SLICE_SIZE = 1024;
+
+    private byte[] data;
+
+    @Before
+    public void setUp() {
+        data = new byte[SLICE_SIZE * 10 + SLICE_SIZE / 2];
+        new Random(1).nextBytes(data);
+    }
+
+    @Test
+    public void testBufferReuse() throws Exception {
+        FakeService service = new FakeService(InstrumentationRegistry.getContext());
+        service.autoReply = true;
+        COSXMLStreamUploadTask task = newTask(service);
+        task.upload();
+
+        assertTrue(service.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertArrayEquals(data, service.uploadedData());
+        assertFalse(service.isDataChanged);
+        // 缓冲区个数为上传并发数加一
+        assertTrue(service.buffers.size() <= FakeService.UPLOAD_CONCURRENT + 1);
+        assertEquals(11, service.calls.size());
+    }
+
+    @Test
+    public void testPauseAndResume() throws Exception {
+        FakeService service = new FakeService(InstrumentationRegistry.getContext());
+        COSXMLStreamUploadTask task = newTask(service);
+        task.maxBufferCount = 2;
+        task.upload();
+        service.awaitCalls(2);
+
+        // 暂停：取消的请求暂不回调，模拟仍在发送数据的旧请求
+        task.pause();
+        assertEquals(TransferState.PAUSED, task.getTaskState());
+        List<Call> oldCalls = new ArrayList<>(service.calls);
+        for(Call call : oldCalls){
+            assertTrue(call.isCanceled);
+        }
+
+        // 恢复后重新上传暂停时未完成的两个分片
+        service.autoReply = true;
+        task.resume();
+        service.awaitCalls(4);
+        Thread.sleep(200);
+        // 旧请求还没有结束，缓冲区不能用于读取新的分片
+        assertEquals(4, service.calls.size());
+
+        // 旧请求的成功结果不再采用，但之后缓冲区可以复用
+        service.reply(oldCalls.get(0), true);
+        service.reply(oldCalls.get(1), false);
+
+        assertTrue(service.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertArrayEquals(data, service.uploadedData());
+        assertFalse(service.isDataChanged);
+        assertEquals(2, service.buffers.size());
+        assertEquals(1, service.completeCount);
+    }
+
+    @Test
+    public void testResumeWhileReading() throws Exception {
+        FakeService service = new FakeService(InstrumentationRegistry.getContext());
+        service.autoReply = true;
+        final CountDownLatch paused = new CountDownLatch(1);
+        // 读取第三个分片时暂停并立即恢复，之前的读取仍在进行
+        COSXMLStreamUploadTask task = new COSXMLStreamUploadTask(service, "ap-guangzhou", "bucket-1250000000",
+                "stream", new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if(pos == SLICE_SIZE * 2){
+                    paused.countDown();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                return super.read(b, off, len);
+            }
+        }, data.length);
+        task.sliceSize = SLICE_SIZE;
+        task.upload();
+
+        assertTrue(paused.await(10, TimeUnit.SECONDS));
+        task.pause();
+        task.resume();
+
+        assertTrue(service.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertArrayEquals(data, service.uploadedData());
+        assertFalse(service.isDataChanged);
+    }
+
+    private COSXMLStreamUploadTask newTask(CosXmlSimpleService service) {
+        COSXMLStreamUploadTask task = new COSXMLStreamUploadTask(service, "ap-guangzhou", "bucket-1250000000",
+                "stream", new ByteArrayInputStream(data), data.length);
+        task.sliceSize = SLICE_SIZE;
+        return task;
+    }
+
+    private static class Call {
+        UploadPartRequest request;
+        CosXmlResultListener listener;
+        byte[] sentData;
+        boolean isCanceled;
+        boolean isReplied;
+    }
+
+    /**
+     * 记录分片请求，检查请求结束前其数据没有被改写
+     */
+    private static class FakeService extends CosXmlSimpleService {
+
+        static final int UPLOAD_CONCURRENT = 2;
+
+        final List<Call> calls = new ArrayList<>();
+        final Map<byte[], Boolean> buffers = new IdentityHashMap<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        volatile boolean autoReply;
+        volatile boolean isDataChanged;
+        volatile Map<Integer, String> completedParts;
+        volatile int completeCount;
+        final Map<String, byte[]> eTagData = new HashMap<>();
+
+        FakeService(Context context) {
+            super(context, new CosXmlServiceConfig.Builder().setAppidAndRegion("1250000000", "ap-guangzhou").builder(),
+                    (QCloudCredentialProvider) null);
+        }
+
+        @Override
+        public int getUploadConcurrent(CosXmlRequest cosXmlRequest) {
+            return UPLOAD_CONCURRENT;
+        }
+
+        @Override
+        public void initMultipartUploadAsync(final InitMultipartUploadRequest request, final CosXmlResultListener listener) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    request.getTaskStateListener().onStateChanged(null, HttpTask.STATE_EXECUTING);
+                    InitMultipartUploadResult result = new InitMultipartUploadResult();
+                    result.initMultipartUpload = new InitiateMultipartUpload();
+                    result.initMultipartUpload.uploadId = "uploadId";
+                    listener.onSuccess(request, result);
+                }
+            });
+        }
+
+        @Override
+        public void uploadPartAsync(UploadPartRequest request, CosXmlResultListener listener) {
+            // 在记录请求之前决定是否回复，测试看到请求后再修改 autoReply 不影响这个请求
+            boolean isAutoReply = autoReply;
+            Call call = new Call();
+            call.request = request;
+            call.listener = listener;
+            call.sentData = Arrays.copyOf(request.getData(), (int) request.getFileLength());
+            synchronized (this){
+                calls.add(call);
+                buffers.put(request.getData(), Boolean.TRUE);
+                notifyAll();
+            }
+            if(isAutoReply){
+                reply(call, true);
+            }
+        }
+
+        @Override
+        public void completeMultiUploadAsync(final CompleteMultiUploadRequest request, final CosXmlResultListener listener) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Map<Integer, String> parts = new TreeMap<>();
+                    for(CompleteMultipartUpload.Part part : request.getCompleteMultipartUpload().parts){
+                        parts.put(part.partNumber, part.eTag);
+                    }
+                    completedParts = parts;
+                    completeCount ++;
+                    CompleteMultiUploadResult result = new CompleteMultiUploadResult();
+                    result.completeMultipartUpload = new CompleteMultipartUploadResult();
+                    listener.onSuccess(request, result);
+                    completed.countDown();
+                }
+            });
+        }
+
+        @Override
+        public void cancel(CosXmlRequest cosXmlRequest) {
+            synchronized (this){
+                for(Call call : calls){
+                    if(call.request == cosXmlRequest){
+                        call.isCanceled = true;
+                    }
+                }
+            }
+        }
+
+        void reply(final Call call, final boolean success) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (FakeService.this){
+                        if(call.isReplied) return;
+                        call.isReplied = true;
+                    }
+                    byte[] current = Arrays.copyOf(call.request.getData(), (int) call.request.getFileLength());
+                    if(!Arrays.equals(call.sentData, current)){
+                        isDataChanged = true;
+                    }
+                    if(success){
+                        UploadPartResult result = new UploadPartResult();
+                        result.eTag = "etag-" + call.request.getPartNumber() + "-" + Arrays.hashCode(call.sentData);
+                        synchronized (FakeService.this){
+                            eTagData.put(result.eTag, call.sentData);
+                        }
+                        call.listener.onSuccess(call.request, result);
+                    }else {
+                        call.listener.onFail(call.request, new CosXmlClientException("canceled"), null);
+                    }
+                }
+            });
+        }
+
+        synchronized void awaitCalls(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (calls.size() < count && System.currentTimeMillis() < deadline){
+                wait(100);
+            }
+            assertTrue(calls.size() >= count);
+        }
+
+        /**
+         * 按完成分片上传时的分片顺序拼接数据
+         */
+        synchronized byte[] uploadedData() {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            for(String eTag : completedParts.values()){
+                byte[] part = eTagData.get(eTag);
+                outputStream.write(part, 0, part.length);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+}
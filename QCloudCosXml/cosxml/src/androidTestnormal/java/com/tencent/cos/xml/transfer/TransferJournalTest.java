@@ -0,0 +1,97 @@
+package com.tencent.cos.xml.transfer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransferJournalTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", null);
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        TransferJournal journal = new TransferJournal(file);
+        journal.putValue("upload", "uploadId");
+        for(int i = 1; i <= 1000; i ++){
+            journal.addPart("upload", i, (i - 1) * 1024L, 1024, "\"etag" + i + "\"");
+        }
+        journal.putValue("download", "/sdcard/a");
+        journal.remove("download");
+        journal.sync();
+
+        TransferJournal reloaded = new TransferJournal(file);
+        assertEquals("uploadId", reloaded.getValue("upload"));
+        assertNull(reloaded.getValue("download"));
+        List<TransferJournal.Part> parts = reloaded.getParts("upload");
+        assertEquals(1000, parts.size());
+        assertEquals(500, parts.get(499).partNumber);
+        assertEquals(499 * 1024L, parts.get(499).offset);
+        assertEquals("\"etag500\"", parts.get(499).eTag);
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        TransferJournal journal = new TransferJournal(file);
+        journal.putValue("upload", "uploadId");
+        journal.addPart("upload", 1, 0, 1024, "\"etag\"");
+        journal.sync();
+        long length = file.length();
+
+        // 模拟写入过程中进程退出
+        FileOutputStream outputStream = new FileOutputStream(file, true);
+        outputStream.write(new byte[]{0, 0, 0, 40, 2, 0, 0});
+        outputStream.close();
+
+        TransferJournal reloaded = new TransferJournal(file);
+        assertEquals(length, file.length());
+        assertEquals(1, reloaded.getParts("upload").size());
+        reloaded.addPart("upload", 2, 1024, 1024, "\"etag\"");
+        reloaded.sync();
+        assertEquals(2, new TransferJournal(file).getParts("upload").size());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        TransferJournal journal = new TransferJournal(file);
+        for(int round = 0; round < 20; round ++){
+            journal.putValue("upload", "uploadId" + round);
+            for(int i = 1; i <= 500; i ++){
+                journal.addPart("upload", i, (i - 1) * 1024L, 1024, "\"etag" + round + "\"");
+            }
+            journal.sync();
+        }
+        // 每一轮都覆盖上一轮的记录，压缩后只保留最后一轮
+        assertTrue(file.length() < 256 * 1024);
+
+        TransferJournal reloaded = new TransferJournal(file);
+        assertEquals("uploadId19", reloaded.getValue("upload"));
+        List<TransferJournal.Part> parts = reloaded.getParts("upload");
+        assertEquals(500, parts.size());
+        assertEquals("\"etag19\"", parts.get(0).eTag);
+    }
+}
@@ -0,0 +1,251 @@
+package com.tencent.cos.xml.transfer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.tencent.cos.xml.CosXmlServiceConfig;
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.cos.xml.model.object.PutObjectResult;
+import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
+import com.tencent.qcloud.core.http.HttpTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 使用不发出网络请求的服务检查传输队列的恢复、顺序、并发数和失败重试
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransferQueueTest {
+
+    private File journalFile;
+    private List<File> srcFiles = new ArrayList<>();
+    private Context context;
+    private FakeService service;
+    private TransferManager transferManager;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = File.createTempFile("journal", null);
+        journalFile.delete();
+        for(int i = 0; i < 3; i ++){
+            File file = File.createTempFile("queue", null);
+            FileOutputStream outputStream = new FileOutputStream(file);
+            outputStream.write(new byte[1024]);
+            outputStream.close();
+            srcFiles.add(file);
+        }
+        context = InstrumentationRegistry.getContext();
+        service = new FakeService(context);
+        transferManager = new TransferManager(service, new TransferConfig.Builder().build());
+    }
+
+    @After
+    public void tearDown() {
+        journalFile.delete();
+        for(File file : srcFiles){
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRestoreAfterRestart() throws Exception {
+        TransferJournal journal = new TransferJournal(journalFile);
+        TransferQueue queue = new TransferQueue(context, transferManager, journal, 2);
+        long first = queue.enqueueUpload("bucket", "a", srcFiles.get(0).getPath());
+        long second = queue.enqueueUpload("bucket", "b", srcFiles.get(1).getPath());
+        queue.enqueueUpload("bucket", "c", srcFiles.get(2).getPath());
+        queue.cancel(second);
+        journal.sync();
+
+        // 模拟进程重启：从同一个文件重新加载
+        TransferQueue restored = new TransferQueue(context, transferManager, new TransferJournal(journalFile), 2);
+        assertEquals(0, restored.size());
+        restored.start();
+        assertEquals(2, restored.size());
+        service.awaitCalls(2);
+        assertEquals("a", service.cosPath(0));
+        assertEquals("c", service.cosPath(1));
+
+        service.reply(0, null);
+        waitUntilRemoved(restored, first);
+        // 新加入的任务排在恢复的任务之后，id 不与之前的重复
+        long fourth = restored.enqueueUpload("bucket", "d", srcFiles.get(0).getPath());
+        assertTrue(fourth > first);
+        service.awaitCalls(3);
+        assertEquals("d", service.cosPath(2));
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        TransferQueue queue = new TransferQueue(context, transferManager, new TransferJournal(journalFile), 2);
+        queue.start();
+        long first = queue.enqueueUpload("bucket", "a", srcFiles.get(0).getPath());
+        queue.enqueueUpload("bucket", "b", srcFiles.get(1).getPath());
+        queue.enqueueUpload("bucket", "c", srcFiles.get(2).getPath());
+
+        service.awaitCalls(2);
+        Thread.sleep(200);
+        assertEquals(2, service.calls.size());
+
+        service.reply(0, null);
+        waitUntilRemoved(queue, first);
+        service.awaitCalls(3);
+        assertEquals("c", service.cosPath(2));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testRetryAfterFailure() throws Exception {
+        TransferJournal journal = new TransferJournal(journalFile);
+        TransferQueue queue = new TransferQueue(context, transferManager, journal, 1);
+        queue.retryDelayMillis = 50;
+        queue.start();
+        long first = queue.enqueueUpload("bucket", "a", srcFiles.get(0).getPath());
+        long second = queue.enqueueUpload("bucket", "b", srcFiles.get(1).getPath());
+
+        // 网络不可用：保留在队列和记录中，稍后重试
+        service.awaitCalls(1);
+        service.reply(0, new CosXmlClientException("network is unreachable"));
+        service.awaitCalls(2);
+        assertTrue(queue.contains(first));
+        assertEquals(2, journal.getKeys(TransferQueue.KEY_PREFIX).size());
+        // 等待重试时第二个任务先执行
+        assertEquals("b", service.cosPath(1));
+
+        // 不可重试的服务端错误：从队列和记录中删除
+        CosXmlServiceException serviceException = new CosXmlServiceException("Forbidden");
+        serviceException.setStatusCode(403);
+        service.reply(1, serviceException);
+        waitUntilRemoved(queue, second);
+        service.awaitCalls(3);
+        assertEquals("a", service.cosPath(2));
+        service.reply(2, null);
+        waitUntilRemoved(queue, first);
+        assertEquals(0, journal.getKeys(TransferQueue.KEY_PREFIX).size());
+    }
+
+    @Test
+    public void testMaxFailures() throws Exception {
+        TransferJournal journal = new TransferJournal(journalFile);
+        TransferQueue queue = new TransferQueue(context, transferManager, journal, 1);
+        queue.retryDelayMillis = 1;
+        queue.start();
+        long id = queue.enqueueUpload("bucket", "a", srcFiles.get(0).getPath());
+
+        // 可重试的错误累计达到上限后从队列和记录中删除
+        for(int i = 0; i < TransferQueue.MAX_FAILURES; i ++){
+            service.awaitCalls(i + 1);
+            assertTrue(queue.contains(id));
+            service.reply(i, new CosXmlClientException("network is unreachable"));
+        }
+        waitUntilRemoved(queue, id);
+        assertEquals(TransferQueue.MAX_FAILURES, service.calls.size());
+        assertEquals(0, journal.getKeys(TransferQueue.KEY_PREFIX).size());
+    }
+
+    @Test
+    public void testRetryableErrors() {
+        CosXmlServiceException noSuchKey = new CosXmlServiceException("Not Found");
+        noSuchKey.setStatusCode(404);
+        noSuchKey.setErrorCode("NoSuchKey");
+        assertFalse(TransferQueue.isRetryable(noSuchKey, false));
+        assertFalse(TransferQueue.isRetryable(noSuchKey, true));
+
+        // 只有上传的 uploadId 失效时重试
+        CosXmlServiceException noSuchUpload = new CosXmlServiceException("Not Found");
+        noSuchUpload.setStatusCode(404);
+        noSuchUpload.setErrorCode("NoSuchUpload");
+        assertTrue(TransferQueue.isRetryable(noSuchUpload, true));
+        assertFalse(TransferQueue.isRetryable(noSuchUpload, false));
+
+        CosXmlServiceException slowDown = new CosXmlServiceException("Service Unavailable");
+        slowDown.setStatusCode(503);
+        assertTrue(TransferQueue.isRetryable(slowDown, false));
+    }
+
+    private static void waitUntilRemoved(TransferQueue queue, long id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (queue.contains(id) && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertFalse(queue.contains(id));
+    }
+
+    private static class Call {
+        PutObjectRequest request;
+        CosXmlResultListener listener;
+    }
+
+    /**
+     * 记录简单上传请求，由测试决定结果
+     */
+    private static class FakeService extends CosXmlSimpleService {
+
+        final List<Call> calls = new ArrayList<>();
+
+        FakeService(Context context) {
+            super(context, new CosXmlServiceConfig.Builder().setAppidAndRegion("1250000000", "ap-guangzhou").builder(),
+                    (QCloudCredentialProvider) null);
+        }
+
+        @Override
+        public void putObjectAsync(PutObjectRequest request, CosXmlResultListener listener) {
+            request.getTaskStateListener().onStateChanged(null, HttpTask.STATE_EXECUTING);
+            Call call = new Call();
+            call.request = request;
+            call.listener = listener;
+            synchronized (this){
+                calls.add(call);
+                notifyAll();
+            }
+        }
+
+        /**
+         * @param exception 为 null 时上传成功
+         */
+        void reply(int index, Exception exception) {
+            Call call;
+            synchronized (this){
+                call = calls.get(index);
+            }
+            if(exception == null){
+                call.listener.onSuccess(call.request, new PutObjectResult());
+            }else if(exception instanceof CosXmlClientException){
+                call.listener.onFail(call.request, (CosXmlClientException) exception, null);
+            }else {
+                call.listener.onFail(call.request, null, (CosXmlServiceException) exception);
+            }
+        }
+
+        synchronized String cosPath(int index) {
+            String path = calls.get(index).request.getPath(config);
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        synchronized void awaitCalls(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (calls.size() < count && System.currentTimeMillis() < deadline){
+                wait(100);
+            }
+            assertTrue(calls.size() >= count);
+        }
+    }
+}
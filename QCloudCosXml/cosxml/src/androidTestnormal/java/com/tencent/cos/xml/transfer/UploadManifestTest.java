@@ -0,0 +1,217 @@
+package com.tencent.cos.xml.transfer;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.tag.ListParts;
+import com.tencent.cos.xml.utils.DigestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UploadManifestTest {
+
+    private static final int SLICE_SIZE = 1024;
+    private static final int PART_COUNT = 8;
+
+    private File journalFile;
+    private File srcFile;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = File.createTempFile("journal", null);
+        journalFile.delete();
+        srcFile = File.createTempFile("upload", null);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(srcFile, "rw");
+        byte[] data = new byte[SLICE_SIZE * PART_COUNT];
+        for(int i = 0; i < data.length; i ++){
+            data[i] = (byte) i;
+        }
+        randomAccessFile.write(data);
+        randomAccessFile.close();
+    }
+
+    @After
+    public void tearDown() {
+        journalFile.delete();
+        srcFile.delete();
+    }
+
+    @Test
+    public void testRestoreUnchanged() {
+        UploadManifest manifest = newManifest(new TransferJournal(journalFile));
+        SlicePartTable slicePartTable = new SlicePartTable(srcFile.length(), SLICE_SIZE);
+        manifest.begin("uploadId");
+        for(int i = 1; i <= PART_COUNT / 2; i ++){
+            manifest.addUploadedPart(i, slicePartTable.getOffset(i), SLICE_SIZE, "\"etag" + i + "\"", null);
+        }
+        assertEquals("uploadId", manifest.getUploadId());
+        assertEquals(PART_COUNT / 2, manifest.restore("uploadId", slicePartTable, null).size());
+        // uploadId 不同时清单中的分片无效
+        assertEquals(0, manifest.restore("otherUploadId", slicePartTable, null).size());
+    }
+
+    @Test
+    public void testRestoreAfterEdit() throws IOException {
+        TransferJournal journal = new TransferJournal(journalFile);
+        UploadManifest manifest = newManifest(journal);
+        SlicePartTable slicePartTable = new SlicePartTable(srcFile.length(), SLICE_SIZE);
+        manifest.begin("uploadId");
+        List<ListParts.Part> serverParts = new ArrayList<>();
+        for(int i = 1; i <= PART_COUNT; i ++){
+            // ETag 不是 MD5 格式时使用上传时计算的 CRC64 作为校验值
+            manifest.addUploadedPart(i, slicePartTable.getOffset(i), SLICE_SIZE, "\"etag" + i + "\"",
+                    crc64(slicePartTable.getOffset(i)));
+            ListParts.Part part = new ListParts.Part();
+            part.partNumber = String.valueOf(i);
+            part.size = String.valueOf(SLICE_SIZE);
+            part.eTag = "\"etag" + i + "\"";
+            serverParts.add(part);
+        }
+
+        journal.sync();
+
+        // 修改第 3 个分片
+        RandomAccessFile randomAccessFile = new RandomAccessFile(srcFile, "rw");
+        randomAccessFile.seek(2 * SLICE_SIZE + 10);
+        randomAccessFile.write(0xff);
+        randomAccessFile.close();
+        srcFile.setLastModified(srcFile.lastModified() + 2000);
+
+        TransferJournal reloaded = new TransferJournal(journalFile);
+        List<TransferJournal.Part> restored = newManifest(reloaded).restore("uploadId", slicePartTable, serverParts);
+        reloaded.sync();
+        assertEquals(PART_COUNT - 1, restored.size());
+        for(TransferJournal.Part part : restored){
+            assertNotEquals(3, part.partNumber);
+        }
+        // 清单已经更新为修改后的文件，不再包含第 3 个分片
+        assertEquals(PART_COUNT - 1, newManifest(new TransferJournal(journalFile))
+                .restore("uploadId", slicePartTable, null).size());
+    }
+
+    @Test
+    public void testDeltaAfterComplete() throws IOException {
+        TransferJournal journal = new TransferJournal(journalFile);
+        UploadManifest manifest = newManifest(journal);
+        SlicePartTable slicePartTable = new SlicePartTable(srcFile.length(), SLICE_SIZE);
+        String objectKey = "object;appid;bucket;cosPath;" + SLICE_SIZE;
+        manifest.begin("uploadId");
+        for(int i = 1; i <= PART_COUNT; i ++){
+            manifest.addUploadedPart(i, slicePartTable.getOffset(i), SLICE_SIZE, "\"etag" + i + "\"",
+                    crc64(slicePartTable.getOffset(i)));
+        }
+        manifest.complete(objectKey, "\"object-etag\"");
+        assertNull(manifest.getUploadId());
+        assertEquals("\"object-etag\"", manifest.getObjectETag(objectKey));
+
+        // 修改第 5 个分片
+        RandomAccessFile randomAccessFile = new RandomAccessFile(srcFile, "rw");
+        randomAccessFile.seek(4 * SLICE_SIZE + 1);
+        randomAccessFile.write(0xff);
+        randomAccessFile.close();
+
+        slicePartTable = new SlicePartTable(srcFile.length(), SLICE_SIZE);
+        slicePartTable.markUploaded(1, "\"etag1\"");
+        Map<Integer, TransferJournal.Part> unchanged = newManifest(journal).findUnchangedParts(objectKey, slicePartTable);
+        // 已上传的第 1 个分片和修改过的第 5 个分片不复制
+        assertEquals(PART_COUNT - 2, unchanged.size());
+        assertFalse(unchanged.containsKey(1));
+        assertFalse(unchanged.containsKey(5));
+    }
+
+    @Test
+    public void testObjectManifestEviction() {
+        TransferJournal journal = new TransferJournal(journalFile);
+        // 最早完成的对象清单
+        String oldestKey = "object;appid;bucket;oldest;" + SLICE_SIZE;
+        journal.putValue(oldestKey, "\"oldest-etag\";1");
+        for(int i = 0; i < UploadManifest.MAX_OBJECT_MANIFESTS; i ++){
+            UploadManifest manifest = newManifest(journal);
+            manifest.begin("uploadId" + i);
+            manifest.addUploadedPart(1, 0, SLICE_SIZE, "\"etag\"", "crc64:1");
+            manifest.complete("object;appid;bucket;cosPath" + i + ";" + SLICE_SIZE, "\"object-etag" + i + "\"");
+        }
+        assertEquals(UploadManifest.MAX_OBJECT_MANIFESTS, journal.getKeys("object;").size());
+        assertNull(newManifest(journal).getObjectETag(oldestKey));
+        assertEquals("\"object-etag0\"", newManifest(journal)
+                .getObjectETag("object;appid;bucket;cosPath0;" + SLICE_SIZE));
+    }
+
+    @Test
+    public void testSourceChanged() {
+        TransferJournal journal = new TransferJournal(journalFile);
+        UploadManifest manifest = newManifest(journal);
+        String objectKey = "object;appid;bucket;cosPath;" + SLICE_SIZE;
+        manifest.begin("uploadId");
+        manifest.complete(objectKey, "\"object-etag\"");
+        assertEquals("\"object-etag\"", manifest.getObjectETag(objectKey));
+
+        CosXmlServiceException preconditionFailed = new CosXmlServiceException("Precondition Failed");
+        preconditionFailed.setStatusCode(412);
+        assertTrue(UploadManifest.isSourceChanged(preconditionFailed));
+        CosXmlServiceException slowDown = new CosXmlServiceException("Service Unavailable");
+        slowDown.setStatusCode(503);
+        assertFalse(UploadManifest.isSourceChanged(slowDown));
+        assertFalse(UploadManifest.isSourceChanged(null));
+
+        manifest.removeObject(objectKey);
+        assertNull(manifest.getObjectETag(objectKey));
+    }
+
+    @Test
+    public void testNoSuchUpload() {
+        CosXmlServiceException noSuchUpload = new CosXmlServiceException("Not Found");
+        noSuchUpload.setErrorCode("NoSuchUpload");
+        assertTrue(UploadManifest.isNoSuchUpload(noSuchUpload));
+        CosXmlServiceException forbidden = new CosXmlServiceException("Forbidden");
+        forbidden.setStatusCode(403);
+        assertFalse(UploadManifest.isNoSuchUpload(forbidden));
+        CosXmlServiceException noSuchBucket = new CosXmlServiceException("Not Found");
+        noSuchBucket.setStatusCode(404);
+        noSuchBucket.setErrorCode("NoSuchBucket");
+        assertFalse(UploadManifest.isNoSuchUpload(noSuchBucket));
+        // HEAD 请求的 404 没有错误码
+        CosXmlServiceException notFound = new CosXmlServiceException("Not Found");
+        notFound.setStatusCode(404);
+        assertFalse(UploadManifest.isNoSuchUpload(notFound));
+        assertFalse(UploadManifest.isNoSuchUpload(null));
+    }
+
+    @Test
+    public void testMd5FromETag() {
+        assertEquals("0123456789abcdef0123456789abcdef",
+                UploadManifest.md5FromETag("\"0123456789ABCDEF0123456789abcdef\""));
+        assertNull(UploadManifest.md5FromETag("\"0123456789abcdef0123456789abcdef-2\""));
+        assertNull(UploadManifest.md5FromETag(null));
+    }
+
+    private String crc64(long offset) throws IOException {
+        try {
+            return DigestUtils.getCRC64(srcFile.getPath(), offset, SLICE_SIZE);
+        } catch (CosXmlClientException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private UploadManifest newManifest(TransferJournal journal) {
+        return new UploadManifest(journal, "appid;bucket;cosPath;" + srcFile.getPath() + ";" + SLICE_SIZE,
+                srcFile.getPath());
+    }
+}
@@ -0,0 +1,161 @@
+package com.tencent.cos.xml.transfer;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.tencent.cos.xml.model.tag.ListBucket;
+import com.tencent.cos.xml.model.tag.ListMultipartUploads;
+import com.tencent.cos.xml.model.tag.ListParts;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 记录 1000 条记录的列表响应的解析耗时，并校验解析结果。测试只使用各解析方法的公开入口，
+ * 需要与之前的版本对比时，在之前的提交上运行同一个测试
+ */
+@RunWith(AndroidJUnit4.class)
+public class XmlParserBenchmarkTest {
+
+    private static final String TAG = "XmlParserBenchmark";
+
+    private static final int ENTRIES = 1000;
+    private static final int WARM_UP = 20;
+    private static final int ROUNDS = 50;
+
+    private interface Parse {
+        void parse(byte[] response) throws Exception;
+    }
+
+    @Test
+    public void listBucket() throws Exception {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' ?>\n<ListBucketResult>")
+                .append("<Name>examplebucket-1250000000</Name><Encoding-Type>url</Encoding-Type><Prefix>photos/</Prefix>")
+                .append("<Marker></Marker><MaxKeys>1000</MaxKeys><Delimiter>/</Delimiter><IsTruncated>true</IsTruncated>")
+                .append("<NextMarker>photos/").append(ENTRIES).append("</NextMarker>");
+        for(int i = 0; i < ENTRIES; i ++){
+            xml.append("<Contents><Key>photos/2018/").append(i).append(".jpg</Key>")
+                    .append("<LastModified>2018-07-10T08:00:00.000Z</LastModified>")
+                    .append("<ETag>&quot;d41d8cd98f00b204e9800998ecf8427e&quot;</ETag><Size>").append(i * 1024L)
+                    .append("</Size><Owner><ID>1250000000</ID></Owner><StorageClass>STANDARD</StorageClass></Contents>");
+        }
+        xml.append("<CommonPrefixes><Prefix>photos/2019/</Prefix></CommonPrefixes></ListBucketResult>");
+
+        byte[] response = xml.toString().getBytes("UTF-8");
+        ListBucket listBucket = new ListBucket();
+        XmlParser.parseListBucketResult(new ByteArrayInputStream(response), listBucket);
+        assertEquals("photos/" + ENTRIES, listBucket.nextMarker);
+        assertTrue(listBucket.isTruncated);
+        assertEquals(ENTRIES, listBucket.contentsList.size());
+        ListBucket.Contents last = listBucket.contentsList.get(ENTRIES - 1);
+        assertEquals("photos/2018/" + (ENTRIES - 1) + ".jpg", last.key);
+        assertEquals((ENTRIES - 1) * 1024L, last.size);
+        assertEquals("\"d41d8cd98f00b204e9800998ecf8427e\"", last.eTag);
+        assertEquals("STANDARD", last.storageClass);
+        assertEquals("photos/2019/", listBucket.commonPrefixesList.get(0).prefix);
+
+        measure("ListBucket", response, new Parse() {
+            @Override
+            public void parse(byte[] response) throws Exception {
+                XmlParser.parseListBucketResult(new ByteArrayInputStream(response), new ListBucket());
+            }
+        });
+    }
+
+    @Test
+    public void listParts() throws Exception {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' ?>\n<ListPartsResult>")
+                .append("<Bucket>examplebucket-1250000000</Bucket><Encoding-Type>url</Encoding-Type><Key>video.mp4</Key>")
+                .append("<UploadId>1585130821cbb7df1d11846c073ad648e8f33b087cec2381df437acdc833cf654b9ecc6361</UploadId>")
+                .append("<Initiator><ID>qcs::cam::uin/100000000001:uin/100000000001</ID><DisplayName>100000000001</DisplayName></Initiator>")
+                .append("<Owner><ID>qcs::cam::uin/100000000001:uin/100000000001</ID><DisplayName>100000000001</DisplayName></Owner>")
+                .append("<PartNumberMarker>0</PartNumberMarker><StorageClass>STANDARD</StorageClass>")
+                .append("<NextPartNumberMarker>").append(ENTRIES).append("</NextPartNumberMarker><MaxParts>1000</MaxParts>")
+                .append("<IsTruncated>false</IsTruncated>");
+        for(int i = 1; i <= ENTRIES; i ++){
+            xml.append("<Part><PartNumber>").append(i).append("</PartNumber>")
+                    .append("<LastModified>2018-07-10T08:00:00.000Z</LastModified>")
+                    .append("<ETag>&quot;").append(String.format(Locale.ENGLISH, "%032x", i)).append("&quot;</ETag>")
+                    .append("<Size>1048576</Size></Part>");
+        }
+        xml.append("</ListPartsResult>");
+
+        byte[] response = xml.toString().getBytes("UTF-8");
+        ListParts listParts = new ListParts();
+        XmlSlimParser.parseListPartsResult(new ByteArrayInputStream(response), listParts);
+        assertEquals("video.mp4", listParts.key);
+        assertEquals(String.valueOf(ENTRIES), listParts.nextPartNumberMarker);
+        assertEquals("100000000001", listParts.owner.disPlayName);
+        assertEquals(ENTRIES, listParts.parts.size());
+        ListParts.Part last = listParts.parts.get(ENTRIES - 1);
+        assertEquals(String.valueOf(ENTRIES), last.partNumber);
+        assertEquals("\"" + String.format(Locale.ENGLISH, "%032x", ENTRIES) + "\"", last.eTag);
+        assertEquals("1048576", last.size);
+
+        measure("ListParts", response, new Parse() {
+            @Override
+            public void parse(byte[] response) throws Exception {
+                XmlSlimParser.parseListPartsResult(new ByteArrayInputStream(response), new ListParts());
+            }
+        });
+    }
+
+    @Test
+    public void listMultipartUploads() throws Exception {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' ?>\n<ListMultipartUploadsResult>")
+                .append("<Bucket>examplebucket-1250000000</Bucket><Encoding-Type>url</Encoding-Type>")
+                .append("<KeyMarker></KeyMarker><UploadIdMarker></UploadIdMarker><NextKeyMarker>video/")
+                .append(ENTRIES).append(".mp4</NextKeyMarker><NextUploadIdMarker>1585130821</NextUploadIdMarker>")
+                .append("<MaxUploads>1000</MaxUploads><IsTruncated>true</IsTruncated><Prefix>video/</Prefix>")
+                .append("<Delimiter>/</Delimiter>");
+        for(int i = 0; i < ENTRIES; i ++){
+            xml.append("<Upload><Key>video/").append(i).append(".mp4</Key>")
+                    .append("<UploadId>1585130821cbb7df1d11846c073ad648e8f33b087cec2381df437acdc833cf").append(i).append("</UploadId>")
+                    .append("<StorageClass>STANDARD</StorageClass>")
+                    .append("<Initiator><UIN>100000000001</UIN><ID>qcs::cam::uin/100000000001:uin/100000000001</ID>")
+                    .append("<DisplayName>100000000001</DisplayName></Initiator>")
+                    .append("<Owner><UID>1250000000</UID><ID>qcs::cam::uin/100000000001:uin/100000000001</ID>")
+                    .append("<DisplayName>100000000001</DisplayName></Owner>")
+                    .append("<Initiated>2018-07-10T08:00:00.000Z</Initiated></Upload>");
+        }
+        xml.append("</ListMultipartUploadsResult>");
+
+        byte[] response = xml.toString().getBytes("UTF-8");
+        ListMultipartUploads listMultipartUploads = new ListMultipartUploads();
+        XmlParser.parseListMultipartUploadsResult(new ByteArrayInputStream(response), listMultipartUploads);
+        assertEquals("video/" + ENTRIES + ".mp4", listMultipartUploads.nextKeyMarker);
+        assertTrue(listMultipartUploads.isTruncated);
+        assertEquals(ENTRIES, listMultipartUploads.uploads.size());
+        ListMultipartUploads.Upload last = listMultipartUploads.uploads.get(ENTRIES - 1);
+        assertEquals("video/" + (ENTRIES - 1) + ".mp4", last.key);
+        assertEquals("100000000001", last.initiator.uin);
+        assertEquals("1250000000", last.owner.uid);
+        assertEquals("2018-07-10T08:00:00.000Z", last.initiated);
+
+        measure("ListMultipartUploads", response, new Parse() {
+            @Override
+            public void parse(byte[] response) throws Exception {
+                XmlParser.parseListMultipartUploadsResult(new ByteArrayInputStream(response), new ListMultipartUploads());
+            }
+        });
+    }
+
+    private void measure(String name, byte[] response, Parse parse) throws Exception {
+        for(int i = 0; i < WARM_UP; i ++){
+            parse.parse(response);
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < ROUNDS; i ++){
+            parse.parse(response);
+        }
+        long nanos = System.nanoTime() - start;
+        Log.d(TAG, String.format(Locale.ENGLISH, "%s (%d entries, %d bytes): %.3f ms",
+                name, ENTRIES, response.length, nanos / 1e6 / ROUNDS));
+    }
+}
@@ -0,0 +1,73 @@
+package com.tencent.cos.xml.utils;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Created by bradyxiao on 2018/7/10.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PresignedUrlGeneratorTest {
+
+    private GenerateGetObjectURLUtils.QCloudAPI qCloudAPI = new GenerateGetObjectURLUtils.QCloudAPI() {
+        @Override
+        public String getSecretKey() {
+            return "secretKey";
+        }
+
+        @Override
+        public String getSecretId() {
+            return "secretId";
+        }
+
+        @Override
+        public long getKeyDuration() {
+            return 3600;
+        }
+
+        @Override
+        public String getSessionToken() {
+            return null;
+        }
+    };
+
+    @Test
+    public void getObjectUrlsWithSign() throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Host", "bucket-appid.cos.region.myqcloud.com");
+        PresignedUrlGenerator generator = new PresignedUrlGenerator(true, "appid", "region", 600,
+                headers, null, qCloudAPI);
+
+        List<String> cosPaths = new ArrayList<>();
+        for(int i = 0; i < 100; i ++){
+            cosPaths.add("image/" + i + ".jpg");
+        }
+        List<String> urls = generator.getObjectUrlsWithSign("bucket", cosPaths);
+
+        // 与 GenerateGetObjectURLUtils 使用相同的 signTime 和 keyTime 计算的结果一致
+        for(int i = 0; i < cosPaths.size(); i ++){
+            String url = urls.get(i);
+            String sign = URLDecoder.decode(url.substring(url.indexOf("?sign=") + 6), "utf-8");
+            String signTime = sign.replaceAll(".*q-sign-time=([^&]*)&.*", "$1");
+            String keyTime = sign.replaceAll(".*q-key-time=([^&]*)&.*", "$1");
+            String expected = GenerateGetObjectURLUtils.getSign("get", cosPaths.get(i), headers, null,
+                    signTime, keyTime, "secretId", DigestUtils.getHmacSha1(keyTime, "secretKey"));
+            assertEquals(GenerateGetObjectURLUtils.getObjectUrl(true, "appid", "bucket", "region", cosPaths.get(i))
+                    + "?sign=" + URLEncodeUtils.cosPathEncode(expected), url);
+        }
+
+        // 未过期时使用缓存
+        assertSame(urls.get(0), generator.getObjectUrlWithSign("bucket", cosPaths.get(0)));
+    }
+}
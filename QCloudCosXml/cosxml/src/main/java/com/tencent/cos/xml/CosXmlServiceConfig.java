@@ -2,6 +2,7 @@ package com.tencent.cos.xml;
 
 
 import com.tencent.cos.xml.common.VersionInfo;
+import com.tencent.qcloud.core.http.ConcurrencyLimit;
 import com.tencent.qcloud.core.task.RetryStrategy;
 
 /**
@@ -33,6 +34,9 @@ public class CosXmlServiceConfig {
 
     private RetryStrategy retryStrategy;
 
+    private ConcurrencyLimit uploadConcurrencyLimit;
+    private ConcurrencyLimit downloadConcurrencyLimit;
+
     public CosXmlServiceConfig(Builder builder){
         protocol = builder.protocol;
         userAgent = builder.userAgent;
@@ -43,6 +47,8 @@ public class CosXmlServiceConfig {
         this.domainSuffix = builder.domainSuffix;
         this.retryStrategy = builder.retryStrategy;
         this.bucketInPath = builder.bucketInPath;
+        this.uploadConcurrencyLimit = builder.uploadConcurrencyLimit;
+        this.downloadConcurrencyLimit = builder.downloadConcurrencyLimit;
     }
 
     public String getProtocol() {
@@ -82,6 +88,14 @@ public class CosXmlServiceConfig {
         return bucketInPath;
     }
 
+    public ConcurrencyLimit getUploadConcurrencyLimit() {
+        return uploadConcurrencyLimit;
+    }
+
+    public ConcurrencyLimit getDownloadConcurrencyLimit() {
+        return downloadConcurrencyLimit;
+    }
+
     public final static class Builder{
 
         private String protocol;
@@ -97,6 +111,9 @@ public class CosXmlServiceConfig {
 
         private RetryStrategy retryStrategy;
 
+        private ConcurrencyLimit uploadConcurrencyLimit;
+        private ConcurrencyLimit downloadConcurrencyLimit;
+
         public Builder(){
             protocol = DEFAULT_PROTOCOL;
             userAgent =DEFAULT_USER_AGENT;
@@ -142,6 +159,22 @@ public class CosXmlServiceConfig {
             return this;
         }
 
+        /**
+         * 设置上传的并发控制算法，默认为 {@link ConcurrencyLimit#aimd(int, int)}
+         */
+        public Builder setUploadConcurrencyLimit(ConcurrencyLimit uploadConcurrencyLimit) {
+            this.uploadConcurrencyLimit = uploadConcurrencyLimit;
+            return this;
+        }
+
+        /**
+         * 设置下载的并发控制算法，默认为 {@link ConcurrencyLimit#gradient(int, int)}
+         */
+        public Builder setDownloadConcurrencyLimit(ConcurrencyLimit downloadConcurrencyLimit) {
+            this.downloadConcurrencyLimit = downloadConcurrencyLimit;
+            return this;
+        }
+
         public Builder setBucketInPath(boolean bucketInPath) {
             this.bucketInPath = bucketInPath;
             return this;
@@ -3,6 +3,7 @@ package com.tencent.cos.xml;
 import android.content.Context;
 import android.text.TextUtils;
 
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
 import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.cos.xml.exception.CosXmlServiceException;
 import com.tencent.cos.xml.listener.CosXmlResultListener;
@@ -90,9 +91,12 @@ public class CosXmlSimpleService implements SimpleCosXml {
 //        appCachePath = context.getApplicationContext().getExternalCacheDir().getPath();
         appCachePath = context.getApplicationContext().getFilesDir().getPath();
         RetryStrategy retryStrategy = configuration.getRetryStrategy();
-        if(retryStrategy != null){
+        if(retryStrategy != null || configuration.getUploadConcurrencyLimit() != null
+                || configuration.getDownloadConcurrencyLimit() != null){
             client = new QCloudHttpClient.Builder()
                     .setRetryStrategy(retryStrategy)
+                    .setUploadConcurrencyLimit(configuration.getUploadConcurrencyLimit())
+                    .setDownloadConcurrencyLimit(configuration.getDownloadConcurrencyLimit())
                     .build();
         }else {
             client = QCloudHttpClient.getDefault();
@@ -114,9 +118,12 @@ public class CosXmlSimpleService implements SimpleCosXml {
         //appCachePath = context.getApplicationContext().getExternalCacheDir().getPath();
         appCachePath = context.getApplicationContext().getFilesDir().getPath();
         RetryStrategy retryStrategy = configuration.getRetryStrategy();
-        if(retryStrategy != null){
+        if(retryStrategy != null || configuration.getUploadConcurrencyLimit() != null
+                || configuration.getDownloadConcurrencyLimit() != null){
             client = new QCloudHttpClient.Builder()
                     .setRetryStrategy(retryStrategy)
+                    .setUploadConcurrencyLimit(configuration.getUploadConcurrencyLimit())
+                    .setDownloadConcurrencyLimit(configuration.getDownloadConcurrencyLimit())
                     .build();
         }else {
             client = QCloudHttpClient.getDefault();
@@ -147,6 +154,45 @@ public class CosXmlSimpleService implements SimpleCosXml {
         client.addVerifiedHost(hostName);
     }
 
+    /**
+     * 获取请求所在 host 的上传流量控制当前允许的并发数，分片上传据此决定同时发出的分片个数
+     */
+    public int getUploadConcurrent(CosXmlRequest cosXmlRequest) {
+        return client.getUploadConcurrent(getTrafficHost(cosXmlRequest));
+    }
+
+    /**
+     * 获取请求所在 host 的下载流量控制当前允许的并发数，分块下载据此决定同时发出的分块个数
+     */
+    public int getDownloadConcurrent(CosXmlRequest cosXmlRequest) {
+        return client.getDownloadConcurrent(getTrafficHost(cosXmlRequest));
+    }
+
+    /**
+     * 在后台预先建立到存储桶的连接，建议在应用启动后、首次上传或下载前调用
+     * @param buckets 存储桶名称
+     */
+    public void warmUp(String... buckets){
+        if(buckets == null) return;
+        String[] hosts = new String[buckets.length];
+        for(int i = 0; i < buckets.length; i ++){
+            hosts[i] = getTrafficHost(new HeadObjectRequest(buckets[i], "/"));
+        }
+        client.warmUp(scheme, hosts);
+    }
+
+    /** 与 buildHttpRequest 中请求实际使用的 host 保持一致 */
+    private String getTrafficHost(CosXmlRequest cosXmlRequest) {
+        if(ip != null){
+            return ip;
+        }
+        try {
+            return cosXmlRequest.getHost(config, cosXmlRequest.isSupportAccelerate());
+        } catch (CosXmlClientException e) {
+            return null;
+        }
+    }
+
     /** 构建请求 */
     protected <T1 extends CosXmlRequest, T2 extends CosXmlResult> QCloudHttpRequest buildHttpRequest
     (T1 cosXmlRequest, T2 cosXmlResult) throws CosXmlClientException {
@@ -192,14 +238,23 @@ public class CosXmlSimpleService implements SimpleCosXml {
         if(cosXmlRequest.isNeedMD5()){
             httpRequestBuilder.contentMD5();
         }
+        // 追加上传返回的是整个对象的 CRC64，只校验简单上传、分片上传和下载
+        if(cosXmlRequest instanceof PutObjectRequest || cosXmlRequest instanceof UploadPartRequest
+                || cosXmlRequest instanceof GetObjectRequest){
+            httpRequestBuilder.verifyCrc64(COSRequestHeaderKey.X_COS_HASH_CRC64ECMA);
+        }
 
         if(cosXmlRequest.getRequestBody() != null){
               httpRequestBuilder.body(cosXmlRequest.getRequestBody());
         }
 
         if(cosXmlRequest instanceof GetObjectRequest){
-            String absolutePath = ((GetObjectRequest) cosXmlRequest).getDownloadPath();
-            httpRequestBuilder.converter(new ResponseFileBodySerializer<T2>((GetObjectResult) cosXmlResult, absolutePath, ((GetObjectRequest) cosXmlRequest).getFileOffset()));
+            GetObjectRequest getObjectRequest = (GetObjectRequest) cosXmlRequest;
+            String absolutePath = getObjectRequest.getDownloadPath();
+            ResponseFileBodySerializer<T2> responseFileBodySerializer = new ResponseFileBodySerializer<T2>((GetObjectResult) cosXmlResult,
+                    absolutePath, getObjectRequest.getFileOffset(), getObjectRequest.isRandomAccess());
+            responseFileBodySerializer.setSyncPolicy(getObjectRequest.getSyncPolicy());
+            httpRequestBuilder.converter(responseFileBodySerializer);
         }else if (cosXmlRequest instanceof GetObjectBytesRequest) {
 
             httpRequestBuilder.converter(new ResponseBytesConverter<T2>((GetObjectBytesResult) cosXmlResult));
@@ -226,6 +281,7 @@ public class CosXmlSimpleService implements SimpleCosXml {
 
             cosXmlRequest.setTask(httpTask);
             httpTask.addStateListener(cosXmlRequest.getTaskStateListener());
+            httpTask.setBandwidthLimiter(cosXmlRequest.getBandwidthLimiter());
 
             if(cosXmlRequest instanceof AppendObjectRequest){
                 httpTask.addProgressListener(((AppendObjectRequest) cosXmlRequest).getProgressListener());
@@ -281,6 +337,7 @@ public class CosXmlSimpleService implements SimpleCosXml {
 
             cosXmlRequest.setTask(httpTask);
             httpTask.addStateListener(cosXmlRequest.getTaskStateListener());
+            httpTask.setBandwidthLimiter(cosXmlRequest.getBandwidthLimiter());
 
             if(cosXmlRequest instanceof AppendObjectRequest){
                 httpTask.addProgressListener(((AppendObjectRequest) cosXmlRequest).getProgressListener());
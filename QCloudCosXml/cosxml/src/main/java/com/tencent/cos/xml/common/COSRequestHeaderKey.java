@@ -32,4 +32,5 @@ final public class COSRequestHeaderKey {
     public final static String TEXT_PLAIN = "text/plain";
     public final static String APPLICATION_OCTET_STREAM = "application/octet-stream";
     public final static String RANGE = "Range";
+    public final static String X_COS_HASH_CRC64ECMA = "x-cos-hash-crc64ecma";
 }
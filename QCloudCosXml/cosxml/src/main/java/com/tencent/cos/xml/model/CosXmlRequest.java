@@ -9,6 +9,7 @@ import com.tencent.qcloud.core.auth.COSXmlSignSourceProvider;
 import com.tencent.qcloud.core.auth.QCloudSignSourceProvider;
 import com.tencent.qcloud.core.common.QCloudTaskStateListener;
 import com.tencent.qcloud.core.http.HttpConstants;
+import com.tencent.qcloud.core.http.BandwidthLimiter;
 import com.tencent.qcloud.core.http.HttpTask;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
 
@@ -41,6 +42,7 @@ public abstract class CosXmlRequest{
     private boolean isNeedMD5 = false;
     private boolean isSupportAccelerate = false;
     private String region;
+    private BandwidthLimiter bandwidthLimiter;
 
     protected String domainSuffix;
 
@@ -247,6 +249,18 @@ public abstract class CosXmlRequest{
         return region;
     }
 
+    /**
+     * 设置上传或下载数据时使用的限速器，未设置时只受全局限速 {@link BandwidthLimiter#GLOBAL} 的限制
+     * @param bandwidthLimiter 限速器
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter){
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    public BandwidthLimiter getBandwidthLimiter(){
+        return bandwidthLimiter;
+    }
+
     public void setTask(HttpTask httpTask){
         this.httpTask = httpTask;
     }
@@ -8,6 +8,7 @@ import com.tencent.cos.xml.model.CosXmlRequest;
 import com.tencent.cos.xml.model.tag.CompleteMultipartUpload;
 import com.tencent.cos.xml.transfer.XmlSlimBuilder;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
+import com.tencent.qcloud.core.http.WriterRequestBody;
 
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -15,6 +16,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
 
+import okio.BufferedSink;
+
 /**
  * 完成整个分块上传构造类.该类为{@link com.tencent.cos.xml.SimpleCosXml#completeMultiUpload(CompleteMultiUploadRequest)}
  * 或者 {@link com.tencent.cos.xml.SimpleCosXml#completeMultiUploadAsync(CompleteMultiUploadRequest, CosXmlResultListener)}
@@ -119,14 +122,17 @@ final public class CompleteMultiUploadRequest extends ObjectRequest{
      */
     @Override
     public RequestBodySerializer getRequestBody() throws CosXmlClientException {
-        try {
-            return RequestBodySerializer.string(COSRequestHeaderKey.APPLICATION_XML,
-                    XmlSlimBuilder.buildCompleteMultipartUpload(completeMultipartUpload));
-        } catch (IOException e) {
-            throw new CosXmlClientException(e);
-        } catch (XmlPullParserException e) {
-            throw new CosXmlClientException(e);
-        }
+        // 分块很多时直接写入网络，避免拼出完整的 XML 字符串
+        return RequestBodySerializer.writer(COSRequestHeaderKey.APPLICATION_XML, new WriterRequestBody.Writer() {
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                try {
+                    XmlSlimBuilder.buildCompleteMultipartUpload(completeMultipartUpload, sink.outputStream());
+                } catch (XmlPullParserException e) {
+                    throw new IOException(e);
+                }
+            }
+        });
     }
 
     /**
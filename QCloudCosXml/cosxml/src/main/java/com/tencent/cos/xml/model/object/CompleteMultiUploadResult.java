@@ -1,6 +1,7 @@
 package com.tencent.cos.xml.model.object;
 
 import com.tencent.cos.xml.MTAProxy;
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
 import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.cos.xml.exception.CosXmlServiceException;
 import com.tencent.cos.xml.model.CosXmlResult;
@@ -27,12 +28,18 @@ final public class CompleteMultiUploadResult extends CosXmlResult {
      */
     public CompleteMultipartUploadResult completeMultipartUpload;
 
+    /**
+     * 整个对象的 CRC64（无符号十进制），服务端没有返回时为 null
+     */
+    public String crc64;
+
     /**
      *  @see CosXmlResult#parseResponseBody(HttpResponse)
      */
     @Override
     public void parseResponseBody(HttpResponse response) throws CosXmlServiceException, CosXmlClientException {
         super.parseResponseBody(response);
+        crc64 = response.header(COSRequestHeaderKey.X_COS_HASH_CRC64ECMA);
         try {
             completeMultipartUpload = new CompleteMultipartUploadResult();
             byte[] contents = response.bytes();
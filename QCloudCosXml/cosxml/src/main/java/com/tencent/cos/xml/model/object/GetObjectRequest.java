@@ -5,6 +5,7 @@ import com.tencent.cos.xml.common.Range;
 import com.tencent.cos.xml.common.RequestMethod;
 import com.tencent.cos.xml.listener.CosXmlProgressListener;
 import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.qcloud.core.http.FileSyncPolicy;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
 
 import java.io.File;
@@ -27,6 +28,8 @@ public class GetObjectRequest extends ObjectRequest {
     private String versionId;
     private Range range;
     private long fileOffset = 0L;
+    private boolean randomAccess = false;
+    private FileSyncPolicy syncPolicy;
 
     private CosXmlProgressListener progressListener;
     private String savePath;
@@ -66,6 +69,31 @@ public class GetObjectRequest extends ObjectRequest {
         }
     }
 
+    /**
+     * 设置是否以随机写的方式将数据写入本地文件的 fileOffset 处，
+     * 为 true 时不会截断本地文件已有的内容，用于多个分块并发写入同一个文件
+     * @param randomAccess
+     */
+    public void setRandomAccess(boolean randomAccess) {
+        this.randomAccess = randomAccess;
+    }
+
+    public boolean isRandomAccess() {
+        return randomAccess;
+    }
+
+    /**
+     * 设置下载数据写入本地文件时的落盘策略，默认为 {@link FileSyncPolicy#ON_COMPLETE}
+     * @param syncPolicy 落盘策略 {@link FileSyncPolicy}
+     */
+    public void setSyncPolicy(FileSyncPolicy syncPolicy) {
+        this.syncPolicy = syncPolicy;
+    }
+
+    public FileSyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
 
 
     public void setVersionId(String versionId) {
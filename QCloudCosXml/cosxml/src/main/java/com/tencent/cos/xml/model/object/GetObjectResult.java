@@ -11,6 +11,11 @@ import com.tencent.qcloud.core.http.HttpResponse;
  */
 final public class GetObjectResult extends CosXmlResult {
 
+    /**
+     * 本次写入本地文件的数据的 CRC64（无符号十进制），下载部分内容时可以用于合并校验
+     */
+    public String localCrc64;
+
     /**
      *  @see CosXmlResult#parseResponseBody(HttpResponse)
      */
@@ -126,7 +126,11 @@ final public class UploadPartRequest extends ObjectRequest {
                return RequestBodySerializer.file(null, new File(srcPath));
             }
         }else if(data != null){
-            return RequestBodySerializer.bytes(null, data);
+            if(fileOffset != -1){
+                return RequestBodySerializer.bytes(null, data, fileOffset, fileContentLength);
+            }else {
+                return RequestBodySerializer.bytes(null, data);
+            }
         }else if(inputStream != null){
             return RequestBodySerializer.stream(null, new File(CosXmlSimpleService.appCachePath),
                     inputStream);
@@ -196,6 +200,16 @@ final public class UploadPartRequest extends ObjectRequest {
         this.data = data;
     }
 
+    /**
+     * 设置上传的字节数组和上传范围，可用于复用同一个缓冲区上传不同的分块
+     * @see UploadPartRequest#setData(byte[])
+     */
+    public void setData(byte[] data, int offset, int length) {
+        this.data = data;
+        this.fileOffset = offset;
+        this.fileContentLength = length;
+    }
+
     /**
      * 获取用户设置的字节数组
      * @return byte[]
@@ -209,7 +223,7 @@ final public class UploadPartRequest extends ObjectRequest {
      * @return long
      */
     public long getFileLength() {
-        if(data != null){
+        if(data != null && fileOffset == -1L){
             fileContentLength =  data.length;
         }else if(srcPath != null && fileContentLength == -1L){
             fileContentLength = new File(srcPath).length();
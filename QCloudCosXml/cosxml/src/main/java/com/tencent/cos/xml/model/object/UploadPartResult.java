@@ -1,5 +1,6 @@
 package com.tencent.cos.xml.model.object;
 
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
 import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.cos.xml.exception.CosXmlServiceException;
 import com.tencent.cos.xml.model.CosXmlResult;
@@ -16,6 +17,11 @@ final public class UploadPartResult extends CosXmlResult {
      */
     public String eTag;
 
+    /**
+     * 分片数据的 CRC64（无符号十进制），服务端没有返回时为 null
+     */
+    public String crc64;
+
     /**
      *  @see CosXmlResult#parseResponseBody(HttpResponse)
      */
@@ -23,6 +29,7 @@ final public class UploadPartResult extends CosXmlResult {
     public void parseResponseBody(HttpResponse response) throws CosXmlServiceException, CosXmlClientException {
         super.parseResponseBody(response);
         eTag = response.header("ETag");
+        crc64 = response.header(COSRequestHeaderKey.X_COS_HASH_CRC64ECMA);
     }
 
     /**
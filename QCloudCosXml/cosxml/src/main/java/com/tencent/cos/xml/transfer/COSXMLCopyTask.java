@@ -83,8 +83,7 @@ public final class COSXMLCopyTask extends COSXMLTask {
         @Override
         public void onFailed(CosXmlRequest cosXmlRequest, CosXmlClientException exception, CosXmlServiceException serviceException) {
             IS_EXIT.set(true);
-            if(updateState(TransferState.FAILED)){
-                mException = exception == null ? serviceException : exception;
+            if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onFail(buildCOSXMLTaskRequest(cosXmlRequest), exception, serviceException);
                 }
@@ -145,9 +144,8 @@ public final class COSXMLCopyTask extends COSXMLTask {
 
             @Override
             public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                if(updateState(TransferState.FAILED)){
+                if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
                     // failed -> error
-                    mException = exception == null ? serviceException : exception;
                     if(cosXmlResultListener != null){
                         cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), exception, serviceException);
                     }
@@ -178,9 +176,8 @@ public final class COSXMLCopyTask extends COSXMLTask {
 
             @Override
             public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                if(updateState(TransferState.FAILED)){
+                if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
                     // failed -> error
-                    mException = exception == null ? serviceException : exception;
                     if(cosXmlResultListener != null){
                         cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
                     }
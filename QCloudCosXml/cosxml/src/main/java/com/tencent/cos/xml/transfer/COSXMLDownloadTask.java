@@ -2,7 +2,6 @@ package com.tencent.cos.xml.transfer;
 
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.text.TextUtils;
 
 import com.tencent.cos.xml.CosXmlSimpleService;
@@ -14,14 +13,25 @@ import com.tencent.cos.xml.listener.CosXmlResultListener;
 import com.tencent.cos.xml.model.CosXmlRequest;
 import com.tencent.cos.xml.model.CosXmlResult;
 import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.object.GetObjectResult;
 import com.tencent.cos.xml.model.object.HeadObjectRequest;
 import com.tencent.cos.xml.utils.DigestUtils;
 import com.tencent.qcloud.core.common.QCloudTaskStateListener;
+import com.tencent.qcloud.core.http.FileSyncPolicy;
 import com.tencent.qcloud.core.http.HttpTask;
+import com.tencent.qcloud.core.util.CRC64;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by bradyxiao on 2018/8/23.
@@ -41,7 +51,29 @@ public final class COSXMLDownloadTask extends COSXMLTask {
     private long hasWriteDataLen = 0L;
     private HeadObjectRequest headObjectRequest;
     private GetObjectRequest getObjectRequest;
-    private SharedPreferences sharedPreferences;
+    private TransferJournal transferJournal;
+    /** 写入本地文件的落盘策略 */
+    private FileSyncPolicy syncPolicy;
+
+    /** 满足分块并发下载的最小长度 */
+    protected long multiDownloadSizeDivision = Long.MAX_VALUE;
+    /** 分块大小 */
+    protected long sliceSize;
+    /** 分块并发下载 */
+    private boolean isSliceDownload = false;
+    /** 需要下载的总长度 */
+    private long downloadLength;
+    /** head 请求的结果，作为分块并发下载的最终结果 */
+    private CosXmlResult headObjectResult;
+    private List<SlicePartStruct> slicePartStructList; //必须有序
+    private Map<GetObjectRequest, Long> getObjectRequestLongMap;
+    private int nextSliceIndex;
+    /** 分块并发下载记录的前缀，文件已按总长度预分配，文件长度不代表已下载的数据 */
+    private static final String SLICE_CHECKPOINT = "slice:";
+    private AtomicInteger DOWNLOAD_PART_COUNT;
+    private AtomicLong ALREADY_RECEIVE_DATA_LEN;
+    private AtomicBoolean IS_EXIT;
+    private Object SYNC_DOWNLOAD_PART = new Object();
 
     COSXMLDownloadTask(Context context, CosXmlSimpleService cosXmlService, String region, String bucket, String cosPath, String localSaveDirPath, String localSaveFileName){
         this.region = region;
@@ -51,7 +83,7 @@ public final class COSXMLDownloadTask extends COSXMLTask {
         this.localSaveFileName = localSaveFileName;
         this.cosXmlService = cosXmlService;
         if(context != null){
-            sharedPreferences = context.getSharedPreferences("COSXMLDOWNLOADTASK", 0);
+            transferJournal = TransferJournal.instance(context);
         }
     }
 
@@ -76,6 +108,7 @@ public final class COSXMLDownloadTask extends COSXMLTask {
             }
         }
         this.fileOffset = getObjectRequest.getFileOffset();
+        this.syncPolicy = getObjectRequest.getSyncPolicy();
     }
 
     protected void download(){
@@ -94,33 +127,52 @@ public final class COSXMLDownloadTask extends COSXMLTask {
         cosXmlService.headObjectAsync(headObjectRequest, new CosXmlResultListener() {
             @Override
             public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                List<String> eTags = result.headers.get("ETag");
-                if(eTags != null && eTags.size() > 0){
-                    eTag = eTags.get(0);
+                eTag = firstHeader(result.headers, "ETag");
+                long objectLength = -1L;
+                String objectLengthValue = firstHeader(result.headers, "Content-Length");
+                if(objectLengthValue != null){
+                    objectLength = Long.parseLong(objectLengthValue);
+                }
+                if(objectLength > 0){
+                    long rangeLast = rangeEnd >= 0 ? Math.min(rangeEnd, objectLength - 1) : objectLength - 1;
+                    long length = rangeLast - rangeStart + 1;
+                    if(length >= multiDownloadSizeDivision && sliceSize > 0){
+                        multiDownload(result, length);
+                        return;
+                    }
                 }
-                String absolutePath = hasExisted();
-                if(absolutePath != null){
-                    File file = new File(absolutePath);
-                    if(file.exists()){
-                        long fileLength = file.length();
-                        List<String> contentLengths = result.headers.get("Content-Length");
-                        if(contentLengths != null && contentLengths.size() > 0 && Long.valueOf(contentLengths.get(0)) == fileLength){
-                            if(updateState(TransferState.COMPLETED)){
-                                if(cosXmlProgressListener != null){
-                                    cosXmlProgressListener.onProgress(fileLength, fileLength);
-                                }
-                                if(cosXmlResultListener != null){
-                                    cosXmlResultListener.onSuccess(request, result);
-                                }
+                String checkpoint = hasExisted();
+                if(isSliceCheckpoint(checkpoint)){
+                    // 分块并发下载预分配了整个文件，文件中间可能还有未下载的空洞，不能按长度续传，从头重新下载
+                    clear();
+                    checkpoint = null;
+                    try {
+                        preallocate(getDownloadPath(), Math.max(fileOffset, 0), true);
+                    } catch (IOException e) {
+                        onFail(request, new CosXmlClientException(e), null);
+                        return;
+                    }
+                }
+                File file = checkpoint != null ? new File(checkpoint) : null;
+                if(file != null && file.exists()){
+                    long fileLength = file.length();
+                    String contentLength = firstHeader(result.headers, "Content-Length");
+                    if(contentLength != null && Long.valueOf(contentLength) == fileLength){
+                        if(updateState(TransferState.COMPLETED)){
+                            if(cosXmlProgressListener != null){
+                                cosXmlProgressListener.onProgress(fileLength, fileLength);
+                            }
+                            if(cosXmlResultListener != null){
+                                cosXmlResultListener.onSuccess(request, result);
                             }
-                            clear();
-                        }else {
-                            hasWriteDataLen = fileLength - fileOffset;
-                            realDownload(rangeStart + hasWriteDataLen, rangeEnd, fileOffset + hasWriteDataLen);
                         }
+                        clear();
+                    }else {
+                        hasWriteDataLen = fileLength - fileOffset;
+                        realDownload(rangeStart + hasWriteDataLen, rangeEnd, fileOffset + hasWriteDataLen);
                     }
                 }else {
-                    save(getDownloadPath());
+                    save(getDownloadPath(), false);
                     hasWriteDataLen = 0L;
                     realDownload(rangeStart, rangeEnd, fileOffset);
                 }
@@ -128,9 +180,8 @@ public final class COSXMLDownloadTask extends COSXMLTask {
 
             @Override
             public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                if(updateState(TransferState.FAILED)){
+                if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
                     // failed -> error
-                    mException = exception == null ? serviceException : exception;
                     if(cosXmlResultListener != null){
                         cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
                     }
@@ -145,9 +196,11 @@ public final class COSXMLDownloadTask extends COSXMLTask {
         getObjectRequest.setRegion(region);
         getObjectRequest.setRange(rangeStart, rangeEnd);
         getObjectRequest.setFileOffset(fileOffset);
+        getObjectRequest.setSyncPolicy(syncPolicy);
         getObjectRequest.setQueryParameters(queries);
         getObjectRequest.setRequestHeaders(headers);
         getObjectRequest.setSignSourceProvider(cosXmlSignSourceProvider);
+        getObjectRequest.setBandwidthLimiter(bandwidthLimiter);
         getObjectRequest.setProgressListener(new CosXmlProgressListener() {
             @Override
             public void onProgress(long complete, long target) {
@@ -171,9 +224,8 @@ public final class COSXMLDownloadTask extends COSXMLTask {
 
             @Override
             public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                if(updateState(TransferState.FAILED)){
+                if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
                     // failed -> error
-                    mException = exception == null ? serviceException : exception;
                     if(cosXmlResultListener != null){
                         cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
                     }
@@ -183,6 +235,280 @@ public final class COSXMLDownloadTask extends COSXMLTask {
         });
     }
 
+    private void multiDownload(CosXmlResult headResult, long length){
+        isSliceDownload = true;
+        headObjectResult = headResult;
+        downloadLength = length;
+        IS_EXIT = new AtomicBoolean(false);
+        DOWNLOAD_PART_COUNT = new AtomicInteger(0);
+        ALREADY_RECEIVE_DATA_LEN = new AtomicLong(0);
+        slicePartStructList = new ArrayList<>();
+        getObjectRequestLongMap = new ConcurrentHashMap<>();
+        nextSliceIndex = 0;
+        initSlicePart();
+
+        String downloadPath = getDownloadPath();
+        String checkpoint = hasExisted();
+        // 只有分块并发下载的记录才有各分块的完成情况，单线程下载的记录重新开始分块下载
+        boolean isResumed = isSliceCheckpoint(checkpoint)
+                && new File(checkpoint.substring(SLICE_CHECKPOINT.length())).exists();
+        if(isResumed){
+            updateSlicePart();
+        }else {
+            if(transferJournal != null){
+                transferJournal.remove(getSliceKey());
+            }
+            save(downloadPath, true);
+        }
+        try {
+            preallocate(downloadPath, fileOffset + downloadLength, !isResumed && fileOffset <= 0);
+        } catch (IOException e) {
+            multiDownloadsFailed(null, new CosXmlClientException(e), null);
+            return;
+        }
+
+        if(DOWNLOAD_PART_COUNT.get() == 0){
+            multiDownloadsCompleted();
+        }else {
+            multiDownloadPart();
+        }
+    }
+
+    /**
+     * 预先分配本地文件的长度，各分块直接写入其对应的位置
+     */
+    private void preallocate(String path, long length, boolean truncate) throws IOException {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(path, "rw");
+            if(truncate || randomAccessFile.length() < length){
+                randomAccessFile.setLength(length);
+            }
+        } finally {
+            if(randomAccessFile != null){
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    /**
+     * 保持下载流量控制允许的并发数个分块在下载中（多保留一个排队），每完成一个分块再发起下一个，
+     * 避免一次性提交所有分块请求
+     */
+    private void multiDownloadPart(){
+        int maxConcurrent = cosXmlService.getDownloadConcurrent(getTrafficRequest()) + 1;
+        synchronized (SYNC_DOWNLOAD_PART){
+            while(getObjectRequestLongMap.size() < maxConcurrent && nextSliceIndex < slicePartStructList.size()){
+                if(IS_EXIT.get()) return;
+                SlicePartStruct slicePartStruct = slicePartStructList.get(nextSliceIndex ++);
+                if(!slicePartStruct.isAlreadyDownload){
+                    downloadPart(slicePartStruct);
+                }
+            }
+        }
+    }
+
+    private void downloadPart(final SlicePartStruct slicePartStruct){
+        final AtomicBoolean isExit = IS_EXIT;
+        final GetObjectRequest sliceRequest = new GetObjectRequest(bucket, cosPath, localSaveDirPath, localSaveFileName);
+        sliceRequest.setRegion(region);
+        sliceRequest.setQueryParameters(queries);
+        sliceRequest.setRequestHeaders(getSliceRequestHeaders());
+        sliceRequest.setRange(slicePartStruct.start, slicePartStruct.end);
+        sliceRequest.setFileOffset(fileOffset + slicePartStruct.start - rangeStart);
+        sliceRequest.setRandomAccess(true);
+        // 分块完成即记录为已下载，需保证分块数据已落盘
+        sliceRequest.setSyncPolicy(syncPolicy == FileSyncPolicy.NONE ? FileSyncPolicy.ON_COMPLETE : syncPolicy);
+        if(eTag != null && (headers == null || !headers.containsKey(COSRequestHeaderKey.IF_MATCH))){
+            sliceRequest.setIfMatch(eTag);
+        }
+        sliceRequest.setSignSourceProvider(cosXmlSignSourceProvider);
+
+        getObjectRequestLongMap.put(sliceRequest, 0L);
+        sliceRequest.setBandwidthLimiter(bandwidthLimiter);
+        sliceRequest.setProgressListener(new CosXmlProgressListener() {
+            @Override
+            public void onProgress(long complete, long target) {
+                if(isExit.get())return;
+                Long last = getObjectRequestLongMap.get(sliceRequest);
+                if(last == null) return;
+                getObjectRequestLongMap.put(sliceRequest, complete);
+                long dataLen = ALREADY_RECEIVE_DATA_LEN.addAndGet(complete - last);
+                if(cosXmlProgressListener != null){
+                    cosXmlProgressListener.onProgress(dataLen, downloadLength);
+                }
+            }
+        });
+        cosXmlService.getObjectAsync(sliceRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                if(isExit.get())return;
+                slicePartStruct.isAlreadyDownload = true;
+                slicePartStruct.crc64 = ((GetObjectResult) result).localCrc64;
+                saveSlicePart(slicePartStruct);
+                Long last = getObjectRequestLongMap.remove(sliceRequest);
+                ALREADY_RECEIVE_DATA_LEN.addAndGet(slicePartStruct.sliceSize - (last == null ? 0 : last));
+                if(DOWNLOAD_PART_COUNT.decrementAndGet() == 0){
+                    multiDownloadsCompleted();
+                }else {
+                    multiDownloadPart();
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                if(isExit.get())return;
+                multiDownloadsFailed(request, exception, serviceException);
+            }
+        });
+    }
+
+    /**
+     * 分块请求的头部，去掉用户设置的 Range，由各个分块重新设置
+     */
+    private Map<String, List<String>> getSliceRequestHeaders(){
+        Map<String, List<String>> sliceHeaders = new LinkedHashMap<>();
+        if(headers != null){
+            sliceHeaders.putAll(headers);
+            sliceHeaders.remove(COSRequestHeaderKey.RANGE);
+        }
+        return sliceHeaders;
+    }
+
+    private void multiDownloadsCompleted(){
+        CosXmlClientException crc64Exception = verifySliceCrc64();
+        if(crc64Exception != null){
+            // 本地文件与对象不一致，先清除记录再通知失败，下次重新下载
+            clear();
+            multiDownloadsFailed(null, crc64Exception, null);
+            return;
+        }
+        IS_EXIT.set(true);
+        if(updateState(TransferState.COMPLETED)){
+            if(cosXmlProgressListener != null){
+                cosXmlProgressListener.onProgress(downloadLength, downloadLength);
+            }
+            mResult = buildCOSXMLTaskResult(headObjectResult);
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(null), mResult);
+            }
+            clear();
+        }
+    }
+
+    /**
+     * 下载整个对象时，合并各分块写入数据的 CRC64 与对象的 CRC64 比较，有分块的 CRC64 未知时不校验
+     * @return 不一致时返回异常
+     */
+    private CosXmlClientException verifySliceCrc64(){
+        if(headObjectResult == null || rangeStart != 0) return null;
+        String serverCrc64 = firstHeader(headObjectResult.headers, COSRequestHeaderKey.X_COS_HASH_CRC64ECMA);
+        String objectLength = firstHeader(headObjectResult.headers, "Content-Length");
+        if(serverCrc64 == null || objectLength == null) return null;
+        long expected;
+        try {
+            if(Long.parseLong(objectLength) != downloadLength) return null;
+            expected = CRC64.parseUnsigned(serverCrc64);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        long crc64 = 0;
+        for(SlicePartStruct slicePartStruct : slicePartStructList){
+            if(slicePartStruct.crc64 == null) return null;
+            try {
+                crc64 = CRC64.combine(crc64, CRC64.parseUnsigned(slicePartStruct.crc64), slicePartStruct.sliceSize);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if(crc64 != expected){
+            return new CosXmlClientException("inconsistent crc64, local " + CRC64.toUnsignedString(crc64)
+                    + ", server " + serverCrc64);
+        }
+        return null;
+    }
+
+    /**
+     * okhttp 返回的响应头名称已经被转为小写，这里不区分大小写查找
+     * @return 第一个值，没有该响应头时返回 null
+     */
+    static String firstHeader(Map<String, List<String>> headers, String name){
+        if(headers == null) return null;
+        for(Map.Entry<String, List<String>> entry : headers.entrySet()){
+            List<String> values = entry.getValue();
+            if(name.equalsIgnoreCase(entry.getKey()) && values != null && values.size() > 0){
+                return values.get(0);
+            }
+        }
+        return null;
+    }
+
+    private void multiDownloadsFailed(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException){
+        IS_EXIT.set(true);
+        if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
+            }
+            cancelAllSliceRequest();
+        }
+    }
+
+    private void cancelAllSliceRequest(){
+        if(getObjectRequestLongMap != null){
+            for(GetObjectRequest sliceRequest : getObjectRequestLongMap.keySet()){
+                cosXmlService.cancel(sliceRequest);
+            }
+            getObjectRequestLongMap.clear();
+        }
+    }
+
+    /**
+     * init slice part
+     */
+    private void initSlicePart(){
+        long start = rangeStart;
+        long last = rangeStart + downloadLength - 1;
+        int partNumber = 1;
+        while(start <= last){
+            SlicePartStruct slicePartStruct = new SlicePartStruct();
+            slicePartStruct.partNumber = partNumber ++;
+            slicePartStruct.start = start;
+            slicePartStruct.end = Math.min(start + sliceSize - 1, last);
+            slicePartStruct.sliceSize = slicePartStruct.end - start + 1;
+            slicePartStruct.isAlreadyDownload = false;
+            slicePartStructList.add(slicePartStruct);
+            start = slicePartStruct.end + 1;
+        }
+        DOWNLOAD_PART_COUNT.set(slicePartStructList.size());
+    }
+
+    /**
+     * 根据记录的已完成分块，跳过已下载的分块
+     */
+    private void updateSlicePart(){
+        if(transferJournal == null) return;
+        for(TransferJournal.Part part : transferJournal.getParts(getSliceKey())){
+            int index = part.partNumber - 1;
+            if(index >= 0 && index < slicePartStructList.size()){
+                SlicePartStruct slicePartStruct = slicePartStructList.get(index);
+                if(!slicePartStruct.isAlreadyDownload && slicePartStruct.start == part.offset
+                        && slicePartStruct.sliceSize == part.length){
+                    slicePartStruct.isAlreadyDownload = true;
+                    slicePartStruct.crc64 = part.checksum;
+                    DOWNLOAD_PART_COUNT.decrementAndGet();
+                    ALREADY_RECEIVE_DATA_LEN.addAndGet(slicePartStruct.sliceSize);
+                }
+            }
+        }
+    }
+
+    private void saveSlicePart(SlicePartStruct slicePartStruct){
+        if(transferJournal != null){
+            transferJournal.addPart(getSliceKey(), slicePartStruct.partNumber, slicePartStruct.start,
+                    slicePartStruct.sliceSize, null, slicePartStruct.crc64);
+        }
+    }
+
     @Override
     protected void checkParameters() {
         super.checkParameters();
@@ -203,6 +529,10 @@ public final class COSXMLDownloadTask extends COSXMLTask {
             headObjectRequest = null;
             cosXmlService.cancel(getObjectRequest);
             getObjectRequest = null;
+            if(isSliceDownload){
+                IS_EXIT.set(true);
+                cancelAllSliceRequest();
+            }
         }
     }
 
@@ -219,6 +549,10 @@ public final class COSXMLDownloadTask extends COSXMLTask {
             headObjectRequest = null;
             cosXmlService.cancel(getObjectRequest);
             getObjectRequest = null;
+            if(isSliceDownload){
+                IS_EXIT.set(true);
+                cancelAllSliceRequest();
+            }
         }
     }
 
@@ -268,24 +602,37 @@ public final class COSXMLDownloadTask extends COSXMLTask {
         }
     }
 
-    private synchronized String hasExisted(){
-        if(sharedPreferences != null){
-            return sharedPreferences.getString(getKey(), null);
+    private String hasExisted(){
+        if(transferJournal != null){
+            return transferJournal.getValue(getKey());
         }
         return null;
     }
 
-    private synchronized void clear(){
-        if(sharedPreferences != null){
-            sharedPreferences.edit().remove(getKey()).commit();
+    private String getSliceKey(){
+        return getKey() + "_" + sliceSize;
+    }
+
+    private void clear(){
+        if(transferJournal != null){
+            transferJournal.remove(getKey());
+            transferJournal.remove(getSliceKey());
         }
     }
 
-    private synchronized void save(String absolutePath){
-        if(sharedPreferences != null){
-            sharedPreferences.edit().putString(getKey(), absolutePath).commit();
+    /**
+     * @param slice 是否为分块并发下载，分块并发下载的记录在路径前加上 {@link #SLICE_CHECKPOINT}
+     */
+    private void save(String absolutePath, boolean slice){
+        if(transferJournal != null){
+            transferJournal.putValue(getKey(), slice ? SLICE_CHECKPOINT + absolutePath : absolutePath);
         }
     }
+
+    private static boolean isSliceCheckpoint(String checkpoint){
+        return checkpoint != null && checkpoint.startsWith(SLICE_CHECKPOINT);
+    }
+
     private String getDownloadPath(){
         String path  = null;
         if(localSaveDirPath != null){
@@ -314,6 +661,15 @@ public final class COSXMLDownloadTask extends COSXMLTask {
         return path;
     }
 
+    private static class SlicePartStruct{
+        public int partNumber;
+        public boolean isAlreadyDownload;
+        public long start;
+        public long end;
+        public long sliceSize;
+        public String crc64;
+    }
+
     public static class COSXMLDownloadTaskRequest extends GetObjectRequest{
 
         protected COSXMLDownloadTaskRequest(String region, String bucket, String cosPath, String savePath, String saveFileName, Map<String, List<String>> headers,
@@ -0,0 +1,557 @@
+package com.tencent.cos.xml.transfer;
+
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+import com.tencent.cos.xml.model.object.UploadPartResult;
+import com.tencent.qcloud.core.common.QCloudTaskStateListener;
+import com.tencent.qcloud.core.http.HttpTask;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 从 InputStream 流式分片上传，不需要先将数据流缓存到临时文件。
+ * 数据流按分片大小读入有限个可复用的缓冲区，每读满一个分片就立即上传；
+ * 缓冲区用完时暂停读取，直到有分片上传完成并归还缓冲区。支持长度未知的数据流。
+ * </p>
+ * 数据流在任务自己的读取线程上读取，不占用上传线程；暂停后恢复时，新的读取排在之前的读取结束之后。
+ * 分片的缓冲区只有在分片上传完成、并且引用它的请求（包括暂停时取消的请求）都已结束后才归还，每个缓冲区只归还一次。
+ */
+
+public final class COSXMLStreamUploadTask extends COSXMLTask {
+
+    /** 分片大小 */
+    protected long sliceSize;
+    /** 最多同时持有的分片缓冲区个数，小于等于 0 时为上传流量控制允许的并发数加一 */
+    protected int maxBufferCount = 0;
+
+    /** 数据源 */
+    private InputStream inputStream;
+    /** 数据流的长度，小于 0 表示未知 */
+    private long streamLength;
+
+    /** 分片上传 UploadId 属性 */
+    private String uploadId;
+    private InitMultipartUploadRequest initMultipartUploadRequest;
+    private CompleteMultiUploadRequest completeMultiUploadRequest;
+
+    /** 读取数据流的线程，同一时刻只有一个读取在进行 */
+    private final ThreadPoolExecutor readExecutor;
+    /** 空闲的缓冲区 */
+    private LinkedList<byte[]> freeBuffers = new LinkedList<>();
+    private int allocatedBufferCount = 0;
+    private int bufferCount;
+    /** 是否已经安排了读取 */
+    private boolean isReading = false;
+    private boolean isStreamEnd = false;
+    private boolean isCompleting = false;
+    private int nextPartNumber = 1;
+    private long readDataLen = 0L;
+    private final Object SYNC_READ = new Object();
+
+    /** 正在上传的分片，暂停时保留其缓冲区以便恢复后重新上传 */
+    private Map<Integer, StreamPartStruct> uploadingParts = new ConcurrentHashMap<>();
+    /** 已上传完成的分片 */
+    private Map<Integer, String> partNumberAndETag = new TreeMap<>();
+    private AtomicLong ALREADY_SEND_DATA_LEN = new AtomicLong(0);
+    /** 当前这一次执行的退出标志，每次开始或者恢复时重新创建，回调只检查创建请求时的那一个 */
+    private AtomicBoolean IS_EXIT = new AtomicBoolean(false);
+
+    COSXMLStreamUploadTask(CosXmlSimpleService cosXmlService, String region, String bucket, final String cosPath,
+                           InputStream inputStream, long streamLength){
+        this.region = region;
+        this.bucket = bucket;
+        this.cosPath = cosPath;
+        this.inputStream = inputStream;
+        this.streamLength = streamLength;
+        this.cosXmlService = cosXmlService;
+        readExecutor = new ThreadPoolExecutor(1, 1, 5L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "QCloud-StreamRead-" + cosPath);
+            }
+        });
+        readExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    protected void upload(){
+        checkParameters();
+        updateState(TransferState.WAITING); // waiting
+        final AtomicBoolean isExit = new AtomicBoolean(false);
+        synchronized (SYNC_READ){
+            IS_EXIT = isExit;
+            if(bufferCount <= 0){
+                bufferCount = maxBufferCount > 0 ? maxBufferCount
+                        : cosXmlService.getUploadConcurrent(getTrafficRequest()) + 1;
+            }
+        }
+        if(uploadId == null){
+            initMultiUpload(isExit);
+        }else {
+            // 恢复：在读取线程上执行，保证暂停前的读取已经结束，它读出的分片也在 uploadingParts 中
+            readExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if(isExit.get())return;
+                    updateState(TransferState.IN_PROGRESS); // running
+                    for(StreamPartStruct streamPartStruct : uploadingParts.values()){
+                        uploadPart(streamPartStruct, isExit);
+                    }
+                    scheduleRead();
+                    completeIfFinished(isExit);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void checkParameters(){
+        super.checkParameters();
+        if(inputStream == null){
+            throw new IllegalArgumentException("inputStream is null");
+        }
+        if(sliceSize <= 0 || sliceSize > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("sliceSize is invalid");
+        }
+    }
+
+    private void initMultiUpload(final AtomicBoolean isExit){
+        initMultipartUploadRequest = new InitMultipartUploadRequest(bucket, cosPath);
+        initMultipartUploadRequest.setRegion(region);
+
+        initMultipartUploadRequest.setRequestHeaders(headers);
+        initMultipartUploadRequest.setSignSourceProvider(cosXmlSignSourceProvider);
+
+        initMultipartUploadRequest.setTaskStateListener(new QCloudTaskStateListener() {
+            @Override
+            public void onStateChanged(String taskId, int state) {
+                if(isExit.get())return;
+                if(state == HttpTask.STATE_EXECUTING){
+                    updateState(TransferState.IN_PROGRESS); // running
+                }
+            }
+        });
+        cosXmlService.initMultipartUploadAsync(initMultipartUploadRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                if(isExit.get())return;
+                uploadId = ((InitMultipartUploadResult)result).initMultipartUpload.uploadId;
+                scheduleRead();
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                if(isExit.get())return;
+                onFailed(isExit, request, exception, serviceException);
+            }
+        });
+    }
+
+    /**
+     * 在读取线程上安排一次读取，已经安排过则直接返回
+     */
+    private void scheduleRead(){
+        final AtomicBoolean isExit;
+        synchronized (SYNC_READ){
+            if(isReading || IS_EXIT.get()) return;
+            isReading = true;
+            isExit = IS_EXIT;
+        }
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                readParts(isExit);
+            }
+        });
+    }
+
+    /**
+     * 只要还有可用的缓冲区就继续读取下一个分片并上传，只在读取线程上执行
+     */
+    private void readParts(AtomicBoolean isExit){
+        try {
+            while (true){
+                byte[] buffer;
+                int partNumber;
+                synchronized (SYNC_READ){
+                    buffer = isStreamEnd || isExit.get() ? null : acquireBuffer();
+                    if(buffer == null){
+                        isReading = false;
+                        break;
+                    }
+                    partNumber = nextPartNumber;
+                }
+                int length = readFully(inputStream, buffer);
+                StreamPartStruct streamPartStruct = null;
+                synchronized (SYNC_READ){
+                    readDataLen += length;
+                    if(length < buffer.length){
+                        isStreamEnd = true;
+                    }
+                    // 数据流为空时也需要上传一个空的分片
+                    if(length > 0 || partNumber == 1){
+                        streamPartStruct = new StreamPartStruct();
+                        streamPartStruct.partNumber = partNumber;
+                        streamPartStruct.buffer = buffer;
+                        streamPartStruct.length = length;
+                        nextPartNumber ++;
+                        // 读出的数据无法再次读取，已经暂停时也要保留，恢复后上传
+                        uploadingParts.put(partNumber, streamPartStruct);
+                    }else {
+                        freeBuffers.addLast(buffer);
+                    }
+                }
+                if(streamPartStruct != null){
+                    uploadPart(streamPartStruct, isExit);
+                }
+            }
+        } catch (IOException e) {
+            synchronized (SYNC_READ){
+                isReading = false;
+            }
+            if(isExit.get())return;
+            onFailed(isExit, null, new CosXmlClientException(e), null);
+            return;
+        }
+        completeIfFinished(isExit);
+    }
+
+    private byte[] acquireBuffer(){
+        if(!freeBuffers.isEmpty()){
+            return freeBuffers.removeFirst();
+        }
+        if(allocatedBufferCount < bufferCount){
+            allocatedBufferCount ++;
+            return new byte[(int) sliceSize];
+        }
+        return null;
+    }
+
+    /**
+     * 分片已上传完成，并且引用缓冲区的请求都已结束时归还缓冲区，需要持有 SYNC_READ
+     * @return 是否归还了缓冲区
+     */
+    private boolean releaseBufferIfIdle(StreamPartStruct streamPartStruct){
+        if(!streamPartStruct.isUploaded || streamPartStruct.sendingCount > 0 || streamPartStruct.buffer == null){
+            return false;
+        }
+        freeBuffers.addLast(streamPartStruct.buffer);
+        streamPartStruct.buffer = null;
+        return true;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int filled = 0;
+        int len;
+        while (filled < buffer.length && (len = inputStream.read(buffer, filled, buffer.length - filled)) != -1){
+            filled += len;
+        }
+        return filled;
+    }
+
+    private void uploadPart(final StreamPartStruct streamPartStruct, final AtomicBoolean isExit){
+        final UploadPartRequest uploadPartRequest;
+        synchronized (SYNC_READ){
+            if(isExit.get() || streamPartStruct.isUploaded) return;
+            uploadPartRequest = new UploadPartRequest(bucket, cosPath, streamPartStruct.partNumber,
+                    streamPartStruct.buffer, uploadId);
+            uploadPartRequest.setData(streamPartStruct.buffer, 0, streamPartStruct.length);
+            // 之后只采用这个请求的结果
+            streamPartStruct.uploadPartRequest = uploadPartRequest;
+            streamPartStruct.sendingCount ++;
+            // 重新上传时扣除上次未完成的进度
+            ALREADY_SEND_DATA_LEN.addAndGet(-streamPartStruct.sendDataLen);
+            streamPartStruct.sendDataLen = 0L;
+        }
+        uploadPartRequest.setRegion(region);
+
+        uploadPartRequest.setNeedMD5(isNeedMd5);
+        uploadPartRequest.setRequestHeaders(headers);
+        uploadPartRequest.setSignSourceProvider(cosXmlSignSourceProvider);
+
+        uploadPartRequest.setBandwidthLimiter(bandwidthLimiter);
+        uploadPartRequest.setProgressListener(new CosXmlProgressListener() {
+            @Override
+            public void onProgress(long complete, long target) {
+                long dataLen;
+                synchronized (SYNC_READ){
+                    if(isExit.get() || streamPartStruct.uploadPartRequest != uploadPartRequest)return;
+                    dataLen = ALREADY_SEND_DATA_LEN.addAndGet(complete - streamPartStruct.sendDataLen);
+                    streamPartStruct.sendDataLen = complete;
+                }
+                notifyProgress(dataLen);
+            }
+        });
+        cosXmlService.uploadPartAsync(uploadPartRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                boolean isAccepted;
+                boolean isReleased;
+                synchronized (SYNC_READ){
+                    streamPartStruct.sendingCount --;
+                    // 暂停前发出的请求的结果不再采用，分片由恢复后的请求上传
+                    isAccepted = !isExit.get() && streamPartStruct.uploadPartRequest == uploadPartRequest;
+                    if(isAccepted){
+                        streamPartStruct.isUploaded = true;
+                        streamPartStruct.uploadPartRequest = null;
+                        partNumberAndETag.put(streamPartStruct.partNumber, ((UploadPartResult)result).eTag);
+                        uploadingParts.remove(streamPartStruct.partNumber);
+                        ALREADY_SEND_DATA_LEN.addAndGet(streamPartStruct.length - streamPartStruct.sendDataLen);
+                        streamPartStruct.sendDataLen = streamPartStruct.length;
+                    }
+                    isReleased = releaseBufferIfIdle(streamPartStruct);
+                }
+                if(isReleased){
+                    scheduleRead();
+                }
+                if(isAccepted){
+                    completeIfFinished(isExit);
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                boolean isCurrent;
+                boolean isReleased;
+                synchronized (SYNC_READ){
+                    streamPartStruct.sendingCount --;
+                    isCurrent = !isExit.get() && streamPartStruct.uploadPartRequest == uploadPartRequest;
+                    isReleased = releaseBufferIfIdle(streamPartStruct);
+                }
+                if(isReleased){
+                    scheduleRead();
+                }
+                if(isCurrent){
+                    onFailed(isExit, request, exception, serviceException);
+                }
+            }
+        });
+    }
+
+    private void notifyProgress(long dataLen){
+        if(cosXmlProgressListener != null){
+            long target;
+            synchronized (SYNC_READ){
+                target = streamLength > 0 ? streamLength : readDataLen;
+            }
+            cosXmlProgressListener.onProgress(dataLen, target);
+        }
+    }
+
+    /**
+     * 数据流已读完且所有分片都已上传，则完成分片上传
+     */
+    private void completeIfFinished(AtomicBoolean isExit){
+        synchronized (SYNC_READ){
+            if(!isStreamEnd || isReading || isCompleting || !uploadingParts.isEmpty() || isExit.get()){
+                return;
+            }
+            isCompleting = true;
+        }
+        notifyProgress(ALREADY_SEND_DATA_LEN.get());
+        completeMultiUpload(isExit);
+    }
+
+    private void completeMultiUpload(final AtomicBoolean isExit){
+        synchronized (SYNC_READ){
+            completeMultiUploadRequest = new CompleteMultiUploadRequest(bucket, cosPath,
+                    uploadId, partNumberAndETag);
+        }
+        completeMultiUploadRequest.setRegion(region);
+        completeMultiUploadRequest.setNeedMD5(isNeedMd5);
+        completeMultiUploadRequest.setRequestHeaders(headers);
+        completeMultiUploadRequest.setSignSourceProvider(cosXmlSignSourceProvider);
+
+        cosXmlService.completeMultiUploadAsync(completeMultiUploadRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                if(isExit.get())return;
+                isExit.set(true);
+                closeStream();
+                if(updateState(TransferState.COMPLETED)){
+                    mResult = buildCOSXMLTaskResult(result);
+                    if(cosXmlResultListener != null){
+                        cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(request), mResult);
+                    }
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                if(isExit.get())return;
+                synchronized (SYNC_READ){
+                    isCompleting = false;
+                }
+                onFailed(isExit, request, exception, serviceException);
+            }
+        });
+    }
+
+    private void onFailed(AtomicBoolean isExit, CosXmlRequest cosXmlRequest, CosXmlClientException exception, CosXmlServiceException serviceException){
+        synchronized (SYNC_READ){
+            isExit.set(true);
+        }
+        if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onFail(buildCOSXMLTaskRequest(cosXmlRequest), exception, serviceException);
+            }
+            cancelAllRequest();
+            closeStream();
+        }
+    }
+
+    /**
+     * 设置退出标志并取消这一次执行发出的请求。被取消的请求之后仍会回调，回调结束前不会归还其缓冲区
+     */
+    private void exit(){
+        synchronized (SYNC_READ){
+            IS_EXIT.set(true);
+            isCompleting = false;
+        }
+        cancelAllRequest();
+    }
+
+    private void cancelAllRequest(){
+        List<CosXmlRequest> requests = new ArrayList<>();
+        synchronized (SYNC_READ){
+            if(initMultipartUploadRequest != null){
+                requests.add(initMultipartUploadRequest);
+                initMultipartUploadRequest = null;
+            }
+            for(StreamPartStruct streamPartStruct : uploadingParts.values()){
+                if(streamPartStruct.uploadPartRequest != null){
+                    requests.add(streamPartStruct.uploadPartRequest);
+                    streamPartStruct.uploadPartRequest = null;
+                }
+            }
+            if(completeMultiUploadRequest != null){
+                requests.add(completeMultiUploadRequest);
+                completeMultiUploadRequest = null;
+            }
+        }
+        for(CosXmlRequest request : requests){
+            cosXmlService.cancel(request);
+        }
+    }
+
+    private void abortMultiUpload(){
+        if(uploadId == null) return;
+        AbortMultiUploadRequest abortMultiUploadRequest = new AbortMultiUploadRequest(bucket, cosPath,
+                uploadId);
+        abortMultiUploadRequest.setRegion(region);
+        cosXmlService.abortMultiUploadAsync(abortMultiUploadRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                // abort success
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                // abort failed
+            }
+        });
+    }
+
+    private void closeStream(){
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void pause() {
+        if(updateState(TransferState.PAUSED)){
+            CosXmlClientException cosXmlClientException = new CosXmlClientException("paused by user");
+            mException = cosXmlClientException;
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), cosXmlClientException, null);
+            }
+            exit();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if(updateState(TransferState.CANCELED)){
+            CosXmlClientException cosXmlClientException = new CosXmlClientException("cancelled by user");
+            mException = cosXmlClientException;
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), cosXmlClientException, null);
+            }
+            exit();
+            abortMultiUpload();
+            closeStream();
+        }
+    }
+
+    @Override
+    public void resume() {
+        if(updateState(TransferState.RESUMED_WAITING)){
+            upload();
+        }
+    }
+
+    @Override
+    protected CosXmlRequest buildCOSXMLTaskRequest(CosXmlRequest sourceRequest) {
+        return new COSXMLUploadTask.COSXMLUploadTaskRequest(region, bucket, cosPath, null, headers, queries);
+    }
+
+    @Override
+    protected CosXmlResult buildCOSXMLTaskResult(CosXmlResult sourceResult) {
+        COSXMLUploadTask.COSXMLUploadTaskResult cosxmlUploadTaskResult = new COSXMLUploadTask.COSXMLUploadTaskResult();
+        if(sourceResult != null && sourceResult instanceof CompleteMultiUploadResult){
+            CompleteMultiUploadResult completeMultiUploadResult = (CompleteMultiUploadResult) sourceResult;
+            cosxmlUploadTaskResult.httpCode = completeMultiUploadResult.httpCode;
+            cosxmlUploadTaskResult.httpMessage = completeMultiUploadResult.httpMessage;
+            cosxmlUploadTaskResult.headers = completeMultiUploadResult.headers;
+            cosxmlUploadTaskResult.eTag = completeMultiUploadResult.completeMultipartUpload.eTag;
+            cosxmlUploadTaskResult.accessUrl = completeMultiUploadResult.accessUrl;
+        }
+        return cosxmlUploadTaskResult;
+    }
+
+    public String getUploadId(){
+        return uploadId;
+    }
+
+    private static class StreamPartStruct{
+        public int partNumber;
+        /** 分片的数据，归还缓冲区后为 null */
+        public byte[] buffer;
+        public int length;
+        public long sendDataLen;
+        /** 结果会被采用的请求，取消后为 null */
+        public UploadPartRequest uploadPartRequest;
+        /** 仍在引用缓冲区的请求个数 */
+        public int sendingCount;
+        public boolean isUploaded;
+    }
+}
@@ -7,7 +7,9 @@ import com.tencent.cos.xml.listener.CosXmlProgressListener;
 import com.tencent.cos.xml.listener.CosXmlResultListener;
 import com.tencent.cos.xml.model.CosXmlRequest;
 import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
 import com.tencent.qcloud.core.auth.QCloudSignSourceProvider;
+import com.tencent.qcloud.core.http.BandwidthLimiter;
 
 import java.util.List;
 import java.util.Map;
@@ -42,11 +44,37 @@ public abstract class COSXMLTask {
     protected TransferStateListener transferStateListener;
     /** cosxml task state during the whole lifecycle */
     protected TransferState taskState  = TransferState.WAITING;
+    /** 任务的限速器，以 TransferManager 的限速器为父节点 */
+    protected BandwidthLimiter bandwidthLimiter;
+    /** 用于查询流量控制状态，同一个任务的请求都发往同一个 host */
+    private CosXmlRequest trafficRequest;
 
     protected void setCosXmlService(CosXmlSimpleService cosXmlService){
         this.cosXmlService = cosXmlService;
     }
 
+    /**
+     * 设置任务的带宽上限，可以在传输过程中调整
+     * @param bytesPerSecond 每秒允许传输的字节数，小于等于 0 表示不限速
+     */
+    public void setBandwidthLimit(long bytesPerSecond){
+        synchronized (this){
+            if(bandwidthLimiter == null){
+                bandwidthLimiter = new BandwidthLimiter(bytesPerSecond);
+                return;
+            }
+        }
+        bandwidthLimiter.setBytesPerSecond(bytesPerSecond);
+    }
+
+    protected CosXmlRequest getTrafficRequest(){
+        if(trafficRequest == null){
+            trafficRequest = new HeadObjectRequest(bucket, cosPath);
+            trafficRequest.setRegion(region);
+        }
+        return trafficRequest;
+    }
+
     public void setCosXmlProgressListener(CosXmlProgressListener cosXmlProgressListener){
         this.cosXmlProgressListener = cosXmlProgressListener;
     }
@@ -105,7 +133,14 @@ public abstract class COSXMLTask {
         }
     }
 
-    protected synchronized boolean updateState(TransferState newTaskState){
+    protected boolean updateState(TransferState newTaskState){
+        return updateState(newTaskState, null);
+    }
+
+    /**
+     * 转为 FAILED 时在通知状态之前记录失败原因，状态回调中可以通过 {@link #getException()} 取得
+     */
+    protected synchronized boolean updateState(TransferState newTaskState, Exception exception){
         switch (newTaskState){
             case WAITING:
                 if(taskState != TransferState.WAITING && taskState != TransferState.COMPLETED
@@ -138,6 +173,9 @@ public abstract class COSXMLTask {
             case FAILED:
                 if(taskState == TransferState.WAITING || taskState == TransferState.IN_PROGRESS){
                     taskState = TransferState.FAILED;
+                    if(exception != null){
+                        mException = exception;
+                    }
                     if(transferStateListener != null){
                         transferStateListener.onStateChanged(taskState);
                     }
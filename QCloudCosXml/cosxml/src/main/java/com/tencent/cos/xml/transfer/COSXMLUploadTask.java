@@ -11,12 +11,15 @@ import com.tencent.cos.xml.model.CosXmlResult;
 import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
 import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
 import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.CopyObjectRequest;
 import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
 import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
 import com.tencent.cos.xml.model.object.ListPartsRequest;
 import com.tencent.cos.xml.model.object.ListPartsResult;
 import com.tencent.cos.xml.model.object.PutObjectRequest;
 import com.tencent.cos.xml.model.object.PutObjectResult;
+import com.tencent.cos.xml.model.object.UploadPartCopyRequest;
+import com.tencent.cos.xml.model.object.UploadPartCopyResult;
 import com.tencent.cos.xml.model.object.UploadPartRequest;
 import com.tencent.cos.xml.model.object.UploadPartResult;
 import com.tencent.cos.xml.model.tag.ListParts;
@@ -24,13 +27,13 @@ import com.tencent.qcloud.core.common.QCloudTaskStateListener;
 import com.tencent.qcloud.core.http.HttpTask;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -62,13 +65,29 @@ public final class COSXMLUploadTask extends COSXMLTask {
     private ListPartsRequest listPartsRequest;
     /** 完成所有上传分片 */
     private CompleteMultiUploadRequest completeMultiUploadRequest;
-    /** 上传分片块 */
+    /** 正在上传的分片块，只保留窗口内的请求 */
     private Map<UploadPartRequest,Long> uploadPartRequestLongMap;
-    private Map<Integer, SlicePartStruct> partStructMap;
-    private AtomicInteger UPLOAD_PART_COUNT;
+    private SlicePartTable slicePartTable;
+    /** 正在上传的分片个数 */
+    private int uploadingPartCount;
     private AtomicLong ALREADY_SEND_DATA_LEN;
     private AtomicBoolean IS_EXIT;
     private Object SYNC_UPLOAD_PART = new Object();
+    /** 分片的本地清单，续传时用于检查分片内容 */
+    private UploadManifest uploadManifest;
+    /** 获得 uploadId 的回调，用于持久化续传信息 */
+    private OnUploadIdListener onUploadIdListener;
+
+    /** 增量上传：内容没有变化的分片从已有对象复制 */
+    protected boolean deltaUpload;
+    /** 对象清单的 key */
+    private String objectKey;
+    /** 可以从已有对象复制的分片，复制失败后不再复制 */
+    private volatile Map<Integer, TransferJournal.Part> copyParts;
+    /** 对象清单记录的对象 ETag，复制时要求源对象没有变化 */
+    private String copySourceETag;
+    /** 正在复制的分片 */
+    private Set<UploadPartCopyRequest> uploadPartCopyRequests;
 
     private MultiUploadsStateListener multiUploadsStateListenerHandler = new MultiUploadsStateListener() {
         @Override
@@ -89,6 +108,14 @@ public final class COSXMLUploadTask extends COSXMLTask {
         @Override
         public void onCompleted(CosXmlRequest cosXmlRequest, CosXmlResult cosXmlResult) {
             IS_EXIT.set(true);
+            if(uploadManifest != null){
+                if(objectKey != null){
+                    uploadManifest.complete(objectKey,
+                            ((CompleteMultiUploadResult) cosXmlResult).completeMultipartUpload.eTag);
+                }else {
+                    uploadManifest.clear();
+                }
+            }
             if(updateState(TransferState.COMPLETED)){
                 mResult = buildCOSXMLTaskResult(cosXmlResult);
                 if(cosXmlResultListener != null){
@@ -100,8 +127,11 @@ public final class COSXMLUploadTask extends COSXMLTask {
         @Override
         public void onFailed(CosXmlRequest cosXmlRequest, CosXmlClientException exception, CosXmlServiceException serviceException) {
             IS_EXIT.set(true);
-            if(updateState(TransferState.FAILED)){
-                mException = exception == null ? serviceException : exception;
+            if(uploadManifest != null && UploadManifest.isNoSuchUpload(serviceException)){
+                // uploadId 已经失效，下次重新初始化分片上传
+                uploadManifest.clear();
+            }
+            if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onFail(buildCOSXMLTaskRequest(buildCOSXMLTaskRequest(cosXmlRequest)), exception, serviceException);
                 }
@@ -142,10 +172,11 @@ public final class COSXMLUploadTask extends COSXMLTask {
         }else {
             isSliceUpload = true;
             IS_EXIT = new AtomicBoolean(false);
-            UPLOAD_PART_COUNT = new AtomicInteger(0);
             ALREADY_SEND_DATA_LEN = new AtomicLong(0);
-            partStructMap = new LinkedHashMap<>(); //必须有序
-            uploadPartRequestLongMap = new LinkedHashMap<>();
+            uploadingPartCount = 0;
+            uploadPartRequestLongMap = new ConcurrentHashMap<>();
+            uploadPartCopyRequests = Collections.newSetFromMap(new ConcurrentHashMap<UploadPartCopyRequest, Boolean>());
+            copyParts = null;
             multiUpload(cosXmlService);
         }
     }
@@ -174,6 +205,7 @@ public final class COSXMLUploadTask extends COSXMLTask {
                 }
             }
         });
+        putObjectRequest.setBandwidthLimiter(bandwidthLimiter);
         putObjectRequest.setProgressListener(new CosXmlProgressListener() {
             @Override
             public void onProgress(long complete, long target) {
@@ -197,9 +229,8 @@ public final class COSXMLUploadTask extends COSXMLTask {
 
             @Override
             public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                if(updateState(TransferState.FAILED)){
+                if(updateState(TransferState.FAILED, exception == null ? serviceException : exception)){
                    // failed -> error
-                    mException = exception == null ? serviceException : exception;
                     if(cosXmlResultListener != null){
                         cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), exception, serviceException);
                     }
@@ -210,6 +241,11 @@ public final class COSXMLUploadTask extends COSXMLTask {
 
     private void multiUpload(CosXmlSimpleService cosXmlService){
         initSlicePart();
+        TransferJournal transferJournal = TransferJournal.instance();
+        uploadManifest = transferJournal != null ? new UploadManifest(transferJournal,
+                UploadManifest.key(cosXmlService, bucket, cosPath, srcPath, sliceSize), srcPath) : null;
+        objectKey = deltaUpload && uploadManifest != null
+                ? UploadManifest.objectKey(cosXmlService, bucket, cosPath, sliceSize) : null;
         if(uploadId != null){
             listMultiUpload(cosXmlService);
         }else {
@@ -239,6 +275,12 @@ public final class COSXMLUploadTask extends COSXMLTask {
                 // notify -> upload part
                 if(IS_EXIT.get())return;
                 uploadId = ((InitMultipartUploadResult)result).initMultipartUpload.uploadId;
+                if(uploadManifest != null){
+                    uploadManifest.begin(uploadId);
+                }
+                if(onUploadIdListener != null){
+                    onUploadIdListener.onUploadId(uploadId);
+                }
                 multiUploadsStateListenerHandler.onInit();
             }
 
@@ -279,80 +321,188 @@ public final class COSXMLUploadTask extends COSXMLTask {
             @Override
             public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
                 if(IS_EXIT.get())return;
+                if(UploadManifest.isNoSuchUpload(serviceException)){
+                    // uploadId 已经被终止或者过期，重新初始化分片上传
+                    if(uploadManifest != null){
+                        uploadManifest.clear();
+                    }
+                    uploadId = null;
+                    initMultiUpload(cosXmlService);
+                    return;
+                }
                 multiUploadsStateListenerHandler.onFailed(request, exception, serviceException);
             }
         });
     }
 
     private void multiUploadPart(CosXmlSimpleService cosXmlService){
-        //是否已上传完
-        boolean isUploadFinished = true;
-        // 循环进行
-        for(final Map.Entry<Integer, SlicePartStruct> entry : partStructMap.entrySet()){
-            final SlicePartStruct slicePartStruct = entry.getValue();
-            //是否已经failed了，则就不要在继续了
-            if(!slicePartStruct.isAlreadyUpload && !IS_EXIT.get()){
-                isUploadFinished = false;
-                final UploadPartRequest uploadPartRequest = new UploadPartRequest(bucket, cosPath, slicePartStruct.partNumber,
-                        srcPath, slicePartStruct.offset, slicePartStruct.sliceSize,  uploadId);
-
-                uploadPartRequest.setNeedMD5(isNeedMd5);
-                uploadPartRequest.setRequestHeaders(headers);
-                uploadPartRequest.setSignSourceProvider(cosXmlSignSourceProvider);
-
-                uploadPartRequestLongMap.put(uploadPartRequest, 0L);
-                uploadPartRequest.setProgressListener(new CosXmlProgressListener() {
-                    @Override
-                    public void onProgress(long complete, long target) {
-                        if(IS_EXIT.get())return;//已经上报失败了
-                        try {
-                            long dataLen = ALREADY_SEND_DATA_LEN.addAndGet(complete - uploadPartRequestLongMap.get(uploadPartRequest));
-                            uploadPartRequestLongMap.put(uploadPartRequest, complete);
-                            if(cosXmlProgressListener != null){
-                                cosXmlProgressListener.onProgress(dataLen, fileLength);
-                            }
-                        }catch (Exception e){
-                            //cause by cancel or pause
-                        }
-                    }
-                });
-                cosXmlService.uploadPartAsync(uploadPartRequest, new CosXmlResultListener() {
-                    @Override
-                    public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                        slicePartStruct.eTag = ((UploadPartResult)result).eTag;
-                        slicePartStruct.isAlreadyUpload = true;
-                        synchronized (SYNC_UPLOAD_PART){
-                            UPLOAD_PART_COUNT.decrementAndGet();
-                            if(UPLOAD_PART_COUNT.get() == 0){
-                                if(IS_EXIT.get())return;
-                                multiUploadsStateListenerHandler.onUploadParts();
-                            }
-                        }
-                    }
-
-                    @Override
-                    public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                        if(IS_EXIT.get())return;//已经上报失败了
-                        multiUploadsStateListenerHandler.onFailed(request, exception, serviceException);
-                    }
-                });
+        if(objectKey != null){
+            copySourceETag = uploadManifest.getObjectETag(objectKey);
+            if(copySourceETag != null){
+                copyParts = new ConcurrentHashMap<>(uploadManifest.findUnchangedParts(objectKey, slicePartTable));
             }
         }
-        if(isUploadFinished && !IS_EXIT.get()){
+        if(slicePartTable.isAllUploaded()){
+            //已全部上传完
+            if(IS_EXIT.get())return;
             if(cosXmlProgressListener != null){
                 cosXmlProgressListener.onProgress(fileLength, fileLength);
             }
             multiUploadsStateListenerHandler.onUploadParts();
+        }else {
+            dispatchUploadPart(cosXmlService);
         }
     }
 
+    /**
+     * 滑动窗口：正在上传的分片个数不超过流量控制允许的并发数，每完成一个分片再发出下一个
+     */
+    private void dispatchUploadPart(CosXmlSimpleService cosXmlService){
+        final AtomicBoolean isExit = IS_EXIT;
+        // 多保留一个排队的分片，避免流量控制放行时没有请求可发
+        int windowSize = cosXmlService.getUploadConcurrent(getTrafficRequest()) + 1;
+        while (true){
+            int partNumber;
+            synchronized (SYNC_UPLOAD_PART){
+                if(isExit.get() || uploadingPartCount >= windowSize){
+                    return;
+                }
+                partNumber = slicePartTable.nextPendingPart();
+                if(partNumber < 0){
+                    return;
+                }
+                uploadingPartCount ++;
+            }
+            Map<Integer, TransferJournal.Part> copyParts = this.copyParts;
+            TransferJournal.Part copyPart = copyParts != null ? copyParts.get(partNumber) : null;
+            if(copyPart != null){
+                copyPart(cosXmlService, partNumber, copyPart, isExit);
+            }else {
+                uploadPart(cosXmlService, partNumber, isExit);
+            }
+        }
+    }
+
+    /**
+     * 从已有对象复制内容没有变化的分片，复制失败时改为上传该分片
+     */
+    private void copyPart(final CosXmlSimpleService cosXmlService, final int partNumber, final TransferJournal.Part part,
+                          final AtomicBoolean isExit){
+        final SlicePartTable slicePartTable = this.slicePartTable;
+        final UploadManifest uploadManifest = this.uploadManifest;
+        final String objectKey = this.objectKey;
+        CopyObjectRequest.CopySourceStruct copySourceStruct = new CopyObjectRequest.CopySourceStruct(
+                cosXmlService.getAppid(), bucket, region != null ? region : cosXmlService.getRegion(), cosPath);
+        final UploadPartCopyRequest uploadPartCopyRequest = new UploadPartCopyRequest(bucket, cosPath, partNumber,
+                uploadId, copySourceStruct, part.offset, part.offset + part.length - 1);
+        uploadPartCopyRequest.setRegion(region);
+        uploadPartCopyRequest.setRequestHeaders(headers);
+        uploadPartCopyRequest.setCopyIfMatch(copySourceETag);
+        uploadPartCopyRequest.setSignSourceProvider(cosXmlSignSourceProvider);
+
+        uploadPartCopyRequests.add(uploadPartCopyRequest);
+        cosXmlService.copyObjectAsync(uploadPartCopyRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                if(isExit.get())return;
+                uploadPartCopyRequests.remove(uploadPartCopyRequest);
+                String eTag = ((UploadPartCopyResult)result).copyObject.eTag;
+                boolean isUploadFinished;
+                synchronized (SYNC_UPLOAD_PART){
+                    uploadingPartCount --;
+                    isUploadFinished = slicePartTable.markUploaded(partNumber, eTag) && slicePartTable.isAllUploaded();
+                }
+                if(uploadManifest != null){
+                    uploadManifest.addCopiedPart(partNumber, part.offset, part.length, eTag, part.checksum);
+                }
+                long dataLen = ALREADY_SEND_DATA_LEN.addAndGet(part.length);
+                if(cosXmlProgressListener != null){
+                    cosXmlProgressListener.onProgress(dataLen, fileLength);
+                }
+                if(isUploadFinished){
+                    multiUploadsStateListenerHandler.onUploadParts();
+                }else {
+                    dispatchUploadPart(cosXmlService);
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                if(isExit.get())return;
+                uploadPartCopyRequests.remove(uploadPartCopyRequest);
+                // 已有对象可能已经被覆盖，之后的分片都直接上传
+                copyParts = null;
+                if(uploadManifest != null && UploadManifest.isSourceChanged(serviceException)){
+                    // 对象清单已经失效，避免之后上传该对象时再次复制失败
+                    uploadManifest.removeObject(objectKey);
+                }
+                uploadPart(cosXmlService, partNumber, isExit);
+            }
+        });
+    }
+
+    private void uploadPart(final CosXmlSimpleService cosXmlService, final int partNumber, final AtomicBoolean isExit){
+        final SlicePartTable slicePartTable = this.slicePartTable;
+        final UploadManifest uploadManifest = this.uploadManifest;
+        final UploadPartRequest uploadPartRequest = new UploadPartRequest(bucket, cosPath, partNumber,
+                srcPath, slicePartTable.getOffset(partNumber), slicePartTable.getSliceSize(partNumber),  uploadId);
+
+        uploadPartRequest.setNeedMD5(isNeedMd5);
+        uploadPartRequest.setRequestHeaders(headers);
+        uploadPartRequest.setSignSourceProvider(cosXmlSignSourceProvider);
+
+        uploadPartRequestLongMap.put(uploadPartRequest, 0L);
+        uploadPartRequest.setBandwidthLimiter(bandwidthLimiter);
+        uploadPartRequest.setProgressListener(new CosXmlProgressListener() {
+            @Override
+            public void onProgress(long complete, long target) {
+                if(isExit.get())return;//已经上报失败了
+                try {
+                    long dataLen = ALREADY_SEND_DATA_LEN.addAndGet(complete - uploadPartRequestLongMap.get(uploadPartRequest));
+                    uploadPartRequestLongMap.put(uploadPartRequest, complete);
+                    if(cosXmlProgressListener != null){
+                        cosXmlProgressListener.onProgress(dataLen, fileLength);
+                    }
+                }catch (Exception e){
+                    //cause by cancel or pause
+                }
+            }
+        });
+        cosXmlService.uploadPartAsync(uploadPartRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                if(isExit.get())return;
+                uploadPartRequestLongMap.remove(uploadPartRequest);
+                boolean isUploadFinished;
+                synchronized (SYNC_UPLOAD_PART){
+                    uploadingPartCount --;
+                    isUploadFinished = slicePartTable.markUploaded(partNumber, ((UploadPartResult)result).eTag,
+                            ((UploadPartResult)result).crc64) && slicePartTable.isAllUploaded();
+                }
+                if(uploadManifest != null){
+                    uploadManifest.addUploadedPart(partNumber, slicePartTable.getOffset(partNumber),
+                            slicePartTable.getSliceSize(partNumber), ((UploadPartResult)result).eTag,
+                            ((UploadPartResult)result).crc64);
+                }
+                if(isUploadFinished){
+                    multiUploadsStateListenerHandler.onUploadParts();
+                }else {
+                    dispatchUploadPart(cosXmlService);
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                if(isExit.get())return;//已经上报失败了
+                multiUploadsStateListenerHandler.onFailed(request, exception, serviceException);
+            }
+        });
+    }
+
     private void completeMultiUpload(CosXmlSimpleService cosXmlService){
         completeMultiUploadRequest = new CompleteMultiUploadRequest(bucket, cosPath,
                 uploadId, null);
-        for(Map.Entry<Integer, SlicePartStruct> entry : partStructMap.entrySet()){
-            SlicePartStruct slicePartStruct = entry.getValue();
-            completeMultiUploadRequest.setPartNumberAndETag(slicePartStruct.partNumber, slicePartStruct.eTag);
-        }
+        slicePartTable.fillPartNumberAndETag(completeMultiUploadRequest);
 
         completeMultiUploadRequest.setNeedMD5(isNeedMd5);
         completeMultiUploadRequest.setRequestHeaders(headers);
@@ -362,6 +512,16 @@ public final class COSXMLUploadTask extends COSXMLTask {
             @Override
             public void onSuccess(CosXmlRequest request, CosXmlResult result) {
                 if(IS_EXIT.get())return;
+                try {
+                    slicePartTable.verifyCrc64(((CompleteMultiUploadResult) result).crc64);
+                } catch (CosXmlClientException e) {
+                    // 分片已经合并，清单不再可用
+                    if(uploadManifest != null){
+                        uploadManifest.clear();
+                    }
+                    multiUploadsStateListenerHandler.onFailed(request, e, null);
+                    return;
+                }
                 multiUploadsStateListenerHandler.onCompleted(request, result);
             }
 
@@ -394,6 +554,12 @@ public final class COSXMLUploadTask extends COSXMLTask {
             }
             uploadPartRequestLongMap.clear();
         }
+        if(uploadPartCopyRequests != null){
+            for(UploadPartCopyRequest uploadPartCopyRequest : uploadPartCopyRequests){
+                cosXmlService.cancel(uploadPartCopyRequest);
+            }
+            uploadPartCopyRequests.clear();
+        }
 
         if(completeMultiUploadRequest != null){
             cosXmlService.cancel(completeMultiUploadRequest);
@@ -450,6 +616,9 @@ public final class COSXMLUploadTask extends COSXMLTask {
                 IS_EXIT.set(true);
                 cancelAllRequest(cosXmlService);
                 abortMultiUpload(cosXmlService);
+                if(uploadManifest != null){
+                    uploadManifest.clear();
+                }
             }else {
                 cosXmlService.cancel(putObjectRequest);
                 putObjectRequest = null;
@@ -496,53 +665,43 @@ public final class COSXMLUploadTask extends COSXMLTask {
         return uploadId;
     }
 
+    void setOnUploadIdListener(OnUploadIdListener onUploadIdListener){
+        this.onUploadIdListener = onUploadIdListener;
+    }
+
     /**
      * init slice part
      */
     private void initSlicePart(){
-        int count = (int) (fileLength / sliceSize);
-        int i = 1;
-        for(; i < count; ++ i){
-            SlicePartStruct slicePartStruct = new SlicePartStruct();
-            slicePartStruct.isAlreadyUpload = false;
-            slicePartStruct.partNumber = i;
-            slicePartStruct.offset = (i - 1) * sliceSize;
-            slicePartStruct.sliceSize = sliceSize;
-            partStructMap.put(i, slicePartStruct);
-        }
-        SlicePartStruct slicePartStruct = new SlicePartStruct();
-        slicePartStruct.isAlreadyUpload = false;
-        slicePartStruct.partNumber = i;
-        slicePartStruct.offset = (i - 1) * sliceSize;
-        slicePartStruct.sliceSize = fileLength - slicePartStruct.offset;
-        partStructMap.put(i, slicePartStruct);
-        UPLOAD_PART_COUNT.set(i);
-        if(IS_EXIT.get())return;
+        slicePartTable = new SlicePartTable(fileLength, sliceSize);
     }
 
+    /**
+     * 有本地清单时只采用内容没有变化的分片，否则信任服务端返回的分片
+     */
     private void updateSlicePart(ListPartsResult listPartsResult){
-        if(listPartsResult != null && listPartsResult.listParts != null){
-            List<ListParts.Part> parts = listPartsResult.listParts.parts;
-            if(parts != null){
-                for(ListParts.Part part : parts){
-                    if(partStructMap.containsKey(Integer.valueOf(part.partNumber))){
-                        SlicePartStruct slicePartStruct = partStructMap.get(Integer.valueOf(part.partNumber));
-                        slicePartStruct.isAlreadyUpload = true;
-                        slicePartStruct.eTag = part.eTag;
-                        UPLOAD_PART_COUNT.decrementAndGet();
-                        ALREADY_SEND_DATA_LEN.addAndGet(Long.parseLong(part.size));
-                    }
+        List<ListParts.Part> parts = listPartsResult != null && listPartsResult.listParts != null
+                ? listPartsResult.listParts.parts : null;
+        if(uploadManifest != null){
+            if(parts == null){
+                parts = Collections.emptyList();
+            }
+            for(TransferJournal.Part part : uploadManifest.restore(uploadId, slicePartTable, parts)){
+                if(slicePartTable.markUploaded(part.partNumber, part.eTag)){
+                    ALREADY_SEND_DATA_LEN.addAndGet(part.length);
+                }
+            }
+        }else if(parts != null){
+            for(ListParts.Part part : parts){
+                if(slicePartTable.markUploaded(Integer.valueOf(part.partNumber), part.eTag)){
+                    ALREADY_SEND_DATA_LEN.addAndGet(Long.parseLong(part.size));
                 }
             }
         }
     }
 
-    private static class SlicePartStruct{
-        public int partNumber;
-        public boolean isAlreadyUpload;
-        public long offset;
-        public long sliceSize;
-        public String eTag;
+    interface OnUploadIdListener{
+        void onUploadId(String uploadId);
     }
 
     private static interface MultiUploadsStateListener{
@@ -9,6 +9,7 @@ import com.tencent.qcloud.core.common.QCloudClientException;
 import com.tencent.qcloud.core.common.QCloudServiceException;
 import com.tencent.qcloud.core.http.HttpResponse;
 import com.tencent.qcloud.core.http.ResponseFileConverter;
+import com.tencent.qcloud.core.util.CRC64;
 
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -26,11 +27,20 @@ public class ResponseFileBodySerializer<T2> extends ResponseFileConverter<T2> {
         super(absolutePath, start);
         this.getObjectResult = getObjectResult;
     }
+
+    public ResponseFileBodySerializer(GetObjectResult getObjectResult, String absolutePath, long start, boolean randomAccess){
+        super(absolutePath, start, randomAccess);
+        this.getObjectResult = getObjectResult;
+    }
     @Override
     public T2 convert(HttpResponse response) throws QCloudClientException, QCloudServiceException {
         parseCOSXMLError(response);
         getObjectResult.parseResponseBody(response);
         super.convert(response);
+        CRC64 crc64 = getCrc64();
+        if(crc64 != null){
+            getObjectResult.localCrc64 = CRC64.toUnsignedString(crc64.getValue());
+        }
         return (T2) getObjectResult;
     }
 
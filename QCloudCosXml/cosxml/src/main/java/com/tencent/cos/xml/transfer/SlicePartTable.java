@@ -0,0 +1,137 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.qcloud.core.util.CRC64;
+
+import java.util.BitSet;
+
+/**
+ * <p>
+ * 分片上传的分片状态表。
+ * 分片的偏移和长度由分片编号直接计算，只保存已上传标记、ETag 和 CRC64，
+ * 内存占用只和分片个数线性相关，不会为每个分片常驻请求对象。
+ * </p>
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+final class SlicePartTable {
+
+    private final long fileLength;
+    private final long sliceSize;
+    private final int partCount;
+
+    private final BitSet uploaded;
+    private final String[] eTags;
+    /** 分片的 CRC64，续传时采用的分片没有记录 */
+    private final long[] crc64s;
+    private final BitSet crc64Known;
+    private int uploadedCount = 0;
+    /** 下一个待检查的分片编号 */
+    private int cursor = 1;
+
+    /**
+     * 与原有分片方式保持一致：最后一个分片包含不足一个分片大小的剩余数据
+     */
+    SlicePartTable(long fileLength, long sliceSize){
+        this.fileLength = fileLength;
+        this.sliceSize = sliceSize;
+        this.partCount = (int) Math.max(1, fileLength / sliceSize);
+        this.uploaded = new BitSet(partCount + 1);
+        this.eTags = new String[partCount + 1];
+        this.crc64s = new long[partCount + 1];
+        this.crc64Known = new BitSet(partCount + 1);
+    }
+
+    int getPartCount(){
+        return partCount;
+    }
+
+    long getOffset(int partNumber){
+        return (partNumber - 1) * sliceSize;
+    }
+
+    long getSliceSize(int partNumber){
+        return partNumber == partCount ? fileLength - getOffset(partNumber) : sliceSize;
+    }
+
+    /**
+     * 标记分片已上传
+     * @return 分片此前未上传时返回 true
+     */
+    synchronized boolean markUploaded(int partNumber, String eTag){
+        return markUploaded(partNumber, eTag, null);
+    }
+
+    /**
+     * 标记分片已上传，并记录服务端返回的分片 CRC64
+     * @param crc64 无符号十进制，未知时为 null
+     */
+    synchronized boolean markUploaded(int partNumber, String eTag, String crc64){
+        if(partNumber < 1 || partNumber > partCount || uploaded.get(partNumber)){
+            return false;
+        }
+        uploaded.set(partNumber);
+        eTags[partNumber] = eTag;
+        if(crc64 != null){
+            try {
+                crc64s[partNumber] = CRC64.parseUnsigned(crc64);
+                crc64Known.set(partNumber);
+            } catch (NumberFormatException e) {
+                // 无法识别时不校验
+            }
+        }
+        uploadedCount ++;
+        return true;
+    }
+
+    /**
+     * 合并各分片的 CRC64，与完成分片上传时服务端返回的整个对象的 CRC64 比较。
+     * 服务端没有返回或者有分片的 CRC64 未知时不校验
+     */
+    synchronized void verifyCrc64(String serverCrc64) throws CosXmlClientException {
+        if(serverCrc64 == null || crc64Known.cardinality() != partCount) return;
+        long expected;
+        try {
+            expected = CRC64.parseUnsigned(serverCrc64);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        long crc64 = 0;
+        for(int i = 1; i <= partCount; ++ i){
+            crc64 = CRC64.combine(crc64, crc64s[i], getSliceSize(i));
+        }
+        if(crc64 != expected){
+            throw new CosXmlClientException("inconsistent crc64, local " + CRC64.toUnsignedString(crc64)
+                    + ", server " + serverCrc64);
+        }
+    }
+
+    synchronized boolean isUploaded(int partNumber){
+        return partNumber >= 1 && partNumber <= partCount && uploaded.get(partNumber);
+    }
+
+    synchronized boolean isAllUploaded(){
+        return uploadedCount == partCount;
+    }
+
+    /**
+     * 获取下一个未上传的分片编号，每个分片只会返回一次
+     * @return 没有待上传的分片时返回 -1
+     */
+    synchronized int nextPendingPart(){
+        int next = uploaded.nextClearBit(cursor);
+        if(next > partCount){
+            cursor = partCount + 1;
+            return -1;
+        }
+        cursor = next + 1;
+        return next;
+    }
+
+    synchronized void fillPartNumberAndETag(CompleteMultiUploadRequest completeMultiUploadRequest){
+        for(int i = 1; i <= partCount; ++ i){
+            completeMultiUploadRequest.setPartNumberAndETag(i, eTags[i]);
+        }
+    }
+}
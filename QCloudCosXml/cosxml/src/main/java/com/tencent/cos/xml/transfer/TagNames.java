@@ -0,0 +1,37 @@
+package com.tencent.cos.xml.transfer;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>
+ * 将解析到的标签名映射为规范写法，用于在 switch 中分发标签。
+ * </p>
+ * 与逐个 equalsIgnoreCase 比较的结果一致：大小写完全相同时只需一次哈希查找，大小写不同时再按小写查找，未知标签返回 null。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+final class TagNames {
+
+    private final Map<String, String> names = new HashMap<>();
+
+    TagNames(String... canonicalNames) {
+        for(String name : canonicalNames){
+            names.put(name, name);
+            names.put(name.toLowerCase(Locale.ENGLISH), name);
+        }
+    }
+
+    String canonical(String name) {
+        if(name == null){
+            return null;
+        }
+        String canonical = names.get(name);
+        if(canonical == null){
+            canonical = names.get(name.toLowerCase(Locale.ENGLISH));
+        }
+        return canonical;
+    }
+}
@@ -11,12 +11,20 @@ public final class TransferConfig {
     protected long sliceSizeForCopy;
     protected long divisionForUpload;
     protected long sliceSizeForUpload;
+    protected long divisionForDownload;
+    protected long sliceSizeForDownload;
+    protected long bandwidthLimit;
+    protected boolean deltaUpload;
 
     private TransferConfig(Builder builder){
         this.divisionForCopy = builder.divisionForCopy;
         this.sliceSizeForCopy = builder.sliceSizeForCopy;
         this.divisionForUpload = builder.divisionForUpload;
         this.sliceSizeForUpload = builder.sliceSizeForUpload;
+        this.divisionForDownload = builder.divisionForDownload;
+        this.sliceSizeForDownload = builder.sliceSizeForDownload;
+        this.bandwidthLimit = builder.bandwidthLimit;
+        this.deltaUpload = builder.deltaUpload;
     }
 
     public static class Builder{
@@ -24,6 +32,10 @@ public final class TransferConfig {
         private long sliceSizeForCopy = 5242880; //5M
         private long divisionForUpload = 2097152; //2M
         private long sliceSizeForUpload = 1048576; // 1M
+        private long divisionForDownload = 20971520; // 20M
+        private long sliceSizeForDownload = 5242880; // 5M
+        private long bandwidthLimit = 0; // 不限速
+        private boolean deltaUpload = false;
 
         public Builder(){
 
@@ -57,6 +69,38 @@ public final class TransferConfig {
             return this;
         }
 
+        public Builder setDivisionForDownload(long division){
+            if(division > 0){
+                this.divisionForDownload = division;
+            }
+            return this;
+        }
+
+        public Builder setSliceSizeForDownload(long sliceSize){
+            if(sliceSize > 0){
+                this.sliceSizeForDownload = sliceSize;
+            }
+            return this;
+        }
+
+        /**
+         * 设置 TransferManager 所有任务的总带宽上限
+         * @param bytesPerSecond 每秒允许传输的字节数，小于等于 0 表示不限速
+         */
+        public Builder setBandwidthLimit(long bytesPerSecond){
+            this.bandwidthLimit = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * 设置是否增量上传：分片上传完成后在本地记录各分片的 MD5，再次上传同一对象时，
+         * 内容没有变化的分片通过 UploadPartCopy 从已有对象复制，只上传变化的分片
+         */
+        public Builder setDeltaUpload(boolean deltaUpload){
+            this.deltaUpload = deltaUpload;
+            return this;
+        }
+
         public TransferConfig build(){
             return new TransferConfig(this);
         }
@@ -0,0 +1,555 @@
+package com.tencent.cos.xml.transfer;
+
+import android.content.Context;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * 传输断点的追加写日志，保存续传需要的 uploadId、本地路径以及每个已完成分片的编号、偏移、长度和 ETag。
+ * </p>
+ * 更新只修改内存中的状态并追加一条二进制记录，由后台线程批量写入文件并 fsync，调用线程不会等待磁盘。
+ * 每条记录带有 CRC32 校验，进程在写入过程中退出时，加载时丢弃末尾不完整的记录；
+ * 因此最近一次落盘之后的更新可能丢失，调用方需要保证丢失的断点只会导致重复传输，而不会导致错误的数据。
+ * 文件中的失效记录超过一半时，在后台重写为只包含当前状态的新文件。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class TransferJournal {
+
+    private static final String TAG = "TransferJournal";
+
+    static final String FILE_NAME = "cos_transfer_journal";
+
+    private static final int MAGIC = 0x434f534a;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    private static final byte TYPE_VALUE = 1;
+    private static final byte TYPE_PART = 2;
+    private static final byte TYPE_REMOVE = 3;
+
+    // 分片记录攒批写入的时间间隔
+    private static final long FLUSH_DELAY_MILLIS = 200;
+    // 待写入的数据超过该长度时立即写入
+    private static final int FLUSH_THRESHOLD_BYTES = 64 * 1024;
+    // 文件小于该长度时不做压缩
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<String, TransferJournal> instances = new HashMap<>();
+    private static ScheduledThreadPoolExecutor flushExecutor;
+
+    private final File file;
+    private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOutput = new DataOutputStream(pending);
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream recordOutput = new DataOutputStream(recordBuffer);
+    private final CRC32 crc32 = new CRC32();
+    private boolean flushScheduled;
+    /** 文件和 pending 中的记录数 */
+    private int records;
+    /** 当前状态对应的记录数 */
+    private int liveRecords;
+
+    private final Object fileLock = new Object();
+    // 以下字段由 fileLock 保护
+    private FileOutputStream output;
+    private long fileLength;
+    /** 上一次写入失败，文件中可能缺少记录，下一次写入时整体重写 */
+    private boolean rewriteRequired;
+
+    /**
+     * 已完成的分片
+     */
+    public static final class Part {
+
+        public final int partNumber;
+        public final long offset;
+        public final long length;
+        public final String eTag;
+        /** 分片内容的校验值，没有记录时为 null */
+        public final String checksum;
+
+        Part(int partNumber, long offset, long length, String eTag, String checksum) {
+            this.partNumber = partNumber;
+            this.offset = offset;
+            this.length = length;
+            this.eTag = eTag;
+            this.checksum = checksum;
+        }
+    }
+
+    private static final class Checkpoint {
+
+        boolean hasValue;
+        String value;
+        final TreeMap<Integer, Part> parts = new TreeMap<>();
+    }
+
+    /**
+     * 获取应用私有目录下的传输日志，同一个进程内共享同一个实例
+     */
+    public static TransferJournal instance(Context context) {
+        return open(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * 与 {@link #instance(Context)} 使用同一个文件，{@link CosXmlSimpleService} 还没有创建时返回 null
+     */
+    static TransferJournal instance() {
+        String filesDir = CosXmlSimpleService.appCachePath;
+        return filesDir != null ? open(new File(filesDir, FILE_NAME)) : null;
+    }
+
+    static TransferJournal open(File file) {
+        synchronized (instances){
+            String path = file.getAbsolutePath();
+            TransferJournal journal = instances.get(path);
+            if(journal == null){
+                journal = new TransferJournal(file);
+                instances.put(path, journal);
+            }
+            return journal;
+        }
+    }
+
+    /**
+     * 测试中用于模拟进程重启，其他情况使用 {@link #instance(Context)}
+     */
+    TransferJournal(File file) {
+        this.file = file;
+        synchronized (fileLock){
+            load();
+        }
+        synchronized (this){
+            if(shouldCompact()){
+                scheduleFlush(true);
+            }
+        }
+    }
+
+    public synchronized String getValue(String key) {
+        Checkpoint checkpoint = key != null ? checkpoints.get(key) : null;
+        return checkpoint != null ? checkpoint.value : null;
+    }
+
+    public synchronized void putValue(String key, String value) {
+        if(key == null) return;
+        applyValue(key, value);
+        try {
+            beginRecord(TYPE_VALUE, key);
+            writeString(recordOutput, value);
+            endRecord();
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+        scheduleFlush(true);
+    }
+
+    /**
+     * 记录已完成的分片，同一个分片编号以最后一次记录为准
+     */
+    public void addPart(String key, int partNumber, long offset, long length, String eTag) {
+        addPart(key, partNumber, offset, length, eTag, null);
+    }
+
+    /**
+     * 记录已完成的分片以及分片内容的校验值，同一个分片编号以最后一次记录为准
+     */
+    public synchronized void addPart(String key, int partNumber, long offset, long length, String eTag, String checksum) {
+        if(key == null) return;
+        Part part = new Part(partNumber, offset, length, eTag, checksum);
+        applyPart(key, part);
+        try {
+            beginRecord(TYPE_PART, key);
+            writePart(recordOutput, part);
+            endRecord();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        scheduleFlush(pending.size() >= FLUSH_THRESHOLD_BYTES);
+    }
+
+    /**
+     * @return 按分片编号排序的已完成分片
+     */
+    public synchronized List<Part> getParts(String key) {
+        Checkpoint checkpoint = key != null ? checkpoints.get(key) : null;
+        return checkpoint != null ? new ArrayList<>(checkpoint.parts.values()) : new ArrayList<Part>();
+    }
+
+    /**
+     * @return 以 prefix 开头并且有值的 key，按字典序排序
+     */
+    public synchronized List<String> getKeys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for(Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()){
+            if(entry.getValue().hasValue && entry.getKey().startsWith(prefix)){
+                keys.add(entry.getKey());
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * 删除 key 对应的值和分片
+     */
+    public synchronized void remove(String key) {
+        if(key == null || !checkpoints.containsKey(key)) return;
+        applyRemove(key);
+        try {
+            beginRecord(TYPE_REMOVE, key);
+            endRecord();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        scheduleFlush(true);
+    }
+
+    /**
+     * 将所有更新写入文件并 fsync，阻塞直到完成
+     */
+    public void sync() throws IOException {
+        synchronized (fileLock){
+            byte[] data;
+            boolean rewrite;
+            synchronized (this){
+                flushScheduled = false;
+                rewrite = rewriteRequired || shouldCompact();
+                if(rewrite){
+                    data = snapshot();
+                    records = liveRecords;
+                }else {
+                    data = pending.toByteArray();
+                }
+                pending.reset();
+            }
+            try {
+                if(rewrite){
+                    rewrite(data);
+                }else if(data.length > 0){
+                    if(output == null){
+                        openOutput();
+                    }
+                    output.write(data);
+                    output.getFD().sync();
+                    fileLength += data.length;
+                }
+                rewriteRequired = false;
+            } catch (IOException e) {
+                // 内存中的状态仍然完整，下次写入时整体重写
+                rewriteRequired = true;
+                closeOutput();
+                throw e;
+            }
+        }
+    }
+
+    private void applyValue(String key, String value) {
+        Checkpoint checkpoint = checkpoints.get(key);
+        if(checkpoint == null){
+            checkpoint = new Checkpoint();
+            checkpoints.put(key, checkpoint);
+        }
+        if(!checkpoint.hasValue){
+            checkpoint.hasValue = true;
+            liveRecords ++;
+        }
+        checkpoint.value = value;
+    }
+
+    private void applyPart(String key, Part part) {
+        Checkpoint checkpoint = checkpoints.get(key);
+        if(checkpoint == null){
+            checkpoint = new Checkpoint();
+            checkpoints.put(key, checkpoint);
+        }
+        if(checkpoint.parts.put(part.partNumber, part) == null){
+            liveRecords ++;
+        }
+    }
+
+    private void applyRemove(String key) {
+        Checkpoint checkpoint = checkpoints.remove(key);
+        if(checkpoint != null){
+            liveRecords -= (checkpoint.hasValue ? 1 : 0) + checkpoint.parts.size();
+        }
+    }
+
+    private void beginRecord(byte type, String key) throws IOException {
+        recordBuffer.reset();
+        recordOutput.writeByte(type);
+        writeString(recordOutput, key);
+    }
+
+    private void endRecord() throws IOException {
+        appendRecord(pendingOutput, recordBuffer.toByteArray());
+        records ++;
+    }
+
+    private void appendRecord(DataOutputStream out, byte[] body) throws IOException {
+        crc32.reset();
+        crc32.update(body, 0, body.length);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt((int) crc32.getValue());
+    }
+
+    private boolean shouldCompact() {
+        return records > 2 * liveRecords && fileLength + pending.size() > COMPACT_MIN_BYTES;
+    }
+
+    private void scheduleFlush(boolean immediately) {
+        if(flushScheduled && !immediately){
+            return;
+        }
+        flushScheduled = true;
+        flushExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sync();
+                } catch (IOException e) {
+                    QCloudLogger.w(TAG, e, "write transfer journal failed");
+                }
+            }
+        }, immediately ? 0 : FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor flushExecutor() {
+        if(flushExecutor == null){
+            flushExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "QCloud-TransferJournal");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return flushExecutor;
+    }
+
+    /**
+     * 当前状态对应的完整文件内容
+     */
+    private byte[] snapshot() {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(snapshot);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for(Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()){
+                Checkpoint checkpoint = entry.getValue();
+                if(checkpoint.hasValue){
+                    beginRecord(TYPE_VALUE, entry.getKey());
+                    writeString(recordOutput, checkpoint.value);
+                    appendRecord(out, recordBuffer.toByteArray());
+                }
+                for(Part part : checkpoint.parts.values()){
+                    beginRecord(TYPE_PART, entry.getKey());
+                    writePart(recordOutput, part);
+                    appendRecord(out, recordBuffer.toByteArray());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return snapshot.toByteArray();
+    }
+
+    private void rewrite(byte[] data) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream tempOutput = new FileOutputStream(tempFile);
+        try {
+            tempOutput.write(data);
+            tempOutput.getFD().sync();
+        } finally {
+            tempOutput.close();
+        }
+        closeOutput();
+        if(!tempFile.renameTo(file)){
+            throw new IOException("rename " + tempFile + " to " + file + " failed");
+        }
+        fileLength = data.length;
+    }
+
+    private void openOutput() throws IOException {
+        if(fileLength < HEADER_LENGTH){
+            File parent = file.getParentFile();
+            if(parent != null && !parent.exists()){
+                parent.mkdirs();
+            }
+            output = new FileOutputStream(file, false);
+            DataOutputStream header = new DataOutputStream(output);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            fileLength = HEADER_LENGTH;
+        }else {
+            output = new FileOutputStream(file, true);
+        }
+    }
+
+    private void closeOutput() {
+        if(output != null){
+            try {
+                output.close();
+            } catch (IOException ignore) {
+            }
+            output = null;
+        }
+    }
+
+    /**
+     * 读取所有完整的记录，并截掉末尾损坏的部分
+     */
+    private void load() {
+        if(!file.exists()){
+            return;
+        }
+        long valid = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if(in.readInt() != MAGIC || in.readInt() != VERSION){
+                throw new IOException("unknown journal format");
+            }
+            valid = HEADER_LENGTH;
+            CRC32 checksum = new CRC32();
+            while (true){
+                int length = in.readInt();
+                if(length <= 0 || length > MAX_RECORD_LENGTH){
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                int crc = in.readInt();
+                checksum.reset();
+                checksum.update(body, 0, length);
+                if(crc != (int) checksum.getValue()){
+                    break;
+                }
+                apply(body);
+                records ++;
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            // 文件末尾
+        } catch (IOException e) {
+            QCloudLogger.w(TAG, e, "read transfer journal failed");
+        } finally {
+            if(in != null){
+                try {
+                    in.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+        if(file.length() > valid && valid >= HEADER_LENGTH){
+            truncate(valid);
+        }
+        fileLength = valid;
+    }
+
+    private void apply(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        String key = readString(in);
+        switch (type){
+            case TYPE_VALUE:
+                applyValue(key, readString(in));
+                break;
+            case TYPE_PART:
+                int partNumber = in.readInt();
+                long offset = in.readLong();
+                long length = in.readLong();
+                String eTag = readString(in);
+                // 较早的分片记录没有校验值
+                String checksum = in.available() > 0 ? readString(in) : null;
+                applyPart(key, new Part(partNumber, offset, length, eTag, checksum));
+                break;
+            case TYPE_REMOVE:
+                applyRemove(key);
+                break;
+            default:
+                throw new IOException("unknown journal record " + type);
+        }
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.setLength(length);
+        } catch (IOException e) {
+            QCloudLogger.w(TAG, e, "truncate transfer journal failed");
+        } finally {
+            if(randomAccessFile != null){
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static void writePart(DataOutputStream out, Part part) throws IOException {
+        out.writeInt(part.partNumber);
+        out.writeLong(part.offset);
+        out.writeLong(part.length);
+        writeString(out, part.eTag);
+        writeString(out, part.checksum);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -8,6 +8,9 @@ import com.tencent.cos.xml.CosXmlSimpleService;
 import com.tencent.cos.xml.model.object.CopyObjectRequest;
 import com.tencent.cos.xml.model.object.GetObjectRequest;
 import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.qcloud.core.http.BandwidthLimiter;
+
+import java.io.InputStream;
 
 /**
  * Created by bradyxiao on 2018/8/22.
@@ -18,6 +21,7 @@ public class TransferManager{
 
     private CosXmlSimpleService cosXmlService;
     private TransferConfig transferConfig;
+    private BandwidthLimiter bandwidthLimiter;
 
     public TransferManager(CosXmlSimpleService cosXmlService, TransferConfig transferConfig){
         if(cosXmlService == null){
@@ -28,6 +32,15 @@ public class TransferManager{
         }
         this.cosXmlService = cosXmlService;
         this.transferConfig = transferConfig;
+        this.bandwidthLimiter = new BandwidthLimiter(transferConfig.bandwidthLimit);
+    }
+
+    /**
+     * 获取 TransferManager 的限速器，可以在传输过程中通过 {@link BandwidthLimiter#setBytesPerSecond(long)} 调整总带宽
+     * @return BandwidthLimiter
+     */
+    public BandwidthLimiter getBandwidthLimiter(){
+        return bandwidthLimiter;
     }
 
     /**
@@ -39,10 +52,20 @@ public class TransferManager{
      * @return COSXMLUploadTask
      */
     public COSXMLUploadTask upload(String bucket, String cosPath, String srcPath, String uploadId){
+        COSXMLUploadTask cosxmlUploadTask = newUploadTask(bucket, cosPath, srcPath, uploadId);
+        cosxmlUploadTask.upload();
+        return cosxmlUploadTask;
+    }
+
+    /**
+     * 创建但不开始上传任务
+     */
+    COSXMLUploadTask newUploadTask(String bucket, String cosPath, String srcPath, String uploadId){
         COSXMLUploadTask cosxmlUploadTask = new COSXMLUploadTask(cosXmlService, null, bucket, cosPath, srcPath, uploadId);
         cosxmlUploadTask.multiUploadSizeDivision = transferConfig.divisionForUpload; // 分片上传的界限
         cosxmlUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
-        cosxmlUploadTask.upload();
+        cosxmlUploadTask.deltaUpload = transferConfig.deltaUpload; // 增量上传
+        cosxmlUploadTask.bandwidthLimiter = new BandwidthLimiter(BandwidthLimiter.UNLIMITED, bandwidthLimiter);
         return cosxmlUploadTask;
     }
 
@@ -56,10 +79,29 @@ public class TransferManager{
         COSXMLUploadTask cosxmlUploadTask = new COSXMLUploadTask(cosXmlService, putObjectRequest, uploadId);
         cosxmlUploadTask.multiUploadSizeDivision = transferConfig.divisionForUpload; // 分片上传的界限
         cosxmlUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
+        cosxmlUploadTask.deltaUpload = transferConfig.deltaUpload; // 增量上传
+        cosxmlUploadTask.bandwidthLimiter = new BandwidthLimiter(BandwidthLimiter.UNLIMITED, bandwidthLimiter);
         cosxmlUploadTask.upload();
         return cosxmlUploadTask;
     }
 
+    /**
+     * 流式分片上传输入流，不会先将数据流缓存到本地临时文件
+     * @param bucket 存储桶
+     * @param cosPath 文件存放于存储桶上的位置
+     * @param inputStream 输入流，上传结束后会被关闭
+     * @param length 输入流的长度，未知时传 -1，仅用于进度回调
+     * @return COSXMLStreamUploadTask
+     */
+    public COSXMLStreamUploadTask upload(String bucket, String cosPath, InputStream inputStream, long length){
+        COSXMLStreamUploadTask cosxmlStreamUploadTask = new COSXMLStreamUploadTask(cosXmlService, null, bucket, cosPath,
+                inputStream, length);
+        cosxmlStreamUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
+        cosxmlStreamUploadTask.bandwidthLimiter = new BandwidthLimiter(BandwidthLimiter.UNLIMITED, bandwidthLimiter);
+        cosxmlStreamUploadTask.upload();
+        return cosxmlStreamUploadTask;
+    }
+
     /**
      * 下载文件
      * @param context app上下文
@@ -82,11 +124,22 @@ public class TransferManager{
      * @return COSXMLDownloadTask
      */
     public COSXMLDownloadTask download(Context context, String bucket, String cosPath, String savedDirPath, String savedFileName){
-        COSXMLDownloadTask cosxmlDownloadTask = new COSXMLDownloadTask(context, cosXmlService, null, bucket, cosPath, savedDirPath, savedFileName);
+        COSXMLDownloadTask cosxmlDownloadTask = newDownloadTask(context, bucket, cosPath, savedDirPath, savedFileName);
         cosxmlDownloadTask.download();
         return cosxmlDownloadTask;
     }
 
+    /**
+     * 创建但不开始下载任务
+     */
+    COSXMLDownloadTask newDownloadTask(Context context, String bucket, String cosPath, String savedDirPath, String savedFileName){
+        COSXMLDownloadTask cosxmlDownloadTask = new COSXMLDownloadTask(context, cosXmlService, null, bucket, cosPath, savedDirPath, savedFileName);
+        cosxmlDownloadTask.multiDownloadSizeDivision = transferConfig.divisionForDownload; // 分块并发下载的界限
+        cosxmlDownloadTask.sliceSize = transferConfig.sliceSizeForDownload; // 分块并发下载的分块大小
+        cosxmlDownloadTask.bandwidthLimiter = new BandwidthLimiter(BandwidthLimiter.UNLIMITED, bandwidthLimiter);
+        return cosxmlDownloadTask;
+    }
+
     /**
      * 下载文件
      * @param context app上下文
@@ -95,6 +148,9 @@ public class TransferManager{
      */
     public COSXMLDownloadTask download(Context context, GetObjectRequest getObjectRequest){
         COSXMLDownloadTask cosxmlDownloadTask = new COSXMLDownloadTask(context, cosXmlService, getObjectRequest);
+        cosxmlDownloadTask.multiDownloadSizeDivision = transferConfig.divisionForDownload; // 分块并发下载的界限
+        cosxmlDownloadTask.sliceSize = transferConfig.sliceSizeForDownload; // 分块并发下载的分块大小
+        cosxmlDownloadTask.bandwidthLimiter = new BandwidthLimiter(BandwidthLimiter.UNLIMITED, bandwidthLimiter);
         cosxmlDownloadTask.download();
         return cosxmlDownloadTask;
     }
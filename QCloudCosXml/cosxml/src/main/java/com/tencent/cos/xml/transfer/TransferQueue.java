@@ -0,0 +1,481 @@
+package com.tencent.cos.xml.transfer;
+
+import android.content.Context;
+
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.qcloud.core.common.QCloudClientException;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+import com.tencent.qcloud.core.task.TaskExecutors;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 持久化的传输队列，按加入顺序执行上传和下载，同时运行的任务数不超过 maxConcurrent。
+ * </p>
+ * 未完成的任务记录在 {@link TransferJournal} 中，进程重启后调用 {@link #start()} 恢复：
+ * 分片上传通过记录的 uploadId 和 ListParts 跳过已上传的分片，下载通过 {@link COSXMLDownloadTask} 的断点续传跳过已下载的部分。
+ * 任务成功、被取消或者因为不可重试的服务端错误（包括 404）失败后从队列中删除；客户端异常（例如网络不可用）以及服务端的
+ * 5xx、408、429 等可重试的错误导致失败时，任务保留在队列中，按指数退避稍后重新开始，累计失败 {@link #MAX_FAILURES} 次后删除。暂停的任务保留在队列中，但不占用并发数。
+ * 任务的状态通过 {@link Listener} 通知，不要再调用任务的 {@link COSXMLTask#setTransferStateListener(TransferStateListener)}。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public class TransferQueue {
+
+    private static final String TAG = "TransferQueue";
+
+    static final String KEY_PREFIX = "transfer_queue/";
+
+    private static final String TYPE_UPLOAD = "upload";
+    private static final String TYPE_DOWNLOAD = "download";
+
+    public interface Listener {
+
+        /**
+         * 任务即将开始，可以在这里设置进度和结果回调
+         */
+        void onStarted(long id, COSXMLTask task);
+
+        /**
+         * 任务状态变化，COMPLETED 和 CANCELED 之后任务已经从队列中删除；FAILED 之后如果 {@link #contains(long)}
+         * 仍返回 true，任务会稍后重试。本地文件无效导致任务无法创建时，task 为 null，state 为 FAILED
+         */
+        void onStateChanged(long id, COSXMLTask task, TransferState state);
+    }
+
+    private static final class Entry {
+
+        final long id;
+        final JSONObject record;
+        COSXMLTask task;
+        boolean running;
+        // 累计失败的次数（记录在日志中，进程重启后继续累计）和下次重试的时间
+        int failures;
+        long retryAt;
+
+        Entry(long id, JSONObject record) {
+            this.id = id;
+            this.record = record;
+            this.failures = record.optInt("failures");
+        }
+    }
+
+    private final Context context;
+    private final TransferManager transferManager;
+    private final TransferJournal journal;
+    private final int maxConcurrent;
+    /** 第一次重试前等待的时间，之后每次失败加倍 */
+    long retryDelayMillis = 2000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5 * 60 * 1000;
+    /** 可重试的错误累计达到该次数后不再重试 */
+    static final int MAX_FAILURES = 10;
+    private static ScheduledThreadPoolExecutor retryExecutor;
+
+    // 按 id 顺序排列的未完成任务
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    private long nextId = 1;
+    private int runningCount;
+    private boolean started;
+    private boolean drainScheduled;
+    private volatile Listener listener;
+
+    public TransferQueue(Context context, TransferManager transferManager, int maxConcurrent) {
+        this(context, transferManager, TransferJournal.instance(context), maxConcurrent);
+    }
+
+    TransferQueue(Context context, TransferManager transferManager, TransferJournal journal, int maxConcurrent) {
+        if(transferManager == null){
+            throw new IllegalArgumentException("TransferManager is null");
+        }
+        if(maxConcurrent <= 0){
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        this.context = context.getApplicationContext();
+        this.transferManager = transferManager;
+        this.journal = journal;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 恢复上次进程退出时未完成的任务并开始执行，只有第一次调用有效
+     */
+    public void start() {
+        synchronized (this){
+            if(started) return;
+            started = true;
+            List<Entry> restored = new ArrayList<>();
+            for(String key : journal.getKeys(KEY_PREFIX)){
+                long id;
+                JSONObject record;
+                try {
+                    id = Long.parseLong(key.substring(KEY_PREFIX.length()));
+                    record = new JSONObject(journal.getValue(key));
+                } catch (NumberFormatException | JSONException e) {
+                    QCloudLogger.w(TAG, "drop invalid entry " + key);
+                    journal.remove(key);
+                    continue;
+                }
+                restored.add(new Entry(id, record));
+                nextId = Math.max(nextId, id + 1);
+            }
+            for(Entry entry : restored){
+                if(TYPE_UPLOAD.equals(entry.record.optString("type"))){
+                    checkSourceFile(entry);
+                }
+                entries.put(entry.id, entry);
+            }
+            if(!restored.isEmpty()){
+                QCloudLogger.i(TAG, "restored " + restored.size() + " transfers");
+            }
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 加入上传任务
+     * @return 任务在队列中的 id
+     */
+    public long enqueueUpload(String bucket, String cosPath, String srcPath) {
+        File file = new File(srcPath);
+        JSONObject record = new JSONObject();
+        try {
+            record.put("type", TYPE_UPLOAD);
+            record.put("bucket", bucket);
+            record.put("cosPath", cosPath);
+            record.put("srcPath", srcPath);
+            record.put("fileLength", file.length());
+            record.put("lastModified", file.lastModified());
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return enqueue(record);
+    }
+
+    /**
+     * 加入下载任务
+     * @param savedFileName 为 null 时使用 cosPath 中的文件名
+     * @return 任务在队列中的 id
+     */
+    public long enqueueDownload(String bucket, String cosPath, String savedDirPath, String savedFileName) {
+        JSONObject record = new JSONObject();
+        try {
+            record.put("type", TYPE_DOWNLOAD);
+            record.put("bucket", bucket);
+            record.put("cosPath", cosPath);
+            record.put("savedDirPath", savedDirPath);
+            record.put("savedFileName", savedFileName);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return enqueue(record);
+    }
+
+    /**
+     * @return 正在执行或者暂停的任务，还没有开始或者已经结束时返回 null
+     */
+    public synchronized COSXMLTask getTask(long id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.task : null;
+    }
+
+    /**
+     * @return 任务是否还在队列中（包括等待重试的任务）
+     */
+    public synchronized boolean contains(long id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * @return 未完成的任务数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 取消任务并从队列中删除
+     */
+    public void cancel(long id) {
+        COSXMLTask task;
+        synchronized (this){
+            Entry entry = entries.get(id);
+            if(entry == null) return;
+            task = entry.task;
+            if(task == null){
+                remove(entry);
+            }
+        }
+        if(task != null){
+            // 状态变为 CANCELED 后在回调中删除
+            task.cancel();
+        }
+    }
+
+    private long enqueue(JSONObject record) {
+        long id;
+        synchronized (this){
+            id = nextId ++;
+            entries.put(id, new Entry(id, record));
+            journal.putValue(key(id), record.toString());
+        }
+        scheduleDrain();
+        return id;
+    }
+
+    /**
+     * 本地文件在进程退出后被修改时，已上传的分片不再有效，重新上传
+     */
+    private void checkSourceFile(Entry entry) {
+        File file = new File(entry.record.optString("srcPath"));
+        if(entry.record.has("uploadId") && (file.length() != entry.record.optLong("fileLength")
+                || file.lastModified() != entry.record.optLong("lastModified"))){
+            entry.record.remove("uploadId");
+            try {
+                entry.record.put("fileLength", file.length());
+                entry.record.put("lastModified", file.lastModified());
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+            journal.putValue(key(entry.id), entry.record.toString());
+        }
+    }
+
+    private void scheduleDrain() {
+        synchronized (this){
+            if(!started || drainScheduled) return;
+            drainScheduled = true;
+        }
+        // 在独立的线程中启动任务，避免在其他任务的状态回调（持有该任务的锁）中启动新的任务
+        TaskExecutors.COMMAND_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    private void drain() {
+        List<Entry> toStart = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this){
+            drainScheduled = false;
+            for(Entry entry : entries.values()){
+                if(runningCount >= maxConcurrent) break;
+                // 等待重试的任务不阻塞之后的任务
+                if(entry.task == null && entry.retryAt <= now){
+                    entry.running = true;
+                    runningCount ++;
+                    toStart.add(entry);
+                }
+            }
+        }
+        for(Entry entry : toStart){
+            startEntry(entry);
+        }
+    }
+
+    private void startEntry(final Entry entry) {
+        JSONObject record = entry.record;
+        String bucket = record.optString("bucket");
+        String cosPath = record.optString("cosPath");
+        COSXMLTask task;
+        try {
+            if(TYPE_UPLOAD.equals(record.optString("type"))){
+                COSXMLUploadTask uploadTask = transferManager.newUploadTask(bucket, cosPath,
+                        record.optString("srcPath"), record.optString("uploadId", null));
+                uploadTask.setOnUploadIdListener(new COSXMLUploadTask.OnUploadIdListener() {
+                    @Override
+                    public void onUploadId(String uploadId) {
+                        saveUploadId(entry, uploadId);
+                    }
+                });
+                task = uploadTask;
+            }else {
+                task = transferManager.newDownloadTask(context, bucket, cosPath,
+                        record.optString("savedDirPath"), record.optString("savedFileName", null));
+            }
+            synchronized (this){
+                entry.task = task;
+            }
+            Listener listener = this.listener;
+            if(listener != null){
+                listener.onStarted(entry.id, task);
+            }
+            final COSXMLTask startedTask = task;
+            task.setTransferStateListener(new TransferStateListener() {
+                @Override
+                public void onStateChanged(TransferState state) {
+                    onTaskStateChanged(entry, startedTask, state);
+                }
+            });
+            if(task instanceof COSXMLUploadTask){
+                ((COSXMLUploadTask) task).upload();
+            }else {
+                ((COSXMLDownloadTask) task).download();
+            }
+        } catch (IllegalArgumentException e) {
+            QCloudLogger.w(TAG, "drop transfer " + entry.id + ": " + e.getMessage());
+            synchronized (this){
+                entry.task = null;
+                remove(entry);
+            }
+            Listener listener = this.listener;
+            if(listener != null){
+                listener.onStateChanged(entry.id, null, TransferState.FAILED);
+            }
+            scheduleDrain();
+        }
+    }
+
+    private void onTaskStateChanged(Entry entry, COSXMLTask task, TransferState state) {
+        boolean drain = false;
+        synchronized (this){
+            // 失败后已经由新的任务重试
+            if(entry.task != task) return;
+            switch (state){
+                case COMPLETED:
+                case CANCELED:
+                    remove(entry);
+                    drain = true;
+                    break;
+                case FAILED:
+                    Exception exception = task.getException();
+                    boolean upload = TYPE_UPLOAD.equals(entry.record.optString("type"));
+                    if(entries.containsKey(entry.id) && isRetryable(exception, upload)
+                            && entry.failures + 1 < MAX_FAILURES){
+                        retryLater(entry, exception);
+                    }else {
+                        remove(entry);
+                    }
+                    drain = true;
+                    break;
+                case PAUSED:
+                    if(entry.running){
+                        entry.running = false;
+                        runningCount --;
+                        drain = true;
+                    }
+                    break;
+                case IN_PROGRESS:
+                    // 暂停后恢复的任务重新占用并发数
+                    if(!entry.running && entries.containsKey(entry.id)){
+                        entry.running = true;
+                        runningCount ++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        Listener listener = this.listener;
+        if(listener != null && state != TransferState.WAITING){
+            listener.onStateChanged(entry.id, task, state);
+        }
+        if(drain){
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 客户端异常（网络不可用、校验失败等）以及服务端的 5xx、408、429 错误可以重试，其他服务端错误（例如对象或存储桶
+     * 不存在的 404）重试也不会成功。上传的 uploadId 失效（NoSuchUpload）时去掉 uploadId 重新开始
+     */
+    static boolean isRetryable(Exception exception, boolean upload) {
+        if(exception instanceof CosXmlServiceException){
+            CosXmlServiceException serviceException = (CosXmlServiceException) exception;
+            int statusCode = serviceException.getStatusCode();
+            return statusCode >= 500 || statusCode == 408 || statusCode == 429
+                    || upload && UploadManifest.isNoSuchUpload(serviceException);
+        }
+        if(exception instanceof QCloudClientException){
+            return ((QCloudClientException) exception).isRetryable();
+        }
+        return true;
+    }
+
+    private void retryLater(Entry entry, Exception exception) {
+        if(entry.running){
+            entry.running = false;
+            runningCount --;
+        }
+        entry.task = null;
+        if(exception instanceof CosXmlServiceException
+                && UploadManifest.isNoSuchUpload((CosXmlServiceException) exception)){
+            entry.record.remove("uploadId");
+        }
+        long delay = Math.min(retryDelayMillis << Math.min(entry.failures, 16), MAX_RETRY_DELAY_MILLIS);
+        entry.failures ++;
+        try {
+            entry.record.put("failures", entry.failures);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        journal.putValue(key(entry.id), entry.record.toString());
+        entry.retryAt = System.currentTimeMillis() + delay;
+        QCloudLogger.i(TAG, "retry transfer " + entry.id + " in " + delay + "ms");
+        retryExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                scheduleDrain();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor retryExecutor() {
+        if(retryExecutor == null){
+            retryExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "QCloud-TransferQueue");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return retryExecutor;
+    }
+
+    private synchronized void saveUploadId(Entry entry, String uploadId) {
+        if(!entries.containsKey(entry.id)) return;
+        try {
+            entry.record.put("uploadId", uploadId);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        journal.putValue(key(entry.id), entry.record.toString());
+    }
+
+    private void remove(Entry entry) {
+        if(entries.remove(entry.id) == null) return;
+        if(entry.running){
+            entry.running = false;
+            runningCount --;
+        }
+        journal.remove(key(entry.id));
+    }
+
+    private static String key(long id) {
+        // 补齐位数，保证字典序与 id 顺序一致
+        String value = Long.toString(id);
+        StringBuilder builder = new StringBuilder(KEY_PREFIX);
+        for(int i = value.length(); i < 19; i ++){
+            builder.append('0');
+        }
+        return builder.append(value).toString();
+    }
+}
@@ -0,0 +1,352 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.tag.ListParts;
+import com.tencent.cos.xml.utils.DigestUtils;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>
+ * 分片上传的本地清单，保存在 {@link TransferJournal} 中：值为 uploadId 以及记录时源文件的长度和修改时间，
+ * 分片为每个已上传分片的 ETag 和内容的校验值（ETag 是内容 MD5 时为 MD5，否则为上传时计算的 CRC64），
+ * 记录时不需要再次读取本地文件。
+ * </p>
+ * 续传时源文件没有变化，直接采用清单中的分片；源文件发生了变化，只有本地内容与记录的校验值一致的分片才会被采用，
+ * 其余分片重新上传。清单中没有记录的分片（例如最近完成、还没有落盘的分片）与服务端返回的 ETag 比较。
+ * </p>
+ * <p>
+ * 增量上传时，分片上传完成后清单转存为对象清单（值为对象的 ETag 和完成时间），下次上传同一对象时内容与对象清单一致的分片
+ * 通过 UploadPartCopy 从已有对象复制，不再上传数据。对象清单最多保留 {@link #MAX_OBJECT_MANIFESTS} 个，
+ * 超出时删除最早完成的；复制时发现已有对象已经变化，删除该对象清单。
+ * </p>
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+final class UploadManifest {
+
+    private static final String TAG = "UploadManifest";
+
+    /** CRC64 校验值的前缀，没有前缀的校验值为 MD5 */
+    private static final String CRC64_PREFIX = "crc64:";
+
+    private static final String OBJECT_KEY_PREFIX = "object;";
+
+    /** 最多保留的对象清单个数 */
+    static final int MAX_OBJECT_MANIFESTS = 100;
+
+    private final TransferJournal journal;
+    private final String key;
+    private final String srcPath;
+
+    UploadManifest(TransferJournal journal, String key, String srcPath) {
+        this.journal = journal;
+        this.key = key;
+        this.srcPath = srcPath;
+    }
+
+    /**
+     * 清单的 key，不包含源文件的长度和修改时间，源文件修改后仍然可以找到之前的分片
+     */
+    static String key(CosXmlSimpleService cosXmlService, String bucket, String cosPath, String srcPath, long sliceSize) {
+        String appid = cosXmlService != null ? cosXmlService.getAppid() : null;
+        return appid + ";" + bucket + ";" + cosPath + ";" + srcPath + ";" + sliceSize;
+    }
+
+    /**
+     * 对象清单的 key，与源文件路径无关：同一对象换用其他文件上传时，内容相同的分片仍然可以复用
+     */
+    static String objectKey(CosXmlSimpleService cosXmlService, String bucket, String cosPath, long sliceSize) {
+        String appid = cosXmlService != null ? cosXmlService.getAppid() : null;
+        return OBJECT_KEY_PREFIX + appid + ";" + bucket + ";" + cosPath + ";" + sliceSize;
+    }
+
+    /**
+     * @return 清单对应的 uploadId，没有记录时返回 null
+     */
+    String getUploadId() {
+        String value = journal.getValue(key);
+        if(value == null) return null;
+        int index = value.indexOf(';');
+        return index >= 0 ? value.substring(0, index) : value;
+    }
+
+    /**
+     * 开始新的分片上传，清除之前记录的分片
+     */
+    void begin(String uploadId) {
+        journal.remove(key);
+        journal.putValue(key, encode(uploadId, new File(srcPath)));
+    }
+
+    /**
+     * 记录上传成功的分片。分片的 ETag 是内容的 MD5 时直接使用，否则使用上传时计算并且已经与服务端核对过的 CRC64，
+     * 都没有时不记录校验值（源文件变化后该分片重新上传）
+     * @param crc64 分片的 CRC64（无符号十进制），未知时为 null
+     */
+    void addUploadedPart(int partNumber, long offset, long length, String eTag, String crc64) {
+        String checksum = md5FromETag(eTag);
+        if(checksum == null && crc64 != null){
+            checksum = CRC64_PREFIX + crc64;
+        }
+        journal.addPart(key, partNumber, offset, length, eTag, checksum);
+    }
+
+    /**
+     * 记录从已有对象复制的分片，校验值沿用对象清单中的记录
+     */
+    void addCopiedPart(int partNumber, long offset, long length, String eTag, String checksum) {
+        journal.addPart(key, partNumber, offset, length, eTag, checksum);
+    }
+
+    void clear() {
+        journal.remove(key);
+    }
+
+    /**
+     * 分片上传完成，将清单中的分片转存为对象清单，并清除续传清单
+     * @param objectKey 对象清单的 key
+     * @param objectETag 完成分片上传返回的对象 ETag，为 null 时只清除之前的对象清单
+     */
+    void complete(String objectKey, String objectETag) {
+        List<TransferJournal.Part> parts = journal.getParts(key);
+        journal.remove(objectKey);
+        if(objectETag != null){
+            journal.putValue(objectKey, objectETag + ";" + System.currentTimeMillis());
+            for(TransferJournal.Part part : parts){
+                if(part.checksum != null){
+                    journal.addPart(objectKey, part.partNumber, part.offset, part.length, null, part.checksum);
+                }
+            }
+            evictObjectManifests();
+        }
+        journal.remove(key);
+    }
+
+    /**
+     * 已有对象已经被覆盖或者删除，删除对象清单，之后上传该对象时不再尝试复制
+     */
+    void removeObject(String objectKey) {
+        journal.remove(objectKey);
+    }
+
+    /**
+     * @return 对象清单记录的对象 ETag，没有对象清单时返回 null
+     */
+    String getObjectETag(String objectKey) {
+        String value = journal.getValue(objectKey);
+        if(value == null) return null;
+        int index = value.lastIndexOf(';');
+        return index >= 0 ? value.substring(0, index) : value;
+    }
+
+    /**
+     * 对象清单超过上限时删除最早完成的
+     */
+    private void evictObjectManifests() {
+        List<String> objectKeys = journal.getKeys(OBJECT_KEY_PREFIX);
+        int excess = objectKeys.size() - MAX_OBJECT_MANIFESTS;
+        if(excess <= 0) return;
+        final Map<String, Long> completedAt = new HashMap<>();
+        for(String objectKey : objectKeys){
+            completedAt.put(objectKey, completedAt(journal.getValue(objectKey)));
+        }
+        Collections.sort(objectKeys, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                long l = completedAt.get(lhs), r = completedAt.get(rhs);
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for(int i = 0; i < excess; i ++){
+            journal.remove(objectKeys.get(i));
+        }
+        QCloudLogger.i(TAG, "evict " + excess + " object manifests");
+    }
+
+    /**
+     * @return 对象清单的完成时间，没有记录时返回 0
+     */
+    private static long completedAt(String value) {
+        int index = value != null ? value.lastIndexOf(';') : -1;
+        if(index < 0) return 0;
+        try {
+            return Long.parseLong(value.substring(index + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 找出内容与对象清单中分片一致、可以从已有对象复制的分片。只比较偏移和长度都相同的分片，
+     * 在文件中间插入或者删除数据后，之后的分片都需要重新上传
+     * @param objectKey 对象清单的 key
+     * @param slicePartTable 按当前文件长度划分的分片，已上传的分片不再比较
+     * @return 分片编号到对象清单中分片的映射
+     */
+    Map<Integer, TransferJournal.Part> findUnchangedParts(String objectKey, SlicePartTable slicePartTable) {
+        Map<Integer, TransferJournal.Part> unchanged = new HashMap<>();
+        if(journal.getValue(objectKey) == null) return unchanged;
+        int compared = 0;
+        for(TransferJournal.Part part : journal.getParts(objectKey)){
+            int partNumber = part.partNumber;
+            if(partNumber < 1 || partNumber > slicePartTable.getPartCount() || slicePartTable.isUploaded(partNumber)
+                    || part.offset != slicePartTable.getOffset(partNumber)
+                    || part.length != slicePartTable.getSliceSize(partNumber)){
+                continue;
+            }
+            compared ++;
+            if(matches(part.checksum, part.offset, part.length)){
+                unchanged.put(partNumber, part);
+            }
+        }
+        QCloudLogger.i(TAG, "delta upload reuses " + unchanged.size() + " of " + compared + " parts");
+        return unchanged;
+    }
+
+    /**
+     * 找出续传时可以直接采用的分片，并使清单与结果一致
+     * @param uploadId 续传的 uploadId
+     * @param slicePartTable 按当前文件长度划分的分片
+     * @param serverParts ListParts 的结果，为 null 时只使用清单中记录的分片
+     * @return 可以采用的分片，offset 和 length 与 slicePartTable 一致
+     */
+    List<TransferJournal.Part> restore(String uploadId, SlicePartTable slicePartTable, List<ListParts.Part> serverParts) {
+        File file = new File(srcPath);
+        String value = journal.getValue(key);
+        boolean sameUpload = value != null && uploadId.equals(getUploadId());
+        boolean unchanged = sameUpload && value.equals(encode(uploadId, file));
+
+        Map<Integer, TransferJournal.Part> recorded = new HashMap<>();
+        if(sameUpload){
+            for(TransferJournal.Part part : journal.getParts(key)){
+                recorded.put(part.partNumber, part);
+            }
+        }
+        List<TransferJournal.Part> candidates = new ArrayList<>();
+        if(serverParts != null){
+            for(ListParts.Part part : serverParts){
+                try {
+                    int partNumber = Integer.parseInt(part.partNumber);
+                    candidates.add(new TransferJournal.Part(partNumber, slicePartTable.getOffset(partNumber),
+                            Long.parseLong(part.size), part.eTag, null));
+                } catch (NumberFormatException e) {
+                    // 无法识别的分片重新上传
+                }
+            }
+        }else {
+            candidates.addAll(recorded.values());
+        }
+
+        List<TransferJournal.Part> restored = new ArrayList<>();
+        int verified = 0;
+        for(TransferJournal.Part candidate : candidates){
+            int partNumber = candidate.partNumber;
+            if(partNumber < 1 || partNumber > slicePartTable.getPartCount()
+                    || candidate.offset != slicePartTable.getOffset(partNumber)
+                    || candidate.length != slicePartTable.getSliceSize(partNumber)){
+                continue;
+            }
+            TransferJournal.Part part = recorded.get(partNumber);
+            if(part != null && (part.offset != candidate.offset || part.length != candidate.length
+                    || (part.eTag == null ? candidate.eTag != null : !part.eTag.equals(candidate.eTag)))){
+                // 清单中的记录属于同一编号的旧分片
+                part = null;
+            }
+            String checksum = part != null ? part.checksum : null;
+            if(!unchanged || part == null){
+                // 只在源文件变化或者清单中没有记录时读取本地文件
+                String expected = checksum != null ? checksum : md5FromETag(candidate.eTag);
+                if(!matches(expected, candidate.offset, candidate.length)){
+                    continue;
+                }
+                checksum = expected;
+                verified ++;
+            }
+            restored.add(new TransferJournal.Part(partNumber, candidate.offset, candidate.length,
+                    candidate.eTag, checksum));
+        }
+
+        if(!unchanged){
+            journal.remove(key);
+            journal.putValue(key, encode(uploadId, file));
+        }
+        for(TransferJournal.Part part : restored){
+            if(!unchanged || !recorded.containsKey(part.partNumber)){
+                journal.addPart(key, part.partNumber, part.offset, part.length, part.eTag, part.checksum);
+            }
+        }
+        QCloudLogger.i(TAG, "restore " + restored.size() + " of " + candidates.size()
+                + " parts, " + verified + " verified from local file");
+        return restored;
+    }
+
+    /**
+     * 读取本地文件，检查 [offset, offset + length) 部分是否与校验值一致
+     */
+    private boolean matches(String checksum, long offset, long length) {
+        if(checksum == null) return false;
+        try {
+            if(checksum.startsWith(CRC64_PREFIX)){
+                return checksum.substring(CRC64_PREFIX.length()).equals(DigestUtils.getCRC64(srcPath, offset, length));
+            }
+            return checksum.equals(DigestUtils.getMD5(srcPath, offset, length));
+        } catch (CosXmlClientException e) {
+            QCloudLogger.w(TAG, e, "read " + srcPath + " failed");
+            return false;
+        }
+    }
+
+    /**
+     * uploadId 已经被终止或者过期，清单中的分片不再可用。只认 NoSuchUpload 错误码，
+     * NoSuchBucket 等其他 404 错误重新开始分片上传也无法成功
+     */
+    static boolean isNoSuchUpload(CosXmlServiceException serviceException) {
+        return serviceException != null && "NoSuchUpload".equals(serviceException.getErrorCode());
+    }
+
+    /**
+     * UploadPartCopy 的 If-Match 条件不满足或者源对象不存在，已有对象与对象清单不一致
+     */
+    static boolean isSourceChanged(CosXmlServiceException serviceException) {
+        return serviceException != null && (serviceException.getStatusCode() == 412
+                || "PreconditionFailed".equals(serviceException.getErrorCode())
+                || "NoSuchKey".equals(serviceException.getErrorCode()));
+    }
+
+    private static String encode(String uploadId, File file) {
+        return uploadId + ";" + file.length() + ";" + file.lastModified();
+    }
+
+    /**
+     * 未加密的分片的 ETag 是带引号的内容 MD5
+     * @return ETag 不是 MD5 格式时返回 null
+     */
+    static String md5FromETag(String eTag) {
+        if(eTag == null) return null;
+        String value = eTag;
+        if(value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")){
+            value = value.substring(1, value.length() - 1);
+        }
+        if(value.length() != 32){
+            return null;
+        }
+        for(int i = 0; i < value.length(); i ++){
+            if(Character.digit(value.charAt(i), 16) < 0){
+                return null;
+            }
+        }
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+}
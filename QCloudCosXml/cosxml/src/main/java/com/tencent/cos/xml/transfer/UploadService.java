@@ -22,16 +22,17 @@ import com.tencent.cos.xml.model.object.PutObjectResult;
 import com.tencent.cos.xml.model.object.UploadPartRequest;
 import com.tencent.cos.xml.model.object.UploadPartResult;
 import com.tencent.cos.xml.model.tag.ListParts;
-import com.tencent.cos.xml.utils.SharePreferenceUtils;
+import com.tencent.qcloud.core.http.BandwidthLimiter;
 import com.tencent.qcloud.core.logger.QCloudLogger;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -50,8 +51,10 @@ public class UploadService {
     private long fileLength;
     private static final long SIZE_LIMIT = 2 * 1024 * 1024;
     private CosXmlProgressListener cosXmlProgressListener;
-    private Map<Integer, SlicePartStruct> partStructMap;
+    private SlicePartTable slicePartTable;
     private AtomicInteger UPLOAD_PART_COUNT;
+    /** 正在上传的分片个数 */
+    private int uploadingPartCount;
     private AtomicLong ALREADY_SEND_DATA_LEN;
     private volatile int ERROR_EXIT_FLAG; //  0(init),1(normal exception),2(manual pause),3(abort)
     private byte[] objectSync = new byte[0];
@@ -61,16 +64,21 @@ public class UploadService {
     private ListPartsRequest listPartsRequest;
     private CompleteMultiUploadRequest completeMultiUploadRequest;
     private PutObjectRequest putObjectRequest;
+    /** 用于查询流量控制状态，分片请求都发往同一个 host */
+    private CosXmlRequest trafficRequest;
     private UploadServiceResult uploadServiceResult;
     private long startTime = -1L;
     private long endTime = -1L;
     ResumeData resumeData;
     private List<String> headers = new ArrayList<>();
     private boolean isNeedMd5 = false;
-    private SharePreferenceUtils sharePreferenceUtils;
+    private TransferJournal transferJournal;
+    /** 本次分片上传在 transferJournal 中的清单 */
+    private UploadManifest uploadManifest;
     private OnUploadInfoListener onUploadInfoListener;
     private EncryptionType encryptionType = EncryptionType.NONE;
     private boolean isSupportAccelerate = false;
+    private BandwidthLimiter bandwidthLimiter;
 
     public UploadService(CosXmlSimpleService cosXmlService, ResumeData resumeData){
         this.cosXmlService = cosXmlService;
@@ -81,10 +89,10 @@ public class UploadService {
     public UploadService(CosXmlSimpleService cosXmlService, String bucket, String cosPath, String srcPath, long sliceSize, Context context){
         String uploadId = null;
         if(context != null){
-            sharePreferenceUtils = SharePreferenceUtils.instance(context.getApplicationContext());
+            transferJournal = TransferJournal.instance(context);
             String key = getKey(cosXmlService, bucket, cosPath, srcPath, sliceSize);
             if(key != null){
-               uploadId = sharePreferenceUtils.getValue(key);
+               uploadId = new UploadManifest(transferJournal, key, srcPath).getUploadId();
             }
         }
         ResumeData resumeData = new ResumeData();
@@ -100,27 +108,39 @@ public class UploadService {
     String getKey(CosXmlSimpleService cosXmlService, String bucket, String cosPath, String srcPath, long sliceSize){
         File file = new File(srcPath);
         if(file.exists()){
-            StringBuffer stringBuffer = new StringBuffer();
-            String appid = cosXmlService != null ? cosXmlService.getAppid() : null;
-            stringBuffer.append(appid).append(";").append(bucket).append(";").append(cosPath).append(";")
-                    .append(srcPath).append(";").append(file.length()).append(";").append(file.lastModified()).append(";")
-                    .append(sliceSize);
-            return stringBuffer.toString();
+            return UploadManifest.key(cosXmlService, bucket, cosPath, srcPath, sliceSize);
         }
         return null;
     }
 
-    void clearSharePreference(){
-        if(sharePreferenceUtils != null){
-            sharePreferenceUtils.clear(getKey(cosXmlService, bucket, cosPath, srcPath, sliceSize));
+    void clearCheckpoint(){
+        if(uploadManifest != null){
+            uploadManifest.clear();
         }
     }
 
-    boolean updateSharePreference(String value){
-        if(sharePreferenceUtils != null){
-            return sharePreferenceUtils.updateValue(getKey(cosXmlService, bucket, cosPath, srcPath, sliceSize), value);
+    /**
+     * 根据 ListParts 返回的分片恢复已上传的分片，源文件在上次上传之后被修改时，只采用内容没有变化的分片。
+     */
+    private void restoreParts(List<ListParts.Part> serverParts){
+        if(uploadManifest == null){
+            // 没有本地清单，信任服务端返回的分片
+            if(serverParts != null){
+                for(ListParts.Part part : serverParts){
+                    if(slicePartTable.markUploaded(Integer.valueOf(part.partNumber), part.eTag)){
+                        UPLOAD_PART_COUNT.decrementAndGet();
+                        ALREADY_SEND_DATA_LEN.addAndGet(Long.parseLong(part.size));
+                    }
+                }
+            }
+            return;
+        }
+        for(TransferJournal.Part part : uploadManifest.restore(uploadId, slicePartTable, serverParts)){
+            if(slicePartTable.markUploaded(part.partNumber, part.eTag)){
+                UPLOAD_PART_COUNT.decrementAndGet();
+                ALREADY_SEND_DATA_LEN.addAndGet(part.length);
+            }
         }
-        return false;
     }
 
     void init(ResumeData resumeData){
@@ -132,8 +152,9 @@ public class UploadService {
         UPLOAD_PART_COUNT = new AtomicInteger(0);
         ALREADY_SEND_DATA_LEN = new AtomicLong(0);
         ERROR_EXIT_FLAG = 0;
-        partStructMap = new LinkedHashMap<Integer, SlicePartStruct>();
-        uploadPartRequestLongMap = new LinkedHashMap<UploadPartRequest, Long>();
+        slicePartTable = null;
+        uploadingPartCount = 0;
+        uploadPartRequestLongMap = new ConcurrentHashMap<UploadPartRequest, Long>();
         this.resumeData = resumeData;
     }
 
@@ -197,6 +218,13 @@ public class UploadService {
         }
     }
 
+    /**
+     * 设置上传的限速器，可以在上传过程中通过 {@link BandwidthLimiter#setBytesPerSecond(long)} 调整速率
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter){
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
     public void setProgressListener(CosXmlProgressListener cosXmlProgressListener){
         this.cosXmlProgressListener = cosXmlProgressListener;
     }
@@ -258,7 +286,6 @@ public class UploadService {
         initMultipartUploadRequest = null;
         listPartsRequest = null;
         completeMultiUploadRequest = null;
-        partStructMap.clear();
         uploadPartRequestLongMap.clear();
     }
 
@@ -269,6 +296,7 @@ public class UploadService {
         UPLOAD_PART_COUNT.set(1);
         putObjectRequest = new PutObjectRequest(bucket, cosPath, srcPath);
         putObjectRequest.setProgressListener(cosXmlProgressListener);
+        putObjectRequest.setBandwidthLimiter(bandwidthLimiter);
         setSignTime(putObjectRequest);
         setRequestHeaders(putObjectRequest);
         setSupportAccelerate(putObjectRequest);
@@ -333,13 +361,34 @@ public class UploadService {
 
     private UploadServiceResult multiUploadParts() throws CosXmlClientException, CosXmlServiceException {
         initSlicePart();
+        String key = transferJournal != null ? getKey(cosXmlService, bucket, cosPath, srcPath, sliceSize) : null;
+        uploadManifest = key != null ? new UploadManifest(transferJournal, key, srcPath) : null;
+        ListPartsResult listPartsResult = null;
         if(uploadId != null){
-            ListPartsResult listPartsResult = listPart();
+            // 总是通过 ListParts 确认 uploadId 仍然有效，清单只用于检查分片内容
+            try {
+                listPartsResult = listPart();
+            } catch (CosXmlServiceException e) {
+                if(!UploadManifest.isNoSuchUpload(e)){
+                    throw e;
+                }
+                // uploadId 已经被终止或者过期，重新初始化分片上传
+                clearCheckpoint();
+                uploadId = null;
+            }
+        }
+        if(listPartsResult != null){
+            trafficRequest = listPartsRequest;
             //breakpoint transmission
-            updateSlicePart(listPartsResult);
+            List<ListParts.Part> parts = listPartsResult.listParts != null ? listPartsResult.listParts.parts : null;
+            restoreParts(parts != null ? parts : Collections.<ListParts.Part>emptyList());
         }else {
             InitMultipartUploadResult initMultipartUploadResult = initMultiUpload();
+            trafficRequest = initMultipartUploadRequest;
             uploadId = initMultipartUploadResult.initMultipartUpload.uploadId;
+            if(uploadManifest != null){
+                uploadManifest.begin(uploadId);
+            }
         }
         if(onUploadInfoListener != null){
             ResumeData resumeData = new ResumeData();
@@ -353,42 +402,17 @@ public class UploadService {
             resumeData.jsonContentForSSEKMS = this.resumeData.jsonContentForSSEKMS;
             onUploadInfoListener.onInfo(resumeData);
         }
-        updateSharePreference(uploadId);
-
-        for(final Map.Entry<Integer, SlicePartStruct> entry : partStructMap.entrySet()){
-            final SlicePartStruct slicePartStruct = entry.getValue();
-            if(!slicePartStruct.isAlreadyUpload){
-                uploadPart(slicePartStruct.partNumber, slicePartStruct.offset, slicePartStruct.sliceSize,
-                        new CosXmlResultListener() {
-                            @Override
-                            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                                synchronized (objectSync){
-                                    slicePartStruct.eTag = ((UploadPartResult)result).eTag;
-                                    slicePartStruct.isAlreadyUpload = true;
-                                }
-                                UPLOAD_PART_COUNT.decrementAndGet();
-                            }
-
-                            @Override
-                            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                                synchronized (objectSync){
-                                    if(exception != null){
-                                        mException = exception;
-                                    }else{
-                                        mException = serviceException;
-                                    }
-                                    ERROR_EXIT_FLAG = 1;
-                                }
-                            }
-                        });
-            }
-        }
+        dispatchUploadPart();
 
         //wait upload parts complete.
         while (UPLOAD_PART_COUNT.get() > 0 && ERROR_EXIT_FLAG == 0);
 
-        //clear sharePreference
-        clearSharePreference();
+        //clear checkpoint, 暂停和失败时保留清单用于续传，uploadId 失效时清除
+        if(ERROR_EXIT_FLAG == 0 || ERROR_EXIT_FLAG == 3 || (ERROR_EXIT_FLAG == 1
+                && mException instanceof CosXmlServiceException
+                && UploadManifest.isNoSuchUpload((CosXmlServiceException) mException))){
+            clearCheckpoint();
+        }
 
         //if error throw exception
         if(ERROR_EXIT_FLAG > 0){
@@ -414,6 +438,7 @@ public class UploadService {
             }
         }
         CompleteMultiUploadResult completeMultiUploadResult = completeMultiUpload();
+        slicePartTable.verifyCrc64(completeMultiUploadResult.crc64);
         if(uploadServiceResult == null)uploadServiceResult = new UploadServiceResult();
         uploadServiceResult.httpCode = completeMultiUploadResult.httpCode;
         uploadServiceResult.httpMessage = completeMultiUploadResult.httpMessage;
@@ -423,6 +448,60 @@ public class UploadService {
         return uploadServiceResult;
     }
 
+    /**
+     * 滑动窗口：正在上传的分片个数不超过流量控制允许的并发数，每完成一个分片再发出下一个
+     */
+    private void dispatchUploadPart(){
+        // 多保留一个排队的分片，避免流量控制放行时没有请求可发
+        int windowSize = cosXmlService.getUploadConcurrent(trafficRequest) + 1;
+        while (true){
+            int partNumber;
+            synchronized (objectSync){
+                if(ERROR_EXIT_FLAG > 0 || uploadingPartCount >= windowSize){
+                    return;
+                }
+                partNumber = slicePartTable.nextPendingPart();
+                if(partNumber < 0){
+                    return;
+                }
+                uploadingPartCount ++;
+            }
+            final int uploadPartNumber = partNumber;
+            final long offset = slicePartTable.getOffset(partNumber);
+            final long sliceSize = slicePartTable.getSliceSize(partNumber);
+            uploadPart(partNumber, offset, sliceSize,
+                    new CosXmlResultListener() {
+                        @Override
+                        public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                            uploadPartRequestLongMap.remove(request);
+                            String eTag = ((UploadPartResult)result).eTag;
+                            synchronized (objectSync){
+                                uploadingPartCount --;
+                                slicePartTable.markUploaded(uploadPartNumber, eTag, ((UploadPartResult)result).crc64);
+                            }
+                            if(uploadManifest != null){
+                                uploadManifest.addUploadedPart(uploadPartNumber, offset, sliceSize, eTag,
+                                        ((UploadPartResult)result).crc64);
+                            }
+                            UPLOAD_PART_COUNT.decrementAndGet();
+                            dispatchUploadPart();
+                        }
+
+                        @Override
+                        public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                            synchronized (objectSync){
+                                if(exception != null){
+                                    mException = exception;
+                                }else{
+                                    mException = serviceException;
+                                }
+                                ERROR_EXIT_FLAG = 1;
+                            }
+                        }
+                    });
+        }
+    }
+
     /**
      * init multi,then get uploadId
      */
@@ -464,6 +543,7 @@ public class UploadService {
             cosXmlResultListener.onFail(putObjectRequest, e, null);
             return;
         }
+        uploadPartRequest.setBandwidthLimiter(bandwidthLimiter);
         uploadPartRequest.setProgressListener(new CosXmlProgressListener() {
             @Override
             public void onProgress(long complete, long target) {
@@ -492,10 +572,7 @@ public class UploadService {
     private CompleteMultiUploadResult completeMultiUpload() throws CosXmlServiceException, CosXmlClientException {
         completeMultiUploadRequest = new CompleteMultiUploadRequest(bucket, cosPath,
                 uploadId, null);
-        for(Map.Entry<Integer, SlicePartStruct> entry : partStructMap.entrySet()){
-            SlicePartStruct slicePartStruct = entry.getValue();
-            completeMultiUploadRequest.setPartNumberAndETag(slicePartStruct.partNumber, slicePartStruct.eTag);
-        }
+        slicePartTable.fillPartNumberAndETag(completeMultiUploadRequest);
         setSignTime(completeMultiUploadRequest);
         setRequestHeaders(completeMultiUploadRequest);
         setSupportAccelerate(completeMultiUploadRequest);
@@ -562,45 +639,13 @@ public class UploadService {
             fileLength = file.length();
         }
         if(fileLength > 0 && sliceSize > 0){
-            int count = (int) (fileLength / sliceSize);
-            int i = 1;
-            for(; i < count; ++ i){
-                SlicePartStruct slicePartStruct = new SlicePartStruct();
-                slicePartStruct.isAlreadyUpload = false;
-                slicePartStruct.partNumber = i;
-                slicePartStruct.offset = (i - 1) * sliceSize;
-                slicePartStruct.sliceSize = sliceSize;
-                partStructMap.put(i, slicePartStruct);
-            }
-            SlicePartStruct slicePartStruct = new SlicePartStruct();
-            slicePartStruct.isAlreadyUpload = false;
-            slicePartStruct.partNumber = i;
-            slicePartStruct.offset = (i - 1) * sliceSize;
-            slicePartStruct.sliceSize = fileLength - slicePartStruct.offset;
-            partStructMap.put(i, slicePartStruct);
-            UPLOAD_PART_COUNT.set(i);
+            slicePartTable = new SlicePartTable(fileLength, sliceSize);
+            UPLOAD_PART_COUNT.set(slicePartTable.getPartCount());
             return;
         }
         throw new CosXmlClientException("file size or slice size less than 0");
     }
 
-    private void updateSlicePart(ListPartsResult listPartsResult){
-        if(listPartsResult != null && listPartsResult.listParts != null){
-            List<ListParts.Part> parts = listPartsResult.listParts.parts;
-            if(parts != null){
-                for(ListParts.Part part : parts){
-                    if(partStructMap.containsKey(Integer.valueOf(part.partNumber))){
-                        SlicePartStruct slicePartStruct = partStructMap.get(Integer.valueOf(part.partNumber));
-                        slicePartStruct.isAlreadyUpload = true;
-                        slicePartStruct.eTag = part.eTag;
-                        UPLOAD_PART_COUNT.decrementAndGet();
-                        ALREADY_SEND_DATA_LEN.addAndGet(Long.parseLong(part.size));
-                    }
-                }
-            }
-        }
-    }
-
     public static class ResumeData {
         public String bucket;
         public String cosPath;
@@ -612,14 +657,6 @@ public class UploadService {
         public String jsonContentForSSEKMS;
     }
 
-    private static class SlicePartStruct{
-        public int partNumber;
-        public boolean isAlreadyUpload;
-        public long offset;
-        public long sliceSize;
-        public String eTag;
-    }
-
     public static class UploadServiceResult extends CosXmlResult{
         public String eTag;
 
@@ -8,6 +8,7 @@ import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 
 /**
@@ -26,6 +27,24 @@ public class XmlSlimBuilder {
         xmlSerializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
         xmlSerializer.startDocument("UTF-8", null);
 
+        serializeCompleteMultipartUpload(xmlSerializer, completeMultipartUpload);
+
+        xmlSerializer.endDocument();
+        return removeXMLHeader(xmlContent.toString());
+    }
+
+    /**
+     * 以 UTF-8 编码直接写入 outputStream，内容与 {@link #buildCompleteMultipartUpload(CompleteMultipartUpload)} 相同
+     */
+    public static void buildCompleteMultipartUpload(CompleteMultipartUpload completeMultipartUpload, OutputStream outputStream) throws IOException, XmlPullParserException {
+        if (completeMultipartUpload == null)return;
+
+        XmlSerializer xmlSerializer = newStreamingSerializer(outputStream);
+        serializeCompleteMultipartUpload(xmlSerializer, completeMultipartUpload);
+        xmlSerializer.endDocument();
+    }
+
+    private static void serializeCompleteMultipartUpload(XmlSerializer xmlSerializer, CompleteMultipartUpload completeMultipartUpload) throws IOException {
         xmlSerializer.startTag("", "CompleteMultipartUpload");
         if(completeMultipartUpload.parts != null){
             for(CompleteMultipartUpload.Part part : completeMultipartUpload.parts){
@@ -37,9 +56,17 @@ public class XmlSlimBuilder {
             }
         }
         xmlSerializer.endTag("", "CompleteMultipartUpload");
+    }
 
-        xmlSerializer.endDocument();
-        return removeXMLHeader(xmlContent.toString());
+    /**
+     * 写入输出流的 XmlSerializer，不输出 XML 声明
+     */
+    protected static XmlSerializer newStreamingSerializer(OutputStream outputStream) throws IOException, XmlPullParserException {
+        XmlPullParserFactory xmlPullParserFactory = XmlPullParserFactory.newInstance();
+        XmlSerializer xmlSerializer = xmlPullParserFactory.newSerializer();
+        xmlSerializer.setOutput(outputStream, "UTF-8");
+        xmlSerializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        return xmlSerializer;
     }
 
     private static void addElement(XmlSerializer xmlSerializer, String tag, String value) throws IOException {
@@ -75,95 +75,120 @@ public class XmlSlimParser {
         }
     }
 
+    private static final TagNames LIST_PARTS_TAGS = new TagNames("Bucket", "Encoding-type", "Key", "UploadId",
+            "Owner", "Initiator", "ID", "DisplayName", "PartNumberMarker", "StorageClass", "NextPartNumberMarker",
+            "MaxParts", "IsTruncated", "Part", "PartNumber", "LastModified", "ETag", "Size");
+
     public static void parseListPartsResult(InputStream inputStream, ListParts result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        result.parts = new ArrayList<ListParts.Part>();
-        ListParts.Owner owner = null;
-        ListParts.Initiator initiator = null;
-        ListParts.Part part = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        result.bucket = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Encoding-type")){
-                        xmlPullParser.next();
-                        result.encodingType = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        result.key = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("UploadId")){
-                        xmlPullParser.next();
-                        result.uploadId = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Owner")){
-                        owner = new ListParts.Owner();
-                    }else if(tagName.equalsIgnoreCase("Initiator")){
-                        initiator = new ListParts.Initiator();
-                    }else if(tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.id = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.id = xmlPullParser.getText();
+        XmlPullParser xmlPullParser = obtainPullParser(inputStream);
+        try {
+            int eventType = xmlPullParser.getEventType();
+            String tagName;
+            result.parts = new ArrayList<ListParts.Part>();
+            ListParts.Owner owner = null;
+            ListParts.Initiator initiator = null;
+            ListParts.Part part = null;
+            while (eventType != XmlPullParser.END_DOCUMENT){
+                if(eventType == XmlPullParser.START_TAG){
+                    tagName = LIST_PARTS_TAGS.canonical(xmlPullParser.getName());
+                    if(tagName != null){
+                        switch (tagName){
+                            case "Bucket":
+                                xmlPullParser.next();
+                                result.bucket = xmlPullParser.getText();
+                                break;
+                            case "Encoding-type":
+                                xmlPullParser.next();
+                                result.encodingType = xmlPullParser.getText();
+                                break;
+                            case "Key":
+                                xmlPullParser.next();
+                                result.key = xmlPullParser.getText();
+                                break;
+                            case "UploadId":
+                                xmlPullParser.next();
+                                result.uploadId = xmlPullParser.getText();
+                                break;
+                            case "Owner":
+                                owner = new ListParts.Owner();
+                                break;
+                            case "Initiator":
+                                initiator = new ListParts.Initiator();
+                                break;
+                            case "ID":
+                                xmlPullParser.next();
+                                if(owner != null){
+                                    owner.id = xmlPullParser.getText();
+                                }else if(initiator != null){
+                                    initiator.id = xmlPullParser.getText();
+                                }
+                                break;
+                            case "DisplayName":
+                                xmlPullParser.next();
+                                if(owner != null){
+                                    owner.disPlayName = xmlPullParser.getText();
+                                }else if(initiator != null){
+                                    initiator.disPlayName= xmlPullParser.getText();
+                                }
+                                break;
+                            case "PartNumberMarker":
+                                xmlPullParser.next();
+                                result.partNumberMarker = xmlPullParser.getText();
+                                break;
+                            case "StorageClass":
+                                xmlPullParser.next();
+                                result.storageClass = xmlPullParser.getText();
+                                break;
+                            case "NextPartNumberMarker":
+                                xmlPullParser.next();
+                                result.nextPartNumberMarker = xmlPullParser.getText();
+                                break;
+                            case "MaxParts":
+                                xmlPullParser.next();
+                                result.maxParts = xmlPullParser.getText();
+                                break;
+                            case "IsTruncated":
+                                xmlPullParser.next();
+                                result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
+                                break;
+                            case "Part":
+                                part = new ListParts.Part();
+                                break;
+                            case "PartNumber":
+                                xmlPullParser.next();
+                                part.partNumber = xmlPullParser.getText();
+                                break;
+                            case "LastModified":
+                                xmlPullParser.next();
+                                part.lastModified = xmlPullParser.getText();
+                                break;
+                            case "ETag":
+                                xmlPullParser.next();
+                                part.eTag = xmlPullParser.getText();
+                                break;
+                            case "Size":
+                                xmlPullParser.next();
+                                part.size = xmlPullParser.getText();
+                                break;
                         }
-                    }else if(tagName.equalsIgnoreCase("DisplayName")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.disPlayName = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.disPlayName= xmlPullParser.getText();
-                        }
-                    }else if(tagName.equalsIgnoreCase("PartNumberMarker")){
-                        xmlPullParser.next();
-                        result.partNumberMarker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        result.storageClass = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("NextPartNumberMarker")){
-                        xmlPullParser.next();
-                        result.nextPartNumberMarker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("MaxParts")){
-                        xmlPullParser.next();
-                        result.maxParts = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("IsTruncated")){
-                        xmlPullParser.next();
-                        result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("Part")){
-                        part = new ListParts.Part();
-                    }else if(tagName.equalsIgnoreCase("PartNumber")){
-                        xmlPullParser.next();
-                        part.partNumber = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("LastModified")){
-                        xmlPullParser.next();
-                        part.lastModified = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        part.eTag = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Size")){
-                        xmlPullParser.next();
-                        part.size = xmlPullParser.getText();
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Owner")){
+                }else if(eventType == XmlPullParser.END_TAG){
+                    tagName = LIST_PARTS_TAGS.canonical(xmlPullParser.getName());
+                    if("Owner".equals(tagName)){
                         result.owner = owner;
                         owner = null;
-                    }else if(tagName.equalsIgnoreCase("Initiator")){
+                    }else if("Initiator".equals(tagName)){
                         result.initiator = initiator;
                         initiator = null;
-                    }else if(tagName.equalsIgnoreCase("Part")){
+                    }else if("Part".equals(tagName)){
                         result.parts.add(part);
                         part = null;
                     }
-                    break;
+                }
+                eventType = xmlPullParser.next();
             }
-            eventType = xmlPullParser.next();
+        } finally {
+            recyclePullParser(xmlPullParser);
         }
     }
 
@@ -248,4 +273,34 @@ public class XmlSlimParser {
             eventType = xmlPullParser.next();
         }
     }
+
+    // 每个线程复用一个解析器，避免每次响应都重新创建
+    private static final ThreadLocal<XmlPullParser> PULL_PARSERS = new ThreadLocal<>();
+
+    /**
+     * 获取当前线程复用的解析器并设置输入，解析结束后需要调用 {@link #recyclePullParser(XmlPullParser)}
+     */
+    protected static XmlPullParser obtainPullParser(InputStream inputStream) throws XmlPullParserException {
+        XmlPullParser xmlPullParser = PULL_PARSERS.get();
+        if(xmlPullParser == null){
+            xmlPullParser = Xml.newPullParser();
+        }else {
+            // 解析过程中再次解析时不复用
+            PULL_PARSERS.set(null);
+        }
+        xmlPullParser.setInput(inputStream, "UTF-8");
+        return xmlPullParser;
+    }
+
+    /**
+     * 释放解析器对输入流的引用，放回当前线程
+     */
+    protected static void recyclePullParser(XmlPullParser xmlPullParser) {
+        try {
+            xmlPullParser.setInput(null);
+        } catch (XmlPullParserException e) {
+            return;
+        }
+        PULL_PARSERS.set(xmlPullParser);
+    }
 }
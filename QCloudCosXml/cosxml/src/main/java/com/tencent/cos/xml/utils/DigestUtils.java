@@ -4,11 +4,13 @@ import android.text.TextUtils;
 import android.util.Base64;
 
 import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.qcloud.core.util.CRC64;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.security.InvalidKeyException;
@@ -52,6 +54,67 @@ public class DigestUtils {
         return md5;
     }
 
+    /**
+     * 计算文件中 [offset, offset + length) 部分的 MD5
+     */
+    public static String getMD5(String filePath, long offset, long length) throws CosXmlClientException {
+        if(filePath == null) throw new CosXmlClientException("file Path is null");
+        String md5;
+        RandomAccessFile randomAccessFile = null;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            randomAccessFile = new RandomAccessFile(filePath, "r");
+            randomAccessFile.seek(offset);
+            byte[] buffer = new byte[1024 * 32];
+            long remaining = length;
+            while (remaining > 0){
+                int len = randomAccessFile.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if(len == -1){
+                    throw new CosXmlClientException("file is shorter than " + (offset + length));
+                }
+                messageDigest.update(buffer, 0, len);
+                remaining -= len;
+            }
+            md5 = StringUtils.toHexString(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new CosXmlClientException(e);
+        } catch (IOException e) {
+            throw new CosXmlClientException(e);
+        }finally {
+            CloseUtil.closeQuietly(randomAccessFile);
+        }
+        return md5;
+    }
+
+    /**
+     * 计算文件中 [offset, offset + length) 部分的 CRC64
+     * @return 无符号十进制表示
+     */
+    public static String getCRC64(String filePath, long offset, long length) throws CosXmlClientException {
+        if(filePath == null) throw new CosXmlClientException("file Path is null");
+        RandomAccessFile randomAccessFile = null;
+        try {
+            CRC64 crc64 = new CRC64();
+            randomAccessFile = new RandomAccessFile(filePath, "r");
+            randomAccessFile.seek(offset);
+            byte[] buffer = new byte[1024 * 32];
+            long remaining = length;
+            while (remaining > 0){
+                int len = randomAccessFile.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if(len == -1){
+                    throw new CosXmlClientException("file is shorter than " + (offset + length));
+                }
+                crc64.update(buffer, 0, len);
+                remaining -= len;
+            }
+            return CRC64.toUnsignedString(crc64.getValue());
+        } catch (IOException e) {
+            throw new CosXmlClientException(e);
+        }finally {
+            CloseUtil.closeQuietly(randomAccessFile);
+        }
+    }
+
     public static String getSha1(String content) throws CosXmlClientException {
         String sha1;
         try {
@@ -248,7 +248,7 @@ public class GenerateGetObjectURLUtils {
         return getSign(httpMethod, cosPath, headers, queryParameters, signTime, keyTime, secretId, signKey);
     }
 
-    private static String[] sort(Map<String, String> maps, boolean isHeader) throws CosXmlClientException {
+    static String[] sort(Map<String, String> maps, boolean isHeader) throws CosXmlClientException {
         if(maps == null) return null;
         Map<String, Object> temp = new LinkedHashMap<>();
         if(isHeader){
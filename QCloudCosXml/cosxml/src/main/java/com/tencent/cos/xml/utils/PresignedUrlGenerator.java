@@ -0,0 +1,291 @@
+package com.tencent.cos.xml.utils;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.qcloud.core.auth.AuthConstants;
+import com.tencent.qcloud.core.auth.Utils;
+import com.tencent.qcloud.core.task.TaskExecutors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 批量生成带签名的下载 url，适合一次需要生成大量 url 的场景，例如图片列表。
+ * <p>
+ * 与 {@link GenerateGetObjectURLUtils#getObjectUrlWithSign} 生成的 url 格式相同，区别在于：
+ * signKey 在 keyTime 有效期内只计算一次；headers 和参数的排序、编码只在创建时计算一次；
+ * 生成的 url 会被缓存，直到临近过期；批量生成时会使用多个线程并行计算。
+ * </p>
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public class PresignedUrlGenerator {
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    // 提前更新的时长上限，单位秒，url 剩余有效期不足时不再使用缓存
+    private static final long MAX_REFRESH_MARGIN = 60;
+
+    // 超过该数量才并行生成
+    private static final int PARALLEL_THRESHOLD = 32;
+
+    private final boolean isHttps;
+    private final String appid;
+    private final String region;
+    private final long signDuration;
+    private final GenerateGetObjectURLUtils.QCloudAPI qCloudAPI;
+
+    /** 排好序的 header 和参数，[0] 为名称列表，[1] 为参与签名的字符串，为空表示不签 */
+    private final String[] sortedHeaders;
+    private final String[] sortedQueryParameters;
+
+    private SignKey signKey;
+
+    private final Map<String, CachedUrl> cache;
+
+    /**
+     * @param isHttps true: https请求； false: http请求
+     * @param appid 用户的appid
+     * @param region bucket所在的园区
+     * @param signDuration 签名的有效期，单位秒
+     * @param headers 签名中需要验证的header, 不验证填写 null
+     * @param queryParameters 签名中需要验证的url中的请求参数, 不验证填写 null
+     * @param qCloudAPI 云api(密钥）
+     * @throws CosXmlClientException
+     */
+    public PresignedUrlGenerator(boolean isHttps, String appid, String region, long signDuration,
+                                 Map<String, String> headers, Map<String, String> queryParameters,
+                                 GenerateGetObjectURLUtils.QCloudAPI qCloudAPI) throws CosXmlClientException {
+        if(qCloudAPI == null){
+            throw new CosXmlClientException("qCloudAPI must not be null");
+        }
+        if(signDuration <= 0){
+            throw new CosXmlClientException("signDuration must be positive");
+        }
+        this.isHttps = isHttps;
+        this.appid = appid;
+        this.region = region;
+        this.signDuration = signDuration;
+        this.qCloudAPI = qCloudAPI;
+        this.sortedHeaders = headers != null && headers.size() > 0 ?
+                GenerateGetObjectURLUtils.sort(headers, true) : null;
+        this.sortedQueryParameters = queryParameters != null && queryParameters.size() > 0 ?
+                GenerateGetObjectURLUtils.sort(queryParameters, false) : null;
+        this.cache = new LinkedHashMap<String, CachedUrl>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUrl> eldest) {
+                return size() > DEFAULT_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * 生成带签名的下载 url，未过期时直接返回缓存的结果
+     * @param bucket 存储桶 bucekt
+     * @param cosPath 请求的cos路径
+     * @return 带签名的下载 url
+     * @throws CosXmlClientException
+     */
+    public String getObjectUrlWithSign(String bucket, String cosPath) throws CosXmlClientException {
+        return getObjectUrlWithSign(newBatch(), bucket, cosPath);
+    }
+
+    /**
+     * 批量生成同一个存储桶中多个对象的带签名下载 url
+     * @param bucket 存储桶 bucekt
+     * @param cosPaths 请求的cos路径
+     * @return 带签名的下载 url，与 cosPaths 一一对应
+     * @throws CosXmlClientException
+     */
+    public List<String> getObjectUrlsWithSign(final String bucket, final List<String> cosPaths) throws CosXmlClientException {
+        final int size = cosPaths.size();
+        final String[] urls = new String[size];
+        final Batch batch = newBatch();
+
+        if(size < PARALLEL_THRESHOLD){
+            for(int i = 0; i < size; i ++){
+                urls[i] = getObjectUrlWithSign(batch, bucket, cosPaths.get(i));
+            }
+            return Arrays.asList(urls);
+        }
+
+        final AtomicInteger next = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(size);
+        final AtomicReference<CosXmlClientException> error = new AtomicReference<>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < size){
+                    try {
+                        urls[index] = getObjectUrlWithSign(batch, bucket, cosPaths.get(index));
+                    } catch (CosXmlClientException e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        // 调用线程也参与计算，线程池繁忙时不会因为等待而阻塞
+        int helpers = Math.min(Runtime.getRuntime().availableProcessors(), size / PARALLEL_THRESHOLD) - 1;
+        for(int i = 0; i < helpers; i ++){
+            try {
+                TaskExecutors.COMMAND_EXECUTOR.execute(worker);
+            }catch (RejectedExecutionException e){
+                break;
+            }
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            throw new CosXmlClientException(e);
+        }
+        if(error.get() != null){
+            throw error.get();
+        }
+        return Arrays.asList(urls);
+    }
+
+    /**
+     * 清除缓存的 url
+     */
+    public void clearCache(){
+        synchronized (cache){
+            cache.clear();
+        }
+    }
+
+    private String getObjectUrlWithSign(Batch batch, String bucket, String cosPath) throws CosXmlClientException {
+        if(StringUtils.isEmpty(cosPath)){
+            throw new CosXmlClientException("cosPath must not be null");
+        }
+        String cacheKey = bucket + "\n" + cosPath;
+        CachedUrl cachedUrl;
+        synchronized (cache){
+            cachedUrl = cache.get(cacheKey);
+        }
+        if(cachedUrl != null && batch.now < cachedUrl.expiredTime - refreshMargin()){
+            return cachedUrl.url;
+        }
+
+        if(!cosPath.startsWith("/")){
+            cosPath = "/" + cosPath;
+        }
+
+        // 添加method、path、parameters、header，得到formatString
+        StringBuilder builder = new StringBuilder(128);
+        builder.append("get\n").append(cosPath).append("\n");
+        if(sortedQueryParameters != null){
+            builder.append(sortedQueryParameters[1]);
+        }
+        builder.append("\n");
+        if(sortedHeaders != null){
+            builder.append(sortedHeaders[1]);
+        }
+        builder.append("\n");
+        String formatStringSha1 = Utils.encodeHexString(Utils.sha1(builder.toString()));
+
+        builder.setLength(0);
+        builder.append("sha1\n").append(batch.signTime).append("\n").append(formatStringSha1).append("\n");
+        byte[] hmacSha1 = Utils.hmacSha1(builder.toString(), batch.signKey.signKey);
+        if(hmacSha1 == null){
+            throw new CosXmlClientException("calculate signature failed");
+        }
+
+        String url = GenerateGetObjectURLUtils.getObjectUrl(isHttps, appid, bucket, region, cosPath)
+                + "?sign=" + batch.encodedAuthorizationPrefix + Utils.encodeHexString(hmacSha1);
+        synchronized (cache){
+            cache.put(cacheKey, new CachedUrl(url, batch.expiredTime));
+        }
+        return url;
+    }
+
+    private long refreshMargin(){
+        return Math.min(MAX_REFRESH_MARGIN, signDuration / 4);
+    }
+
+    /**
+     * 同一批 url 使用相同的 signTime 和 signKey，authorization 中除签名外的部分只需要拼接和编码一次
+     */
+    private Batch newBatch() throws CosXmlClientException {
+        long current = System.currentTimeMillis() / 1000;
+        SignKey key = getSignKey(current);
+        long expired = Math.min(current + signDuration, key.expiredTime);
+        String signTime = current + ";" + expired;
+
+        StringBuilder authorization = new StringBuilder();
+        authorization.append(AuthConstants.Q_SIGN_ALGORITHM).append("=").append(AuthConstants.SHA1).append("&")
+                .append(AuthConstants.Q_AK).append("=").append(key.secretId).append("&")
+                .append(AuthConstants.Q_SIGN_TIME).append("=").append(signTime).append("&")
+                .append(AuthConstants.Q_KEY_TIME).append("=").append(key.keyTime).append("&")
+                .append(AuthConstants.Q_HEADER_LIST).append("=").append(sortedHeaders != null ? sortedHeaders[0] : "").append("&")
+                .append(AuthConstants.Q_URL_PARAM_LIST).append("=").append(sortedQueryParameters != null ? sortedQueryParameters[0] : "").append("&")
+                .append(AuthConstants.Q_SIGNATURE).append("=");
+        return new Batch(current, expired, signTime, key,
+                URLEncodeUtils.cosPathEncode(authorization.toString()));
+    }
+
+    /**
+     * keyTime 剩余有效期不足一个签名有效期时重新计算 signKey
+     */
+    private synchronized SignKey getSignKey(long current) throws CosXmlClientException {
+        if(signKey == null || current + Math.min(signDuration, MAX_REFRESH_MARGIN) > signKey.expiredTime){
+            long keyDuration = qCloudAPI.getKeyDuration();
+            if(keyDuration <= 0) keyDuration = signDuration;
+            long expired = current + keyDuration;
+            String keyTime = current + ";" + expired;
+            String key = DigestUtils.getHmacSha1(keyTime, qCloudAPI.getSecretKey());
+            signKey = new SignKey(qCloudAPI.getSecretId(), keyTime, key, expired);
+        }
+        return signKey;
+    }
+
+    private static class SignKey {
+        final String secretId;
+        final String keyTime;
+        final String signKey;
+        final long expiredTime;
+
+        SignKey(String secretId, String keyTime, String signKey, long expiredTime) {
+            this.secretId = secretId;
+            this.keyTime = keyTime;
+            this.signKey = signKey;
+            this.expiredTime = expiredTime;
+        }
+    }
+
+    private static class Batch {
+        final long now;
+        final long expiredTime;
+        final String signTime;
+        final SignKey signKey;
+        final String encodedAuthorizationPrefix;
+
+        Batch(long now, long expiredTime, String signTime, SignKey signKey, String encodedAuthorizationPrefix) {
+            this.now = now;
+            this.expiredTime = expiredTime;
+            this.signTime = signTime;
+            this.signKey = signKey;
+            this.encodedAuthorizationPrefix = encodedAuthorizationPrefix;
+        }
+    }
+
+    private static class CachedUrl {
+        final String url;
+        final long expiredTime;
+
+        CachedUrl(String url, long expiredTime) {
+            this.url = url;
+            this.expiredTime = expiredTime;
+        }
+    }
+}
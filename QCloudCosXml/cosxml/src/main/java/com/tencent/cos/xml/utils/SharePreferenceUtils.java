@@ -5,8 +5,9 @@ import android.content.SharedPreferences;
 
 /**
  * Created by bradyxiao on 2018/3/20.
+ * @deprecated 传输断点已改为保存在 {@link com.tencent.cos.xml.transfer.TransferJournal} 中
  */
-
+@Deprecated
 public class SharePreferenceUtils {
     private SharedPreferences sharedPreferences;
     private static SharePreferenceUtils instance;
@@ -0,0 +1,345 @@
+package com.tencent.cos.xml;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectRequest;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectResult;
+import com.tencent.cos.xml.model.tag.DeleteResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 批量删除大量对象：从迭代器中读取 key，凑满一批即发起一个 DeleteMultiObject 请求，同时保持多批请求在进行中。
+ * </p>
+ * 请求使用 Quiet 模式，只返回删除失败的 key。失败的 key 如果是可重试的错误，会在退避之后放入后续的批次中重试，
+ * 超过重试次数或者不可重试时通过 {@link Listener#onFailed(String, String, String)} 回调；
+ * 整个请求因网络或服务端 5xx 错误失败时整批重试，因权限等原因失败时停止删除并抛出异常。
+ * 请求在每次删除专用的线程中同步执行，线程数即同时进行的请求数，不占用 SDK 命令线程池。回调在请求线程中执行。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class BulkDeleter {
+
+    // 单个 DeleteMultiObject 请求最多删除的对象个数
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long BASE_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private static final String CLIENT_ERROR_CODE = "ClientError";
+
+    private final CosXmlSimpleService cosXmlService;
+    private final String bucket;
+
+    private int batchSize = MAX_BATCH_SIZE;
+    private int maxInflight = 4;
+    private int maxRetries = 3;
+    private Listener listener;
+
+    // 按重试时间排序
+    private final PriorityQueue<Entry> retryQueue = new PriorityQueue<>(16, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return lhs.retryAt < rhs.retryAt ? -1 : (lhs.retryAt == rhs.retryAt ? 0 : 1);
+        }
+    });
+    // 执行删除请求的线程，每次删除时创建
+    private ThreadPoolExecutor executor;
+    private int inflight;
+    private long deletedCount;
+    private long failedCount;
+    private CosXmlServiceException fatalException;
+
+    /**
+     * 删除失败的回调
+     */
+    public interface Listener {
+
+        /**
+         * @param key 删除失败的对象
+         * @param code 错误码，请求未能发出时为 ClientError
+         * @param message 错误信息
+         */
+        void onFailed(String key, String code, String message);
+    }
+
+    public BulkDeleter(CosXmlSimpleService cosXmlService, String bucket) {
+        this.cosXmlService = cosXmlService;
+        this.bucket = bucket;
+    }
+
+    /**
+     * 每批删除的对象个数，默认 1000
+     */
+    public BulkDeleter setBatchSize(int batchSize) {
+        if(batchSize < 1 || batchSize > MAX_BATCH_SIZE){
+            throw new IllegalArgumentException("batch size must be in [1, " + MAX_BATCH_SIZE + "]");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 同时进行的请求个数，默认 4
+     */
+    public BulkDeleter setMaxInflight(int maxInflight) {
+        if(maxInflight < 1){
+            throw new IllegalArgumentException("max inflight must be positive");
+        }
+        this.maxInflight = maxInflight;
+        return this;
+    }
+
+    /**
+     * 每个 key 最多的重试次数，默认 3
+     */
+    public BulkDeleter setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+        return this;
+    }
+
+    public BulkDeleter setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * 删除 keys 中的所有对象，阻塞直到全部完成。keys 可以是 {@link ListBucketIterator} 等按需产生 key 的迭代器。
+     * 同一个实例不能同时执行多次删除。
+     *
+     * @param keys 需要删除的对象
+     * @return 删除成功的对象个数
+     * @throws CosXmlServiceException 出现不可重试的请求错误时抛出，此时已经发出的请求会执行完
+     */
+    public long delete(Iterator<String> keys) throws CosXmlServiceException {
+        synchronized (this) {
+            retryQueue.clear();
+            inflight = 0;
+            deletedCount = 0;
+            failedCount = 0;
+            fatalException = null;
+            executor = new ThreadPoolExecutor(maxInflight, maxInflight, 5L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "QCloud-BulkDelete-" + bucket);
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        try {
+            return deleteAll(keys);
+        } finally {
+            // 已经发出的请求执行完后线程退出
+            synchronized (this) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private long deleteAll(Iterator<String> keys) throws CosXmlServiceException {
+        boolean sourceDone = false;
+        while (true) {
+            List<Entry> batch = new ArrayList<>(batchSize);
+            synchronized (this) {
+                while (true) {
+                    if(fatalException != null){
+                        // 等待已经发出的请求结束后再抛出
+                        if(inflight == 0){
+                            throw fatalException;
+                        }
+                        waitQuietly(0);
+                        continue;
+                    }
+                    if(inflight >= maxInflight){
+                        waitQuietly(0);
+                        continue;
+                    }
+                    long retryWait = pollRetries(batch);
+                    if(!batch.isEmpty() || !sourceDone){
+                        break;
+                    }
+                    if(retryWait < 0 && inflight == 0){
+                        return deletedCount;
+                    }
+                    // 只剩下进行中的请求或者还在退避中的重试
+                    waitQuietly(retryWait < 0 ? 0 : retryWait);
+                }
+            }
+
+            // 迭代器可能阻塞（例如边遍历边删除），在锁外读取
+            while (!sourceDone && batch.size() < batchSize) {
+                if(keys.hasNext()){
+                    batch.add(new Entry(keys.next()));
+                }else {
+                    sourceDone = true;
+                }
+            }
+            if(!batch.isEmpty()){
+                dispatch(batch);
+            }
+        }
+    }
+
+    public synchronized long getDeletedCount() {
+        return deletedCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * 取出已经到期的重试，返回下一个重试到期前需要等待的时长，-1 表示没有待重试的 key
+     */
+    private long pollRetries(List<Entry> batch) {
+        long now = System.currentTimeMillis();
+        while (batch.size() < batchSize && !retryQueue.isEmpty() && retryQueue.peek().retryAt <= now) {
+            batch.add(retryQueue.poll());
+        }
+        return retryQueue.isEmpty() ? -1 : Math.max(1, retryQueue.peek().retryAt - now);
+    }
+
+    private void waitQuietly(long waitMillis) {
+        try {
+            if(waitMillis > 0){
+                wait(waitMillis);
+            }else {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while deleting objects", e);
+        }
+    }
+
+    private void dispatch(final List<Entry> batch) {
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            inflight ++;
+            executor = this.executor;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteBatch(batch);
+            }
+        });
+    }
+
+    private void deleteBatch(List<Entry> batch) {
+        List<String> objects = new ArrayList<>(batch.size());
+        for(Entry entry : batch){
+            objects.add(entry.key);
+        }
+        DeleteMultiObjectRequest request = new DeleteMultiObjectRequest(bucket, objects);
+        request.setQuiet(true);
+
+        List<Entry> failed = new ArrayList<>();
+        List<Entry> retries = new ArrayList<>();
+        Map<String, DeleteResult.Error> errors = new HashMap<>();
+        CosXmlServiceException fatal = null;
+        String batchErrorCode = null;
+        String batchErrorMessage = null;
+        try {
+            DeleteMultiObjectResult result = cosXmlService.execute(request, new DeleteMultiObjectResult());
+            if(result != null && result.deleteResult != null && result.deleteResult.errorList != null){
+                for(DeleteResult.Error error : result.deleteResult.errorList){
+                    if(error != null && error.key != null){
+                        errors.put(error.key, error);
+                    }
+                }
+            }
+        } catch (CosXmlClientException e) {
+            batchErrorCode = CLIENT_ERROR_CODE;
+            batchErrorMessage = e.getMessage();
+        } catch (CosXmlServiceException e) {
+            if(isRetryable(e.getStatusCode(), e.getErrorCode())){
+                batchErrorCode = e.getErrorCode();
+                batchErrorMessage = e.getErrorMessage();
+            }else {
+                fatal = e;
+            }
+        }
+
+        long deleted = 0;
+        if(fatal == null){
+            for(Entry entry : batch){
+                String code = batchErrorCode;
+                String message = batchErrorMessage;
+                boolean retryable = true;
+                if(code == null){
+                    DeleteResult.Error error = errors.get(entry.key);
+                    if(error == null){
+                        deleted ++;
+                        continue;
+                    }
+                    code = error.code;
+                    message = error.message;
+                    retryable = isRetryable(0, code);
+                }
+                if(retryable && entry.attempts < maxRetries){
+                    entry.attempts ++;
+                    entry.retryAt = System.currentTimeMillis()
+                            + Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (entry.attempts - 1));
+                    retries.add(entry);
+                }else {
+                    entry.code = code;
+                    entry.message = message;
+                    failed.add(entry);
+                }
+            }
+        }
+
+        synchronized (this) {
+            inflight --;
+            deletedCount += deleted;
+            failedCount += failed.size();
+            retryQueue.addAll(retries);
+            if(fatal != null && fatalException == null){
+                fatalException = fatal;
+            }
+            notifyAll();
+        }
+        Listener listener = this.listener;
+        if(listener != null){
+            for(Entry entry : failed){
+                listener.onFailed(entry.key, entry.code, entry.message);
+            }
+        }
+    }
+
+    private static boolean isRetryable(int statusCode, String errorCode) {
+        if(statusCode >= 500 || statusCode == 429){
+            return true;
+        }
+        return "InternalError".equals(errorCode) || "SlowDown".equals(errorCode)
+                || "ServiceUnavailable".equals(errorCode) || "RequestTimeout".equals(errorCode);
+    }
+
+    private static class Entry {
+
+        final String key;
+        int attempts;
+        long retryAt;
+        String code;
+        String message;
+
+        Entry(String key) {
+            // 与 DeleteMultiObjectRequest 一致去掉开头的 "/"，以便和返回的错误对应
+            this.key = key.startsWith("/") ? key.substring(1) : key;
+        }
+    }
+}
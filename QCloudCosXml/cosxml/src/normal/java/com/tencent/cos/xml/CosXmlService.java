@@ -29,6 +29,7 @@ import com.tencent.cos.xml.model.bucket.GetBucketLocationRequest;
 import com.tencent.cos.xml.model.bucket.GetBucketLocationResult;
 import com.tencent.cos.xml.model.bucket.GetBucketReplicationRequest;
 import com.tencent.cos.xml.model.bucket.GetBucketReplicationResult;
+import com.tencent.cos.xml.model.bucket.GetBucketCompactResult;
 import com.tencent.cos.xml.model.bucket.GetBucketRequest;
 import com.tencent.cos.xml.model.bucket.GetBucketResult;
 import com.tencent.cos.xml.model.bucket.GetBucketVersioningRequest;
@@ -37,6 +38,7 @@ import com.tencent.cos.xml.model.bucket.HeadBucketRequest;
 import com.tencent.cos.xml.model.bucket.HeadBucketResult;
 import com.tencent.cos.xml.model.bucket.ListBucketVersionsRequest;
 import com.tencent.cos.xml.model.bucket.ListBucketVersionsResult;
+import com.tencent.cos.xml.model.bucket.ListBucketVersionsCompactResult;
 import com.tencent.cos.xml.model.bucket.ListMultiUploadsRequest;
 import com.tencent.cos.xml.model.bucket.ListMultiUploadsResult;
 import com.tencent.cos.xml.model.bucket.PutBucketACLRequest;
@@ -73,6 +75,8 @@ import com.tencent.cos.xml.model.object.UploadPartCopyResult;
 import com.tencent.cos.xml.model.service.GetServiceRequest;
 import com.tencent.cos.xml.model.service.GetServiceResult;
 import com.tencent.cos.xml.model.tag.COSMetaData;
+import com.tencent.cos.xml.model.tag.CompactListBucket;
+import com.tencent.cos.xml.model.tag.CompactListBucketVersions;
 import com.tencent.cos.xml.model.tag.ListAllMyBuckets;
 import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
 import com.tencent.qcloud.core.auth.QCloudSigner;
@@ -556,6 +560,79 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
         schedule(request, new GetBucketResult(), cosXmlResultListener);
     }
 
+    /**
+     * <p>
+     * 查询存储桶（Bucket) 下的部分或者全部对象，结果以紧凑的列存储形式保存.&nbsp;
+     *
+     * 详细介绍，请查看:{@link CompactListBucket}
+     *</p>
+     */
+    public GetBucketCompactResult getBucketCompact(GetBucketRequest request) throws CosXmlClientException, CosXmlServiceException {
+        return execute(request, new GetBucketCompactResult());
+    }
+
+    /**
+     * <p>
+     * 查询存储桶（Bucket) 下的部分或者全部对象，并追加到已有的 {@link CompactListBucket} 中.&nbsp;
+     *</p>
+     *
+     * @param listBucket 已有的列表，保存之前各页的结果
+     */
+    public GetBucketCompactResult getBucketCompact(GetBucketRequest request, CompactListBucket listBucket) throws CosXmlClientException, CosXmlServiceException {
+        return execute(request, new GetBucketCompactResult(listBucket));
+    }
+
+    /**
+     * <p>
+     * 逐个遍历存储桶（Bucket) 下的对象，自动翻页并预取下一页.&nbsp;
+     *
+     * 详细介绍，请查看:{@link ListBucketIterator}
+     *</p>
+     *
+     * @param request 查询条件，遍历过程中会修改其 marker
+     * @return 对象迭代器
+     */
+    public ListBucketIterator getBucketIterator(GetBucketRequest request) {
+        return new ListBucketIterator(this, request);
+    }
+
+    /**
+     * <p>
+     * 以 "/" 分隔的公共前缀为分片，并发遍历存储桶（Bucket) 下的对象.&nbsp;
+     *
+     * 详细介绍，请查看:{@link ParallelListBucketIterator}
+     *</p>
+     *
+     * @param request 查询条件，使用其中的 prefix、marker 和 maxKeys，忽略 delimiter
+     * @param parallelism 同时进行的请求个数
+     * @param ordered 是否按 key 的顺序返回
+     * @return 对象迭代器
+     * @throws CosXmlClientException 发现公共前缀时出现客户端异常
+     * @throws CosXmlServiceException 发现公共前缀时出现服务端异常
+     */
+    public ParallelListBucketIterator getBucketIterator(GetBucketRequest request, int parallelism, boolean ordered)
+            throws CosXmlClientException, CosXmlServiceException {
+        return ParallelListBucketIterator.byCommonPrefixes(this, request, parallelism, ordered);
+    }
+
+    /**
+     * <p>
+     * 以调用方给出的边界 key 为分片，并发遍历存储桶（Bucket) 下的对象.&nbsp;
+     *
+     * 详细介绍，请查看:{@link ParallelListBucketIterator}
+     *</p>
+     *
+     * @param request 查询条件，使用其中的 prefix、marker 和 maxKeys，忽略 delimiter
+     * @param boundaries 分片的边界 key，每个分片包含上一个边界之后到本边界为止的 key
+     * @param parallelism 同时进行的请求个数
+     * @param ordered 是否按 key 的顺序返回
+     * @return 对象迭代器
+     */
+    public ParallelListBucketIterator getBucketIterator(GetBucketRequest request, List<String> boundaries,
+                                                        int parallelism, boolean ordered) {
+        return ParallelListBucketIterator.byBoundaries(this, request, boundaries, parallelism, ordered);
+    }
+
 //    /**
 //     * <p>
 //     * 获取存储桶（Bucket）的标签的同步方法.&nbsp;
@@ -878,6 +955,28 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
         schedule(request, new ListBucketVersionsResult(), cosXmlResultListener);
     }
 
+    /**
+     * <p>
+     * 获取存储桶（Bucket）所有或者部分对象的版本信息，结果以紧凑的列存储形式保存.&nbsp;
+     *
+     * 详细介绍，请查看:{@link CompactListBucketVersions}
+     *</p>
+     */
+    public ListBucketVersionsCompactResult listBucketVersionsCompact(ListBucketVersionsRequest request) throws CosXmlClientException, CosXmlServiceException {
+        return execute(request, new ListBucketVersionsCompactResult());
+    }
+
+    /**
+     * <p>
+     * 获取存储桶（Bucket）所有或者部分对象的版本信息，并追加到已有的 {@link CompactListBucketVersions} 中.&nbsp;
+     *</p>
+     *
+     * @param listBucketVersions 已有的列表，保存之前各页的结果
+     */
+    public ListBucketVersionsCompactResult listBucketVersionsCompact(ListBucketVersionsRequest request, CompactListBucketVersions listBucketVersions) throws CosXmlClientException, CosXmlServiceException {
+        return execute(request, new ListBucketVersionsCompactResult(listBucketVersions));
+    }
+
 
     /**
      * <p>
@@ -0,0 +1,225 @@
+package com.tencent.cos.xml;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.tag.ListBucket;
+import com.tencent.cos.xml.transfer.XmlParser;
+import com.tencent.qcloud.core.http.HttpResponse;
+import com.tencent.qcloud.core.http.HttpTask;
+import com.tencent.qcloud.core.task.TaskExecutors;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>
+ * 按需分页遍历存储桶（Bucket）下的对象，通过 {@link CosXmlService#getBucketIterator(GetBucketRequest)} 创建。
+ * </p>
+ * 每页在后台线程中请求，响应边读边解析，解析出的对象立即可以被遍历；
+ * 缓冲区剩余不超过一页时预取下一页，因此最多缓存两页对象，解析过程也不会因为调用方消费慢而阻塞在未读完的响应上。
+ * 请求失败时 {@link #hasNext()} 和 {@link #next()} 抛出 {@link IllegalStateException}，
+ * 其 cause 为 {@link CosXmlClientException} 或 {@link CosXmlServiceException}。
+ * 遍历过程中会修改 request 的 marker，提前结束遍历时请调用 {@link #close()}。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class ListBucketIterator implements Iterator<ListBucket.Contents>, Closeable {
+
+    // 服务端单页最多返回的对象个数
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final CosXmlSimpleService cosXmlService;
+    private final GetBucketRequest request;
+    private final int pageSize;
+
+    private final ArrayDeque<ListBucket.Contents> buffer = new ArrayDeque<>();
+    private final List<ListBucket.CommonPrefixes> commonPrefixesList = new ArrayList<>();
+
+    private boolean fetching = false;
+    private boolean hasMorePages = true;
+    private boolean closed = false;
+    private Exception exception;
+    private String lastKey;
+
+    private final Runnable fetchTask = new Runnable() {
+        @Override
+        public void run() {
+            fetchPage();
+        }
+    };
+
+    private final XmlParser.ListBucketHandler handler = new XmlParser.ListBucketHandler() {
+        @Override
+        public void onContents(ListBucket.Contents contents) {
+            synchronized (ListBucketIterator.this) {
+                lastKey = contents.key;
+                if(!closed){
+                    buffer.add(contents);
+                    ListBucketIterator.this.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes) {
+            synchronized (ListBucketIterator.this) {
+                commonPrefixesList.add(commonPrefixes);
+            }
+        }
+    };
+
+    ListBucketIterator(CosXmlSimpleService cosXmlService, GetBucketRequest request) {
+        this.cosXmlService = cosXmlService;
+        this.request = request;
+        long maxKeys = request.getMaxKeys();
+        this.pageSize = maxKeys > 0 && maxKeys < MAX_PAGE_SIZE ? (int) maxKeys : MAX_PAGE_SIZE;
+        prefetchIfNeeded();
+    }
+
+    /**
+     * 等待直到有可遍历的对象或者遍历结束
+     */
+    @Override
+    public synchronized boolean hasNext() {
+        while (buffer.isEmpty()) {
+            if(exception != null){
+                throw new IllegalStateException("list bucket failed", exception);
+            }
+            if(closed || (!fetching && !hasMorePages)){
+                return false;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while listing bucket", e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ListBucket.Contents next() {
+        ListBucket.Contents contents;
+        synchronized (this) {
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            contents = buffer.poll();
+        }
+        prefetchIfNeeded();
+        return contents;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * 已经解析到的公共前缀，只有设置了 delimiter 时才有值，随遍历的进行逐页增加
+     */
+    public synchronized List<ListBucket.CommonPrefixes> getCommonPrefixes() {
+        return Collections.unmodifiableList(new ArrayList<>(commonPrefixesList));
+    }
+
+    /**
+     * 停止遍历，取消正在进行的请求并丢弃已缓存的对象
+     */
+    @Override
+    public void close() {
+        HttpTask httpTask;
+        synchronized (this) {
+            closed = true;
+            buffer.clear();
+            httpTask = fetching ? request.getHttpTask() : null;
+            notifyAll();
+        }
+        if(httpTask != null){
+            httpTask.cancel();
+        }
+    }
+
+    private void prefetchIfNeeded() {
+        synchronized (this) {
+            // 缓冲区剩余不超过一页时才请求下一页，保证缓存不超过两页
+            if(fetching || !hasMorePages || closed || exception != null || buffer.size() > pageSize){
+                return;
+            }
+            fetching = true;
+        }
+        try {
+            TaskExecutors.COMMAND_EXECUTOR.execute(fetchTask);
+        } catch (RejectedExecutionException e) {
+            // 线程池已满时在当前线程中请求
+            fetchPage();
+        }
+    }
+
+    private void fetchPage() {
+        PageResult pageResult = new PageResult(handler);
+        Exception error = null;
+        try {
+            cosXmlService.execute(request, pageResult);
+        } catch (CosXmlClientException e) {
+            error = e;
+        } catch (CosXmlServiceException e) {
+            error = e;
+        }
+        synchronized (this) {
+            fetching = false;
+            if(error != null){
+                if(!closed){
+                    exception = error;
+                }
+            }else {
+                ListBucket page = pageResult.listBucket;
+                String nextMarker = page.nextMarker != null ? page.nextMarker : lastKey;
+                // 没有设置 delimiter 时服务端不返回 NextMarker，以本页最后一个 key 作为下一页的 marker
+                if(page.isTruncated && nextMarker != null){
+                    request.setMarker(nextMarker);
+                }else {
+                    hasMorePages = false;
+                }
+            }
+            notifyAll();
+        }
+        prefetchIfNeeded();
+    }
+
+    static class PageResult extends CosXmlResult {
+
+        private final XmlParser.ListBucketHandler handler;
+
+        ListBucket listBucket;
+
+        PageResult(XmlParser.ListBucketHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void parseResponseBody(HttpResponse response) throws CosXmlClientException, CosXmlServiceException {
+            super.parseResponseBody(response);
+            listBucket = new ListBucket();
+            try {
+                XmlParser.parseListBucketResult(response.byteStream(), listBucket, handler);
+            } catch (XmlPullParserException e) {
+                throw new CosXmlClientException(e);
+            } catch (IOException e) {
+                throw new CosXmlClientException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.tencent.cos.xml;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+import com.tencent.cos.xml.transfer.XmlParser;
+import com.tencent.qcloud.core.http.HttpTask;
+import com.tencent.qcloud.core.task.TaskExecutors;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>
+ * 将存储桶（Bucket）的 key 空间切分成多个分片并发遍历，通过
+ * {@link CosXmlService#getBucketIterator(GetBucketRequest, int, boolean)} 或
+ * {@link CosXmlService#getBucketIterator(GetBucketRequest, List, int, boolean)} 创建。
+ * </p>
+ * 分片可以由 "/" 分隔的公共前缀自动发现，也可以由调用方给出一组有序的边界 key，
+ * 相邻边界之间的左开右闭区间为一个分片。自动发现最多请求 {@link #DISCOVERY_PAGES} 页，公共前缀之间连续的对象
+ * 按 key 区间切分成分片，与前缀分片一样在遍历时才请求，发现阶段不缓存对象；之后的 key 作为一个不限结尾的区间分片，
+ * 不再按公共前缀切分，避免对象很多的存储桶在发现阶段被完整地顺序遍历一次。各分片在命令线程池中分页请求，同时进行的请求不超过并发数；
+ * 有序模式下按 key 的顺序返回，越靠前的分片越优先请求，无序模式下哪个分片先返回就先遍历哪个。
+ * 所有分片缓存的对象总数有上限，异常和关闭的处理与 {@link ListBucketIterator} 相同。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class ParallelListBucketIterator implements Iterator<ListBucket.Contents>, Closeable {
+
+    private static final String DISCOVERY_DELIMITER = "/";
+
+    // 前缀发现最多请求的页数
+    static final int DISCOVERY_PAGES = 2;
+
+    // 最大的 Unicode 字符，公共前缀后接该字符作为 marker 时跳过前缀下几乎所有的 key
+    private static final String MAX_CHAR = "\uDBFF\uDFFF";
+
+    private final CosXmlSimpleService cosXmlService;
+    private final GetBucketRequest request;
+    private final int parallelism;
+    private final boolean ordered;
+    private final int pageSize;
+    private final int maxBufferedKeys;
+
+    private final List<Shard> shards = new ArrayList<>();
+
+    // 有序模式下正在遍历的分片
+    private int current = 0;
+    private int buffered = 0;
+    private int inflight = 0;
+    private boolean closed = false;
+    private Exception exception;
+
+    private ParallelListBucketIterator(CosXmlSimpleService cosXmlService, GetBucketRequest request,
+                                       int parallelism, boolean ordered) {
+        if(parallelism < 1){
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.cosXmlService = cosXmlService;
+        this.request = request;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        long maxKeys = request.getMaxKeys();
+        this.pageSize = maxKeys > 0 && maxKeys < ListBucketIterator.MAX_PAGE_SIZE ? (int) maxKeys
+                : ListBucketIterator.MAX_PAGE_SIZE;
+        this.maxBufferedKeys = 2 * pageSize * parallelism;
+    }
+
+    /**
+     * 以 request 的 prefix 下一级公共前缀作为分片，前缀发现请求在当前线程中同步执行。
+     * 公共前缀之间连续的对象每一页切分为一个 key 区间分片，只记录区间的边界；
+     * 发现的页数达到上限后，剩余的 key 作为一个区间分片
+     */
+    static ParallelListBucketIterator byCommonPrefixes(CosXmlSimpleService cosXmlService, GetBucketRequest request,
+                                                       int parallelism, boolean ordered)
+            throws CosXmlClientException, CosXmlServiceException {
+        ParallelListBucketIterator iterator = new ParallelListBucketIterator(cosXmlService, request, parallelism, ordered);
+
+        GetBucketRequest discoveryRequest = iterator.newPageRequest(request.getPrefix(), request.getMarker());
+        discoveryRequest.setDelimiter(DISCOVERY_DELIMITER.charAt(0));
+        String prefix = request.getPrefix();
+        Shard keys = null;
+        int keyCount = 0;
+        String lastPrefix = null;
+        Shard tail = null;
+        for(int pages = 1; ; pages ++){
+            GetBucketResult result = cosXmlService.execute(discoveryRequest, new GetBucketResult());
+            ListBucket page = result.listBucket;
+            List<ListBucket.Contents> contentsList = page.contentsList;
+            List<ListBucket.CommonPrefixes> commonPrefixesList = page.commonPrefixesList;
+            // 对象和公共前缀各自有序，归并后与递归遍历时 key 的顺序一致。相邻的对象之间没有其他 key，
+            // 合并为 (marker, endKey] 区间分片，每个分片不超过一页
+            int i = 0, j = 0;
+            String lastName = null;
+            while (i < contentsList.size() || j < commonPrefixesList.size()){
+                if(j >= commonPrefixesList.size() || i < contentsList.size()
+                        && contentsList.get(i).key.compareTo(commonPrefixesList.get(j).prefix) < 0){
+                    ListBucket.Contents contents = contentsList.get(i ++);
+                    lastName = contents.key;
+                    if(keys == null){
+                        // 连续对象中的第一个之前可能是公共前缀下的 key，没有可以作为 marker 的 key，只保留这一个对象
+                        keys = Shard.range(prefix, contents.key, contents.key);
+                        keys.buffer.add(contents);
+                        iterator.buffered ++;
+                        iterator.shards.add(keys);
+                        keyCount = 1;
+                    }else if(keyCount >= iterator.pageSize){
+                        keys = Shard.range(prefix, keys.endKey, contents.key);
+                        iterator.shards.add(keys);
+                        keyCount = 1;
+                    }else {
+                        keys.endKey = contents.key;
+                        keyCount ++;
+                    }
+                    lastPrefix = null;
+                }else {
+                    keys = null;
+                    lastName = commonPrefixesList.get(j ++).prefix;
+                    lastPrefix = lastName;
+                    iterator.shards.add(Shard.prefix(lastName));
+                }
+            }
+            String nextMarker = page.nextMarker != null ? page.nextMarker : lastName;
+            if(!page.isTruncated || nextMarker == null){
+                break;
+            }
+            if(pages >= DISCOVERY_PAGES && lastName != null){
+                // 剩余的 key 不带 delimiter 遍历。最后一项是公共前缀时从前缀下的 key 之后开始，
+                // 前缀下仍然排在 marker 之后的 key 已经由前缀分片遍历，需要跳过
+                tail = lastPrefix != null ? Shard.range(prefix, lastPrefix + MAX_CHAR, null)
+                        : Shard.range(prefix, lastName, null);
+                tail.skipPrefix = lastPrefix;
+                break;
+            }
+            discoveryRequest.setMarker(nextMarker);
+        }
+        // 从 marker 之后开始遍历时，marker 所在的公共前缀只需要遍历 marker 之后的 key
+        String marker = request.getMarker();
+        for(Shard shard : iterator.shards){
+            if(shard.endKey != null){
+                // 只有保留的一个对象的区间分片不需要再请求
+                shard.hasMorePages = !shard.endKey.equals(shard.marker);
+            }else if(marker != null && marker.startsWith(shard.prefix)){
+                shard.marker = marker;
+            }
+        }
+        if(tail != null){
+            iterator.shards.add(tail);
+        }
+        iterator.schedule();
+        return iterator;
+    }
+
+    /**
+     * 以有序的边界 key 切分分片，第 i 个分片包含 (boundaries[i - 1], boundaries[i]] 之间的 key
+     */
+    static ParallelListBucketIterator byBoundaries(CosXmlSimpleService cosXmlService, GetBucketRequest request,
+                                                   List<String> boundaries, int parallelism, boolean ordered) {
+        ParallelListBucketIterator iterator = new ParallelListBucketIterator(cosXmlService, request, parallelism, ordered);
+        List<String> sorted = new ArrayList<>(boundaries);
+        Collections.sort(sorted);
+        String start = request.getMarker();
+        for(String end : sorted){
+            if(start != null && end.compareTo(start) <= 0){
+                continue;
+            }
+            iterator.shards.add(Shard.range(request.getPrefix(), start, end));
+            start = end;
+        }
+        iterator.shards.add(Shard.range(request.getPrefix(), start, null));
+        iterator.schedule();
+        return iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true){
+            synchronized (this) {
+                if(exception != null){
+                    throw new IllegalStateException("list bucket failed", exception);
+                }
+                if(closed){
+                    return false;
+                }
+                if(ordered){
+                    while (current < shards.size() && shards.get(current).isFinished()){
+                        current ++;
+                    }
+                    if(current >= shards.size()){
+                        return false;
+                    }
+                    if(!shards.get(current).buffer.isEmpty()){
+                        return true;
+                    }
+                }else {
+                    boolean finished = true;
+                    for(Shard shard : shards){
+                        if(!shard.buffer.isEmpty()){
+                            return true;
+                        }
+                        finished &= shard.isFinished();
+                    }
+                    if(finished){
+                        return false;
+                    }
+                }
+                // 没有进行中的请求时由当前线程触发调度，否则等待请求返回
+                if(inflight > 0){
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("interrupted while listing bucket", e);
+                    }
+                    continue;
+                }
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * 不支持多个线程同时遍历
+     */
+    @Override
+    public ListBucket.Contents next() {
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        ListBucket.Contents contents = null;
+        synchronized (this) {
+            if(ordered){
+                contents = shards.get(current).buffer.poll();
+            }else {
+                for(Shard shard : shards){
+                    if(!shard.buffer.isEmpty()){
+                        contents = shard.buffer.poll();
+                        break;
+                    }
+                }
+            }
+            if(contents == null){
+                throw new NoSuchElementException();
+            }
+            buffered --;
+        }
+        schedule();
+        return contents;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * 分片个数
+     */
+    public synchronized int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * 停止遍历，取消所有正在进行的请求并丢弃已缓存的对象
+     */
+    @Override
+    public void close() {
+        List<HttpTask> httpTasks = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for(Shard shard : shards){
+                shard.buffer.clear();
+                if(shard.fetchingRequest != null && shard.fetchingRequest.getHttpTask() != null){
+                    httpTasks.add(shard.fetchingRequest.getHttpTask());
+                }
+            }
+            buffered = 0;
+            notifyAll();
+        }
+        for(HttpTask httpTask : httpTasks){
+            httpTask.cancel();
+        }
+    }
+
+    /**
+     * 在并发数和缓存上限内为排在最前面的分片发起请求
+     */
+    private void schedule() {
+        List<Shard> toFetch = new ArrayList<>();
+        synchronized (this) {
+            if(closed || exception != null){
+                return;
+            }
+            int start = ordered ? current : 0;
+            for(int i = start; i < shards.size() && inflight < parallelism; i ++){
+                Shard shard = shards.get(i);
+                if(shard.fetchingRequest != null || !shard.hasMorePages || shard.buffer.size() > pageSize){
+                    continue;
+                }
+                // 有序模式下正在遍历的分片不受缓存上限的约束，避免后面的分片占满缓存时无法继续
+                boolean head = ordered && i == current;
+                if(!head && buffered + (inflight + 1) * pageSize > maxBufferedKeys){
+                    break;
+                }
+                shard.fetchingRequest = newPageRequest(shard.prefix, shard.marker);
+                inflight ++;
+                toFetch.add(shard);
+            }
+        }
+        for(final Shard shard : toFetch){
+            try {
+                TaskExecutors.COMMAND_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        fetchPage(shard);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                fetchPage(shard);
+            }
+        }
+    }
+
+    private void fetchPage(final Shard shard) {
+        GetBucketRequest pageRequest = shard.fetchingRequest;
+        ListBucketIterator.PageResult pageResult = new ListBucketIterator.PageResult(new XmlParser.ListBucketHandler() {
+            @Override
+            public void onContents(ListBucket.Contents contents) {
+                synchronized (ParallelListBucketIterator.this) {
+                    shard.lastKey = contents.key;
+                    if(shard.endKey != null && contents.key.compareTo(shard.endKey) > 0){
+                        shard.reachedEnd = true;
+                    }
+                    boolean skipped = shard.skipPrefix != null && contents.key.startsWith(shard.skipPrefix);
+                    if(!closed && !shard.reachedEnd && !skipped){
+                        shard.buffer.add(contents);
+                        buffered ++;
+                        ParallelListBucketIterator.this.notifyAll();
+                    }
+                }
+            }
+
+            @Override
+            public void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes) {
+            }
+        });
+        Exception error = null;
+        try {
+            cosXmlService.execute(pageRequest, pageResult);
+        } catch (CosXmlClientException e) {
+            error = e;
+        } catch (CosXmlServiceException e) {
+            error = e;
+        }
+        synchronized (this) {
+            shard.fetchingRequest = null;
+            inflight --;
+            if(error != null){
+                if(!closed && exception == null){
+                    exception = error;
+                }
+            }else {
+                ListBucket page = pageResult.listBucket;
+                String nextMarker = page.nextMarker != null ? page.nextMarker : shard.lastKey;
+                // 已经拿到区间的最后一个 key 时不需要再请求下一页
+                boolean atEnd = shard.reachedEnd || shard.endKey != null && shard.endKey.equals(shard.lastKey);
+                if(page.isTruncated && !atEnd && nextMarker != null){
+                    shard.marker = nextMarker;
+                }else {
+                    shard.hasMorePages = false;
+                }
+            }
+            notifyAll();
+        }
+        schedule();
+    }
+
+    private GetBucketRequest newPageRequest(String prefix, String marker) {
+        GetBucketRequest pageRequest = new GetBucketRequest(request.getBucket());
+        pageRequest.setRegion(request.getRegion());
+        pageRequest.setPrefix(prefix);
+        pageRequest.setMarker(marker);
+        pageRequest.setMaxKeys(pageSize);
+        pageRequest.setEncodingType(request.getEncodingType());
+        pageRequest.setBandwidthLimiter(request.getBandwidthLimiter());
+        return pageRequest;
+    }
+
+    private static class Shard {
+
+        final String prefix;
+        String endKey;
+        final ArrayDeque<ListBucket.Contents> buffer = new ArrayDeque<>();
+
+        String marker;
+        // 已经由其他分片遍历的公共前缀
+        String skipPrefix;
+        String lastKey;
+        boolean hasMorePages = true;
+        boolean reachedEnd = false;
+        GetBucketRequest fetchingRequest;
+
+        private Shard(String prefix, String marker, String endKey) {
+            this.prefix = prefix;
+            this.marker = marker;
+            this.endKey = endKey;
+        }
+
+        static Shard prefix(String prefix) {
+            return new Shard(prefix, null, null);
+        }
+
+        static Shard range(String prefix, String marker, String endKey) {
+            return new Shard(prefix, marker, endKey);
+        }
+
+        boolean isFinished() {
+            return buffer.isEmpty() && !hasMorePages && fetchingRequest == null;
+        }
+    }
+}
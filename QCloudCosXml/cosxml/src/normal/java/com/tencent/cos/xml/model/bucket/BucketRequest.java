@@ -19,6 +19,15 @@ public abstract class BucketRequest extends CosXmlRequest {
         this.bucket = bucket;
     }
 
+    /**
+     * 获取存储桶名称
+     *
+     * @return bucket
+     */
+    public String getBucket() {
+        return bucket;
+    }
+
     @Override
     public String getPath(CosXmlServiceConfig config) {
 
@@ -0,0 +1,72 @@
+package com.tencent.cos.xml.model.bucket;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.tag.CompactListBucket;
+import com.tencent.cos.xml.model.tag.ListBucket;
+import com.tencent.cos.xml.transfer.XmlParser;
+import com.tencent.qcloud.core.http.HttpResponse;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * 以 {@link CompactListBucket} 保存的 GetBucket 结果。
+ * </p>
+ * 传入已有的 {@link CompactListBucket} 时，本页的对象追加到其中，用于保存多页的列表。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+final public class GetBucketCompactResult extends CosXmlResult {
+
+    public CompactListBucket listBucket;
+
+    public GetBucketCompactResult() {
+        this(new CompactListBucket());
+    }
+
+    public GetBucketCompactResult(CompactListBucket listBucket) {
+        this.listBucket = listBucket;
+    }
+
+    @Override
+    public void parseResponseBody(HttpResponse response) throws  CosXmlServiceException, CosXmlClientException {
+        super.parseResponseBody(response);
+        ListBucket page = new ListBucket();
+        try {
+            XmlParser.parseListBucketResult(response.byteStream(), page, new XmlParser.ListBucketHandler() {
+                @Override
+                public void onContents(ListBucket.Contents contents) {
+                    listBucket.addContents(contents);
+                }
+
+                @Override
+                public void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes) {
+                    listBucket.addCommonPrefixes(commonPrefixes);
+                }
+            });
+        } catch (XmlPullParserException e) {
+            throw new CosXmlClientException(e);
+        } catch (IOException e) {
+            throw new CosXmlClientException(e);
+        }
+        listBucket.name = page.name;
+        listBucket.encodingType = page.encodingType;
+        listBucket.prefix = page.prefix;
+        listBucket.marker = page.marker;
+        listBucket.maxKeys = page.maxKeys;
+        listBucket.isTruncated = page.isTruncated;
+        listBucket.nextMarker = page.nextMarker;
+        listBucket.delimiter = page.delimiter;
+    }
+
+    @Override
+    public String printResult() {
+        return listBucket != null ? listBucket.toString() : super.printResult();
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.tencent.cos.xml.model.bucket;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.tag.CompactListBucketVersions;
+import com.tencent.cos.xml.model.tag.ListBucketVersions;
+import com.tencent.cos.xml.transfer.XmlParser;
+import com.tencent.qcloud.core.http.HttpResponse;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * 以 {@link CompactListBucketVersions} 保存的 ListBucketVersions 结果。
+ * </p>
+ * 传入已有的 {@link CompactListBucketVersions} 时，本页的版本追加到其中，用于保存多页的列表。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public class ListBucketVersionsCompactResult extends CosXmlResult {
+
+    public CompactListBucketVersions listBucketVersions;
+
+    public ListBucketVersionsCompactResult() {
+        this(new CompactListBucketVersions());
+    }
+
+    public ListBucketVersionsCompactResult(CompactListBucketVersions listBucketVersions) {
+        this.listBucketVersions = listBucketVersions;
+    }
+
+    @Override
+    public void parseResponseBody(HttpResponse response) throws CosXmlServiceException, CosXmlClientException {
+        super.parseResponseBody(response);
+        ListBucketVersions page = new ListBucketVersions();
+        try {
+            XmlParser.parseListBucketVersions(response.byteStream(), page, new XmlParser.ListBucketVersionsHandler() {
+                @Override
+                public void onObjectVersion(ListBucketVersions.ObjectVersion objectVersion) {
+                    listBucketVersions.addObjectVersion(objectVersion);
+                }
+            });
+        } catch (XmlPullParserException e) {
+            throw new CosXmlClientException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new CosXmlClientException(e.getMessage(), e);
+        }
+        listBucketVersions.name = page.name;
+        listBucketVersions.prefix = page.prefix;
+        listBucketVersions.keyMarker = page.keyMarker;
+        listBucketVersions.versionIdMarker = page.versionIdMarker;
+        listBucketVersions.maxKeys = page.maxKeys;
+        listBucketVersions.isTruncated = page.isTruncated;
+        listBucketVersions.nextKeyMarker = page.nextKeyMarker;
+        listBucketVersions.nextVersionIdMarker = page.nextVersionIdMarker;
+    }
+
+    @Override
+    public String printResult() {
+        if(listBucketVersions != null){
+            return listBucketVersions.toString();
+        }else{
+            return super.printResult();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.cos.xml.model.tag.Delete;
 import com.tencent.cos.xml.transfer.XmlBuilder;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
+import com.tencent.qcloud.core.http.WriterRequestBody;
 
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -17,6 +18,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import okio.BufferedSink;
+
 /**
  * <p>
  * 批量删除Object，单次请求最大支持批量删除 1000 个 Object。
@@ -49,13 +52,17 @@ final public class DeleteMultiObjectRequest extends ObjectRequest {
 
     @Override
     public RequestBodySerializer getRequestBody() throws CosXmlClientException {
-        try {
-            return RequestBodySerializer.string(COSRequestHeaderKey.APPLICATION_XML, XmlBuilder.buildDelete(delete));
-        } catch (XmlPullParserException e) {
-            throw new CosXmlClientException(e);
-        } catch (IOException e) {
-            throw new CosXmlClientException(e);
-        }
+        // 上千个 key 时直接写入网络，避免拼出完整的 XML 字符串
+        return RequestBodySerializer.writer(COSRequestHeaderKey.APPLICATION_XML, new WriterRequestBody.Writer() {
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                try {
+                    XmlBuilder.buildDelete(delete, sink.outputStream());
+                } catch (XmlPullParserException e) {
+                    throw new IOException(e);
+                }
+            }
+        });
     }
 
     @Override
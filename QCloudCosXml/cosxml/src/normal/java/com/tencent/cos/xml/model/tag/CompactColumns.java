@@ -0,0 +1,418 @@
+package com.tencent.cos.xml.model.tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * {@link CompactListBucket} 和 {@link CompactListBucketVersions} 使用的列存储。
+ * </p>
+ * 每一列只在追加时增长，按下标读取。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+final class CompactColumns {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private CompactColumns() {
+    }
+
+    private static int grow(int capacity, int minCapacity) {
+        return Math.max(minCapacity, Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1)));
+    }
+
+    /**
+     * 前缀压缩的字符串列：与前一个字符串相同的前缀只记录长度，所有后缀存放在同一个 char 数组中。
+     * 每 {@link #RESTART_INTERVAL} 个字符串保存一次完整值，读取时最多回溯这么多个字符串。
+     * null 按空字符串参与前缀压缩，另外标记为不存在。
+     */
+    static final class Keys {
+
+        static final int RESTART_INTERVAL = 16;
+
+        private int size;
+        private int[] shared = new int[0];
+        // offsets[i] 到 offsets[i + 1] 为第 i 个字符串的后缀
+        private int[] offsets = new int[1];
+        private char[] chars = new char[0];
+        private int charCount;
+        private int maxLength;
+        private String last;
+        // absent[i] 为 true 表示第 i 个值为 null；只有出现 null 时才分配
+        private boolean[] absent;
+
+        void add(String key) {
+            boolean isNull = key == null;
+            if(isNull){
+                key = "";
+            }
+            int prefix = 0;
+            if(size % RESTART_INTERVAL != 0){
+                int limit = Math.min(last.length(), key.length());
+                while (prefix < limit && last.charAt(prefix) == key.charAt(prefix)){
+                    prefix ++;
+                }
+            }
+            if(size == shared.length){
+                int capacity = grow(shared.length, size + 1);
+                shared = Arrays.copyOf(shared, capacity);
+                offsets = Arrays.copyOf(offsets, capacity + 1);
+                if(absent != null){
+                    absent = Arrays.copyOf(absent, capacity);
+                }
+            }
+            if(isNull){
+                if(absent == null){
+                    absent = new boolean[shared.length];
+                }
+                absent[size] = true;
+            }
+            int suffixLength = key.length() - prefix;
+            if(charCount + suffixLength > chars.length){
+                chars = Arrays.copyOf(chars, grow(chars.length, charCount + suffixLength));
+            }
+            key.getChars(prefix, key.length(), chars, charCount);
+            charCount += suffixLength;
+            shared[size] = prefix;
+            offsets[size + 1] = charCount;
+            size ++;
+            maxLength = Math.max(maxLength, key.length());
+            last = key;
+        }
+
+        String get(int index) {
+            if(absent != null && absent[index]){
+                return null;
+            }
+            char[] buffer = new char[maxLength];
+            int length = 0;
+            for(int i = index - index % RESTART_INTERVAL; i <= index; i ++){
+                int suffixLength = offsets[i + 1] - offsets[i];
+                System.arraycopy(chars, offsets[i], buffer, shared[i], suffixLength);
+                length = shared[i] + suffixLength;
+            }
+            return new String(buffer, 0, length);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void trimToSize() {
+            shared = Arrays.copyOf(shared, size);
+            offsets = Arrays.copyOf(offsets, size + 1);
+            chars = Arrays.copyOf(chars, charCount);
+            if(absent != null){
+                absent = Arrays.copyOf(absent, size);
+            }
+        }
+    }
+
+    /**
+     * 字典编码的字符串列，适合 StorageClass、Owner 这类大量重复的值。-1 表示不存在
+     */
+    static final class Dictionary {
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int size;
+        private int[] codes = new int[0];
+
+        void add(String value, boolean present) {
+            int code = -1;
+            if(present){
+                Integer index = indexes.get(value);
+                if(index == null){
+                    index = values.size();
+                    values.add(value);
+                    indexes.put(value, index);
+                }
+                code = index;
+            }
+            if(size == codes.length){
+                codes = Arrays.copyOf(codes, grow(codes.length, size + 1));
+            }
+            codes[size ++] = code;
+        }
+
+        void add(String value) {
+            add(value, value != null);
+        }
+
+        boolean isPresent(int index) {
+            return codes[index] >= 0;
+        }
+
+        String get(int index) {
+            int code = codes[index];
+            return code < 0 ? null : values.get(code);
+        }
+
+        void trimToSize() {
+            codes = Arrays.copyOf(codes, size);
+        }
+    }
+
+    static final class Longs {
+
+        private int size;
+        private long[] values = new long[0];
+
+        void add(long value) {
+            if(size == values.length){
+                values = Arrays.copyOf(values, grow(values.length, size + 1));
+            }
+            values[size ++] = value;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        void trimToSize() {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * 按 yyyy-MM-ddTHH:mm:ss.SSSZ 格式保存为毫秒数的时间列，其他格式原样保存
+     */
+    static final class Timestamps {
+
+        private int size;
+        private long[] millis = new long[0];
+        // 只有出现无法编码的值时才分配
+        private String[] raw;
+
+        void add(String value) {
+            if(size == millis.length){
+                int capacity = grow(millis.length, size + 1);
+                millis = Arrays.copyOf(millis, capacity);
+                if(raw != null){
+                    raw = Arrays.copyOf(raw, capacity);
+                }
+            }
+            long parsed = parse(value);
+            if(parsed < 0){
+                if(raw == null){
+                    raw = new String[millis.length];
+                }
+                raw[size] = value;
+            }
+            millis[size ++] = parsed;
+        }
+
+        /**
+         * @return 毫秒数，无法编码时返回 -1
+         */
+        long getMillis(int index) {
+            return millis[index];
+        }
+
+        String get(int index) {
+            long value = millis[index];
+            return value < 0 ? raw[index] : format(value);
+        }
+
+        void trimToSize() {
+            millis = Arrays.copyOf(millis, size);
+            if(raw != null){
+                raw = Arrays.copyOf(raw, size);
+            }
+        }
+
+        private static final int LENGTH = "yyyy-MM-ddTHH:mm:ss.SSSZ".length();
+        private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+        /**
+         * 严格解析，保证 format(parse(value)) 与 value 完全相同，否则返回 -1
+         */
+        static long parse(String value) {
+            if(value == null || value.length() != LENGTH || value.charAt(4) != '-' || value.charAt(7) != '-'
+                    || value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':'
+                    || value.charAt(19) != '.' || value.charAt(23) != 'Z'){
+                return -1;
+            }
+            int year = digits(value, 0, 4);
+            int month = digits(value, 5, 2);
+            int day = digits(value, 8, 2);
+            int hour = digits(value, 11, 2);
+            int minute = digits(value, 14, 2);
+            int second = digits(value, 17, 2);
+            int milli = digits(value, 20, 3);
+            if(year < 1970 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                    || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || milli < 0){
+                return -1;
+            }
+            return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                    + ((hour * 60L + minute) * 60 + second) * 1000 + milli;
+        }
+
+        static String format(long millis) {
+            long days = millis / MILLIS_PER_DAY;
+            int millisOfDay = (int) (millis % MILLIS_PER_DAY);
+            // civil from days, 见 http://howardhinnant.github.io/date_algorithms.html
+            long z = days + 719468;
+            long era = z / 146097;
+            int dayOfEra = (int) (z - era * 146097);
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int mp = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+            int month = mp < 10 ? mp + 3 : mp - 9;
+            int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+            char[] chars = new char[LENGTH];
+            put(chars, 0, year, 4);
+            chars[4] = '-';
+            put(chars, 5, month, 2);
+            chars[7] = '-';
+            put(chars, 8, day, 2);
+            chars[10] = 'T';
+            put(chars, 11, millisOfDay / 3600000, 2);
+            chars[13] = ':';
+            put(chars, 14, millisOfDay / 60000 % 60, 2);
+            chars[16] = ':';
+            put(chars, 17, millisOfDay / 1000 % 60, 2);
+            chars[19] = '.';
+            put(chars, 20, millisOfDay % 1000, 3);
+            chars[23] = 'Z';
+            return new String(chars);
+        }
+
+        private static long daysFromCivil(int year, int month, int day) {
+            year -= month <= 2 ? 1 : 0;
+            int era = year / 400;
+            int yearOfEra = year - era * 400;
+            int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097L + dayOfEra - 719468;
+        }
+
+        private static int daysInMonth(int year, int month) {
+            if(month == 2){
+                return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+            }
+            return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+        }
+
+        private static int digits(String value, int start, int count) {
+            int result = 0;
+            for(int i = start; i < start + count; i ++){
+                char c = value.charAt(i);
+                if(c < '0' || c > '9'){
+                    return -1;
+                }
+                result = result * 10 + (c - '0');
+            }
+            return result;
+        }
+
+        private static void put(char[] chars, int start, int value, int count) {
+            for(int i = start + count - 1; i >= start; i --){
+                chars[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+    }
+
+    /**
+     * 带引号的 32 位小写十六进制 ETag（即单次上传对象的 MD5）保存为 16 个字节，其他格式原样保存
+     */
+    static final class ETags {
+
+        private static final int BYTES = 16;
+        private static final int LENGTH = 2 * BYTES + 2;
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private int size;
+        private byte[] digests = new byte[0];
+        // raw[i] 不为 null 时表示第 i 个值原样保存；只有出现无法编码的值时才分配
+        private String[] raw;
+        private boolean[] absent;
+
+        void add(String value) {
+            if(size * BYTES == digests.length){
+                int capacity = grow(digests.length / BYTES, size + 1);
+                digests = Arrays.copyOf(digests, capacity * BYTES);
+                if(raw != null){
+                    raw = Arrays.copyOf(raw, capacity);
+                }
+                if(absent != null){
+                    absent = Arrays.copyOf(absent, capacity);
+                }
+            }
+            if(value == null){
+                if(absent == null){
+                    absent = new boolean[digests.length / BYTES];
+                }
+                absent[size] = true;
+            }else if(!encode(value, digests, size * BYTES)){
+                if(raw == null){
+                    raw = new String[digests.length / BYTES];
+                }
+                raw[size] = value;
+            }
+            size ++;
+        }
+
+        String get(int index) {
+            if(absent != null && absent[index]){
+                return null;
+            }
+            if(raw != null && raw[index] != null){
+                return raw[index];
+            }
+            char[] chars = new char[LENGTH];
+            chars[0] = '"';
+            for(int i = 0; i < BYTES; i ++){
+                int b = digests[index * BYTES + i] & 0xff;
+                chars[1 + 2 * i] = HEX[b >>> 4];
+                chars[2 + 2 * i] = HEX[b & 0x0f];
+            }
+            chars[LENGTH - 1] = '"';
+            return new String(chars);
+        }
+
+        void trimToSize() {
+            digests = Arrays.copyOf(digests, size * BYTES);
+            if(raw != null){
+                raw = Arrays.copyOf(raw, size);
+            }
+            if(absent != null){
+                absent = Arrays.copyOf(absent, size);
+            }
+        }
+
+        private static boolean encode(String value, byte[] digests, int offset) {
+            if(value.length() != LENGTH || value.charAt(0) != '"' || value.charAt(LENGTH - 1) != '"'){
+                return false;
+            }
+            for(int i = 0; i < BYTES; i ++){
+                int high = hex(value.charAt(1 + 2 * i));
+                int low = hex(value.charAt(2 + 2 * i));
+                if(high < 0 || low < 0){
+                    return false;
+                }
+                digests[offset + i] = (byte) (high << 4 | low);
+            }
+            return true;
+        }
+
+        private static int hex(char c) {
+            if(c >= '0' && c <= '9'){
+                return c - '0';
+            }
+            // 只接受小写，保证还原后的值相同
+            if(c >= 'a' && c <= 'f'){
+                return c - 'a' + 10;
+            }
+            return -1;
+        }
+    }
+}
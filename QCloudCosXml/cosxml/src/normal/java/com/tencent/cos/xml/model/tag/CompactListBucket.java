@@ -0,0 +1,185 @@
+package com.tencent.cos.xml.model.tag;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * 紧凑存储的 {@link ListBucket}，适合在内存中保存大量对象的列表（例如整个存储桶的索引）。
+ * </p>
+ * 对象按列保存：key 做前缀压缩，大小和修改时间保存在基本类型数组中，ETag 保存为 MD5 字节，
+ * StorageClass 和 Owner 做字典去重。需要对象形式时通过 {@link #getContents(int)} 或
+ * {@link #getContentsList()} 按需生成。
+ * 可以连续追加多页的结果，分页信息以最后一页为准。不支持并发写入。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public class CompactListBucket {
+
+    public String name;
+    public String encodingType;
+    public String prefix;
+    public String marker;
+    public int maxKeys;
+    public boolean isTruncated;
+    public String nextMarker;
+    public String delimiter;
+
+    private final CompactColumns.Keys keys = new CompactColumns.Keys();
+    private final CompactColumns.Timestamps lastModified = new CompactColumns.Timestamps();
+    private final CompactColumns.ETags eTags = new CompactColumns.ETags();
+    private final CompactColumns.Longs sizes = new CompactColumns.Longs();
+    private final CompactColumns.Dictionary storageClasses = new CompactColumns.Dictionary();
+    private final CompactColumns.Dictionary owners = new CompactColumns.Dictionary();
+    private final CompactColumns.Keys commonPrefixes = new CompactColumns.Keys();
+
+    public void addContents(ListBucket.Contents contents) {
+        keys.add(contents.key);
+        lastModified.add(contents.lastModified);
+        eTags.add(contents.eTag);
+        sizes.add(contents.size);
+        storageClasses.add(contents.storageClass);
+        owners.add(contents.owner != null ? contents.owner.id : null, contents.owner != null);
+    }
+
+    public void addCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes) {
+        this.commonPrefixes.add(commonPrefixes.prefix);
+    }
+
+    /**
+     * 释放预留的空间，追加完成后调用
+     */
+    public void trimToSize() {
+        keys.trimToSize();
+        lastModified.trimToSize();
+        eTags.trimToSize();
+        sizes.trimToSize();
+        storageClasses.trimToSize();
+        owners.trimToSize();
+        commonPrefixes.trimToSize();
+    }
+
+    /**
+     * @return 对象个数
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    public String getKey(int index) {
+        checkIndex(index);
+        return keys.get(index);
+    }
+
+    public String getLastModified(int index) {
+        checkIndex(index);
+        return lastModified.get(index);
+    }
+
+    /**
+     * @return 修改时间的毫秒数，服务端返回的时间不是 yyyy-MM-ddTHH:mm:ss.SSSZ 格式时返回 -1
+     */
+    public long getLastModifiedMillis(int index) {
+        checkIndex(index);
+        return lastModified.getMillis(index);
+    }
+
+    public String getETag(int index) {
+        checkIndex(index);
+        return eTags.get(index);
+    }
+
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes.get(index);
+    }
+
+    public String getStorageClass(int index) {
+        checkIndex(index);
+        return storageClasses.get(index);
+    }
+
+    public String getOwnerId(int index) {
+        checkIndex(index);
+        return owners.get(index);
+    }
+
+    /**
+     * 生成第 index 个对象，每次调用都返回新的实例
+     */
+    public ListBucket.Contents getContents(int index) {
+        checkIndex(index);
+        ListBucket.Contents contents = new ListBucket.Contents();
+        contents.key = keys.get(index);
+        contents.lastModified = lastModified.get(index);
+        contents.eTag = eTags.get(index);
+        contents.size = sizes.get(index);
+        contents.storageClass = storageClasses.get(index);
+        if(owners.isPresent(index)){
+            contents.owner = new ListBucket.Owner();
+            contents.owner.id = owners.get(index);
+        }
+        return contents;
+    }
+
+    /**
+     * @return 只读的对象列表，元素在访问时生成
+     */
+    public List<ListBucket.Contents> getContentsList() {
+        return new AbstractList<ListBucket.Contents>() {
+            @Override
+            public ListBucket.Contents get(int index) {
+                return getContents(index);
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    public List<String> getCommonPrefixes() {
+        List<String> result = new ArrayList<>(commonPrefixes.size());
+        for(int i = 0; i < commonPrefixes.size(); i ++){
+            result.add(commonPrefixes.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 生成完整的 {@link ListBucket}
+     */
+    public ListBucket toListBucket() {
+        ListBucket listBucket = new ListBucket();
+        listBucket.name = name;
+        listBucket.encodingType = encodingType;
+        listBucket.prefix = prefix;
+        listBucket.marker = marker;
+        listBucket.maxKeys = maxKeys;
+        listBucket.isTruncated = isTruncated;
+        listBucket.nextMarker = nextMarker;
+        listBucket.delimiter = delimiter;
+        listBucket.contentsList = new ArrayList<>(getContentsList());
+        listBucket.commonPrefixesList = new ArrayList<>(commonPrefixes.size());
+        for(int i = 0; i < commonPrefixes.size(); i ++){
+            ListBucket.CommonPrefixes item = new ListBucket.CommonPrefixes();
+            item.prefix = commonPrefixes.get(i);
+            listBucket.commonPrefixesList.add(item);
+        }
+        return listBucket;
+    }
+
+    @Override
+    public String toString() {
+        return toListBucket().toString();
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= keys.size()){
+            throw new IndexOutOfBoundsException("index " + index + ", size " + keys.size());
+        }
+    }
+}
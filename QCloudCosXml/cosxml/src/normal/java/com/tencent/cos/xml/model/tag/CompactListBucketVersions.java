@@ -0,0 +1,212 @@
+package com.tencent.cos.xml.model.tag;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <p>
+ * 紧凑存储的 {@link ListBucketVersions}，存储方式与 {@link CompactListBucket} 相同。
+ * </p>
+ * 需要对象形式时通过 {@link #getObjectVersion(int)} 或 {@link #getObjectVersionList()} 按需生成。
+ * 可以连续追加多页的结果，分页信息以最后一页为准。不支持并发写入。
+ *
+ * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
+ */
+
+public class CompactListBucketVersions {
+
+    public String name;
+    public String prefix;
+    public String keyMarker;
+    public String versionIdMarker;
+    public long maxKeys;
+    public boolean isTruncated;
+    public String nextKeyMarker;
+    public String nextVersionIdMarker;
+
+    private final CompactColumns.Keys keys = new CompactColumns.Keys();
+    private final ArrayList<String> versionIds = new ArrayList<>();
+    private final BitSet latest = new BitSet();
+    private final BitSet deleteMarkers = new BitSet();
+    private final CompactColumns.Timestamps lastModified = new CompactColumns.Timestamps();
+    private final CompactColumns.ETags eTags = new CompactColumns.ETags();
+    private final CompactColumns.Longs sizes = new CompactColumns.Longs();
+    private final CompactColumns.Dictionary storageClasses = new CompactColumns.Dictionary();
+    private final CompactColumns.Dictionary owners = new CompactColumns.Dictionary();
+
+    public void addObjectVersion(ListBucketVersions.ObjectVersion objectVersion) {
+        int index = keys.size();
+        keys.add(objectVersion.key);
+        versionIds.add(objectVersion.versionId);
+        latest.set(index, objectVersion.isLatest);
+        lastModified.add(objectVersion.lastModified);
+        if(objectVersion instanceof ListBucketVersions.Version){
+            ListBucketVersions.Version version = (ListBucketVersions.Version) objectVersion;
+            eTags.add(version.eTag);
+            sizes.add(version.size);
+            storageClasses.add(version.storageClass);
+        }else {
+            deleteMarkers.set(index);
+            eTags.add(null);
+            sizes.add(0);
+            storageClasses.add(null);
+        }
+        owners.add(objectVersion.owner != null ? objectVersion.owner.uid : null, objectVersion.owner != null);
+    }
+
+    /**
+     * 释放预留的空间，追加完成后调用
+     */
+    public void trimToSize() {
+        keys.trimToSize();
+        versionIds.trimToSize();
+        lastModified.trimToSize();
+        eTags.trimToSize();
+        sizes.trimToSize();
+        storageClasses.trimToSize();
+        owners.trimToSize();
+    }
+
+    /**
+     * @return 版本（包括删除标记）个数
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    public String getKey(int index) {
+        checkIndex(index);
+        return keys.get(index);
+    }
+
+    public String getVersionId(int index) {
+        checkIndex(index);
+        return versionIds.get(index);
+    }
+
+    public boolean isLatest(int index) {
+        checkIndex(index);
+        return latest.get(index);
+    }
+
+    public boolean isDeleteMarker(int index) {
+        checkIndex(index);
+        return deleteMarkers.get(index);
+    }
+
+    public String getLastModified(int index) {
+        checkIndex(index);
+        return lastModified.get(index);
+    }
+
+    /**
+     * @return 修改时间的毫秒数，服务端返回的时间不是 yyyy-MM-ddTHH:mm:ss.SSSZ 格式时返回 -1
+     */
+    public long getLastModifiedMillis(int index) {
+        checkIndex(index);
+        return lastModified.getMillis(index);
+    }
+
+    /**
+     * @return 删除标记返回 null
+     */
+    public String getETag(int index) {
+        checkIndex(index);
+        return eTags.get(index);
+    }
+
+    /**
+     * @return 删除标记返回 0
+     */
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes.get(index);
+    }
+
+    /**
+     * @return 删除标记返回 null
+     */
+    public String getStorageClass(int index) {
+        checkIndex(index);
+        return storageClasses.get(index);
+    }
+
+    public String getOwnerUid(int index) {
+        checkIndex(index);
+        return owners.get(index);
+    }
+
+    /**
+     * 生成第 index 个版本，为 {@link ListBucketVersions.Version} 或者 {@link ListBucketVersions.DeleteMarker}，
+     * 每次调用都返回新的实例
+     */
+    public ListBucketVersions.ObjectVersion getObjectVersion(int index) {
+        checkIndex(index);
+        ListBucketVersions.ObjectVersion objectVersion;
+        if(deleteMarkers.get(index)){
+            objectVersion = new ListBucketVersions.DeleteMarker();
+        }else {
+            ListBucketVersions.Version version = new ListBucketVersions.Version();
+            version.eTag = eTags.get(index);
+            version.size = sizes.get(index);
+            version.storageClass = storageClasses.get(index);
+            objectVersion = version;
+        }
+        objectVersion.key = keys.get(index);
+        objectVersion.versionId = versionIds.get(index);
+        objectVersion.isLatest = latest.get(index);
+        objectVersion.lastModified = lastModified.get(index);
+        if(owners.isPresent(index)){
+            objectVersion.owner = new ListBucketVersions.Owner();
+            objectVersion.owner.uid = owners.get(index);
+        }
+        return objectVersion;
+    }
+
+    /**
+     * @return 只读的版本列表，元素在访问时生成
+     */
+    public List<ListBucketVersions.ObjectVersion> getObjectVersionList() {
+        return new AbstractList<ListBucketVersions.ObjectVersion>() {
+            @Override
+            public ListBucketVersions.ObjectVersion get(int index) {
+                return getObjectVersion(index);
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    /**
+     * 生成完整的 {@link ListBucketVersions}
+     */
+    public ListBucketVersions toListBucketVersions() {
+        ListBucketVersions listBucketVersions = new ListBucketVersions();
+        listBucketVersions.name = name;
+        listBucketVersions.prefix = prefix;
+        listBucketVersions.keyMarker = keyMarker;
+        listBucketVersions.versionIdMarker = versionIdMarker;
+        listBucketVersions.maxKeys = maxKeys;
+        listBucketVersions.isTruncated = isTruncated;
+        listBucketVersions.nextKeyMarker = nextKeyMarker;
+        listBucketVersions.nextVersionIdMarker = nextVersionIdMarker;
+        listBucketVersions.objectVersionList = new ArrayList<>(getObjectVersionList());
+        return listBucketVersions;
+    }
+
+    @Override
+    public String toString() {
+        return toListBucketVersions().toString();
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= keys.size()){
+            throw new IndexOutOfBoundsException("index " + index + ", size " + keys.size());
+        }
+    }
+}
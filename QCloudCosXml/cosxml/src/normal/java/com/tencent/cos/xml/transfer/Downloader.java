@@ -15,7 +15,6 @@ import com.tencent.cos.xml.model.object.GetObjectRequest;
 import com.tencent.cos.xml.model.object.GetObjectResult;
 import com.tencent.cos.xml.model.object.HeadObjectRequest;
 import com.tencent.cos.xml.model.object.HeadObjectResult;
-import com.tencent.cos.xml.utils.SharePreferenceUtils;
 
 import java.io.File;
 import java.util.List;
@@ -35,10 +34,10 @@ public class Downloader {
     private long rangeStart = 0L;
     private ListenerHandler listenerHandler = new ListenerHandler();
     private GetObjectRequest getObjectRequest;
-    private SharePreferenceUtils sharePreferedUtils;
+    private TransferJournal transferJournal;
 
     public Downloader(Context appContext, CosXml cosXmlServer){
-        sharePreferedUtils = SharePreferenceUtils.instance(appContext);
+        transferJournal = TransferJournal.instance(appContext);
         this.cosXmlServer = cosXmlServer;
     }
 
@@ -64,9 +63,9 @@ public class Downloader {
         rangeStart = 0L;
         String realLocalPath = getObjectRequest.getDownloadPath();
         if(realEtag != null){
-            String sourceEtag = sharePreferedUtils.getValue(realLocalPath);
+            String sourceEtag = transferJournal.getValue(realLocalPath);
             if(sourceEtag == null || !realEtag.equals(sourceEtag)){
-                sharePreferedUtils.updateValue(realLocalPath, realEtag);
+                transferJournal.putValue(realLocalPath, realEtag);
             }else {
                 rangeStart = getRange(realLocalPath);
             }
@@ -74,7 +73,7 @@ public class Downloader {
         getObjectRequest.setRange(rangeStart);
         getObjectRequest.setProgressListener(listenerHandler);
         GetObjectResult getObjectResult = cosXmlServer.getObject(getObjectRequest);
-        sharePreferedUtils.clear(realLocalPath);
+        transferJournal.remove(realLocalPath);
         return getObjectResult;
     }
 
@@ -105,9 +104,9 @@ public class Downloader {
                 rangeStart = 0L;
                 String realLocalPath = getObjectRequest.getDownloadPath();
                 if(realEtag != null){
-                    String sourceEtag = sharePreferedUtils.getValue(realLocalPath);
+                    String sourceEtag = transferJournal.getValue(realLocalPath);
                     if(sourceEtag == null || !realEtag.equals(sourceEtag)){
-                        sharePreferedUtils.updateValue(realLocalPath, realEtag);
+                        transferJournal.putValue(realLocalPath, realEtag);
                     }else {
                         rangeStart = getRange(realLocalPath);
                     }
@@ -168,7 +167,7 @@ public class Downloader {
 
         @Override
         public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-            sharePreferedUtils.clear(getObjectRequest.getDownloadPath());
+            transferJournal.remove(getObjectRequest.getDownloadPath());
             if(cosXmlResultListener != null){
                 cosXmlResultListener.onSuccess(request, result);
             }
@@ -13,6 +13,7 @@ import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 
 /**
@@ -201,6 +202,24 @@ public class XmlBuilder extends XmlSlimBuilder {
         xmlSerializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
         xmlSerializer.startDocument("UTF-8", null);
 
+        serializeDelete(xmlSerializer, delete);
+
+        xmlSerializer.endDocument();
+        return removeXMLHeader(xmlContent.toString());
+    }
+
+    /**
+     * 以 UTF-8 编码直接写入 outputStream，内容与 {@link #buildDelete(Delete)} 相同
+     */
+    public static void buildDelete(Delete delete, OutputStream outputStream) throws XmlPullParserException, IOException {
+        if (delete == null)return;
+
+        XmlSerializer xmlSerializer = newStreamingSerializer(outputStream);
+        serializeDelete(xmlSerializer, delete);
+        xmlSerializer.endDocument();
+    }
+
+    private static void serializeDelete(XmlSerializer xmlSerializer, Delete delete) throws IOException {
         xmlSerializer.startTag("", "Delete");
         addElement(xmlSerializer, "Quiet", String.valueOf(delete.quiet));
         if(delete.deleteObjects != null){
@@ -214,9 +233,6 @@ public class XmlBuilder extends XmlSlimBuilder {
         }
 
         xmlSerializer.endTag("", "Delete");
-
-        xmlSerializer.endDocument();
-        return removeXMLHeader(xmlContent.toString());
     }
 
     public static String buildRestore(RestoreConfigure restoreConfigure) throws XmlPullParserException, IOException {
@@ -79,90 +79,142 @@ public class XmlParser extends XmlSlimParser {
         }
     }
 
+    /**
+     * 逐条接收 ListBucketResult 中解析出的对象和公共前缀
+     */
+    public interface ListBucketHandler {
+
+        void onContents(ListBucket.Contents contents);
+
+        void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes);
+    }
+
     //bucket
-    public static void parseListBucketResult(InputStream inputStream, ListBucket result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        ListBucket.Contents contents = null;
-        ListBucket.CommonPrefixes commonPrefixes = null;
-        ListBucket.Owner owner = null;
+    public static void parseListBucketResult(InputStream inputStream, final ListBucket result) throws XmlPullParserException, IOException {
         result.contentsList = new ArrayList<ListBucket.Contents>();
         result.commonPrefixesList = new ArrayList<ListBucket.CommonPrefixes>();
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch(eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Name")){
-                        xmlPullParser.next();
-                        result.name = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Encoding-Type")){
-                        xmlPullParser.next();
-                        result.encodingType = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Marker")){
-                        xmlPullParser.next();
-                        result.marker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("MaxKeys")){
-                        xmlPullParser.next();
-                        result.maxKeys = Integer.parseInt(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("Delimiter")){
-                        xmlPullParser.next();
-                        result.delimiter = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("NextMarker")){
-                        xmlPullParser.next();
-                        result.nextMarker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("IsTruncated")){
-                        xmlPullParser.next();
-                        result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("Prefix")){
-                        xmlPullParser.next();
-                        if(commonPrefixes == null){
-                            result.prefix = xmlPullParser.getText();
-                        }else {
-                            commonPrefixes.prefix =  xmlPullParser.getText();
+        parseListBucketResult(inputStream, result, new ListBucketHandler() {
+            @Override
+            public void onContents(ListBucket.Contents contents) {
+                result.contentsList.add(contents);
+            }
+
+            @Override
+            public void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes) {
+                result.commonPrefixesList.add(commonPrefixes);
+            }
+        });
+    }
+
+    private static final TagNames LIST_BUCKET_TAGS = new TagNames("Name", "Encoding-Type", "Marker", "MaxKeys",
+            "Delimiter", "NextMarker", "IsTruncated", "Prefix", "Contents", "Key", "LastModified", "ETag", "Size",
+            "StorageClass", "Owner", "ID", "CommonPrefixes");
+
+    /**
+     * 流式解析 ListBucketResult，每解析完一个 Contents 或 CommonPrefixes 立即回调 handler，
+     * result 中只填充分页信息，不保存 contentsList 和 commonPrefixesList
+     */
+    public static void parseListBucketResult(InputStream inputStream, ListBucket result, ListBucketHandler handler) throws XmlPullParserException, IOException {
+        XmlPullParser xmlPullParser = obtainPullParser(inputStream);
+        try {
+            int eventType = xmlPullParser.getEventType();
+            String tagName;
+            ListBucket.Contents contents = null;
+            ListBucket.CommonPrefixes commonPrefixes = null;
+            ListBucket.Owner owner = null;
+            while (eventType != XmlPullParser.END_DOCUMENT){
+                if(eventType == XmlPullParser.START_TAG){
+                    tagName = LIST_BUCKET_TAGS.canonical(xmlPullParser.getName());
+                    if(tagName != null){
+                        switch (tagName){
+                            case "Name":
+                                xmlPullParser.next();
+                                result.name = xmlPullParser.getText();
+                                break;
+                            case "Encoding-Type":
+                                xmlPullParser.next();
+                                result.encodingType = xmlPullParser.getText();
+                                break;
+                            case "Marker":
+                                xmlPullParser.next();
+                                result.marker = xmlPullParser.getText();
+                                break;
+                            case "MaxKeys":
+                                xmlPullParser.next();
+                                result.maxKeys = Integer.parseInt(xmlPullParser.getText());
+                                break;
+                            case "Delimiter":
+                                xmlPullParser.next();
+                                result.delimiter = xmlPullParser.getText();
+                                break;
+                            case "NextMarker":
+                                xmlPullParser.next();
+                                result.nextMarker = xmlPullParser.getText();
+                                break;
+                            case "IsTruncated":
+                                xmlPullParser.next();
+                                result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
+                                break;
+                            case "Prefix":
+                                xmlPullParser.next();
+                                if(commonPrefixes == null){
+                                    result.prefix = xmlPullParser.getText();
+                                }else {
+                                    commonPrefixes.prefix =  xmlPullParser.getText();
+                                }
+                                break;
+                            case "Contents":
+                                contents = new ListBucket.Contents();
+                                break;
+                            case "Key":
+                                xmlPullParser.next();
+                                contents.key = xmlPullParser.getText();
+                                break;
+                            case "LastModified":
+                                xmlPullParser.next();
+                                contents.lastModified = xmlPullParser.getText();
+                                break;
+                            case "ETag":
+                                xmlPullParser.next();
+                                contents.eTag = xmlPullParser.getText();
+                                break;
+                            case "Size":
+                                xmlPullParser.next();
+                                contents.size = Long.parseLong(xmlPullParser.getText());
+                                break;
+                            case "StorageClass":
+                                xmlPullParser.next();
+                                contents.storageClass = xmlPullParser.getText();
+                                break;
+                            case "Owner":
+                                owner = new ListBucket.Owner();
+                                break;
+                            case "ID":
+                                xmlPullParser.next();
+                                owner.id = xmlPullParser.getText();
+                                break;
+                            case "CommonPrefixes":
+                                commonPrefixes = new ListBucket.CommonPrefixes();
+                                break;
                         }
-                    }else if(tagName.equalsIgnoreCase("Contents")){
-                        contents = new ListBucket.Contents();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        contents.key = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("LastModified")){
-                        xmlPullParser.next();
-                        contents.lastModified = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        contents.eTag = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Size")){
-                        xmlPullParser.next();
-                        contents.size = Long.parseLong(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        contents.storageClass = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Owner")){
-                       owner = new ListBucket.Owner();
-                    }else if(tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        owner.id = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("CommonPrefixes")){
-                        commonPrefixes = new ListBucket.CommonPrefixes();
                     }
-                    break;
-                    case XmlPullParser.END_TAG:
-                        tagName = xmlPullParser.getName();
-                        if(tagName.equalsIgnoreCase("Contents")){
-                            result.contentsList.add(contents);
-                            contents = null;
-                        }else if(tagName.equalsIgnoreCase("Owner")){
-                            contents.owner = owner;
-                            owner = null;
-                        }else if(tagName.equalsIgnoreCase("CommonPrefixes")){
-                            result.commonPrefixesList.add(commonPrefixes);
-                            commonPrefixes = null;
-                        }
-                        break;
+                }else if(eventType == XmlPullParser.END_TAG){
+                    tagName = LIST_BUCKET_TAGS.canonical(xmlPullParser.getName());
+                    if("Contents".equals(tagName)){
+                        handler.onContents(contents);
+                        contents = null;
+                    }else if("Owner".equals(tagName)){
+                        contents.owner = owner;
+                        owner = null;
+                    }else if("CommonPrefixes".equals(tagName)){
+                        handler.onCommonPrefixes(commonPrefixes);
+                        commonPrefixes = null;
+                    }
+                }
+                eventType = xmlPullParser.next();
             }
-            eventType = xmlPullParser.next();
+        } finally {
+            recyclePullParser(xmlPullParser);
         }
     }
 
@@ -472,119 +524,149 @@ public class XmlParser extends XmlSlimParser {
         }
     }
 
+    private static final TagNames LIST_MULTIPART_UPLOADS_TAGS = new TagNames("Bucket", "Encoding-Type", "KeyMarker",
+            "UploadIdMarker", "NextKeyMarker", "NextUploadIdMarker", "MaxUploads", "IsTruncated", "Prefix",
+            "Delimiter", "Upload", "Key", "UploadId", "StorageClass", "Initiator", "UIN", "Owner", "UID", "ID",
+            "DisplayName", "Initiated", "CommonPrefixs");
+
     public static void parseListMultipartUploadsResult(InputStream inputStream, ListMultipartUploads result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        ListMultipartUploads.CommonPrefixes commonPrefixes = null;
-        ListMultipartUploads.Upload upload = null;
-        result.uploads = new ArrayList<ListMultipartUploads.Upload>();
-        result.commonPrefixes = new ArrayList<ListMultipartUploads.CommonPrefixes>();
-        ListMultipartUploads.Initiator initiator = null;
-        ListMultipartUploads.Owner owner = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if (tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        result.bucket = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("Encoding-Type")){
-                        xmlPullParser.next();
-                        result.encodingType = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("KeyMarker")){
-                        xmlPullParser.next();
-                        result.keyMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("UploadIdMarker")){
-                        xmlPullParser.next();
-                        result.uploadIdMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("NextKeyMarker")){
-                        xmlPullParser.next();
-                        result.nextKeyMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("NextUploadIdMarker")){
-                        xmlPullParser.next();
-                        result.nextUploadIdMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("MaxUploads")){
-                        xmlPullParser.next();
-                        result.maxUploads = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("IsTruncated")){
-                        xmlPullParser.next();
-                        result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if (tagName.equalsIgnoreCase("Prefix")){
-                        xmlPullParser.next();
-                        if(commonPrefixes == null){
-                            result.prefix = xmlPullParser.getText();
-                        }else {
-                            commonPrefixes.prefix = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("Delimiter")){
-                        xmlPullParser.next();
-                        result.delimiter = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Upload")){
-                        upload = new ListMultipartUploads.Upload();
-                    }else if (tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        upload.key = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("UploadId")){
-                        xmlPullParser.next();
-                        upload.uploadID = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        upload.storageClass = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("Initiator")){
-                        initiator = new ListMultipartUploads.Initiator();
-                    }else if (tagName.equalsIgnoreCase("UIN")){
-                        xmlPullParser.next();
-                        if(initiator != null){
-                            initiator.uin = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("Owner")){
-                        owner = new ListMultipartUploads.Owner();
-                    }else if (tagName.equalsIgnoreCase("UID")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.uid = xmlPullParser.getText();
+        XmlPullParser xmlPullParser = obtainPullParser(inputStream);
+        try {
+            int eventType = xmlPullParser.getEventType();
+            String tagName;
+            ListMultipartUploads.CommonPrefixes commonPrefixes = null;
+            ListMultipartUploads.Upload upload = null;
+            result.uploads = new ArrayList<ListMultipartUploads.Upload>();
+            result.commonPrefixes = new ArrayList<ListMultipartUploads.CommonPrefixes>();
+            ListMultipartUploads.Initiator initiator = null;
+            ListMultipartUploads.Owner owner = null;
+            while (eventType != XmlPullParser.END_DOCUMENT){
+                if(eventType == XmlPullParser.START_TAG){
+                    tagName = LIST_MULTIPART_UPLOADS_TAGS.canonical(xmlPullParser.getName());
+                    if(tagName != null){
+                        switch (tagName){
+                            case "Bucket":
+                                xmlPullParser.next();
+                                result.bucket = xmlPullParser.getText();
+                                break;
+                            case "Encoding-Type":
+                                xmlPullParser.next();
+                                result.encodingType = xmlPullParser.getText();
+                                break;
+                            case "KeyMarker":
+                                xmlPullParser.next();
+                                result.keyMarker = xmlPullParser.getText();
+                                break;
+                            case "UploadIdMarker":
+                                xmlPullParser.next();
+                                result.uploadIdMarker = xmlPullParser.getText();
+                                break;
+                            case "NextKeyMarker":
+                                xmlPullParser.next();
+                                result.nextKeyMarker = xmlPullParser.getText();
+                                break;
+                            case "NextUploadIdMarker":
+                                xmlPullParser.next();
+                                result.nextUploadIdMarker = xmlPullParser.getText();
+                                break;
+                            case "MaxUploads":
+                                xmlPullParser.next();
+                                result.maxUploads = xmlPullParser.getText();
+                                break;
+                            case "IsTruncated":
+                                xmlPullParser.next();
+                                result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
+                                break;
+                            case "Prefix":
+                                xmlPullParser.next();
+                                if(commonPrefixes == null){
+                                    result.prefix = xmlPullParser.getText();
+                                }else {
+                                    commonPrefixes.prefix = xmlPullParser.getText();
+                                }
+                                break;
+                            case "Delimiter":
+                                xmlPullParser.next();
+                                result.delimiter = xmlPullParser.getText();
+                                break;
+                            case "Upload":
+                                upload = new ListMultipartUploads.Upload();
+                                break;
+                            case "Key":
+                                xmlPullParser.next();
+                                upload.key = xmlPullParser.getText();
+                                break;
+                            case "UploadId":
+                                xmlPullParser.next();
+                                upload.uploadID = xmlPullParser.getText();
+                                break;
+                            case "StorageClass":
+                                xmlPullParser.next();
+                                upload.storageClass = xmlPullParser.getText();
+                                break;
+                            case "Initiator":
+                                initiator = new ListMultipartUploads.Initiator();
+                                break;
+                            case "UIN":
+                                xmlPullParser.next();
+                                if(initiator != null){
+                                    initiator.uin = xmlPullParser.getText();
+                                }
+                                break;
+                            case "Owner":
+                                owner = new ListMultipartUploads.Owner();
+                                break;
+                            case "UID":
+                                xmlPullParser.next();
+                                if(owner != null){
+                                    owner.uid = xmlPullParser.getText();
+                                }
+                                break;
+                            case "ID":
+                                xmlPullParser.next();
+                                if(owner != null){
+                                    owner.id = xmlPullParser.getText();
+                                }else if(initiator != null){
+                                    initiator.id = xmlPullParser.getText();
+                                }
+                                break;
+                            case "DisplayName":
+                                xmlPullParser.next();
+                                if(owner != null){
+                                    owner.displayName = xmlPullParser.getText();
+                                }else if(initiator != null){
+                                    initiator.displayName = xmlPullParser.getText();
+                                }
+                                break;
+                            case "Initiated":
+                                xmlPullParser.next();
+                                upload.initiated = xmlPullParser.getText();
+                                break;
+                            case "CommonPrefixs":
+                                commonPrefixes = new ListMultipartUploads.CommonPrefixes();
+                                break;
                         }
-                    }else if (tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.id = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.id = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("DisplayName")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.displayName = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.displayName = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("Initiated")){
-                        xmlPullParser.next();
-                        upload.initiated = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("CommonPrefixs")){
-                        commonPrefixes = new ListMultipartUploads.CommonPrefixes();
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Upload")){
+                }else if(eventType == XmlPullParser.END_TAG){
+                    tagName = LIST_MULTIPART_UPLOADS_TAGS.canonical(xmlPullParser.getName());
+                    if("Upload".equals(tagName)){
                         result.uploads.add(upload);
                         upload = null;
-                    }else if(tagName.equalsIgnoreCase("CommonPrefixs")){
+                    }else if("CommonPrefixs".equals(tagName)){
                         result.commonPrefixes.add(commonPrefixes);
                         commonPrefixes = null;
-                    }else if(tagName.equalsIgnoreCase("Owner")){
+                    }else if("Owner".equals(tagName)){
                         upload.owner = owner;
                         owner = null;
-                    }else if(tagName.equalsIgnoreCase("Initiator")){
-                       upload.initiator = initiator;
+                    }else if("Initiator".equals(tagName)){
+                        upload.initiator = initiator;
                         initiator = null;
                     }
-                    break;
+                }
+                eventType = xmlPullParser.next();
             }
-            eventType = xmlPullParser.next();
+        } finally {
+            recyclePullParser(xmlPullParser);
         }
     }
 
@@ -667,12 +749,33 @@ public class XmlParser extends XmlSlimParser {
         }
     }
 
-    public static void parseListBucketVersions(InputStream inputStream, ListBucketVersions result) throws XmlPullParserException, IOException{
+    /**
+     * 逐条接收 ListVersionsResult 中解析出的版本和删除标记
+     */
+    public interface ListBucketVersionsHandler {
+
+        void onObjectVersion(ListBucketVersions.ObjectVersion objectVersion);
+    }
+
+    public static void parseListBucketVersions(InputStream inputStream, final ListBucketVersions result) throws XmlPullParserException, IOException{
+        result.objectVersionList = new ArrayList<>();
+        parseListBucketVersions(inputStream, result, new ListBucketVersionsHandler() {
+            @Override
+            public void onObjectVersion(ListBucketVersions.ObjectVersion objectVersion) {
+                result.objectVersionList.add(objectVersion);
+            }
+        });
+    }
+
+    /**
+     * 流式解析 ListVersionsResult，每解析完一个 Version 或 DeleteMarker 立即回调 handler，
+     * result 中只填充分页信息，不保存 objectVersionList
+     */
+    public static void parseListBucketVersions(InputStream inputStream, ListBucketVersions result, ListBucketVersionsHandler handler) throws XmlPullParserException, IOException{
         XmlPullParser xmlPullParser =  Xml.newPullParser();
         xmlPullParser.setInput(inputStream, "UTF-8");
         int eventType = xmlPullParser.getEventType();
         String tagName;
-        result.objectVersionList = new ArrayList<>();
         ListBucketVersions.ObjectVersion objectVersion = null;
         ListBucketVersions.Owner owner = null;
         while (eventType != XmlPullParser.END_DOCUMENT){
@@ -741,10 +844,10 @@ public class XmlParser extends XmlSlimParser {
                         objectVersion.owner = owner;
                         owner = null;
                     }else if(tagName.equalsIgnoreCase("DeleteMarker")){
-                        result.objectVersionList.add(objectVersion);
+                        handler.onObjectVersion(objectVersion);
                         objectVersion = null;
                     }else if(tagName.equalsIgnoreCase("Version")){
-                        result.objectVersionList.add(objectVersion);
+                        handler.onObjectVersion(objectVersion);
                         objectVersion = null;
                     }
             }
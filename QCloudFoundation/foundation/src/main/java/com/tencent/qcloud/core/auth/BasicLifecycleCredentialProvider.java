@@ -3,8 +3,12 @@ package com.tencent.qcloud.core.auth;
 import android.text.TextUtils;
 
 import com.tencent.qcloud.core.common.QCloudClientException;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+import com.tencent.qcloud.core.task.TaskExecutors;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -16,20 +20,85 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class BasicLifecycleCredentialProvider implements QCloudCredentialProvider {
 
-    private QCloudLifecycleCredentials credentials;
+    private static final String TAG = "CredentialProvider";
+
+    // 距离过期不足该时长时，必须先更新证书才能签名，单位秒
+    private static final long EXPIRE_BUFFER = 60;
+
+    // 两次提前更新之间的最短间隔，单位秒。更新失败或者新证书的有效期仍然落在提前更新的时间段内时，
+    // 避免每次签名都请求新的证书
+    private static final long REFRESH_AHEAD_INTERVAL = 30;
+
+    private volatile Lifecycle lifecycle;
+
+    // 每完成一次更新加一，用于判断等锁期间是否已有其他线程完成了更新
+    private volatile int generation = 0;
+
+    // 提前在后台更新证书的时长，单位秒，0 表示不提前更新
+    private volatile long refreshAheadTime = 0;
+
+    private final AtomicBoolean refreshingAhead = new AtomicBoolean(false);
+
+    // 上一次开始提前更新的时间，单位秒
+    private volatile long lastRefreshAheadTime = 0;
+
+    private volatile QCloudCredentialCache credentialCache;
+    private boolean cacheLoaded = false;
 
     private ReentrantLock lock = new ReentrantLock();
 
     @Override
     public final QCloudCredentials getCredentials()  throws QCloudClientException {
-        if (needUpdateSignaturePair()) {
-            refresh();
+        // 先读版本再读证书，保证看到旧证书时拿到的也是旧版本
+        int expectedGeneration = generation;
+        Lifecycle current = lifecycle;
+        long currentTime = System.currentTimeMillis() / 1000;
+        if (current == null || currentTime > current.expireTime - EXPIRE_BUFFER) {
+            refresh(expectedGeneration);
+            current = lifecycle;
+            return current != null ? current.credentials : null;
         }
-        return credentials;
+        if (refreshAheadTime > 0 && currentTime > current.expireTime - EXPIRE_BUFFER - refreshAheadTime
+                && currentTime >= lastRefreshAheadTime + REFRESH_AHEAD_INTERVAL) {
+            // 证书仍然有效，后台更新的同时继续使用
+            refreshAhead(currentTime);
+        }
+        return current.credentials;
     }
 
     @Override
     public final void refresh() throws QCloudClientException {
+        refresh(generation);
+    }
+
+    /**
+     * 开启提前更新：证书距离过期不足 refreshAheadTime 时在后台更新，更新期间继续使用当前证书，
+     * 签名不需要等待网络请求
+     *
+     * @param refreshAheadTime 提前的时长，单位秒，0 表示关闭
+     */
+    public void setRefreshAheadTime(long refreshAheadTime) {
+        if (refreshAheadTime < 0) {
+            throw new IllegalArgumentException("refresh ahead time must not be negative.");
+        }
+        this.refreshAheadTime = refreshAheadTime;
+    }
+
+    /**
+     * 设置证书的持久化缓存：首次签名时优先使用缓存中仍然有效的证书，每次更新证书后写入缓存
+     *
+     * @param credentialCache 证书缓存，例如 {@link FileCredentialCache}
+     */
+    public void setCredentialCache(QCloudCredentialCache credentialCache) {
+        this.credentialCache = credentialCache;
+    }
+
+    /**
+     * 同一时刻只有一个线程请求新的证书，其他线程等待并直接使用其结果
+     *
+     * @param expectedGeneration 调用方看到的证书版本，已经被其他线程更新时不再重复请求
+     */
+    private void refresh(int expectedGeneration) throws QCloudClientException {
         boolean locked = false;
         try {
             locked = lock.tryLock(20, TimeUnit.SECONDS);
@@ -38,7 +107,30 @@ public abstract class BasicLifecycleCredentialProvider implements QCloudCredenti
                 throw new QCloudClientException("lock timeout, no credential for sign");
             }
 
-            credentials = fetchNewCredentials();
+            if (generation != expectedGeneration && lifecycle != null) {
+                return;
+            }
+
+            QCloudCredentialCache cache = credentialCache;
+            if (cache != null && !cacheLoaded) {
+                cacheLoaded = true;
+                if (loadFromCache(cache)) {
+                    return;
+                }
+            }
+
+            QCloudLifecycleCredentials credentials = fetchNewCredentials();
+            if (credentials != null) {
+                lifecycle = new Lifecycle(credentials);
+            } else if (lifecycle != null
+                    && System.currentTimeMillis() / 1000 > lifecycle.expireTime - EXPIRE_BUFFER) {
+                // 没有拿到新证书时继续使用仍然有效的证书
+                lifecycle = null;
+            }
+            generation++;
+            if (cache != null && credentials != null) {
+                cache.save(credentials);
+            }
 
         } catch (InterruptedException e) {
             throw new QCloudClientException("interrupt when try to get credential", e);
@@ -49,31 +141,85 @@ public abstract class BasicLifecycleCredentialProvider implements QCloudCredenti
         }
     }
 
-    public final void invalidate() {
-        credentials = null;
+    private void refreshAhead(long currentTime) {
+        if (!refreshingAhead.compareAndSet(false, true)) {
+            return;
+        }
+        lastRefreshAheadTime = currentTime;
+        final int expectedGeneration = generation;
+        try {
+            TaskExecutors.COMMAND_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh(expectedGeneration);
+                    } catch (QCloudClientException e) {
+                        QCloudLogger.w(TAG, "refresh credentials ahead failed for %s", e);
+                    } finally {
+                        refreshingAhead.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingAhead.set(false);
+        }
     }
 
-    protected abstract QCloudLifecycleCredentials fetchNewCredentials() throws QCloudClientException;
-
-    private boolean needUpdateSignaturePair() {
+    /**
+     * 缓存中的证书距离过期超过 {@link #EXPIRE_BUFFER} 时直接使用
+     */
+    private boolean loadFromCache(QCloudCredentialCache cache) {
+        QCloudLifecycleCredentials credentials = cache.load();
         if (credentials == null) {
-            return true;
+            return false;
+        }
+        Lifecycle cached = new Lifecycle(credentials);
+        if (System.currentTimeMillis() / 1000 > cached.expireTime - EXPIRE_BUFFER) {
+            return false;
         }
+        lifecycle = cached;
+        generation++;
+        return true;
+    }
 
-        String keyTime = credentials.getKeyTime(); // timestamp:expireTime;
-        if (TextUtils.isEmpty(keyTime)) {
-            return true;
+    public final void invalidate() {
+        lifecycle = null;
+        QCloudCredentialCache cache = credentialCache;
+        if (cache != null) {
+            cache.clear();
         }
-        String[] times = keyTime.split(";");
-        if (times.length != 2) {
-            return true;
+    }
+
+    protected abstract QCloudLifecycleCredentials fetchNewCredentials() throws QCloudClientException;
+
+    /**
+     * 证书及其过期时间，keyTime 只在证书更新时解析一次
+     */
+    private static class Lifecycle {
+        final QCloudLifecycleCredentials credentials;
+        final long expireTime;
+
+        Lifecycle(QCloudLifecycleCredentials credentials) {
+            this.credentials = credentials;
+            this.expireTime = parseExpireTime(credentials.getKeyTime());
         }
-        String expire = times[1];
-        long expireTime = Long.valueOf(expire);
-        long currentTime = System.currentTimeMillis() / 1000;
-        if (currentTime > expireTime - 60) {
-            return true;
+
+        /**
+         * keyTime 格式为 timestamp;expireTime，无法解析时返回 0，即总是需要更新
+         */
+        private static long parseExpireTime(String keyTime) {
+            if (TextUtils.isEmpty(keyTime)) {
+                return 0;
+            }
+            int index = keyTime.indexOf(';');
+            if (index < 0 || keyTime.indexOf(';', index + 1) >= 0) {
+                return 0;
+            }
+            try {
+                return Long.parseLong(keyTime.substring(index + 1));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
         }
-        return false;
     }
 }
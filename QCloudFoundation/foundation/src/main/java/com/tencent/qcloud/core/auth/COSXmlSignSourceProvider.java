@@ -3,24 +3,20 @@ package com.tencent.qcloud.core.auth;
 import com.tencent.qcloud.core.common.QCloudClientException;
 import com.tencent.qcloud.core.http.HttpRequest;
 import com.tencent.qcloud.core.util.QCloudHttpUtils;
-import com.tencent.qcloud.core.util.QCloudStringUtils;
 
 import java.io.IOException;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.TreeSet;
 
 import static com.tencent.qcloud.core.http.HttpConstants.Header.CONTENT_LENGTH;
 import static com.tencent.qcloud.core.http.HttpConstants.Header.CONTENT_TYPE;
@@ -34,19 +30,49 @@ import static com.tencent.qcloud.core.http.HttpConstants.Header.TRANSFER_ENCODIN
 
 public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
 
+    private static final String LOWER_CONTENT_TYPE = CONTENT_TYPE.toLowerCase();
+    private static final String LOWER_CONTENT_LENGTH = CONTENT_LENGTH.toLowerCase();
+    private static final String LOWER_DATE = DATE.toLowerCase();
+
+    // 超过该长度的缓冲区不再复用，避免长期占用内存
+    private static final int MAX_REUSED_BUFFER = 8 * 1024;
+
+    private static final ThreadLocal<StringBuilder> CANONICAL_BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(512);
+        }
+    };
+
+    /**
+     * Date 头部精确到秒，同一秒内直接使用上次的结果
+     */
+    private static final ThreadLocal<GmtDateFormatter> GMT_DATE_FORMATTER = new ThreadLocal<GmtDateFormatter>() {
+        @Override
+        protected GmtDateFormatter initialValue() {
+            return new GmtDateFormatter();
+        }
+    };
+
     private Set<String> paras;
 
+    private Set<String> headers;
+
+    /**
+     * 小写并排好序的参数名和头部名，参数或头部变化时重新计算
+     */
+    private String[] sortedParas;
+    private String[] sortedHeaders;
+
     /**
      * 真正用来签名的参数
      */
-    private Set<String> realSignParas;
+    private String realParameterList = "";
 
     /**
      * 真正用来签名的头部
      */
-    private Set<String> realSignHeader;
-
-    private Set<String> headers;
+    private String realHeaderList = "";
 
     private long duration;
     private long beginTime;
@@ -57,8 +83,6 @@ public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
     public COSXmlSignSourceProvider() {
         headers = new HashSet<String>();
         paras = new HashSet<String>();
-        realSignHeader = new HashSet<String>();
-        realSignParas = new HashSet<String>();
     }
 
     /**
@@ -100,11 +124,13 @@ public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
      */
     public void parameter(String key) {
         paras.add(key);
+        sortedParas = null;
     }
 
     public void parameters(Set<String> keys) {
         if(keys != null){
             paras.addAll(keys);
+            sortedParas = null;
         }
     }
 
@@ -116,11 +142,13 @@ public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
     public void header(String key) {
 
         headers.add(key);
+        sortedHeaders = null;
     }
 
     public void headers(Set<String> keys) {
         if(keys != null){
             headers.addAll(keys);
+            sortedHeaders = null;
         }
     }
 
@@ -139,12 +167,13 @@ public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
             return null;
         }
 
-        if (headers.size() > 0) {
+        String[] headerKeys = getSortedHeaders();
+        String[] paraKeys = getSortedParas();
 
-            Set<String> lowerCaseHeaders = toLowerCase(headers);
+        if (headerKeys.length > 0) {
 
             // 1、是否存在Content-Type
-            if (lowerCaseHeaders != null && lowerCaseHeaders.contains(CONTENT_TYPE.toLowerCase())) {
+            if (Arrays.binarySearch(headerKeys, LOWER_CONTENT_TYPE) >= 0) {
 
                 String contentType = request.contentType();
                 if (contentType != null) {
@@ -153,7 +182,7 @@ public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
             }
 
             // 2、是否存在Content-Length
-            if (lowerCaseHeaders != null && lowerCaseHeaders.contains(CONTENT_LENGTH.toLowerCase())) {
+            if (Arrays.binarySearch(headerKeys, LOWER_CONTENT_LENGTH) >= 0) {
 
                 long contentLength;
                 try {
@@ -172,50 +201,36 @@ public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
             }
 
             // 3、是否存在Date
-            if (lowerCaseHeaders != null && lowerCaseHeaders.contains(DATE.toLowerCase())) {
-
-                Date d = new Date();
-                DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-                format.setTimeZone(TimeZone.getTimeZone("GMT"));
-                request.addHeader(DATE, format.format(d));
+            if (Arrays.binarySearch(headerKeys, LOWER_DATE) >= 0) {
+                request.addHeader(DATE, GMT_DATE_FORMATTER.get().format(System.currentTimeMillis()));
             }
 
         }
 
+        // 在同一个缓冲区中一次拼出 formatString
+        StringBuilder buffer = CANONICAL_BUFFER.get();
+        buffer.setLength(0);
 
         // 添加method
-        StringBuilder formatString = new StringBuilder(request.method().toLowerCase());
-        formatString.append("\n");
-
+        appendLowerCase(buffer, request.method());
+        buffer.append('\n');
 
         // 添加path
-        String path = QCloudHttpUtils.urlDecodeString(request.url().getPath());
-        formatString.append(path);
-        formatString.append("\n");
+        buffer.append(QCloudHttpUtils.urlDecodeString(request.url().getPath()));
+        buffer.append('\n');
 
         // 添加parameters
-        String paraString = queryStringForKeys(request.url(), paras, realSignParas);
-
-        if (paraString == null) {
-            paraString = "";
-        }
-        formatString.append(paraString);
-        formatString.append("\n");
+        realParameterList = appendParameters(buffer, request.url(), paraKeys);
+        buffer.append('\n');
 
         // 添加header，得到最终的formatString
-        String headerString = "";
         if (request.headers() != null) {
-            headerString = headersStringForKeys(request.headers(), headers, realSignHeader);
+            realHeaderList = appendHeaders(buffer, request.headers(), headerKeys);
         }
-        formatString.append(headerString);
-        formatString.append("\n");
-
-
-        StringBuilder stringToSign = new StringBuilder();
+        buffer.append('\n');
 
-        // 追加 q-sign-algorithm
-        stringToSign.append(AuthConstants.SHA1);
-        stringToSign.append("\n");
+        // 追加 sha1Hash(formatString)
+        String formatStringSha1 = Utils.encodeHexString(Utils.sha1(buffer.toString()));
 
         // 追加q-sign-time
         if (beginTime == 0) {
@@ -225,161 +240,175 @@ public class COSXmlSignSourceProvider implements QCloudSignSourceProvider {
             expiredTime = beginTime + duration;
         }
         signTime = beginTime + ";" + expiredTime;
-        stringToSign.append(signTime);
-        stringToSign.append("\n");
 
-        // 追加 sha1Hash(formatString)
-        String formatStringSha1 = Utils.encodeHexString(Utils.sha1(formatString.toString()));
-        stringToSign.append(formatStringSha1);
-        stringToSign.append("\n");
+        buffer.setLength(0);
+
+        // 追加 q-sign-algorithm
+        buffer.append(AuthConstants.SHA1).append('\n');
+        buffer.append(signTime).append('\n');
+        buffer.append(formatStringSha1).append('\n');
 
-        return stringToSign.toString();
+        String stringToSign = buffer.toString();
+        if (buffer.capacity() > MAX_REUSED_BUFFER) {
+            CANONICAL_BUFFER.remove();
+        }
+        return stringToSign;
     }
 
     String getRealHeaderList() {
-        return sortAndJoinSemicolon(realSignHeader);
+        return realHeaderList;
     }
 
     String getRealParameterList() {
-        return sortAndJoinSemicolon(realSignParas);
+        return realParameterList;
     }
 
     String getSignTime() {
         return signTime;
     }
 
-    private String sortAndJoinSemicolon(Set<String> values) {
-        if (values == null) {
-            return "";
+    private String[] getSortedHeaders() {
+        if (sortedHeaders == null) {
+            sortedHeaders = toSortedLowerCase(headers);
         }
+        return sortedHeaders;
+    }
 
-        // 这里也需要先按字典顺序进行排序
-        Set<String> set = new TreeSet<>(values);
-
-        StringBuilder str  = new StringBuilder();
-        for (String value : set) {
-            if (!QCloudStringUtils.isEmpty(str.toString())) {
-                str.append(";");
-            }
-            str.append(value);
+    private String[] getSortedParas() {
+        if (sortedParas == null) {
+            sortedParas = toSortedLowerCase(paras);
         }
-
-        return str.toString();
+        return sortedParas;
     }
 
     /**
-     * 将set中所有的值转化为小写
-     *
-     * @param set 原始集合
-     * @return 小写的集合
+     * 将所有的key值转化为小写，并按字典顺序排序
      */
-    private Set<String> toLowerCase(Set<String> set) {
-        if (set != null && set.size() > 0) {
-            Set<String> lowerSet = new HashSet<>();
-            for (String key : set) {
-                if (key != null) {
-                    lowerSet.add(key.toLowerCase());
-                }
+    private static String[] toSortedLowerCase(Set<String> set) {
+        List<String> keys = new ArrayList<>(set.size());
+        for (String key : set) {
+            if (key != null) {
+                keys.add(key.toLowerCase());
             }
-            return lowerSet;
         }
-
-        return null;
+        String[] sorted = keys.toArray(new String[keys.size()]);
+        Arrays.sort(sorted);
+        return sorted;
     }
 
-    private String queryStringForKeys(URL httpUrl, Set<String> keys, Set<String> realKeys) {
-        StringBuilder out = new StringBuilder();
-        boolean isFirst = true;
-
-        // 1、将所有的key值转化为小写，并进行排序
-        List<String> orderKeys = new LinkedList<>();
-        for (String key : keys) {
-            orderKeys.add(key.toLowerCase());
+    private static void appendLowerCase(StringBuilder out, String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            out.append(Character.toLowerCase(value.charAt(i)));
         }
-        Collections.sort(orderKeys, new Comparator<String>() {
-            @Override
-            public int compare(String o1, String o2) {
-                return o1.compareTo(o2);
-            }
-        });
+    }
 
-        // 2、获得query所有的name，并进行小写映射
-        Map<String, List<String>> queryNameValues = QCloudHttpUtils.getDecodedQueryPair(httpUrl);
-        Set<String> queryNames = queryNameValues.keySet();
-        if (queryNames == null) {
+    /**
+     * 追加需要签名的参数，返回实际签名的参数列表
+     */
+    private static String appendParameters(StringBuilder out, URL httpUrl, String[] keys) {
+        if (keys.length == 0 || httpUrl.getQuery() == null) {
             return "";
         }
-        Map<String, String> maps = new HashMap<>();
-        for (String name : queryNames) {
-            maps.put(name.toLowerCase(), name);
-        }
+        Map<String, List<String>> queryNameValues = QCloudHttpUtils.getDecodedQueryPair(httpUrl);
+        StringBuilder realKeys = new StringBuilder();
+        boolean isFirst = true;
+        String lastKey = null;
 
-        // 3、取出需要的参数
-        for (String key : orderKeys) {
-            List<String> values = queryNameValues.get(maps.get(key));
-            if (values != null) {
-                for (String value : values) {
-                    if (!isFirst) {
-                        out.append('&');
-                    }
-                    isFirst = false;
-                    realKeys.add(key.toLowerCase());
-                    out.append(key.toLowerCase());
-                    if (value != null) {
-                        out.append('=');
-                        out.append(value.toLowerCase());
-                    }
+        for (String key : keys) {
+            List<String> values = findIgnoreCase(queryNameValues, key);
+            if (values == null) {
+                continue;
+            }
+            for (String value : values) {
+                if (!isFirst) {
+                    out.append('&');
+                }
+                isFirst = false;
+                out.append(key);
+                if (value != null) {
+                    out.append('=');
+                    appendLowerCase(out, value);
                 }
             }
+            if (!values.isEmpty() && !key.equals(lastKey)) {
+                if (lastKey != null) {
+                    realKeys.append(';');
+                }
+                realKeys.append(key);
+                lastKey = key;
+            }
         }
-        return out.toString();
+        return realKeys.toString();
     }
 
-    private String headersStringForKeys(Map<String, List<String>> headers, Set<String> keys, Set<String> realKeys) {
-        StringBuilder out = new StringBuilder();
+    /**
+     * 追加需要签名的头部，返回实际签名的头部列表
+     */
+    private static String appendHeaders(StringBuilder out, Map<String, List<String>> headers, String[] keys) {
+        StringBuilder realKeys = new StringBuilder();
         boolean isFirst = true;
+        String lastKey = null;
 
-        // 1、将所有的key值转化为小写，并进行排序
-        List<String> orderKeys = new LinkedList<>();
         for (String key : keys) {
-            orderKeys.add(key.toLowerCase());
-        }
-        Collections.sort(orderKeys, new Comparator<String>() {
-            @Override
-            public int compare(String o1, String o2) {
-                return o1.compareTo(o2);
+            List<String> values = findIgnoreCase(headers, key);
+            if (values == null) {
+                continue;
             }
-        });
+            for (String value : values) {
+                if (!isFirst) {
+                    out.append('&');
+                }
+                isFirst = false;
+                out.append(key);
+                if (value != null) {
+                    out.append('=');
+                    out.append(QCloudHttpUtils.urlEncodeString(value));
+                }
+            }
+            if (!values.isEmpty() && !key.equals(lastKey)) {
+                if (lastKey != null) {
+                    realKeys.append(';');
+                }
+                realKeys.append(key);
+                lastKey = key;
+            }
+        }
 
-        // 2、获得headers所有的name，并进行小写映射
-        Set<String> headerNames = headers.keySet();
-        if (headerNames == null) {
-            return "";
+        return realKeys.toString();
+    }
+
+    /**
+     * 按小写名称查找，多个名称只有大小写不同时取最后一个
+     */
+    private static List<String> findIgnoreCase(Map<String, List<String>> nameValues, String lowerCaseName) {
+        List<String> found = null;
+        for (Map.Entry<String, List<String>> entry : nameValues.entrySet()) {
+            String name = entry.getKey();
+            if (name != null && name.length() == lowerCaseName.length()
+                    && name.equalsIgnoreCase(lowerCaseName)) {
+                found = entry.getValue();
+            }
         }
-        Map<String, String> maps = new HashMap<>();
-        for (String name : headerNames) {
-            maps.put(name.toLowerCase(), name);
+        return found;
+    }
+
+    private static class GmtDateFormatter {
+        private final DateFormat format;
+        private long lastSecond = -1;
+        private String lastText;
+
+        GmtDateFormatter() {
+            format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
         }
 
-        // 3、取出需要的参数
-        for (String key : orderKeys) {
-            List<String> values = headers.get(maps.get(key));
-            if (values != null) {
-                for (String value : values) {
-                    if (!isFirst) {
-                        out.append('&');
-                    }
-                    isFirst = false;
-                    out.append(key.toLowerCase());
-                    realKeys.add(key);
-                    if (value != null) {
-                        out.append('=');
-                        out.append(QCloudHttpUtils.urlEncodeString(value));
-                    }
-                }
+        String format(long millis) {
+            long second = millis / 1000;
+            if (second != lastSecond) {
+                lastText = format.format(new Date(millis));
+                lastSecond = second;
             }
+            return lastText;
         }
-
-        return out.toString();
     }
 }
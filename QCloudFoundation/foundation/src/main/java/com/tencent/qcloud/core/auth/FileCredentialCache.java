@@ -0,0 +1,205 @@
+package com.tencent.qcloud.core.auth;
+
+import com.tencent.qcloud.core.logger.QCloudLogger;
+import com.tencent.qcloud.core.util.IOUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * <p>
+ * 加密保存在本地文件中的证书缓存，支持 {@link SessionQCloudCredentials} 和 {@link BasicQCloudCredentials}。
+ * </p>
+ * 文件内容使用 AES-CBC 加密，并用 HMAC-SHA256 校验完整性，密钥由调用方提供，
+ * 建议使用 Android Keystore 生成或保护该密钥，不要与缓存文件放在一起。
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public class FileCredentialCache implements QCloudCredentialCache {
+
+    private static final String TAG = "CredentialCache";
+
+    private static final byte VERSION = 1;
+    private static final int IV_LENGTH = 16;
+    private static final int MAC_LENGTH = 32;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String TYPE_SESSION = "session";
+    private static final String TYPE_BASIC = "basic";
+
+    private final File file;
+    private final SecretKeySpec encryptKey;
+    private final SecretKeySpec macKey;
+
+    /**
+     * @param file 缓存文件，建议放在应用的私有目录中
+     * @param secret 加密密钥，长度不少于 16 字节
+     */
+    public FileCredentialCache(File file, byte[] secret) {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null.");
+        }
+        if (secret == null || secret.length < 16) {
+            throw new IllegalArgumentException("secret must be at least 16 bytes.");
+        }
+        this.file = file;
+        // 加密和校验使用不同的密钥
+        this.encryptKey = new SecretKeySpec(Arrays.copyOf(digest(secret, "encrypt"), 16), "AES");
+        this.macKey = new SecretKeySpec(digest(secret, "mac"), "HmacSHA256");
+    }
+
+    @Override
+    public synchronized QCloudLifecycleCredentials load() {
+        if (!file.exists()) {
+            return null;
+        }
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            byte[] data = readFully(inputStream);
+            if (data.length < 1 + IV_LENGTH + MAC_LENGTH || data[0] != VERSION) {
+                return null;
+            }
+            int contentLength = data.length - MAC_LENGTH;
+            byte[] expectedMac = mac(data, 0, contentLength);
+            if (!MessageDigest.isEqual(expectedMac, Arrays.copyOfRange(data, contentLength, data.length))) {
+                QCloudLogger.w(TAG, "credential cache is corrupted");
+                return null;
+            }
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, encryptKey, new IvParameterSpec(data, 1, IV_LENGTH));
+            byte[] plain = cipher.doFinal(data, 1 + IV_LENGTH, contentLength - 1 - IV_LENGTH);
+            return fromJson(new JSONObject(new String(plain, UTF_8)));
+        } catch (IOException | GeneralSecurityException | JSONException | IllegalArgumentException e) {
+            QCloudLogger.w(TAG, "load credential cache failed for %s", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    @Override
+    public synchronized void save(QCloudLifecycleCredentials credentials) {
+        OutputStream outputStream = null;
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            JSONObject json = toJson(credentials);
+            if (json == null) {
+                return;
+            }
+            byte[] iv = new byte[IV_LENGTH];
+            new SecureRandom().nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, encryptKey, new IvParameterSpec(iv));
+            byte[] encrypted = cipher.doFinal(json.toString().getBytes(UTF_8));
+
+            byte[] data = new byte[1 + IV_LENGTH + encrypted.length + MAC_LENGTH];
+            data[0] = VERSION;
+            System.arraycopy(iv, 0, data, 1, IV_LENGTH);
+            System.arraycopy(encrypted, 0, data, 1 + IV_LENGTH, encrypted.length);
+            byte[] mac = mac(data, 0, data.length - MAC_LENGTH);
+            System.arraycopy(mac, 0, data, data.length - MAC_LENGTH, MAC_LENGTH);
+
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            // 先写临时文件再重命名，避免写到一半时进程退出留下损坏的缓存
+            outputStream = new FileOutputStream(tempFile);
+            outputStream.write(data);
+            outputStream.flush();
+            outputStream.close();
+            outputStream = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("rename " + tempFile + " failed");
+            }
+        } catch (IOException | GeneralSecurityException | JSONException e) {
+            QCloudLogger.w(TAG, "save credential cache failed for %s", e);
+            tempFile.delete();
+        } finally {
+            IOUtils.closeQuietly(outputStream);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        file.delete();
+    }
+
+    private JSONObject toJson(QCloudLifecycleCredentials credentials) throws JSONException {
+        JSONObject json = new JSONObject();
+        if (credentials instanceof SessionQCloudCredentials) {
+            json.put("type", TYPE_SESSION);
+            json.put("token", ((SessionQCloudCredentials) credentials).getToken());
+        } else if (credentials instanceof BasicQCloudCredentials) {
+            json.put("type", TYPE_BASIC);
+        } else {
+            return null;
+        }
+        json.put("secretId", credentials.getSecretId());
+        json.put("signKey", credentials.getSignKey());
+        json.put("keyTime", credentials.getKeyTime());
+        return json;
+    }
+
+    private QCloudLifecycleCredentials fromJson(JSONObject json) throws JSONException {
+        String type = json.getString("type");
+        String secretId = json.getString("secretId");
+        String signKey = json.getString("signKey");
+        String keyTime = json.getString("keyTime");
+        if (TYPE_SESSION.equals(type)) {
+            return SessionQCloudCredentials.fromSignKey(secretId, signKey, json.getString("token"), keyTime);
+        } else if (TYPE_BASIC.equals(type)) {
+            return new BasicQCloudCredentials(secretId, signKey, keyTime);
+        }
+        return null;
+    }
+
+    private byte[] mac(byte[] data, int offset, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(macKey);
+        mac.update(data, offset, length);
+        return mac.doFinal();
+    }
+
+    private static byte[] digest(byte[] secret, String purpose) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(purpose.getBytes(UTF_8));
+            messageDigest.update(secret);
+            return messageDigest.digest();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[1024];
+        int len;
+        while ((len = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, len);
+        }
+        return outputStream.toByteArray();
+    }
+}
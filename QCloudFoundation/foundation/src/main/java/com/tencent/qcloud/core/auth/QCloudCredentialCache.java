@@ -0,0 +1,30 @@
+package com.tencent.qcloud.core.auth;
+
+/**
+ * <p>
+ * 临时证书的持久化缓存，进程重启后可以直接使用仍在有效期内的证书，不必等待网络请求。
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public interface QCloudCredentialCache {
+
+    /**
+     * 读取缓存的证书
+     *
+     * @return 缓存的证书，没有缓存或缓存无法读取时返回空
+     */
+    QCloudLifecycleCredentials load();
+
+    /**
+     * 保存证书，覆盖已有的缓存
+     *
+     * @param credentials 证书
+     */
+    void save(QCloudLifecycleCredentials credentials);
+
+    /**
+     * 清除缓存
+     */
+    void clear();
+}
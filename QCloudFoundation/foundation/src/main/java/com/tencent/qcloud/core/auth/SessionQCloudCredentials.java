@@ -82,6 +82,24 @@ public class SessionQCloudCredentials implements QCloudLifecycleCredentials {
         this.token = token;
     }
 
+    /**
+     * 从已经计算好的 signKey 恢复证书，用于读取 {@link QCloudCredentialCache} 中的缓存
+     */
+    static SessionQCloudCredentials fromSignKey(String secretId, String signKey, String token, String keyTime) {
+        return new SessionQCloudCredentials(secretId, signKey, token, keyTime, true);
+    }
+
+    private SessionQCloudCredentials(String secretId, String signKey, String token, String keyTime,
+                                     boolean isSignKey) {
+        if (secretId == null || signKey == null || token == null || keyTime == null) {
+            throw new IllegalArgumentException("credentials cannot be null.");
+        }
+        this.secretId = secretId;
+        this.keyTime = keyTime;
+        this.signKey = signKey;
+        this.token = token;
+    }
+
     private String getKeyTime(long beginTime, long expiredTime) {
         return handleTimeAccuracy(beginTime) + ";" + handleTimeAccuracy(expiredTime);
     }
@@ -6,6 +6,8 @@ import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
@@ -78,32 +80,68 @@ public class Utils {
         return new String(encodeHex(data, toLowerCase));
     }
 
-    public static byte[] sha1(String data) {
-        try {
-            MessageDigest messageDigest =  MessageDigest.getInstance("SHA-1");
-            return messageDigest.digest(QCloudStringUtils.getBytesUTF8(data));
-        } catch (NoSuchAlgorithmException var2) {
-            throw new IllegalArgumentException(var2);
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+
+    // 每个线程缓存的 Mac 个数，signKey 通常只有一两个
+    private static final int MAX_CACHED_MAC = 4;
+
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    };
+
+    /**
+     * 按 signKey 缓存已经初始化的 Mac，避免每次签名都创建 Mac 并重新计算密钥
+     */
+    private static final ThreadLocal<Map<String, Mac>> HMAC_SHA1_CACHE = new ThreadLocal<Map<String, Mac>>() {
+        @Override
+        protected Map<String, Mac> initialValue() {
+            return new LinkedHashMap<String, Mac>(MAX_CACHED_MAC, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+                    return size() > MAX_CACHED_MAC;
+                }
+            };
         }
+    };
+
+    public static byte[] sha1(String data) {
+        MessageDigest messageDigest = SHA1_DIGEST.get();
+        messageDigest.reset();
+        return messageDigest.digest(QCloudStringUtils.getBytesUTF8(data));
     }
 
     public static byte[] hmacSha1(String source, String secretKey) {
-        String HMAC_ALGORITHM = "HmacSHA1";
-
-        byte[] hmacSha1 = null;
-        try {
-            byte[] byteKey = QCloudStringUtils.getBytesUTF8(secretKey);
-            SecretKey hmacKey = new SecretKeySpec(byteKey, HMAC_ALGORITHM);
-            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
-            mac.init(hmacKey);
-            hmacSha1 = mac.doFinal(QCloudStringUtils.getBytesUTF8(source));
-
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
+        Mac mac = getHmacSha1(secretKey);
+        // doFinal 之后 Mac 会恢复到初始化后的状态，可以直接复用
+        return mac != null ? mac.doFinal(QCloudStringUtils.getBytesUTF8(source)) : null;
+    }
+
+    private static Mac getHmacSha1(String secretKey) {
+        Map<String, Mac> cache = HMAC_SHA1_CACHE.get();
+        Mac mac = cache.get(secretKey);
+        if (mac == null) {
+            try {
+                byte[] byteKey = QCloudStringUtils.getBytesUTF8(secretKey);
+                SecretKey hmacKey = new SecretKeySpec(byteKey, HMAC_ALGORITHM);
+                mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(hmacKey);
+                cache.put(secretKey, mac);
+            } catch (NoSuchAlgorithmException e) {
+                e.printStackTrace();
+                return null;
+            } catch (InvalidKeyException e) {
+                e.printStackTrace();
+                return null;
+            }
         }
-        return hmacSha1;
+        return mac;
     }
 
     static char[] encodeHex(byte[] data, char[] toDigits) {
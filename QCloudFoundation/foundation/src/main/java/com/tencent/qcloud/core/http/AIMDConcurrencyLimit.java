@@ -0,0 +1,55 @@
+package com.tencent.qcloud.core.http;
+
+/**
+ * <p>
+ * 加性增、乘性减（AIMD）的并发控制：
+ * 并发被占满且请求正常结束时并发数加一，出现超时时按比例缩减。
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public class AIMDConcurrencyLimit extends ConcurrencyLimit {
+
+    static final double DEFAULT_BACKOFF_RATIO = 0.75;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+
+    private int limit;
+
+    public AIMDConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("limit range is invalid");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoff ratio must be in (0, 1)");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public ConcurrencyLimit newInstance() {
+        return new AIMDConcurrencyLimit(initialLimit, minLimit, maxLimit, backoffRatio);
+    }
+
+    @Override
+    public void onSample(Sample sample) {
+        if (sample.dropped) {
+            limit = Math.max(minLimit, (int) (limit * backoffRatio));
+        } else if (sample.inflight >= limit) {
+            // 只有并发被占满时才说明还需要更多的并发
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+}
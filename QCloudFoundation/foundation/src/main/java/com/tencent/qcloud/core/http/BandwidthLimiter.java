@@ -0,0 +1,107 @@
+package com.tencent.qcloud.core.http;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 基于令牌桶的带宽限制，作用于上传请求体的写入和下载文件的写入。
+ * </p>
+ * 限速器可以逐级嵌套：任务级的限速器以 TransferManager 级的限速器为父节点，最终都以 {@link #GLOBAL} 为根，
+ * 数据需要同时通过每一级的限速。速率可以在传输过程中随时调整，小于等于 0 表示不限速，此时几乎没有额外开销。
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class BandwidthLimiter {
+
+    public static final long UNLIMITED = 0;
+
+    /**
+     * 全局限速器，所有的上传和下载都受其限制
+     */
+    public static final BandwidthLimiter GLOBAL = new BandwidthLimiter(UNLIMITED, null);
+
+    // 允许突发的时长，单位秒
+    private static final double BURST_SECONDS = 0.2;
+
+    private static final long MIN_BURST_BYTES = 16 * 1024;
+
+    private final BandwidthLimiter parent;
+
+    private volatile long bytesPerSecond;
+
+    private double tokens = 0;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * 创建以 {@link #GLOBAL} 为父节点的限速器
+     *
+     * @param bytesPerSecond 每秒允许传输的字节数
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        this(bytesPerSecond, GLOBAL);
+    }
+
+    /**
+     * @param bytesPerSecond 每秒允许传输的字节数
+     * @param parent 父节点，可以为空
+     */
+    public BandwidthLimiter(long bytesPerSecond, BandwidthLimiter parent) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.parent = parent;
+    }
+
+    /**
+     * 调整速率，立即生效
+     *
+     * @param bytesPerSecond 每秒允许传输的字节数，小于等于 0 表示不限速
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * 传输 byteCount 个字节前调用，超出速率时阻塞当前线程
+     */
+    void acquire(long byteCount) throws InterruptedIOException {
+        for (BandwidthLimiter limiter = this; limiter != null; limiter = limiter.parent) {
+            if (limiter.bytesPerSecond > 0) {
+                limiter.acquireSelf(byteCount);
+            }
+        }
+    }
+
+    private void acquireSelf(long byteCount) throws InterruptedIOException {
+        long waitNanos = reserve(byteCount);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for bandwidth");
+            }
+        }
+    }
+
+    /**
+     * 预先扣除令牌，令牌不足时允许透支，返回需要等待透支部分补足的时长
+     */
+    private synchronized long reserve(long byteCount) {
+        long rate = bytesPerSecond;
+        long now = System.nanoTime();
+        if (rate <= 0) {
+            lastRefillNanos = now;
+            return 0;
+        }
+        double capacity = Math.max(rate * BURST_SECONDS, MIN_BURST_BYTES);
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * (double) rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        tokens -= byteCount;
+        return tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+}
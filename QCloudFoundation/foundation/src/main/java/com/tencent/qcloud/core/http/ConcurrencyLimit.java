@@ -0,0 +1,75 @@
+package com.tencent.qcloud.core.http;
+
+/**
+ * <p>
+ * 并发数调整算法，根据每个请求的耗时与传输速度估计当前网络可承受的并发数。
+ * </p>
+ * 所有方法都在流量控制器的锁内调用，实现类不需要自己处理线程安全。
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public abstract class ConcurrencyLimit {
+
+    /**
+     * 当前允许的并发数
+     */
+    public abstract int getLimit();
+
+    /**
+     * 创建一个初始状态相同的新实例，每个 host 使用各自的实例独立调整并发数
+     */
+    public abstract ConcurrencyLimit newInstance();
+
+    /**
+     * 一个请求结束后上报采样数据
+     *
+     * @param sample 采样数据
+     */
+    public abstract void onSample(Sample sample);
+
+    /**
+     * 加性增、乘性减的并发控制，适合上传等对超时敏感的场景
+     */
+    public static ConcurrencyLimit aimd(int initialLimit, int maxLimit) {
+        return new AIMDConcurrencyLimit(initialLimit, 1, maxLimit, AIMDConcurrencyLimit.DEFAULT_BACKOFF_RATIO);
+    }
+
+    /**
+     * 根据单位数据耗时的变化梯度调整并发数，适合下载等带宽波动较大的场景
+     */
+    public static ConcurrencyLimit gradient(int initialLimit, int maxLimit) {
+        return new GradientConcurrencyLimit(initialLimit, 1, maxLimit);
+    }
+
+    /**
+     * 单个请求的采样数据
+     */
+    public static final class Sample {
+
+        /** 采样时间 */
+        public final long timestamp;
+        /** 请求的网络耗时，单位毫秒 */
+        public final long rttMillis;
+        /** 请求的平均传输速度，单位 KB/s，无法统计时为 0 */
+        public final double speed;
+        /** 请求发出时正在执行的请求个数，包含该请求本身 */
+        public final int inflight;
+        /** 请求是否因超时等拥塞原因失败 */
+        public final boolean dropped;
+
+        Sample(long timestamp, long rttMillis, double speed, int inflight, boolean dropped) {
+            this.timestamp = timestamp;
+            this.rttMillis = rttMillis;
+            this.speed = speed;
+            this.inflight = inflight;
+            this.dropped = dropped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rtt=%dms, speed=%1.3fKBps, inflight=%d, dropped=%b",
+                    rttMillis, speed, inflight, dropped);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.tencent.qcloud.core.http;
+
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.tencent.qcloud.core.http.QCloudHttpClient.HTTP_LOG_TAG;
+
+/**
+ * <p>
+ * 流量控制器，按 {@link ConcurrencyLimit} 给出的并发数放行请求，并保留最近的采样数据。
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+class ConcurrencyLimiter {
+
+    private static final int MAX_SAMPLE_COUNT = 20;
+
+    private final String name;
+    private final ConcurrencyLimit concurrencyLimit;
+
+    private int inflight = 0;
+
+    private final ConcurrencyLimit.Sample[] samples = new ConcurrencyLimit.Sample[MAX_SAMPLE_COUNT];
+    private int sampleIndex = 0;
+    private int sampleCount = 0;
+
+    ConcurrencyLimiter(String name, ConcurrencyLimit concurrencyLimit) {
+        this.name = name;
+        this.concurrencyLimit = concurrencyLimit;
+        QCloudLogger.d(HTTP_LOG_TAG, name + " init concurrent is " + concurrencyLimit.getLimit());
+    }
+
+    /**
+     * 等待放行，返回放行时正在执行的请求个数（包含本请求）
+     */
+    synchronized int acquire() {
+        boolean interrupted = false;
+        while (inflight >= concurrencyLimit.getLimit()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // 被中断时直接放行，由后续的取消逻辑结束请求
+                interrupted = true;
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return ++inflight;
+    }
+
+    /**
+     * 请求结束且不需要上报采样，例如被用户取消或服务端返回错误
+     */
+    synchronized void release() {
+        inflight--;
+        notifyAll();
+    }
+
+    /**
+     * 请求结束并上报采样
+     */
+    synchronized void release(int inflightWhenAcquired, long rttMillis, double speed, boolean dropped) {
+        inflight--;
+        ConcurrencyLimit.Sample sample = new ConcurrencyLimit.Sample(System.currentTimeMillis(), rttMillis,
+                speed, inflightWhenAcquired, dropped);
+        samples[sampleIndex] = sample;
+        sampleIndex = (sampleIndex + 1) % MAX_SAMPLE_COUNT;
+        sampleCount = Math.min(sampleCount + 1, MAX_SAMPLE_COUNT);
+
+        int before = concurrencyLimit.getLimit();
+        concurrencyLimit.onSample(sample);
+        int after = concurrencyLimit.getLimit();
+        QCloudLogger.d(HTTP_LOG_TAG, name + " sample " + sample);
+        if (after != before) {
+            QCloudLogger.i(HTTP_LOG_TAG, name + " adjust concurrent to " + after);
+        }
+        notifyAll();
+    }
+
+    synchronized int getLimit() {
+        return concurrencyLimit.getLimit();
+    }
+
+    synchronized int getInflight() {
+        return inflight;
+    }
+
+    /**
+     * 最近的采样数据，按时间先后排列
+     */
+    synchronized List<ConcurrencyLimit.Sample> getSamples() {
+        List<ConcurrencyLimit.Sample> result = new ArrayList<>(sampleCount);
+        int start = (sampleIndex - sampleCount + MAX_SAMPLE_COUNT) % MAX_SAMPLE_COUNT;
+        for (int i = 0; i < sampleCount; i++) {
+            result.add(samples[(start + i) % MAX_SAMPLE_COUNT]);
+        }
+        return result;
+    }
+}
@@ -3,8 +3,11 @@ package com.tencent.qcloud.core.http;
 import android.util.Log;
 
 import com.tencent.qcloud.core.common.QCloudProgressListener;
+import com.tencent.qcloud.core.util.CRC64;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 
 import okio.Buffer;
 import okio.ForwardingSink;
@@ -25,10 +28,21 @@ class CountingSink extends ForwardingSink {
 
     private QCloudProgressListener progressListener;
 
+    private BandwidthLimiter bandwidthLimiter;
+
+    private CRC64 crc64;
+    private OutputStream crc64Stream;
+
     public CountingSink(Sink delegate, long bytesTotal, QCloudProgressListener progressListener) {
+        this(delegate, bytesTotal, progressListener, null);
+    }
+
+    CountingSink(Sink delegate, long bytesTotal, QCloudProgressListener progressListener,
+                 BandwidthLimiter bandwidthLimiter) {
         super(delegate);
         this.bytesTotal = bytesTotal;
         this.progressListener = progressListener;
+        this.bandwidthLimiter = bandwidthLimiter;
     }
 
     private void reportProgress() {
@@ -44,9 +58,48 @@ class CountingSink extends ForwardingSink {
         }
     }
 
-    void writeBytesInternal(long byteCount) {
+    void writeBytesInternal(long byteCount) throws InterruptedIOException {
         bytesWritten += byteCount;
         reportProgress();
+        if (bandwidthLimiter != null) {
+            bandwidthLimiter.acquire(byteCount);
+        }
+    }
+
+    /**
+     * 写入数据的同时计算 CRC64，不需要再次读取数据
+     */
+    void enableCrc64() {
+        final CRC64 checksum = new CRC64();
+        crc64 = checksum;
+        crc64Stream = new OutputStream() {
+            @Override
+            public void write(int b) {
+                checksum.update(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                checksum.update(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return 已写入数据的 CRC64，没有开启时返回 null
+     */
+    CRC64 getCrc64() {
+        return crc64;
+    }
+
+    /**
+     * 数据没有经过 {@link #write(Buffer, long)} 时，由调用方提供写入的数据
+     */
+    void writeBytesInternal(byte[] data, int offset, int byteCount) throws InterruptedIOException {
+        if (crc64 != null) {
+            crc64.update(data, offset, byteCount);
+        }
+        writeBytesInternal(byteCount);
     }
 
     long getTotalTransferred() {
@@ -55,6 +108,10 @@ class CountingSink extends ForwardingSink {
 
     @Override
     public void write(Buffer source, long byteCount) throws IOException {
+        if (crc64Stream != null) {
+            // 直接读取 Buffer 中的分段，不消费数据
+            source.copyTo(crc64Stream, 0, byteCount);
+        }
         super.write(source, byteCount);
         writeBytesInternal(byteCount);
     }
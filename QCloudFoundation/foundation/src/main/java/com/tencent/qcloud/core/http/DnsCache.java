@@ -0,0 +1,224 @@
+package com.tencent.qcloud.core.http;
+
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Dns;
+
+import static com.tencent.qcloud.core.http.QCloudHttpClient.HTTP_LOG_TAG;
+
+/**
+ * <p>
+ * 带缓存的 DNS 解析：
+ * 解析结果在有效期内直接返回，即将过期时在后台刷新，解析失败的结果也会缓存一小段时间；
+ * 刷新失败时继续使用过期的结果。最近连接失败的 IP 会被排到最后，重试时优先尝试其他 IP。
+ * 后台刷新使用单独的线程池，解析慢时不会占用其他任务的线程，排队的刷新过多时放弃本次刷新。
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+class DnsCache implements Dns {
+
+    static final long DEFAULT_TTL = 10 * 60 * 1000;
+
+    // 超过有效期的这个比例后开始后台刷新
+    private static final double REFRESH_AHEAD_RATIO = 0.75;
+
+    private static final long NEGATIVE_TTL = 30 * 1000;
+
+    // 刷新失败时过期结果的最长使用时间，从最后一次解析成功的结果过期时算起
+    private static final long MAX_STALE = 60 * 60 * 1000;
+
+    // 连接失败记录的有效期
+    private static final long FAILURE_TTL = 5 * 60 * 1000;
+
+    static final int REFRESH_THREADS = 2;
+
+    // 排队等待的后台刷新的上限，超过后放弃刷新，下次查询时再尝试
+    static final int REFRESH_QUEUE_SIZE = 16;
+
+    private static ThreadPoolExecutor refreshExecutor;
+
+    private final Dns delegate;
+    private final long ttl;
+
+    private final Map<String, List<InetAddress>> staticRecords = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<InetAddress, Long> failures = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    DnsCache(Dns delegate, long ttl) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+    }
+
+    /**
+     * 添加固定的解析记录，不会过期
+     */
+    void addRecord(String hostname, List<InetAddress> addresses) {
+        staticRecords.put(hostname, addresses);
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        List<InetAddress> addresses = staticRecords.get(hostname);
+        if (addresses != null) {
+            return sortByHealth(addresses);
+        }
+
+        long now = currentTimeMillis();
+        Entry entry = entries.get(hostname);
+        if (entry != null && now < entry.expireAt) {
+            if (entry.addresses == null) {
+                throw new UnknownHostException(hostname + " (cached failure)");
+            }
+            if (now >= entry.refreshAt) {
+                refreshAsync(hostname);
+            }
+            return sortByHealth(entry.addresses);
+        }
+        return sortByHealth(resolve(hostname, entry));
+    }
+
+    /**
+     * 连接某个 IP 失败，之后的解析结果中将其排到最后
+     */
+    void onConnectFailed(InetAddress address) {
+        failures.put(address, currentTimeMillis());
+    }
+
+    void onConnectSucceeded(InetAddress address) {
+        failures.remove(address);
+    }
+
+    private List<InetAddress> resolve(String hostname, Entry stale) throws UnknownHostException {
+        long now = currentTimeMillis();
+        try {
+            List<InetAddress> addresses = delegate.lookup(hostname);
+            entries.put(hostname, new Entry(addresses, now + (long) (ttl * REFRESH_AHEAD_RATIO), now + ttl, now + ttl));
+            return addresses;
+        } catch (UnknownHostException e) {
+            if (stale != null && stale.addresses != null && now < stale.staleSince + MAX_STALE) {
+                QCloudLogger.w(HTTP_LOG_TAG, "resolve %s failed, use stale addresses", hostname);
+                // 短时间内不再重复解析，过期时间仍从原来的结果算起
+                entries.put(hostname, new Entry(stale.addresses, now + NEGATIVE_TTL, now + NEGATIVE_TTL,
+                        stale.staleSince));
+                return stale.addresses;
+            }
+            entries.put(hostname, new Entry(null, now + NEGATIVE_TTL, now + NEGATIVE_TTL, 0));
+            throw e;
+        }
+    }
+
+    private void refreshAsync(final String hostname) {
+        if (!refreshing.add(hostname)) {
+            return;
+        }
+        try {
+            refreshExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        resolve(hostname, entries.get(hostname));
+                    } catch (UnknownHostException e) {
+                        QCloudLogger.i(HTTP_LOG_TAG, "refresh %s failed for %s", hostname, e);
+                    } finally {
+                        refreshing.remove(hostname);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(hostname);
+        }
+    }
+
+    static synchronized ThreadPoolExecutor refreshExecutor() {
+        if (refreshExecutor == null) {
+            refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 5L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), new ThreadFactory() {
+                private final AtomicInteger increment = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "QCloud-DnsRefresh-" + increment.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            refreshExecutor.allowCoreThreadTimeOut(true);
+        }
+        return refreshExecutor;
+    }
+
+    /**
+     * 健康的 IP 保持原有顺序排在前面，最近连接失败的 IP 按失败时间从早到晚排在后面
+     */
+    private List<InetAddress> sortByHealth(List<InetAddress> addresses) {
+        if (failures.isEmpty() || addresses.size() < 2) {
+            return addresses;
+        }
+        long now = currentTimeMillis();
+        List<InetAddress> healthy = new ArrayList<>(addresses.size());
+        final List<InetAddress> failed = new ArrayList<>();
+        for (InetAddress address : addresses) {
+            Long failedAt = failures.get(address);
+            if (failedAt == null) {
+                healthy.add(address);
+            } else if (now - failedAt > FAILURE_TTL) {
+                failures.remove(address);
+                healthy.add(address);
+            } else {
+                failed.add(address);
+            }
+        }
+        if (failed.isEmpty()) {
+            return addresses;
+        }
+        Collections.sort(failed, new Comparator<InetAddress>() {
+            @Override
+            public int compare(InetAddress a, InetAddress b) {
+                Long fa = failures.get(a);
+                Long fb = failures.get(b);
+                long diff = (fa != null ? fa : 0) - (fb != null ? fb : 0);
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        healthy.addAll(failed);
+        return healthy;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static class Entry {
+        // 为空表示解析失败
+        final List<InetAddress> addresses;
+        final long refreshAt;
+        final long expireAt;
+        // 最后一次解析成功的结果的过期时间，刷新失败继续使用旧结果时不变
+        final long staleSince;
+
+        Entry(List<InetAddress> addresses, long refreshAt, long expireAt, long staleSince) {
+            this.addresses = addresses;
+            this.refreshAt = refreshAt;
+            this.expireAt = expireAt;
+            this.staleSince = staleSince;
+        }
+    }
+}
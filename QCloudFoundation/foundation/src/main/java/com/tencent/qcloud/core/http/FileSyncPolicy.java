@@ -0,0 +1,53 @@
+package com.tencent.qcloud.core.http;
+
+/**
+ * <p>
+ * 下载数据写入本地文件时的落盘策略
+ * </p>
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class FileSyncPolicy {
+
+    /**
+     * 不主动落盘，由系统决定何时写回磁盘
+     */
+    public static final FileSyncPolicy NONE = new FileSyncPolicy(false, 0);
+
+    /**
+     * 写入完成后落盘一次
+     */
+    public static final FileSyncPolicy ON_COMPLETE = new FileSyncPolicy(true, 0);
+
+    private final boolean syncOnComplete;
+    private final long syncInterval;
+
+    private FileSyncPolicy(boolean syncOnComplete, long syncInterval) {
+        this.syncOnComplete = syncOnComplete;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * 每写入 bytes 个字节落盘一次，写入完成后再落盘一次
+     *
+     * @param bytes 落盘间隔，单位字节
+     */
+    public static FileSyncPolicy every(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("sync interval must be positive.");
+        }
+        return new FileSyncPolicy(true, bytes);
+    }
+
+    boolean isSyncOnComplete() {
+        return syncOnComplete;
+    }
+
+    /**
+     * @return 落盘间隔，0 表示写入过程中不落盘
+     */
+    long getSyncInterval() {
+        return syncInterval;
+    }
+}
@@ -0,0 +1,80 @@
+package com.tencent.qcloud.core.http;
+
+/**
+ * <p>
+ * 基于耗时梯度的并发控制：
+ * 比较单位数据耗时的短期值与长期均值，耗时没有变长时逐步增加并发，耗时明显变长说明出现排队，按比例减少并发。
+ * </p>
+ * 有传输速度时以每 KB 耗时作为比较对象，避免不同大小的请求互相干扰；没有速度时退化为请求耗时。
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public class GradientConcurrencyLimit extends ConcurrencyLimit {
+
+    // 短期耗时允许超过长期均值的倍数
+    private static final double TOLERANCE = 1.5;
+
+    // 长期均值的衰减系数
+    private static final double LONG_WINDOW_FACTOR = 0.05;
+
+    // 新旧并发数的平滑系数
+    private static final double SMOOTHING = 0.2;
+
+    private static final double BACKOFF_RATIO = 0.75;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double estimatedLimit;
+    private double longCost = -1;
+
+    public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("limit range is invalid");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    @Override
+    public ConcurrencyLimit newInstance() {
+        return new GradientConcurrencyLimit(initialLimit, minLimit, maxLimit);
+    }
+
+    @Override
+    public void onSample(Sample sample) {
+        if (sample.dropped) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF_RATIO);
+            return;
+        }
+        double cost = sample.speed > 0 ? 1000 / sample.speed : sample.rttMillis;
+        if (cost <= 0) {
+            return;
+        }
+        if (longCost < 0) {
+            longCost = cost;
+        } else {
+            longCost = longCost * (1 - LONG_WINDOW_FACTOR) + cost * LONG_WINDOW_FACTOR;
+        }
+
+        // 并发没有被充分使用时，耗时无法反映网络的承载能力
+        if (sample.inflight < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longCost / cost));
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
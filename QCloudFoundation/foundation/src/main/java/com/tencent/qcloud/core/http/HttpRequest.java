@@ -36,6 +36,7 @@ public class HttpRequest<T> {
     private final ResponseBodyConverter<T> responseBodyConverter;
 
     private final boolean calculateContentMD5;
+    private final String crc64Header;
 
     HttpRequest(Builder<T> builder) {
         requestBuilder = builder.requestBuilder;
@@ -43,6 +44,7 @@ public class HttpRequest<T> {
         headers = builder.headers;
         method = builder.method;
         calculateContentMD5 = builder.calculateContentMD5;
+        crc64Header = builder.crc64Header;
         if (builder.tag == null) {
             tag = toString();
         } else {
@@ -92,6 +94,13 @@ public class HttpRequest<T> {
         return calculateContentMD5 && QCloudStringUtils.isEmpty(header(HttpConstants.Header.MD5));
     }
 
+    /**
+     * @return 携带服务端 CRC64 的响应头，为 null 时不校验
+     */
+    String crc64Header() {
+        return crc64Header;
+    }
+
     public String method() {
         return method;
     }
@@ -157,6 +166,8 @@ public class HttpRequest<T> {
 
         boolean calculateContentMD5;
 
+        String crc64Header;
+
         boolean isCacheEnabled = true;
 
         public Builder() {
@@ -249,6 +260,16 @@ public class HttpRequest<T> {
             return this;
         }
 
+        /**
+         * 传输的同时计算请求体或者下载内容的 CRC64，并与响应头中服务端返回的值比较
+         *
+         * @param headerName 携带服务端 CRC64 的响应头，值为无符号十进制
+         */
+        public Builder<T> verifyCrc64(String headerName) {
+            crc64Header = headerName;
+            return this;
+        }
+
         public Builder<T> addHeader(String name, String value) {
             if (name != null && value != null) {
                 requestBuilder.addHeader(name, value);
@@ -7,8 +7,11 @@ import com.tencent.qcloud.core.auth.QCloudSigner;
 import com.tencent.qcloud.core.common.QCloudClientException;
 import com.tencent.qcloud.core.common.QCloudProgressListener;
 import com.tencent.qcloud.core.common.QCloudServiceException;
+import com.tencent.qcloud.core.logger.QCloudLogger;
 import com.tencent.qcloud.core.task.QCloudTask;
 import com.tencent.qcloud.core.task.TaskExecutors;
+import com.tencent.qcloud.core.util.CRC64;
+import com.tencent.qcloud.core.util.QCloudStringUtils;
 
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -23,6 +26,8 @@ import okhttp3.ResponseBody;
 import okhttp3.internal.Util;
 import okio.Buffer;
 
+import static com.tencent.qcloud.core.http.QCloudHttpClient.HTTP_LOG_TAG;
+
 /**
  * Created by wjielai on 2017/11/27.
  * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
@@ -37,6 +42,7 @@ public final class HttpTask<T> extends QCloudTask<HttpResult<T>> {
     private HttpResponse<T> httpResponse;
     private HttpResult<T> httpResult;
     private HttpMetric httpMetric;
+    private BandwidthLimiter bandwidthLimiter;
 
     private QCloudProgressListener mProgressListener = new QCloudProgressListener() {
         @Override
@@ -45,6 +51,10 @@ public final class HttpTask<T> extends QCloudTask<HttpResult<T>> {
         }
     };
 
+    private BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter != null ? bandwidthLimiter : BandwidthLimiter.GLOBAL;
+    }
+
     HttpTask(HttpRequest<T> httpRequest, QCloudCredentialProvider credentialProvider,
              QCloudHttpClient httpClient) {
         super("HttpTask-" + httpRequest.tag() + "-" + increments.getAndIncrement(), httpRequest.tag());
@@ -73,6 +83,14 @@ public final class HttpTask<T> extends QCloudTask<HttpResult<T>> {
         return httpResult;
     }
 
+    /**
+     * 设置上传或下载数据时使用的限速器，未设置时使用 {@link BandwidthLimiter#GLOBAL}
+     */
+    public HttpTask<T> setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+        return this;
+    }
+
     public HttpTask<T> attachMetric(HttpMetric httpMetric) {
         this.httpMetric = httpMetric;
         return this;
@@ -119,6 +137,13 @@ public final class HttpTask<T> extends QCloudTask<HttpResult<T>> {
         if (httpRequest.getRequestBody() instanceof ProgressBody) {
             ((ProgressBody) httpRequest.getRequestBody()).setProgressListener(mProgressListener);
         }
+        if (httpRequest.getRequestBody() instanceof StreamingRequestBody) {
+            StreamingRequestBody streamingRequestBody = (StreamingRequestBody) httpRequest.getRequestBody();
+            streamingRequestBody.setBandwidthLimiter(getBandwidthLimiter());
+            if (httpRequest.crc64Header() != null) {
+                streamingRequestBody.enableCrc64();
+            }
+        }
 
         QCloudClientException clientException = null;
         QCloudServiceException serviceException = null;
@@ -204,16 +229,31 @@ public final class HttpTask<T> extends QCloudTask<HttpResult<T>> {
         if (requestBody == null) {
             throw new QCloudClientException("get md5 canceled, request body is null.");
         }
-        Buffer sink = new Buffer();
-        try {
-            requestBody.writeTo(sink);
-        } catch (IOException e) {
-            throw new QCloudClientException("calculate md5 error", e);
+        String md5;
+        if (requestBody instanceof StreamingRequestBody) {
+            // 直接从文件等数据源计算，避免将整个请求体写入内存
+            try {
+                md5 = ((StreamingRequestBody) requestBody).getContentMD5();
+            } catch (IOException e) {
+                throw new QCloudClientException("calculate md5 error", e);
+            }
+        } else if (requestBody instanceof WriterRequestBody) {
+            try {
+                md5 = ((WriterRequestBody) requestBody).getContentMD5();
+            } catch (IOException e) {
+                throw new QCloudClientException("calculate md5 error", e);
+            }
+        } else {
+            Buffer sink = new Buffer();
+            try {
+                requestBody.writeTo(sink);
+            } catch (IOException e) {
+                throw new QCloudClientException("calculate md5 error", e);
+            }
+            md5 = sink.md5().base64();
+            sink.close();
         }
-
-        String md5 = sink.md5().base64();
         httpRequest.addHeader(HttpConstants.Header.MD5, md5);
-        sink.close();
     }
 
     void convertResponse(Response response) throws QCloudClientException, QCloudServiceException {
@@ -233,7 +273,49 @@ public final class HttpTask<T> extends QCloudTask<HttpResult<T>> {
         if (converter instanceof ProgressBody) {
             ((ProgressBody) converter).setProgressListener(mProgressListener);
         }
+        if (converter instanceof ResponseFileConverter) {
+            ResponseFileConverter<?> fileConverter = (ResponseFileConverter<?>) converter;
+            fileConverter.setBandwidthLimiter(getBandwidthLimiter());
+            if (httpRequest.crc64Header() != null) {
+                fileConverter.enableCrc64();
+            }
+        }
         T content = converter.convert(httpResponse);
+        if (httpRequest.crc64Header() != null) {
+            verifyCrc64(response.header(httpRequest.crc64Header()));
+        }
         httpResult = new HttpResult<>(httpResponse, content);
     }
+
+    /**
+     * 比较传输过程中计算的 CRC64 与服务端返回的值，服务端没有返回或者只下载了部分内容时不校验
+     */
+    private void verifyCrc64(String serverCrc64) throws QCloudClientException {
+        if (QCloudStringUtils.isEmpty(serverCrc64)) {
+            return;
+        }
+        CRC64 localCrc64 = null;
+        RequestBody requestBody = httpRequest.getRequestBody();
+        ResponseBodyConverter<T> converter = httpRequest.getResponseBodyConverter();
+        if (requestBody instanceof StreamingRequestBody) {
+            localCrc64 = ((StreamingRequestBody) requestBody).getCrc64();
+        } else if (converter instanceof ResponseFileConverter
+                && ((ResponseFileConverter<?>) converter).isWholeContent()) {
+            localCrc64 = ((ResponseFileConverter<?>) converter).getCrc64();
+        }
+        if (localCrc64 == null) {
+            return;
+        }
+        long expected;
+        try {
+            expected = CRC64.parseUnsigned(serverCrc64);
+        } catch (NumberFormatException e) {
+            QCloudLogger.w(HTTP_LOG_TAG, "invalid crc64 %s", serverCrc64);
+            return;
+        }
+        if (expected != localCrc64.getValue()) {
+            throw new QCloudClientException("inconsistent crc64, local " + CRC64.toUnsignedString(localCrc64.getValue())
+                    + ", server " + serverCrc64);
+        }
+    }
 }
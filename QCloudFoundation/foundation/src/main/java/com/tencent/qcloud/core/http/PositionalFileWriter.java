@@ -0,0 +1,108 @@
+package com.tencent.qcloud.core.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * 基于 {@link FileChannel} 的定位写入，数据先攒满缓冲区再写入文件，
+ * 并按照 {@link FileSyncPolicy} 落盘，替代 "rws" 模式下每次写入都同步落盘的 {@link RandomAccessFile}
+ * </p>
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+final class PositionalFileWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * 下载线程池中的线程复用同一块缓冲区
+     */
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final FileSyncPolicy syncPolicy;
+    private long position;
+    private long unSyncedBytes = 0;
+
+    PositionalFileWriter(File file, long position, boolean truncate, FileSyncPolicy syncPolicy) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        this.syncPolicy = syncPolicy != null ? syncPolicy : FileSyncPolicy.NONE;
+        this.position = position < 0 ? 0 : position;
+        if (truncate) {
+            channel.truncate(this.position);
+        }
+    }
+
+    /**
+     * 将输入流写入文件
+     *
+     * @param inputStream 输入流
+     * @param limit 最多写入的字节数，小于 0 表示写完整个输入流
+     * @param countingSink 用于统计写入进度，可以为空
+     */
+    void write(InputStream inputStream, long limit, CountingSink countingSink) throws IOException {
+        byte[] buffer = BUFFERS.get();
+        long remaining = limit < 0 ? Long.MAX_VALUE : limit;
+        int filled = 0;
+        int len = 0;
+        while (remaining > 0 && len != -1) {
+            len = inputStream.read(buffer, filled, (int) Math.min(buffer.length - filled, remaining));
+            if (len > 0) {
+                filled += len;
+                remaining -= len;
+                if (countingSink != null) {
+                    countingSink.writeBytesInternal(buffer, filled - len, len);
+                }
+            }
+            if (filled == buffer.length || (filled > 0 && (len == -1 || remaining == 0))) {
+                writeFully(buffer, filled);
+                filled = 0;
+            }
+        }
+    }
+
+    private void writeFully(byte[] buffer, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            position += channel.write(byteBuffer, position);
+        }
+        unSyncedBytes += length;
+        long syncInterval = syncPolicy.getSyncInterval();
+        if (syncInterval > 0 && unSyncedBytes >= syncInterval) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unSyncedBytes = 0;
+    }
+
+    /**
+     * 写入完成，根据落盘策略落盘
+     */
+    void finish() throws IOException {
+        if (syncPolicy.isSyncOnComplete() && unSyncedBytes > 0) {
+            sync();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+}
@@ -7,15 +7,15 @@ import com.tencent.qcloud.core.auth.QCloudCredentialProvider;
 import com.tencent.qcloud.core.logger.QCloudLogger;
 import com.tencent.qcloud.core.task.QCloudTask;
 import com.tencent.qcloud.core.task.RetryStrategy;
+import com.tencent.qcloud.core.task.TaskExecutors;
 import com.tencent.qcloud.core.task.TaskManager;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -24,9 +24,13 @@ import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSession;
 
 import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
 import okhttp3.Dns;
+import okhttp3.EventListener;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
@@ -37,11 +41,13 @@ public final class QCloudHttpClient {
     static final String HTTP_LOG_TAG = "QCloudHttp";
 
     private final OkHttpClient okHttpClient;
+    private volatile OkHttpClient warmUpClient;
     private final TaskManager taskManager;
     private final HttpLoggingInterceptor logInterceptor;
+    private final RetryAndTrafficControlInterceptor trafficControlInterceptor;
 
     private final Set<String> verifiedHost;
-    private final Map<String, List<InetAddress>> dnsMap;
+    private final DnsCache dnsCache;
 
     private static volatile QCloudHttpClient gDefault;
 
@@ -59,17 +65,6 @@ public final class QCloudHttpClient {
         }
     };
 
-    private Dns mDns = new Dns() {
-
-        @Override
-        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
-            if (dnsMap.containsKey(hostname)) {
-                return dnsMap.get(hostname);
-            }
-            return Dns.SYSTEM.lookup(hostname);
-        }
-    };
-
     public static QCloudHttpClient getDefault() {
         if (gDefault == null) {
             synchronized (QCloudHttpClient.class) {
@@ -94,7 +89,7 @@ public final class QCloudHttpClient {
             for (String ip : ipAddress) {
                 addresses.add(InetAddress.getByName(ip));
             }
-            dnsMap.put(hostName, addresses);
+            dnsCache.addRecord(hostName, addresses);
         }
     }
 
@@ -106,7 +101,7 @@ public final class QCloudHttpClient {
 
     private QCloudHttpClient(Builder b) {
         this.verifiedHost = new HashSet<>(5);
-        this.dnsMap = new HashMap<>(3);
+        this.dnsCache = new DnsCache(Dns.SYSTEM, b.dnsTtl);
         this.taskManager = TaskManager.getInstance();
 
         logInterceptor = new HttpLoggingInterceptor(new HttpLoggingInterceptor.Logger() {
@@ -116,20 +111,112 @@ public final class QCloudHttpClient {
             }
         });
         setDebuggable(false);
+        trafficControlInterceptor = new RetryAndTrafficControlInterceptor(b.retryStrategy,
+                b.uploadConcurrencyLimit, b.downloadConcurrencyLimit,
+                b.maxUploadConcurrent, b.maxDownloadConcurrent);
 
+        // 包装业务方设置的 EventListener，用于记录连接失败的 IP
+        EventListener.Factory eventListenerFactory = b.mBuilder.build().eventListenerFactory();
         okHttpClient = b.mBuilder
                 .followRedirects(true)
                 .followSslRedirects(true)
                 .hostnameVerifier(mHostnameVerifier)
-                .dns(mDns)
+                .dns(dnsCache)
+                .eventListenerFactory(ConnectHealthEventListener.factory(dnsCache, eventListenerFactory))
                 .connectTimeout(b.connectionTimeout, TimeUnit.MILLISECONDS)
                 .readTimeout(b.socketTimeout, TimeUnit.MILLISECONDS)
                 .writeTimeout(b.socketTimeout, TimeUnit.MILLISECONDS)
                 .addInterceptor(logInterceptor)
-                .addInterceptor(new RetryAndTrafficControlInterceptor(b.retryStrategy))
+                .addInterceptor(trafficControlInterceptor)
                 .build();
     }
 
+    /**
+     * 获取 host 的上传流量控制当前允许的并发数，host 为空时返回全局上限
+     */
+    public int getUploadConcurrent(String host) {
+        return trafficControlInterceptor.getUploadConcurrent(host);
+    }
+
+    /**
+     * 获取 host 的下载流量控制当前允许的并发数，host 为空时返回全局上限
+     */
+    public int getDownloadConcurrent(String host) {
+        return trafficControlInterceptor.getDownloadConcurrent(host);
+    }
+
+    /**
+     * 获取 host 的上传流量控制最近的采样数据
+     */
+    public List<ConcurrencyLimit.Sample> getUploadSamples(String host) {
+        return trafficControlInterceptor.getUploadSamples(host);
+    }
+
+    /**
+     * 获取 host 的下载流量控制最近的采样数据
+     */
+    public List<ConcurrencyLimit.Sample> getDownloadSamples(String host) {
+        return trafficControlInterceptor.getDownloadSamples(host);
+    }
+
+    /**
+     * 在后台解析 DNS 并建立到 host 的连接，连接放入连接池中供后续请求复用，
+     * 避免首个请求承担 DNS、TCP 和 TLS 握手的耗时
+     *
+     * @param scheme http 或 https
+     * @param hosts 需要预先建立连接的 host
+     */
+    public void warmUp(String scheme, String... hosts) {
+        if (hosts == null || hosts.length == 0) {
+            return;
+        }
+        OkHttpClient client = getWarmUpClient();
+        for (final String host : hosts) {
+            if (host == null) {
+                continue;
+            }
+            Request request;
+            try {
+                request = new Request.Builder()
+                        .url(scheme + "://" + host + "/")
+                        .head()
+                        .build();
+            } catch (IllegalArgumentException e) {
+                QCloudLogger.w(HTTP_LOG_TAG, "warm up %s failed for %s", host, e);
+                continue;
+            }
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    QCloudLogger.i(HTTP_LOG_TAG, "warm up %s failed for %s", host, e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    // 只需要建立连接，响应内容无关紧要，关闭后连接回到连接池
+                    response.close();
+                    QCloudLogger.i(HTTP_LOG_TAG, "warm up %s success", host);
+                }
+            });
+        }
+    }
+
+    /**
+     * 与 okHttpClient 共享连接池、DNS 和证书校验，但不经过重试和流量控制
+     */
+    private OkHttpClient getWarmUpClient() {
+        if (warmUpClient == null) {
+            synchronized (this) {
+                if (warmUpClient == null) {
+                    OkHttpClient.Builder builder = okHttpClient.newBuilder();
+                    builder.interceptors().clear();
+                    warmUpClient = builder.build();
+                }
+            }
+        }
+        return warmUpClient;
+    }
+
     public List<HttpTask> getTasksByTag(String tag) {
         List<HttpTask> tasks = new ArrayList<>();
         if (tag == null) {
@@ -170,6 +257,13 @@ public final class QCloudHttpClient {
         int connectionTimeout = 15 * 1000;  //in milliseconds
         int socketTimeout = 30 * 1000;  //in milliseconds
         RetryStrategy retryStrategy;
+        ConcurrencyLimit uploadConcurrencyLimit;
+        ConcurrencyLimit downloadConcurrencyLimit;
+        int maxUploadConcurrent = TaskExecutors.MAX_UPLOAD_CONCURRENT;
+        int maxDownloadConcurrent = TaskExecutors.MAX_DOWNLOAD_CONCURRENT;
+        int maxIdleConnections = -1;
+        long keepAliveDuration = 5 * 60 * 1000; //in milliseconds
+        long dnsTtl = DnsCache.DEFAULT_TTL; //in milliseconds
         OkHttpClient.Builder mBuilder;
 
         public Builder() {
@@ -196,6 +290,66 @@ public final class QCloudHttpClient {
             return this;
         }
 
+        /**
+         * 设置上传的并发控制算法，每个 host 使用独立的实例，见 {@link ConcurrencyLimit#newInstance()}
+         */
+        public Builder setUploadConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+            this.uploadConcurrencyLimit = concurrencyLimit;
+            return this;
+        }
+
+        /**
+         * 设置下载的并发控制算法，每个 host 使用独立的实例，见 {@link ConcurrencyLimit#newInstance()}
+         */
+        public Builder setDownloadConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+            this.downloadConcurrencyLimit = concurrencyLimit;
+            return this;
+        }
+
+        /**
+         * 设置所有 host 的上传、下载并发总数上限，不能超过 {@link TaskExecutors} 的线程数
+         */
+        public Builder setMaxConcurrent(int maxUploadConcurrent, int maxDownloadConcurrent) {
+            if (maxUploadConcurrent < 1 || maxUploadConcurrent > TaskExecutors.MAX_UPLOAD_CONCURRENT
+                    || maxDownloadConcurrent < 1 || maxDownloadConcurrent > TaskExecutors.MAX_DOWNLOAD_CONCURRENT) {
+                throw new IllegalArgumentException("max concurrent is out of range.");
+            }
+            this.maxUploadConcurrent = maxUploadConcurrent;
+            this.maxDownloadConcurrent = maxDownloadConcurrent;
+            return this;
+        }
+
+        /**
+         * 设置连接池的大小和空闲连接的保活时长
+         *
+         * @param maxIdleConnections 最多保留的空闲连接数，默认为上传与下载并发上限之和
+         * @param keepAliveDuration 空闲连接的保活时长，单位毫秒，默认 5 分钟
+         */
+        public Builder setConnectionPool(int maxIdleConnections, long keepAliveDuration) {
+            if (maxIdleConnections < 0) {
+                throw new IllegalArgumentException("max idle connections must not be negative.");
+            }
+            if (keepAliveDuration <= 0) {
+                throw new IllegalArgumentException("keep alive duration must be positive.");
+            }
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveDuration = keepAliveDuration;
+            return this;
+        }
+
+        /**
+         * 设置 DNS 解析结果的缓存时长，到期前会在后台刷新，默认 10 分钟
+         *
+         * @param dnsTtl 缓存时长，单位毫秒
+         */
+        public Builder setDnsTtl(long dnsTtl) {
+            if (dnsTtl <= 0) {
+                throw new IllegalArgumentException("dns ttl must be positive.");
+            }
+            this.dnsTtl = dnsTtl;
+            return this;
+        }
+
         public Builder setInheritBuilder(OkHttpClient.Builder builder) {
             mBuilder = builder;
             return this;
@@ -205,8 +359,23 @@ public final class QCloudHttpClient {
             if (retryStrategy == null) {
                 retryStrategy = RetryStrategy.DEFAULT;
             }
+            if (uploadConcurrencyLimit == null) {
+                uploadConcurrencyLimit = ConcurrencyLimit.aimd(1, TaskExecutors.MAX_UPLOAD_CONCURRENT);
+            }
+            if (downloadConcurrencyLimit == null) {
+                downloadConcurrencyLimit = ConcurrencyLimit.gradient(3, TaskExecutors.MAX_DOWNLOAD_CONCURRENT);
+            }
             if (mBuilder == null) {
                 mBuilder = new OkHttpClient.Builder();
+                if (maxIdleConnections < 0) {
+                    // 保证并发全部结束后连接都能留在连接池中
+                    maxIdleConnections = maxUploadConcurrent + maxDownloadConcurrent;
+                }
+            }
+            // 继承的 OkHttpClient.Builder 没有指定连接池参数时，沿用其自身的连接池
+            if (maxIdleConnections >= 0) {
+                mBuilder.connectionPool(new ConnectionPool(maxIdleConnections, keepAliveDuration,
+                        TimeUnit.MILLISECONDS));
             }
             return new QCloudHttpClient(this);
         }
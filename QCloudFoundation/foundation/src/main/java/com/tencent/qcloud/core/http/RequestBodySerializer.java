@@ -64,6 +64,18 @@ public abstract class RequestBodySerializer {
         return new BaseRequestBodyWrapper(RequestBody.create(parseType(contentType), content));
     }
 
+    /**
+     * 发送时由 writer 直接写入网络的文本请求体，不在内存中保存完整内容。
+     * 与 {@link #string(String, String)} 一致，contentType 没有指定字符集时使用 UTF-8
+     */
+    public static RequestBodySerializer writer(String contentType, WriterRequestBody.Writer writer) {
+        MediaType mediaType = parseType(contentType);
+        if (mediaType != null && mediaType.charset() == null) {
+            mediaType = MediaType.parse(mediaType + "; charset=utf-8");
+        }
+        return new BaseRequestBodyWrapper(new WriterRequestBody(mediaType, writer));
+    }
+
     /** Returns a new request body that transmits {@code content}. */
     public static RequestBodySerializer bytes(final String contentType, final byte[] content) {
         return bytes(contentType, content,  0L, -1);
@@ -74,7 +86,8 @@ public abstract class RequestBodySerializer {
         long contentLength = byteCount < 0 ? content.length - offset : Math.min(byteCount, content.length - offset);
         if (contentLength < 1024 * 200) { // 200KB
             // small content
-            return new BaseRequestBodyWrapper(RequestBody.create(parseType(contentType), content));
+            return new BaseRequestBodyWrapper(RequestBody.create(parseType(contentType), content,
+                    (int) offset, (int) contentLength));
         } else {
             // large content
             return new BaseRequestBodyWrapper(StreamingRequestBody.bytes(content, contentType, offset, byteCount));
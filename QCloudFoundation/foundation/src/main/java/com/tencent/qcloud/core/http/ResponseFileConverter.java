@@ -3,19 +3,16 @@ package com.tencent.qcloud.core.http;
 import com.tencent.qcloud.core.common.QCloudClientException;
 import com.tencent.qcloud.core.common.QCloudProgressListener;
 import com.tencent.qcloud.core.common.QCloudServiceException;
+import com.tencent.qcloud.core.util.CRC64;
 import com.tencent.qcloud.core.util.QCloudHttpUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 
 import okhttp3.ResponseBody;
 import okhttp3.internal.Util;
 import okio.Buffer;
-import okio.BufferedSink;
-import okio.Okio;
-import okio.Source;
 
 /**
  * 解析下载的字节流，并保存为文本
@@ -27,20 +24,69 @@ public class ResponseFileConverter<T> extends ResponseBodyConverter<T> implement
 
     private String filePath;
     private long offset;
+    private boolean randomAccess;
+    private FileSyncPolicy syncPolicy = FileSyncPolicy.ON_COMPLETE;
 
     private QCloudProgressListener progressListener;
 
     private CountingSink countingSink;
 
+    private BandwidthLimiter bandwidthLimiter;
+
+    private boolean crc64Enabled;
+    private boolean wholeContent;
+
     public ResponseFileConverter(String filePath, long offset) {
+        this(filePath, offset, false);
+    }
+
+    /**
+     * @param randomAccess 为 true 时总是在 offset 处写入，不截断文件已有的内容（用于分块并发下载）
+     */
+    public ResponseFileConverter(String filePath, long offset, boolean randomAccess) {
         this.filePath = filePath;
         this.offset = offset;
+        this.randomAccess = randomAccess;
     }
 
     public void setProgressListener(QCloudProgressListener progressListener) {
         this.progressListener = progressListener;
     }
 
+    void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * 写入文件的同时计算 CRC64
+     */
+    public void enableCrc64() {
+        crc64Enabled = true;
+    }
+
+    /**
+     * @return 写入文件的数据的 CRC64，没有开启或者还没有写入时返回 null
+     */
+    public CRC64 getCrc64() {
+        return countingSink != null ? countingSink.getCrc64() : null;
+    }
+
+    /**
+     * @return 响应是否为完整的对象（200，或者 206 且范围覆盖整个对象）
+     */
+    boolean isWholeContent() {
+        return wholeContent;
+    }
+
+    /**
+     * 设置写入本地文件时的落盘策略，默认为 {@link FileSyncPolicy#ON_COMPLETE}
+     */
+    public void setSyncPolicy(FileSyncPolicy syncPolicy) {
+        if (syncPolicy != null) {
+            this.syncPolicy = syncPolicy;
+        }
+    }
+
     @Override
     public T convert(HttpResponse<T> response) throws QCloudClientException, QCloudServiceException {
         HttpResponse.checkResponseSuccessful(response);
@@ -51,9 +97,11 @@ public class ResponseFileConverter<T> extends ResponseBodyConverter<T> implement
         if (contentRange != null) {
             //206
             contentLength = contentRange[1] - contentRange[0] + 1;
+            wholeContent = contentRange[0] == 0 && contentRange[1] + 1 == contentRange[2];
         } else {
             //200
             contentLength = response.contentLength();
+            wholeContent = true;
         }
 
         File downloadFilePath = new File(filePath);
@@ -62,55 +110,36 @@ public class ResponseFileConverter<T> extends ResponseBodyConverter<T> implement
             throw new QCloudClientException("local file directory can not create.");
         }
 
-        BufferedSink sink = null;
-        Source source = null;
         ResponseBody body = response.response.body();
         if (body == null) {
             throw new QCloudServiceException("response body is empty !");
         }
         try {
-            source = body.source();
-            if (offset <= 0) {
-                countingSink = new CountingSink(Okio.sink(downloadFilePath), contentLength,
-                        progressListener);
-                sink = Okio.buffer(countingSink);
-                if (contentLength > 0) {
-                    sink.write(source, contentLength);
-                } else {
-                    sink.writeAll(source);
-                }
-                sink.flush();
-            } else {
-                writeRandomAccessFile(downloadFilePath, response.byteStream(), contentLength);
-            }
+            // offset <= 0 且非随机写时覆盖整个文件，否则从 offset 处写入
+            writeFile(downloadFilePath, body.byteStream(), contentLength, offset <= 0 && !randomAccess);
             return null;
         } catch (IOException e) {
             throw new QCloudClientException("write local file error for " + e.toString(), e);
-        } finally {
-            Util.closeQuietly(sink);
-            Util.closeQuietly(source);
         }
     }
 
-    private void writeRandomAccessFile(File downloadFilePath, InputStream inputStream, long contentLength)
+    private void writeFile(File downloadFilePath, InputStream inputStream, long contentLength, boolean truncate)
             throws IOException, QCloudClientException {
         if (inputStream == null) {
             throw new QCloudClientException("response body stream is null");
         }
-        RandomAccessFile randomAccessFile = null;
+        PositionalFileWriter writer = null;
         try {
-            randomAccessFile = new RandomAccessFile(downloadFilePath, "rws");
-            randomAccessFile.seek(offset);
-            byte[] buffer = new byte[8192];
-            countingSink = new CountingSink(new Buffer(), contentLength, progressListener);
-            int len;
-            while ((len = inputStream.read(buffer)) != -1) {
-                randomAccessFile.write(buffer, 0, len);
-                countingSink.writeBytesInternal(len);
+            writer = new PositionalFileWriter(downloadFilePath, offset, truncate, syncPolicy);
+            countingSink = new CountingSink(new Buffer(), contentLength, progressListener, bandwidthLimiter);
+            if (crc64Enabled) {
+                countingSink.enableCrc64();
             }
+            writer.write(inputStream, contentLength > 0 ? contentLength : -1, countingSink);
+            writer.finish();
         } finally {
             Util.closeQuietly(inputStream);
-            Util.closeQuietly(randomAccessFile);
+            Util.closeQuietly(writer);
         }
     }
 
@@ -12,9 +12,8 @@ import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.SocketTimeoutException;
 import java.security.cert.CertificateException;
-import java.util.concurrent.Semaphore;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLPeerUnverifiedException;
@@ -32,161 +31,35 @@ import static com.tencent.qcloud.core.http.QCloudHttpClient.HTTP_LOG_TAG;
 
 class RetryAndTrafficControlInterceptor implements Interceptor {
 
-    private TrafficStrategy uploadTrafficStrategy = new ModerateTrafficStrategy("UploadStrategy-", 2);
-    private TrafficStrategy downloadTrafficStrategy = new AggressiveTrafficStrategy("DownloadStrategy-", 3);
+    private final TrafficController uploadTrafficController;
+    private final TrafficController downloadTrafficController;
 
     private RetryStrategy retryStrategy;
 
-    private static class ResizableSemaphore extends Semaphore {
-
-        ResizableSemaphore(int permit, boolean fair) {
-            super(permit, fair);
-        }
-
-        @Override
-        protected void reducePermits(int reduction) {
-            super.reducePermits(reduction);
-        }
+    RetryAndTrafficControlInterceptor(RetryStrategy retryStrategy, ConcurrencyLimit uploadLimit,
+                                      ConcurrencyLimit downloadLimit, int maxUploadConcurrent,
+                                      int maxDownloadConcurrent) {
+        this.retryStrategy = retryStrategy;
+        this.uploadTrafficController = new TrafficController("UploadStrategy-", uploadLimit,
+                maxUploadConcurrent);
+        this.downloadTrafficController = new TrafficController("DownloadStrategy-", downloadLimit,
+                maxDownloadConcurrent);
     }
 
-    /**
-     * 流量控制策略
-     */
-    private abstract static class TrafficStrategy {
-
-        private final int[] historySpeed = new int[5];
-        private int current = 0;
-        private final int maxConcurrent;
-        private final String name;
-
-        static final int MIN_FAST_SPEED = 300;
-        // 当连续多次出现timeout异常时，切换为流量管控模式
-        static final int MIN_TIMEOUT_COUNT = 2;
-
-        private ResizableSemaphore controller;
-        private AtomicInteger concurrent;
-        private AtomicInteger historyConsecutiveTimeoutError = new AtomicInteger(0);
-
-        TrafficStrategy(String name, int concurrent, int maxConcurrent) {
-            this.name = name;
-            this.maxConcurrent = maxConcurrent;
-            controller = new ResizableSemaphore(concurrent, true);
-            this.concurrent = new AtomicInteger(concurrent);
-            QCloudLogger.d(HTTP_LOG_TAG, name + " init concurrent is " + concurrent);
-        }
-
-        void reportException(Request request, IOException exception) {
-            controller.release();
-        }
-
-        void reportTimeOut(Request request) {
-            if (historyConsecutiveTimeoutError.get() < 0) {
-                historyConsecutiveTimeoutError.set(1);
-            } else {
-                historyConsecutiveTimeoutError.incrementAndGet();
-            }
-            if (historyConsecutiveTimeoutError.get() >= MIN_TIMEOUT_COUNT) {
-                adjustConcurrentAndRelease(1);
-            } else {
-                controller.release();
-            }
-        }
-
-        synchronized void reportSpeed(Request request, double averageSpeed) {
-            historyConsecutiveTimeoutError.decrementAndGet();
-            if (averageSpeed > 0) {
-                QCloudLogger.d(HTTP_LOG_TAG, name + " %s streaming speed is %1.3f KBps", request, averageSpeed);
-                int average = updateAverageSpeed(averageSpeed);
-
-                // 根据最新的平均速度切换并行任务个数
-                int concurrent = this.concurrent.get();
-                if (average > (concurrent + 1) * MIN_FAST_SPEED && concurrent < maxConcurrent) {
-                    adjustConcurrentAndRelease(concurrent + 1);
-                } else if (average > 0 && average < (concurrent - 1) * MIN_FAST_SPEED && concurrent > 1) {
-                    adjustConcurrentAndRelease(concurrent - 1);
-                } else {
-                    controller.release();
-                }
-            } else {
-                controller.release();
-            }
-        }
-
-        void waitForPermit() {
-            try {
-                controller.acquire();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-
-        private int updateAverageSpeed(double averageSpeed) {
-            synchronized (historySpeed) {
-                historySpeed[current] = (int) Math.floor(averageSpeed);
-                current = (current + 1) % historySpeed.length;
-
-                int sum = 0;
-                boolean notEnoughData = false;
-                for (int speed : historySpeed) {
-                    if (speed == 0) {
-                        notEnoughData = true;
-                        break;
-                    }
-                    sum += speed;
-                }
-                return notEnoughData ? 0 : sum / historySpeed.length;
-            }
-        }
-
-        private void clearAverageSpeed() {
-            synchronized (historySpeed) {
-                for (int i = 0; i < historySpeed.length; i++) {
-                    historySpeed[i] = 0;
-                }
-            }
-        }
-
-        private synchronized void adjustConcurrentAndRelease(int expect) {
-            int current = concurrent.get();
-            int delta = expect - current;
-            if (delta == 0) {
-                controller.release();
-            } else {
-                concurrent.set(expect);
-                if (delta > 0) {
-                    controller.release(1 + delta);
-                    clearAverageSpeed();
-                } else {
-                    delta *= -1;
-                    controller.reducePermits(delta);
-                    controller.release();
-                    clearAverageSpeed();
-                }
-                QCloudLogger.i(HTTP_LOG_TAG, name + " adjust concurrent to " + expect);
-            }
-        }
+    int getUploadConcurrent(String host) {
+        return uploadTrafficController.getConcurrent(host);
     }
 
-    /**
-     * 激进的流量控制策略
-     */
-    private static class AggressiveTrafficStrategy extends TrafficStrategy {
-        AggressiveTrafficStrategy(String name, int maxConcurrent) {
-            super(name, maxConcurrent, maxConcurrent);
-        }
+    int getDownloadConcurrent(String host) {
+        return downloadTrafficController.getConcurrent(host);
     }
 
-    /**
-     * 保守的流量控制策略
-     */
-    private static class ModerateTrafficStrategy extends TrafficStrategy {
-        ModerateTrafficStrategy(String name, int maxConcurrent) {
-            super(name, 1, maxConcurrent);
-        }
+    List<ConcurrencyLimit.Sample> getUploadSamples(String host) {
+        return uploadTrafficController.getSamples(host);
     }
 
-    RetryAndTrafficControlInterceptor(RetryStrategy retryStrategy) {
-        this.retryStrategy = retryStrategy;
+    List<ConcurrencyLimit.Sample> getDownloadSamples(String host) {
+        return downloadTrafficController.getSamples(host);
     }
 
     @Override
@@ -206,13 +79,16 @@ class RetryAndTrafficControlInterceptor implements Interceptor {
 
         int attempts = 0;
         long startTime = System.currentTimeMillis();
-        TrafficStrategy strategy = getSuitableStrategy(task);
+        TrafficController trafficController = getSuitableTrafficController(task);
+        ConcurrencyLimiter limiter = trafficController != null ?
+                trafficController.getLimiter(request.url().host()) : null;
 
         while (attempts < 1 || retryStrategy.shouldRetry(attempts, System.currentTimeMillis() - startTime)) {
             long waitTook = 0;
-            if (strategy != null) {
+            int inflight = 0;
+            if (limiter != null) {
                 long before = System.currentTimeMillis();
-                strategy.waitForPermit();
+                inflight = trafficController.acquire(limiter);
                 waitTook = System.currentTimeMillis() - before;
             }
 
@@ -248,23 +124,24 @@ class RetryAndTrafficControlInterceptor implements Interceptor {
             long networkMillsTook = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
 
             if (e == null) {
-                if (strategy != null) {
-                    strategy.reportSpeed(request, task.getAverageStreamingSpeed(networkMillsTook));
+                if (limiter != null) {
+                    trafficController.release(limiter, inflight, networkMillsTook,
+                            task.getAverageStreamingSpeed(networkMillsTook), false);
                 }
                 break;
             } else if (!isUserCancelled(e) && isRecoverable(e) && isRecoverable(statusCode)) {
                 QCloudLogger.i(HTTP_LOG_TAG, "%s failed for %s", request, e);
-                if (strategy != null) {
+                if (limiter != null) {
                     if (e instanceof SocketTimeoutException) {
-                        strategy.reportTimeOut(request);
+                        trafficController.release(limiter, inflight, networkMillsTook, 0, true);
                     } else {
-                        strategy.reportException(request, e);
+                        trafficController.release(limiter);
                     }
                 }
             } else {
                 QCloudLogger.i(HTTP_LOG_TAG, "%s failed for %s, and is not recoverable", request, e);
-                if (strategy != null) {
-                    strategy.reportException(request, e);
+                if (limiter != null) {
+                    trafficController.release(limiter);
                 }
                 break;
             }
@@ -277,8 +154,9 @@ class RetryAndTrafficControlInterceptor implements Interceptor {
         return response;
     }
 
-    private TrafficStrategy getSuitableStrategy(HttpTask task) {
-        return task.isDownloadTask() ? downloadTrafficStrategy : task.isUploadTask() ? uploadTrafficStrategy : null;
+    private TrafficController getSuitableTrafficController(HttpTask task) {
+        return task.isDownloadTask() ? downloadTrafficController : task.isUploadTask() ?
+                uploadTrafficController : null;
     }
 
     private Response executeTaskOnce(Chain chain, Request request, HttpTask task) throws IOException {
@@ -4,6 +4,7 @@ import android.content.ContentResolver;
 import android.net.Uri;
 
 import com.tencent.qcloud.core.common.QCloudProgressListener;
+import com.tencent.qcloud.core.util.CRC64;
 import com.tencent.qcloud.core.util.QCloudUtils;
 
 import java.io.ByteArrayInputStream;
@@ -13,11 +14,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okhttp3.internal.Util;
 import okio.BufferedSink;
+import okio.ByteString;
 import okio.Okio;
 import okio.Source;
 
@@ -30,6 +34,16 @@ import okio.Source;
 
 public class StreamingRequestBody extends RequestBody implements ProgressBody {
 
+    /**
+     * 计算 MD5 时每个线程复用的读缓冲区
+     */
+    private static final ThreadLocal<byte[]> DIGEST_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[64 * 1024];
+        }
+    };
+
     private File file;
     private byte[] bytes;
     private InputStream stream;
@@ -47,13 +61,32 @@ public class StreamingRequestBody extends RequestBody implements ProgressBody {
 
     private CountingSink countingSink;
 
+    private BandwidthLimiter bandwidthLimiter;
+
+    private boolean crc64Enabled;
+
     public void setProgressListener(QCloudProgressListener progressListener) {
         this.progressListener = progressListener;
     }
 
+    void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    void enableCrc64() {
+        crc64Enabled = true;
+    }
+
     private StreamingRequestBody() {
     }
 
+    /**
+     * @return 最近一次写出的请求体的 CRC64，没有开启或者还没有写出时返回 null
+     */
+    CRC64 getCrc64() {
+        return countingSink != null ? countingSink.getCrc64() : null;
+    }
+
     @Override
     public long getBytesTransferred() {
         return countingSink != null ? countingSink.getTotalTransferred() : 0;
@@ -117,7 +150,7 @@ public class StreamingRequestBody extends RequestBody implements ProgressBody {
     }
 
     boolean isLargeData() {
-        return file != null || stream != null;
+        return file != null || stream != null || bytes != null;
     }
 
     @Override
@@ -204,6 +237,50 @@ public class StreamingRequestBody extends RequestBody implements ProgressBody {
         }
     }
 
+    private static void skipFully(InputStream inputStream, long byteCount) throws IOException {
+        while (byteCount > 0) {
+            long skip = inputStream.skip(byteCount);
+            if (skip <= 0) {
+                break;
+            }
+            byteCount -= skip;
+        }
+    }
+
+    /**
+     * 直接从数据源流式计算请求体的 Content-MD5，不需要将整个请求体拷贝到内存中
+     *
+     * @return base64 编码的 MD5 值
+     */
+    String getContentMD5() throws IOException {
+        InputStream inputStream = null;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            inputStream = getStream();
+            if (inputStream != null) {
+                if (offset > 0) {
+                    skipFully(inputStream, offset);
+                }
+                long remaining = contentLength();
+                if (remaining < 0) {
+                    remaining = Long.MAX_VALUE;
+                }
+                byte[] buffer = DIGEST_BUFFERS.get();
+                int len;
+                while (remaining > 0 && (len = inputStream.read(buffer, 0,
+                        (int) Math.min(buffer.length, remaining))) != -1) {
+                    messageDigest.update(buffer, 0, len);
+                    remaining -= len;
+                }
+            }
+            return ByteString.of(messageDigest.digest()).base64();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } finally {
+            Util.closeQuietly(inputStream);
+        }
+    }
+
     @Override
     public void writeTo(BufferedSink sink) throws IOException {
         InputStream inputStream = null;
@@ -212,12 +289,15 @@ public class StreamingRequestBody extends RequestBody implements ProgressBody {
             inputStream = getStream();
             if (inputStream != null) {
                 if (offset > 0) {
-                    long skip = inputStream.skip(offset);
+                    skipFully(inputStream, offset);
                 }
                 source = Okio.source(inputStream);
 
                 long contentLength = contentLength();
-                countingSink = new CountingSink(sink, contentLength, progressListener);
+                countingSink = new CountingSink(sink, contentLength, progressListener, bandwidthLimiter);
+                if (crc64Enabled) {
+                    countingSink.enableCrc64();
+                }
                 BufferedSink bufferedSink = Okio.buffer(countingSink);
                 if (contentLength > 0) {
                     bufferedSink.write(source, contentLength);
@@ -0,0 +1,122 @@
+package com.tencent.qcloud.core.http;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 按 host 分别控制并发：每个 host 有独立的 {@link ConcurrencyLimiter}，
+ * 慢速的跨地域存储桶不会拖累同地域存储桶的并发；所有 host 的并发总数不超过全局上限。
+ * 最多保留 {@link #MAX_HOSTS} 个 host 的控制器，超出时丢弃最久没有使用并且没有请求在执行的控制器。
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+class TrafficController {
+
+    static final int MAX_HOSTS = 32;
+
+    private final String name;
+    private final ConcurrencyLimit template;
+    private final int maxConcurrent;
+
+    // 按访问顺序排列，最久没有使用的在最前面
+    private final LinkedHashMap<String, ConcurrencyLimiter> limiters = new LinkedHashMap<>(16, 0.75f, true);
+    private int inflight = 0;
+
+    TrafficController(String name, ConcurrencyLimit template, int maxConcurrent) {
+        this.name = name;
+        this.template = template;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * 获取 host 对应的流量控制器，不存在时创建
+     */
+    synchronized ConcurrencyLimiter getLimiter(String host) {
+        ConcurrencyLimiter limiter = limiters.get(host);
+        if (limiter == null) {
+            limiter = new ConcurrencyLimiter(name + host + "-", template.newInstance());
+            limiters.put(host, limiter);
+            evictIdle(host);
+        }
+        return limiter;
+    }
+
+    /**
+     * 超过 {@link #MAX_HOSTS} 时从最久没有使用的开始丢弃空闲的控制器，丢弃后再次使用该 host 时重新探测并发数
+     */
+    private void evictIdle(String current) {
+        Iterator<Map.Entry<String, ConcurrencyLimiter>> iterator = limiters.entrySet().iterator();
+        while (limiters.size() > MAX_HOSTS && iterator.hasNext()) {
+            Map.Entry<String, ConcurrencyLimiter> entry = iterator.next();
+            if (!entry.getKey().equals(current) && entry.getValue().getInflight() == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 先等待 host 放行，再等待全局放行
+     *
+     * @return 放行时该 host 正在执行的请求个数（包含本请求）
+     */
+    int acquire(ConcurrencyLimiter limiter) {
+        int hostInflight = limiter.acquire();
+        acquireGlobal();
+        return hostInflight;
+    }
+
+    void release(ConcurrencyLimiter limiter) {
+        releaseGlobal();
+        limiter.release();
+    }
+
+    void release(ConcurrencyLimiter limiter, int inflightWhenAcquired, long rttMillis, double speed,
+                 boolean dropped) {
+        releaseGlobal();
+        limiter.release(inflightWhenAcquired, rttMillis, speed, dropped);
+    }
+
+    private synchronized void acquireGlobal() {
+        boolean interrupted = false;
+        while (inflight >= maxConcurrent) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        inflight++;
+    }
+
+    private synchronized void releaseGlobal() {
+        inflight--;
+        notifyAll();
+    }
+
+    /**
+     * host 为空时返回全局上限
+     */
+    int getConcurrent(String host) {
+        if (host == null) {
+            return maxConcurrent;
+        }
+        return Math.min(getLimiter(host).getLimit(), maxConcurrent);
+    }
+
+    List<ConcurrencyLimit.Sample> getSamples(String host) {
+        ConcurrencyLimiter limiter;
+        synchronized (this) {
+            limiter = limiters.get(host);
+        }
+        return limiter != null ? limiter.getSamples() : Collections.<ConcurrencyLimit.Sample>emptyList();
+    }
+}
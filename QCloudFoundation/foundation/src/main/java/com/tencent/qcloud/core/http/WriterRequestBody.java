@@ -0,0 +1,78 @@
+package com.tencent.qcloud.core.http;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.HashingSink;
+import okio.Okio;
+
+/**
+ * <p>
+ * 发送时由 {@link Writer} 直接写入网络的请求体，适合由结构化数据生成的大请求体（例如 XML），
+ * 不需要先在内存中拼出完整的字符串。
+ * </p>
+ * 内容长度和 Content-MD5 通过一次丢弃数据的预写同时得到，因此 {@link Writer} 每次写出的内容必须完全相同。
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class WriterRequestBody extends RequestBody {
+
+    /**
+     * 请求体的生成器，可能被调用多次
+     */
+    public interface Writer {
+
+        void writeTo(BufferedSink sink) throws IOException;
+    }
+
+    private final MediaType contentType;
+    private final Writer writer;
+
+    private long contentLength = -1;
+    private String contentMD5;
+
+    WriterRequestBody(MediaType contentType, Writer writer) {
+        this.contentType = contentType;
+        this.writer = writer;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        measure();
+        return contentLength;
+    }
+
+    /**
+     * @return base64 编码的 MD5 值
+     */
+    public String getContentMD5() throws IOException {
+        measure();
+        return contentMD5;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        writer.writeTo(sink);
+    }
+
+    private synchronized void measure() throws IOException {
+        if (contentLength >= 0) {
+            return;
+        }
+        HashingSink hashingSink = HashingSink.md5(Okio.blackhole());
+        CountingSink countingSink = new CountingSink(hashingSink, -1, null);
+        BufferedSink bufferedSink = Okio.buffer(countingSink);
+        writer.writeTo(bufferedSink);
+        bufferedSink.flush();
+        contentMD5 = hashingSink.hash().base64();
+        contentLength = countingSink.getTotalTransferred();
+    }
+}
@@ -25,14 +25,19 @@ public class TaskExecutors {
 
     public static final UIThreadExecutor UI_THREAD_EXECUTOR;
 
+    // 上传和下载的线程数是并发的上限，实际并发数由流量控制动态调整
+    public static final int MAX_UPLOAD_CONCURRENT = 8;
+
+    public static final int MAX_DOWNLOAD_CONCURRENT = 8;
+
     static {
         COMMAND_EXECUTOR = new ThreadPoolExecutor(5, 5, 5L,
                 TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(128),
                 new TaskThreadFactory("Command-"));
-        UPLOAD_EXECUTOR = new ThreadPoolExecutor(2, 2, 5L,
+        UPLOAD_EXECUTOR = new ThreadPoolExecutor(MAX_UPLOAD_CONCURRENT, MAX_UPLOAD_CONCURRENT, 5L,
                 TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
                 new TaskThreadFactory("Upload-"));
-        DOWNLOAD_EXECUTOR = new ThreadPoolExecutor(3, 3, 5L,
+        DOWNLOAD_EXECUTOR = new ThreadPoolExecutor(MAX_DOWNLOAD_CONCURRENT, MAX_DOWNLOAD_CONCURRENT, 5L,
                 TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(128),
                 new TaskThreadFactory("Download-"));
         UI_THREAD_EXECUTOR = new UIThreadExecutor();
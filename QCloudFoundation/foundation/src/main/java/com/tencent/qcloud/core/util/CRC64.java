@@ -0,0 +1,191 @@
+package com.tencent.qcloud.core.util;
+
+import java.math.BigInteger;
+import java.util.zip.Checksum;
+
+/**
+ * <p>
+ * CRC-64/ECMA-182 校验值，与 COS 返回的 x-cos-hash-crc64ecma 一致（反射多项式 0xC96C5795D7870F42，
+ * 初值和结果异或值均为全 1）。
+ * </p>
+ * 使用 slicing-by-8 查表，每次处理 8 个字节；{@link #combine(long, long, long)} 可以由相邻两段数据各自的校验值
+ * 得到拼接后的校验值，用于合并分片上传和分块下载的结果。
+ *
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+
+public final class CRC64 implements Checksum {
+
+    private static final long POLY = 0xC96C5795D7870F42L;
+
+    // TABLE[k][n] 为字节 n 之后再经过 k 个零字节的结果
+    private static final long[][] TABLE = new long[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            long crc = n;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            long crc = TABLE[0][n];
+            for (int k = 1; k < 8; k++) {
+                crc = TABLE[0][(int) (crc & 0xff)] ^ (crc >>> 8);
+                TABLE[k][n] = crc;
+            }
+        }
+    }
+
+    private long value;
+
+    @Override
+    public void update(int b) {
+        long crc = ~value;
+        crc = TABLE[0][(int) ((crc ^ b) & 0xff)] ^ (crc >>> 8);
+        value = ~crc;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        long[] t0 = TABLE[0], t1 = TABLE[1], t2 = TABLE[2], t3 = TABLE[3],
+                t4 = TABLE[4], t5 = TABLE[5], t6 = TABLE[6], t7 = TABLE[7];
+        long crc = ~value;
+        while (len >= 8) {
+            crc ^= (b[off] & 0xffL)
+                    | (b[off + 1] & 0xffL) << 8
+                    | (b[off + 2] & 0xffL) << 16
+                    | (b[off + 3] & 0xffL) << 24
+                    | (b[off + 4] & 0xffL) << 32
+                    | (b[off + 5] & 0xffL) << 40
+                    | (b[off + 6] & 0xffL) << 48
+                    | (b[off + 7] & 0xffL) << 56;
+            crc = t7[(int) (crc & 0xff)]
+                    ^ t6[(int) ((crc >>> 8) & 0xff)]
+                    ^ t5[(int) ((crc >>> 16) & 0xff)]
+                    ^ t4[(int) ((crc >>> 24) & 0xff)]
+                    ^ t3[(int) ((crc >>> 32) & 0xff)]
+                    ^ t2[(int) ((crc >>> 40) & 0xff)]
+                    ^ t1[(int) ((crc >>> 48) & 0xff)]
+                    ^ t0[(int) (crc >>> 56)];
+            off += 8;
+            len -= 8;
+        }
+        while (len > 0) {
+            crc = t0[(int) ((crc ^ b[off]) & 0xff)] ^ (crc >>> 8);
+            off++;
+            len--;
+        }
+        value = ~crc;
+    }
+
+    public void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    @Override
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        value = 0;
+    }
+
+    /**
+     * 合并两段相邻数据的校验值
+     *
+     * @param crc1 前一段数据的校验值
+     * @param crc2 后一段数据的校验值
+     * @param length2 后一段数据的长度
+     * @return 两段数据拼接后的校验值
+     */
+    public static long combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        // 与 zlib 的 crc32_combine 相同：用 GF(2) 上的矩阵表示在 crc1 后追加 length2 个零字节
+        long[] even = new long[64];
+        long[] odd = new long[64];
+
+        // 追加一个零位的运算
+        odd[0] = POLY;
+        long row = 1;
+        for (int n = 1; n < 64; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // 两个零位
+        gf2MatrixSquare(even, odd);
+        // 四个零位
+        gf2MatrixSquare(odd, even);
+
+        // 每轮将矩阵平方，对应 length2 二进制中的一位
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>>= 1;
+        } while (length2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        int i = 0;
+        while (vec != 0) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+            vec >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < 64; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+    /**
+     * @return 无符号十进制表示，与 x-cos-hash-crc64ecma 的格式相同
+     */
+    public static String toUnsignedString(long value) {
+        if (value >= 0) {
+            return Long.toString(value);
+        }
+        long quotient = (value >>> 1) / 5;
+        long remainder = value - quotient * 10;
+        return Long.toString(quotient) + remainder;
+    }
+
+    /**
+     * 解析无符号十进制表示的校验值
+     *
+     * @throws NumberFormatException 格式错误或者超出 64 位
+     */
+    public static long parseUnsigned(String value) {
+        BigInteger result = new BigInteger(value.trim());
+        if (result.signum() < 0 || result.bitLength() > 64) {
+            throw new NumberFormatException("invalid crc64 " + value);
+        }
+        return result.longValue();
+    }
+}
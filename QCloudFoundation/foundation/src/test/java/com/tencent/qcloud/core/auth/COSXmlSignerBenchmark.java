@@ -0,0 +1,93 @@
+package com.tencent.qcloud.core.auth;
+
+import com.tencent.qcloud.core.http.QCloudHttpRequest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * <p>
+ * 对比每次创建 Mac 和 SimpleDateFormat 与复用之后的内存分配。结果受 JIT 和逃逸分析影响，
+ * 不作为单元测试，需要时单独运行 main 方法。
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXmlSignerBenchmark {
+
+    private static final int ITERATIONS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("thread allocation is not supported");
+            return;
+        }
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        final long threadId = Thread.currentThread().getId();
+        final String source = "sha1\n1500000000;1500000600\nce7773573d4019dfd3890fdeb0e31fae539e144b\n";
+        final String signKey = "3a7e2c04d7b1b5f1a6c0b86d3e5a44b8b3f0f8e2";
+
+        Runnable legacy = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Mac mac = Mac.getInstance("HmacSHA1");
+                    mac.init(new SecretKeySpec(signKey.getBytes("UTF-8"), "HmacSHA1"));
+                    mac.doFinal(source.getBytes("UTF-8"));
+                    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+                    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                    format.format(new Date());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Runnable cached = new Runnable() {
+            @Override
+            public void run() {
+                Utils.hmacSha1(source, signKey);
+            }
+        };
+
+        long legacyBytes = allocatedPerOp(bean, threadId, legacy);
+        long cachedBytes = allocatedPerOp(bean, threadId, cached);
+
+        final COSXmlSigner signer = new COSXmlSigner();
+        final QCloudCredentials credentials = new BasicQCloudCredentials("AKIDtest", signKey,
+                "1500000000;1500000600");
+        final QCloudHttpRequest<String> request = COSXmlSignerTest.newRequest();
+        long signBytes = allocatedPerOp(bean, threadId, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    request.removeHeader("Authorization");
+                    signer.sign(request, credentials);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        System.out.println(String.format("hmac+date: legacy %d B/op, cached %d B/op; full sign %d B/op",
+                legacyBytes, cachedBytes, signBytes));
+    }
+
+    private static long allocatedPerOp(com.sun.management.ThreadMXBean bean, long threadId, Runnable runnable) {
+        // 预热
+        for (int i = 0; i < ITERATIONS; i++) {
+            runnable.run();
+        }
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (bean.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+    }
+}
@@ -0,0 +1,52 @@
+package com.tencent.qcloud.core.auth;
+
+import com.tencent.qcloud.core.http.QCloudHttpRequest;
+import com.tencent.qcloud.core.http.RequestBodySerializer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXmlSignerTest {
+
+    static QCloudHttpRequest<String> newRequest() {
+        COSXmlSignSourceProvider provider = new COSXmlSignSourceProvider()
+                .setSignBeginTime(1500000000)
+                .setSignExpiredTime(1500000600);
+        provider.headers(new HashSet<>(Arrays.asList("Host", "content-type", "x-cos-meta-Foo",
+                "Content-Length", "x-cos-absent")));
+        provider.parameters(new HashSet<>(Arrays.asList("uploadId", "partNumber", "acl", "missing")));
+        return new QCloudHttpRequest.Builder<String>()
+                .scheme("https")
+                .host("bucket-1250000000.cos.ap-guangzhou.myqcloud.com")
+                .path("/dir a/中文.txt")
+                .method("PUT")
+                .query("uploadId", "AbC=1")
+                .query("partNumber", "1")
+                .query("acl", null)
+                .addHeader("Host", "bucket-1250000000.cos.ap-guangzhou.myqcloud.com")
+                .addHeader("x-cos-meta-Foo", "Hello World/+")
+                .body(RequestBodySerializer.string("text/plain", "hello"))
+                .signer("CosXmlSigner", provider)
+                .build();
+    }
+
+    @Test
+    public void testSignature() throws Exception {
+        QCloudHttpRequest<String> request = newRequest();
+        new COSXmlSigner().sign(request, new BasicQCloudCredentials("AKIDtest", "signkeytest",
+                "1500000000;1500000600"));
+        Assert.assertEquals("q-sign-algorithm=sha1&q-ak=AKIDtest&q-sign-time=1500000000;1500000600" +
+                "&q-key-time=1500000000;1500000600" +
+                "&q-header-list=content-length;content-type;host;x-cos-meta-foo" +
+                "&q-url-param-list=acl;partnumber;uploadid" +
+                "&q-signature=635954c4056bd8adeffbfd06b298ebda0ead4a6a", request.header("Authorization"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.tencent.qcloud.core.auth;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class FileCredentialCacheTest {
+
+    private static final byte[] SECRET = "0123456789abcdef".getBytes();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("credentials", ".bin");
+        FileCredentialCache cache = new FileCredentialCache(file, SECRET);
+
+        long now = System.currentTimeMillis() / 1000;
+        SessionQCloudCredentials credentials = new SessionQCloudCredentials("secretId", "secretKey",
+                "token", now, now + 3600);
+        cache.save(credentials);
+
+        QCloudLifecycleCredentials loaded = cache.load();
+        Assert.assertTrue(loaded instanceof SessionQCloudCredentials);
+        Assert.assertEquals(credentials.getSecretId(), loaded.getSecretId());
+        Assert.assertEquals(credentials.getSignKey(), loaded.getSignKey());
+        Assert.assertEquals(credentials.getKeyTime(), loaded.getKeyTime());
+        Assert.assertEquals("token", ((SessionQCloudCredentials) loaded).getToken());
+
+        // 密钥不同时无法读取
+        Assert.assertNull(new FileCredentialCache(file, "fedcba9876543210".getBytes()).load());
+
+        cache.clear();
+        Assert.assertNull(cache.load());
+        file.delete();
+    }
+
+    @Test
+    public void testCorrupted() throws Exception {
+        File file = File.createTempFile("credentials", ".bin");
+        FileCredentialCache cache = new FileCredentialCache(file, SECRET);
+        cache.save(new BasicQCloudCredentials("secretId", "signKey", "1;2"));
+        Assert.assertNotNull(cache.load());
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(20);
+        int b = randomAccessFile.read();
+        randomAccessFile.seek(20);
+        randomAccessFile.write(b ^ 0xff);
+        randomAccessFile.close();
+        Assert.assertNull(cache.load());
+        file.delete();
+    }
+}
@@ -0,0 +1,140 @@
+package com.tencent.qcloud.core.auth;
+
+import com.tencent.qcloud.core.common.QCloudClientException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class LifecycleCredentialProviderTest {
+
+    private static class CountingProvider extends BasicLifecycleCredentialProvider {
+        final AtomicInteger fetchCount = new AtomicInteger();
+        volatile long duration;
+        // 模拟 STS 不可用
+        volatile boolean failing;
+        // 模拟没有返回证书
+        volatile boolean empty;
+
+        CountingProvider(long duration) {
+            this.duration = duration;
+        }
+
+        @Override
+        protected QCloudLifecycleCredentials fetchNewCredentials() throws QCloudClientException {
+            fetchCount.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new QCloudClientException(e);
+            }
+            if (failing) {
+                throw new QCloudClientException("sts unavailable");
+            }
+            if (empty) {
+                return null;
+            }
+            long now = System.currentTimeMillis() / 1000;
+            return new BasicQCloudCredentials("id", "key", now + ";" + (now + duration));
+        }
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final CountingProvider provider = new CountingProvider(3600);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Assert.assertNotNull(provider.getCredentials());
+                    } catch (QCloudClientException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1, provider.fetchCount.get());
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        CountingProvider provider = new CountingProvider(120);
+        provider.setRefreshAheadTime(90);
+
+        QCloudCredentials first = provider.getCredentials();
+        provider.duration = 3600;
+        // 证书仍然有效，立即返回并在后台更新
+        long start = System.currentTimeMillis();
+        Assert.assertSame(first, provider.getCredentials());
+        Assert.assertTrue(System.currentTimeMillis() - start < 50);
+
+        Thread.sleep(300);
+        Assert.assertEquals(2, provider.fetchCount.get());
+        Assert.assertNotSame(first, provider.getCredentials());
+        Assert.assertEquals(2, provider.fetchCount.get());
+    }
+
+    @Test
+    public void testRefreshAheadFailed() throws Exception {
+        CountingProvider provider = new CountingProvider(120);
+        provider.setRefreshAheadTime(90);
+        QCloudCredentials first = provider.getCredentials();
+
+        provider.failing = true;
+        Assert.assertSame(first, provider.getCredentials());
+        Thread.sleep(300);
+        Assert.assertEquals(2, provider.fetchCount.get());
+        // 更新失败后的一段时间内不再提前更新
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(first, provider.getCredentials());
+        }
+        Thread.sleep(300);
+        Assert.assertEquals(2, provider.fetchCount.get());
+    }
+
+    @Test
+    public void testRefreshReturnsNothing() throws Exception {
+        CountingProvider provider = new CountingProvider(3600);
+        QCloudCredentials first = provider.getCredentials();
+
+        // 没有拿到新证书时保留仍然有效的证书
+        provider.empty = true;
+        provider.refresh();
+        Assert.assertSame(first, provider.getCredentials());
+        Assert.assertEquals(2, provider.fetchCount.get());
+    }
+
+    @Test
+    public void testCredentialCache() throws Exception {
+        File file = File.createTempFile("credentials", ".bin");
+        FileCredentialCache cache = new FileCredentialCache(file, "0123456789abcdef".getBytes());
+
+        CountingProvider provider = new CountingProvider(3600);
+        provider.setCredentialCache(cache);
+        QCloudCredentials credentials = provider.getCredentials();
+        Assert.assertEquals(1, provider.fetchCount.get());
+
+        // 模拟进程重启，直接使用缓存中的证书
+        CountingProvider restarted = new CountingProvider(3600);
+        restarted.setCredentialCache(cache);
+        Assert.assertEquals(credentials.getSecretId(), restarted.getCredentials().getSecretId());
+        Assert.assertEquals(0, restarted.fetchCount.get());
+        file.delete();
+    }
+}
@@ -0,0 +1,46 @@
+package com.tencent.qcloud.core.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class BandwidthLimiterTest {
+
+    @Test
+    public void testLimit() throws Exception {
+        BandwidthLimiter parent = new BandwidthLimiter(BandwidthLimiter.UNLIMITED);
+        BandwidthLimiter limiter = new BandwidthLimiter(512 * 1024, parent);
+
+        long start = System.currentTimeMillis();
+        // 528KB 需要约 1 秒
+        for (int i = 0; i < 66; i++) {
+            limiter.acquire(8 * 1024);
+        }
+        long cost = System.currentTimeMillis() - start;
+        Assert.assertTrue("cost " + cost, cost >= 800 && cost < 3000);
+
+        // 父节点限速同样生效，扣除约 50KB 的突发额度后需要约 1 秒
+        limiter.setBytesPerSecond(BandwidthLimiter.UNLIMITED);
+        parent.setBytesPerSecond(256 * 1024);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 40; i++) {
+            limiter.acquire(8 * 1024);
+        }
+        cost = System.currentTimeMillis() - start;
+        Assert.assertTrue("cost " + cost, cost >= 800 && cost < 3000);
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthLimiter.UNLIMITED);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            limiter.acquire(64 * 1024);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 500);
+    }
+}
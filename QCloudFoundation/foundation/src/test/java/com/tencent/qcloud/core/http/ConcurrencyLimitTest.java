@@ -0,0 +1,49 @@
+package com.tencent.qcloud.core.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class ConcurrencyLimitTest {
+
+    @Test
+    public void testAIMD() {
+        ConcurrencyLimit limit = ConcurrencyLimit.aimd(1, 8);
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(sample(1000, 500, limit.getLimit(), false));
+        }
+        Assert.assertEquals(8, limit.getLimit());
+
+        // 并发没有被占满时不增加
+        ConcurrencyLimit idle = ConcurrencyLimit.aimd(2, 8);
+        idle.onSample(sample(1000, 500, 1, false));
+        Assert.assertEquals(2, idle.getLimit());
+
+        limit.onSample(sample(30000, 0, 8, true));
+        Assert.assertEquals(6, limit.getLimit());
+    }
+
+    @Test
+    public void testGradient() {
+        ConcurrencyLimit limit = ConcurrencyLimit.gradient(3, 16);
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(sample(1000, 500, limit.getLimit(), false));
+        }
+        int grown = limit.getLimit();
+        Assert.assertTrue(grown > 3);
+
+        // 单个请求的速度明显下降，说明出现了排队
+        for (int i = 0; i < 5; i++) {
+            limit.onSample(sample(1000, 50, limit.getLimit(), false));
+        }
+        Assert.assertTrue(limit.getLimit() < grown);
+    }
+
+    private ConcurrencyLimit.Sample sample(long rtt, double speed, int inflight, boolean dropped) {
+        return new ConcurrencyLimit.Sample(System.currentTimeMillis(), rtt, speed, inflight, dropped);
+    }
+}
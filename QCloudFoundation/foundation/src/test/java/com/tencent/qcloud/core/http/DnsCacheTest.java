@@ -0,0 +1,178 @@
+package com.tencent.qcloud.core.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Dns;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class DnsCacheTest {
+
+    private static class FakeDns implements Dns {
+        volatile List<InetAddress> addresses;
+        volatile int lookupCount;
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            lookupCount++;
+            if (addresses == null) {
+                throw new UnknownHostException(hostname);
+            }
+            return addresses;
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        FakeDns fakeDns = new FakeDns();
+        InetAddress a = InetAddress.getByName("1.1.1.1");
+        InetAddress b = InetAddress.getByName("2.2.2.2");
+        fakeDns.addresses = Arrays.asList(a, b);
+
+        DnsCache dnsCache = new DnsCache(fakeDns, 200);
+        Assert.assertEquals(Arrays.asList(a, b), dnsCache.lookup("cos.test.com"));
+        Assert.assertEquals(Arrays.asList(a, b), dnsCache.lookup("cos.test.com"));
+        Assert.assertEquals(1, fakeDns.lookupCount);
+
+        // 过期后解析失败，继续使用过期的结果
+        fakeDns.addresses = null;
+        Thread.sleep(300);
+        Assert.assertEquals(Arrays.asList(a, b), dnsCache.lookup("cos.test.com"));
+        Assert.assertEquals(2, fakeDns.lookupCount);
+    }
+
+    @Test
+    public void testMaxStale() throws Exception {
+        FakeDns fakeDns = new FakeDns();
+        InetAddress a = InetAddress.getByName("1.1.1.1");
+        fakeDns.addresses = Arrays.asList(a);
+        final long[] now = {0};
+        DnsCache dnsCache = new DnsCache(fakeDns, DnsCache.DEFAULT_TTL) {
+            @Override
+            long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        Assert.assertEquals(Arrays.asList(a), dnsCache.lookup("cos.test.com"));
+
+        // 过期后每次刷新都失败，过期的结果最多再使用一小时
+        fakeDns.addresses = null;
+        for (now[0] = DnsCache.DEFAULT_TTL; now[0] < DnsCache.DEFAULT_TTL + 60 * 60 * 1000; now[0] += 60 * 1000) {
+            Assert.assertEquals(Arrays.asList(a), dnsCache.lookup("cos.test.com"));
+        }
+        now[0] = DnsCache.DEFAULT_TTL + 60 * 60 * 1000;
+        try {
+            dnsCache.lookup("cos.test.com");
+            Assert.fail();
+        } catch (UnknownHostException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNegativeCache() throws Exception {
+        FakeDns fakeDns = new FakeDns();
+        DnsCache dnsCache = new DnsCache(fakeDns, DnsCache.DEFAULT_TTL);
+        for (int i = 0; i < 2; i++) {
+            try {
+                dnsCache.lookup("unknown.test.com");
+                Assert.fail();
+            } catch (UnknownHostException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, fakeDns.lookupCount);
+    }
+
+    @Test
+    public void testConnectFailed() throws Exception {
+        FakeDns fakeDns = new FakeDns();
+        InetAddress a = InetAddress.getByName("1.1.1.1");
+        InetAddress b = InetAddress.getByName("2.2.2.2");
+        InetAddress c = InetAddress.getByName("3.3.3.3");
+        fakeDns.addresses = Arrays.asList(a, b, c);
+        DnsCache dnsCache = new DnsCache(fakeDns, DnsCache.DEFAULT_TTL);
+
+        dnsCache.onConnectFailed(a);
+        Assert.assertEquals(Arrays.asList(b, c, a), dnsCache.lookup("cos.test.com"));
+
+        dnsCache.onConnectSucceeded(a);
+        Assert.assertEquals(Arrays.asList(a, b, c), dnsCache.lookup("cos.test.com"));
+    }
+
+    @Test
+    public void testRefreshQueueBounded() throws Exception {
+        final InetAddress a = InetAddress.getByName("1.1.1.1");
+        final long[] now = {0};
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger refreshCount = new AtomicInteger();
+        final Set<String> threadNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        Dns slowDns = new Dns() {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                if (now[0] > 0) {
+                    // 后台刷新一直阻塞，直到测试放行
+                    refreshCount.incrementAndGet();
+                    threadNames.add(Thread.currentThread().getName());
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new UnknownHostException(hostname);
+                    }
+                }
+                return Arrays.asList(a);
+            }
+        };
+        DnsCache dnsCache = new DnsCache(slowDns, DnsCache.DEFAULT_TTL) {
+            @Override
+            long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        int hosts = DnsCache.REFRESH_THREADS + DnsCache.REFRESH_QUEUE_SIZE + 10;
+        for (int i = 0; i < hosts; i++) {
+            dnsCache.lookup("host" + i + ".test.com");
+        }
+
+        // 进入后台刷新的时间段，刷新阻塞时查询仍然立即返回缓存的结果，超出队列的刷新被放弃
+        now[0] = DnsCache.DEFAULT_TTL * 8 / 10;
+        for (int i = 0; i < hosts; i++) {
+            Assert.assertEquals(Arrays.asList(a), dnsCache.lookup("host" + i + ".test.com"));
+        }
+        release.countDown();
+        awaitRefreshes();
+        Assert.assertEquals(DnsCache.REFRESH_THREADS + DnsCache.REFRESH_QUEUE_SIZE, refreshCount.get());
+
+        // 被放弃的刷新在下次查询时重新提交
+        for (int i = 0; i < hosts; i++) {
+            dnsCache.lookup("host" + i + ".test.com");
+        }
+        awaitRefreshes();
+        Assert.assertEquals(hosts, refreshCount.get());
+        for (String threadName : threadNames) {
+            Assert.assertTrue(threadName, threadName.startsWith("QCloud-DnsRefresh-"));
+        }
+    }
+
+    private static void awaitRefreshes() throws InterruptedException {
+        ThreadPoolExecutor executor = DnsCache.refreshExecutor();
+        for (int i = 0; i < 500 && (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()); i++) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.tencent.qcloud.core.http;
+
+import com.tencent.qcloud.core.util.CRC64;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import okio.Buffer;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class StreamingRequestBodyTest {
+
+    @Test
+    public void testContentMD5() throws IOException {
+        byte[] content = new byte[300 * 1024 + 7];
+        new Random(1).nextBytes(content);
+        File file = File.createTempFile("md5", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+
+        StreamingRequestBody whole = StreamingRequestBody.file(file, null);
+        Assert.assertEquals(bufferedMD5(whole), whole.getContentMD5());
+
+        StreamingRequestBody part = StreamingRequestBody.file(file, null, 1024, 100 * 1024 + 3);
+        Assert.assertEquals(bufferedMD5(part), part.getContentMD5());
+
+        StreamingRequestBody bytes = StreamingRequestBody.bytes(content, null, 99, 200 * 1024);
+        Assert.assertEquals(bufferedMD5(bytes), bytes.getContentMD5());
+    }
+
+    @Test
+    public void testCrc64() throws IOException {
+        byte[] content = new byte[300 * 1024 + 7];
+        new Random(2).nextBytes(content);
+
+        StreamingRequestBody body = StreamingRequestBody.bytes(content, null, 99, 200 * 1024);
+        body.enableCrc64();
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+
+        CRC64 expected = new CRC64();
+        expected.update(content, 99, 200 * 1024);
+        Assert.assertEquals(expected.getValue(), body.getCrc64().getValue());
+    }
+
+    private String bufferedMD5(StreamingRequestBody body) throws IOException {
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+        return sink.md5().base64();
+    }
+}
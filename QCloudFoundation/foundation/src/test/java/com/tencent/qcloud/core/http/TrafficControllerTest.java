@@ -0,0 +1,37 @@
+package com.tencent.qcloud.core.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class TrafficControllerTest {
+
+    @Test
+    public void testEvictIdleLimiters() {
+        TrafficController controller = new TrafficController("Test-", ConcurrencyLimit.aimd(2, 8), 8);
+        ConcurrencyLimiter busy = controller.getLimiter("busy.test.com");
+        controller.acquire(busy);
+        ConcurrencyLimiter recent = controller.getLimiter("recent.test.com");
+        ConcurrencyLimiter first = controller.getLimiter("bucket0.test.com");
+
+        for (int i = 1; i < 2 * TrafficController.MAX_HOSTS; i++) {
+            controller.getLimiter("bucket" + i + ".test.com");
+            // 保持 recent 为最近使用
+            Assert.assertSame(recent, controller.getLimiter("recent.test.com"));
+        }
+
+        // 有请求在执行的控制器不会被丢弃，即使最久没有使用
+        Assert.assertSame(busy, controller.getLimiter("busy.test.com"));
+        Assert.assertNotSame(first, controller.getLimiter("bucket0.test.com"));
+
+        controller.release(busy);
+        for (int i = 0; i < TrafficController.MAX_HOSTS; i++) {
+            controller.getLimiter("other" + i + ".test.com");
+        }
+        Assert.assertNotSame(busy, controller.getLimiter("busy.test.com"));
+    }
+}
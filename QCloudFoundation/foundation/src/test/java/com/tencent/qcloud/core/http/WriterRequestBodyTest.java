@@ -0,0 +1,43 @@
+package com.tencent.qcloud.core.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+/**
+ * <p>
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class WriterRequestBodyTest {
+
+    @Test
+    public void testSameAsStringBody() throws IOException {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append("<Key>对象&amp;").append(i).append("</Key>");
+        }
+        RequestBody writerBody = RequestBodySerializer.writer("application/xml", new WriterRequestBody.Writer() {
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.writeUtf8(content.toString());
+            }
+        }).body();
+        RequestBody stringBody = RequestBodySerializer.string("application/xml", content.toString()).body();
+
+        Buffer expected = new Buffer();
+        stringBody.writeTo(expected);
+        Buffer actual = new Buffer();
+        writerBody.writeTo(actual);
+
+        Assert.assertEquals(stringBody.contentType(), writerBody.contentType());
+        Assert.assertEquals(stringBody.contentLength(), writerBody.contentLength());
+        Assert.assertEquals(expected.md5().base64(), ((WriterRequestBody) writerBody).getContentMD5());
+        Assert.assertEquals(expected.readByteString(), actual.readByteString());
+    }
+}
@@ -0,0 +1,53 @@
+package com.tencent.qcloud.core.util;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class CRC64Test {
+
+    @Test
+    public void checkValue() {
+        CRC64 crc64 = new CRC64();
+        crc64.update("123456789".getBytes(Charset.forName("UTF-8")));
+        assertEquals(0x995DC9BBDF1939FAL, crc64.getValue());
+        assertEquals("11051210869376104954", CRC64.toUnsignedString(crc64.getValue()));
+        assertEquals(crc64.getValue(), CRC64.parseUnsigned("11051210869376104954"));
+    }
+
+    @Test
+    public void sliceMatchesBytewise() {
+        byte[] data = new byte[1000];
+        new Random(1).nextBytes(data);
+        CRC64 sliced = new CRC64();
+        sliced.update(data, 3, data.length - 3);
+        CRC64 bytewise = new CRC64();
+        for (int i = 3; i < data.length; i++) {
+            bytewise.update(data[i]);
+        }
+        assertEquals(bytewise.getValue(), sliced.getValue());
+    }
+
+    @Test
+    public void combine() {
+        byte[] data = new byte[100000];
+        new Random(2).nextBytes(data);
+        CRC64 whole = new CRC64();
+        whole.update(data);
+
+        int[] splits = {0, 1, 7, 8, 4096, 99999, 100000};
+        for (int split : splits) {
+            CRC64 first = new CRC64();
+            first.update(data, 0, split);
+            CRC64 second = new CRC64();
+            second.update(data, split, data.length - split);
+            assertEquals(whole.getValue(), CRC64.combine(first.getValue(), second.getValue(), data.length - split));
+        }
+    }
+}